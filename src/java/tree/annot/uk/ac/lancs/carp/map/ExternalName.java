@@ -45,6 +45,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -102,6 +103,12 @@ import java.util.stream.Stream;
  * 
  * </ul>
  * 
+ * <p>
+ * Each of these forms is computed at most once per instance, and
+ * {@link #parse(CharSequence)} returns a shared instance for text it has
+ * seen before, so names used repeatedly on the wire cost neither
+ * parsing nor string building.
+ * 
  * @author simpsons
  */
 public class ExternalName {
@@ -173,8 +180,41 @@ public class ExternalName {
 
     private final List<Part> parts;
 
+    /* These are computed on demand, and cached. Races are benign, as
+     * any thread computes the same value, and strings are safe to
+     * publish without synchronization. */
+
+    private int hash;
+
+    private String text;
+
+    private String packageName;
+
+    private String className;
+
+    private String methodName;
+
+    private String constantName;
+
+    private String pathElements;
+
     /**
-     * Parse a name into its components.
+     * Holds previously parsed names, indexed by the text they were
+     * parsed from.
+     */
+    private static final Map<String, ExternalName> interned =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Limits the number of entries in {@link #interned}. Names arriving
+     * from the network can be arbitrary, so beyond this limit, new
+     * names are parsed but not retained.
+     */
+    private static final int INTERN_LIMIT = 4096;
+
+    /**
+     * Parse a name into its components. If the same text has been
+     * parsed before, the same instance may be returned.
      * 
      * @param src the name as a character sequence
      * 
@@ -187,7 +227,16 @@ public class ExternalName {
      * @constructor
      */
     public static ExternalName parse(CharSequence src) {
-        return new ExternalName(src);
+        if (src == null) throw new NullPointerException();
+        String key = src.toString();
+        ExternalName result = interned.get(key);
+        if (result != null) return result;
+        result = new ExternalName(key);
+        if (interned.size() < INTERN_LIMIT) {
+            ExternalName prev = interned.putIfAbsent(key, result);
+            if (prev != null) return prev;
+        }
+        return result;
     }
 
     /**
@@ -332,9 +381,13 @@ public class ExternalName {
      */
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + ((parts == null) ? 0 : parts.hashCode());
+        int result = hash;
+        if (result == 0) {
+            final int prime = 31;
+            result = 1;
+            result = prime * result + ((parts == null) ? 0 : parts.hashCode());
+            hash = result;
+        }
         return result;
     }
 
@@ -352,6 +405,7 @@ public class ExternalName {
         if (obj == null) return false;
         if (getClass() != obj.getClass()) return false;
         ExternalName other = (ExternalName) obj;
+        if (hash != 0 && other.hash != 0 && hash != other.hash) return false;
         if (parts == null) {
             if (other.parts != null) return false;
         } else if (!parts.equals(other.parts)) return false;
@@ -366,8 +420,12 @@ public class ExternalName {
      */
     @Override
     public String toString() {
-        return parts.stream().map(ws -> ws.toString(Case.LOWER, "-", "/"))
-            .collect(Collectors.joining("."));
+        String result = text;
+        if (result == null)
+            text = result = parts.stream()
+                .map(ws -> ws.toString(Case.LOWER, "-", "/"))
+                .collect(Collectors.joining("."));
+        return result;
     }
 
     /**
@@ -439,8 +497,12 @@ public class ExternalName {
      * @return this name converted to a Java package name
      */
     public String asJavaPackageName() {
-        return parts.stream().map(ws -> ws.toString(Case.LOWER, "_", ""))
-            .collect(Collectors.joining("."));
+        String result = packageName;
+        if (result == null)
+            packageName = result = parts.stream()
+                .map(ws -> ws.toString(Case.LOWER, "_", ""))
+                .collect(Collectors.joining("."));
+        return result;
     }
 
     /**
@@ -474,11 +536,14 @@ public class ExternalName {
      * @return this name converted to a Java class name
      */
     public String asJavaClassName() {
-        return toClassName(getLeafPart().words);
+        String result = className;
+        if (result == null)
+            className = result = toClassName(getLeafPart().words);
+        return result;
     }
 
     private Part getLeafPart() {
-        return getLeaf().parts.get(0);
+        return parts.get(parts.size() - 1);
     }
 
     /**
@@ -512,7 +577,10 @@ public class ExternalName {
      * @return the leaf of this name converted to a Java member name
      */
     public String asJavaMethodName() {
-        return getLeafPart().toString(Case.LOWER_CAMEL, "", "");
+        String result = methodName;
+        if (result == null) methodName = result =
+            getLeafPart().toString(Case.LOWER_CAMEL, "", "");
+        return result;
     }
 
     /**
@@ -546,7 +614,10 @@ public class ExternalName {
      * @return the leaf of this name converted to a Java member name
      */
     public String asJavaConstantName() {
-        return getLeafPart().toString(Case.UPPER, "_", "");
+        String result = constantName;
+        if (result == null) constantName = result =
+            getLeafPart().toString(Case.UPPER, "_", "");
+        return result;
     }
 
     /**
@@ -580,8 +651,12 @@ public class ExternalName {
      * @return this name converted to path elements
      */
     public String asPathElements() {
-        return parts.stream().map(p -> p.toString(Case.LOWER, "-", ""))
-            .collect(Collectors.joining("/"));
+        String result = pathElements;
+        if (result == null)
+            pathElements = result = parts.stream()
+                .map(p -> p.toString(Case.LOWER, "-", ""))
+                .collect(Collectors.joining("/"));
+        return result;
     }
 
     /**
@@ -620,8 +695,8 @@ public class ExternalName {
      * @return the resource path of the corresponding IDL
      */
     public String asJavaTypeResourcePath() {
-        return parts.stream().map(ws -> ws.toString(Case.LOWER, "_", ""))
-            .collect(Collectors.joining("/")) + "/" + JAVA_PROPERTIES_LEAF_NAME;
+        return asJavaPackageName().replace('.', '/') + "/"
+            + JAVA_PROPERTIES_LEAF_NAME;
     }
 
     /**
@@ -629,6 +704,24 @@ public class ExternalName {
      */
     public static final String JAVA_PROPERTIES_LEAF_NAME = "carp.properties";
 
+    /**
+     * Convert this name to a Java resource path for a binary module
+     * image. The path is formed as for
+     * {@link #asJavaTypeResourcePath()}, but with
+     * <samp>/carp.module</samp> suffixed.
+     * 
+     * @return the resource path of the corresponding module image
+     */
+    public String asJavaModuleImagePath() {
+        return asJavaPackageName().replace('.', '/') + "/"
+            + JAVA_MODULE_IMAGE_LEAF_NAME;
+    }
+
+    /**
+     * The name of the binary module image within a package
+     */
+    public static final String JAVA_MODULE_IMAGE_LEAF_NAME = "carp.module";
+
     /**
      * 
      * @undocumented
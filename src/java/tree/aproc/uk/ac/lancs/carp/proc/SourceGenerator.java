@@ -87,6 +87,7 @@ import uk.ac.lancs.carp.map.ExternalName;
 import uk.ac.lancs.carp.model.ExpansionContext;
 import uk.ac.lancs.carp.model.LoadContext;
 import uk.ac.lancs.carp.model.ModuleDefinition;
+import uk.ac.lancs.carp.model.ModuleImage;
 import uk.ac.lancs.carp.model.QualificationContext;
 import uk.ac.lancs.carp.model.QualificationReporter;
 import uk.ac.lancs.carp.model.QualifiedDocumentation;
@@ -238,6 +239,31 @@ public final class SourceGenerator implements Processor {
                                     ExternalName.JAVA_PROPERTIES_LEAF_NAME);
     }
 
+    /**
+     * Create a resource to output the binary image of a module.
+     * 
+     * @param moduleName the module name
+     * 
+     * @param filer the provider of access to an abstract file system
+     * 
+     * @return an object to write the file
+     * 
+     * @throws IOException if the file cannot be opened
+     * 
+     * @throws FilerException if the same pathname has already been
+     * opened for writing, if the source module cannot be determined, or
+     * if the target module is not writable, or if an explicit target
+     * module is specified and the location does not support it
+     * 
+     * @throws IllegalArgumentException for an unsupported location
+     */
+    private FileObject getExportedImage(ExternalName moduleName, Filer filer)
+        throws IOException {
+        return filer.createResource(StandardLocation.CLASS_OUTPUT,
+                                    moduleName.asJavaPackageName(),
+                                    ExternalName.JAVA_MODULE_IMAGE_LEAF_NAME);
+    }
+
     @Override
     public Set<String> getSupportedOptions() {
         return Collections.emptySet();
@@ -763,6 +789,19 @@ public final class SourceGenerator implements Processor {
                                       "Failed to write IDL properties "
                                           + moduleName);
             }
+
+            /* Generate a binary image for faster loading at run
+             * time. */
+            try {
+                FileObject imageFile = getExportedImage(moduleName, filer);
+                try (OutputStream out = imageFile.openOutputStream()) {
+                    ModuleImage.write(module, pkg.toString(), out);
+                }
+            } catch (IOException e) {
+                messager.printMessage(Kind.ERROR,
+                                      "Failed to write IDL image "
+                                          + moduleName);
+            }
         }
 
         return false;
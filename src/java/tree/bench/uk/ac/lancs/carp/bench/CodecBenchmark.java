@@ -0,0 +1,216 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+import javax.json.Json;
+import javax.json.JsonReader;
+import javax.json.JsonReaderFactory;
+import javax.json.JsonValue;
+import javax.json.JsonWriter;
+import javax.json.JsonWriterFactory;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.lancs.carp.bench.echo.Sample;
+import uk.ac.lancs.carp.codec.Decoder;
+import uk.ac.lancs.carp.codec.Encoder;
+import uk.ac.lancs.carp.model.Type;
+
+/**
+ * Measures the encoding and decoding of sequences, maps and structures
+ * of varying sizes. Each direction is measured twice: through an
+ * intermediate {@link JsonValue} tree, as messages used to be handled,
+ * and directly between Java objects and a JSON stream. Both include
+ * the cost of producing or consuming bytes, so they are comparable.
+ * 
+ * @author simpsons
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    /**
+     * Selects the type under test. <samp>strings</samp> is a
+     * <samp>*string</samp>; <samp>scores</samp> is a
+     * <samp>string -&gt; int32</samp>; <samp>sample</samp> is a single
+     * structure whose collection fields have {@link #size} elements;
+     * <samp>samples</samp> is a sequence of {@link #size} structures.
+     */
+    @Param({ "strings", "scores", "sample", "samples" })
+    public String kind;
+
+    /**
+     * Specifies the number of elements in the payload.
+     */
+    @Param({ "1", "16", "256", "4096" })
+    public int size;
+
+    private final JsonGeneratorFactory generators =
+        Json.createGeneratorFactory(null);
+
+    private final JsonParserFactory parsers = Json.createParserFactory(null);
+
+    private final JsonWriterFactory writers = Json.createWriterFactory(null);
+
+    private final JsonReaderFactory readers = Json.createReaderFactory(null);
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    private Encoder encoder;
+
+    private Decoder decoder;
+
+    private Object value;
+
+    private byte[] encoded;
+
+    /**
+     * Create the payload and the codecs for its type, and encode the
+     * payload once so that it can be repeatedly decoded.
+     */
+    @Setup
+    public void setUp() {
+        final Type type;
+        switch (kind) {
+        case "strings":
+            type = Samples.STRINGS;
+            value = Samples.strings(size);
+            break;
+
+        case "scores":
+            type = Samples.SCORES;
+            value = Samples.scores(size);
+            break;
+
+        case "sample":
+            type = Samples.SAMPLE;
+            value = Samples.sample(0, size);
+            break;
+
+        case "samples":
+            type = Samples.SAMPLES;
+            value = Samples.samples(size);
+            break;
+
+        default:
+            throw new IllegalArgumentException("unknown kind: " + kind);
+        }
+
+        /* Structures need the Java class to locate their accessors.
+         * Other types ignore it. */
+        Class<?> javaType = type == Samples.SAMPLE ? Sample.class : null;
+        encoder = type.getEncoder(javaType, null);
+        decoder = type.getDecoder(javaType, null);
+        encoded = encodeStream();
+    }
+
+    /**
+     * Encode the payload as a JSON tree, and then serialize the tree.
+     * 
+     * @return the serialized payload
+     */
+    @Benchmark
+    public byte[] encodeTree() {
+        buffer.reset();
+        JsonValue tree = encoder.encodeJson(value, null);
+        try (JsonWriter out = writers.createWriter(buffer)) {
+            out.write(tree);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Encode the payload directly into a JSON stream.
+     * 
+     * @return the serialized payload
+     */
+    @Benchmark
+    public byte[] encodeStream() {
+        buffer.reset();
+        try (JsonGenerator out = generators.createGenerator(buffer)) {
+            encoder.writeJson(value, null, out);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Parse the serialized payload as a JSON tree, and then decode the
+     * tree.
+     * 
+     * @return the decoded payload
+     */
+    @Benchmark
+    public Object decodeTree() {
+        try (JsonReader in =
+            readers.createReader(new ByteArrayInputStream(encoded))) {
+            return decoder.decodeJson(in.readValue(), null);
+        }
+    }
+
+    /**
+     * Decode the payload directly from a JSON stream.
+     * 
+     * @return the decoded payload
+     */
+    @Benchmark
+    public Object decodeStream() {
+        try (JsonParser in =
+            parsers.createParser(new ByteArrayInputStream(encoded))) {
+            return decoder.readJson(in.next(), in, null);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.lancs.carp.map.ExternalName;
+
+/**
+ * Measures parsing and rendering of {@link ExternalName}s, which takes
+ * place whenever a message field, call or type name is interpreted.
+ * 
+ * @author simpsons
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExternalNameBenchmark {
+    /**
+     * Specifies the name under test.
+     */
+    @Param({ "value", "ship-type",
+        "uk.ac.lancs.carp.bench.echo.sample",
+        "slap-me.up-side.the-head.my-i/e/t/f-index" })
+    public String text;
+
+    private ExternalName name;
+
+    /**
+     * Parse the name once so that it can be repeatedly rendered.
+     */
+    @Setup
+    public void setUp() {
+        name = ExternalName.parse(text);
+    }
+
+    /**
+     * Parse the name from text.
+     * 
+     * @return the parsed name
+     */
+    @Benchmark
+    public ExternalName parse() {
+        return ExternalName.parse(text);
+    }
+
+    /**
+     * Render the name in its canonical form.
+     * 
+     * @return the rendered name
+     */
+    @Benchmark
+    public String render() {
+        return name.toString();
+    }
+
+    /**
+     * Parse the name, and render it again.
+     * 
+     * @return the rendered name
+     */
+    @Benchmark
+    public String roundTrip() {
+        return ExternalName.parse(text).toString();
+    }
+
+    /**
+     * Render the name as a Java class name.
+     * 
+     * @return the rendered name
+     */
+    @Benchmark
+    public String asJavaClassName() {
+        return name.asJavaClassName();
+    }
+
+    /**
+     * Render the name as a Java method name.
+     * 
+     * @return the rendered name
+     */
+    @Benchmark
+    public String asJavaMethodName() {
+        return name.asJavaMethodName();
+    }
+}
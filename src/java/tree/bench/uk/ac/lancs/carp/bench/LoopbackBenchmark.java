@@ -0,0 +1,211 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp.bench;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.impl.bootstrap.HttpServer;
+import org.apache.http.impl.bootstrap.ServerBootstrap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.lancs.carp.Carp;
+import uk.ac.lancs.carp.ClientPresence;
+import uk.ac.lancs.carp.LongestPrefixDispatcher;
+import uk.ac.lancs.carp.ServerPresence;
+import uk.ac.lancs.carp.bench.echo.Echo;
+import uk.ac.lancs.carp.bench.echo.Sample;
+
+/**
+ * Measures complete calls from a proxy to a receiver through an HTTP
+ * server on the loopback interface. Separate client and server
+ * presences are used, so that calls cannot be short-circuited.
+ * 
+ * @author simpsons
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackBenchmark {
+    /**
+     * Returns its arguments, or a summary of them.
+     */
+    private static final class Reflector implements Echo {
+        @Override
+        public Bounce bounce(Sample value) {
+            return Bounce.Ok.value(value).$done();
+        }
+
+        @Override
+        public Tally tally(List<Sample> values) {
+            return Tally.Ok.count(values.size()).$done();
+        }
+    }
+
+    /**
+     * Selects the wire format that the client offers. With
+     * <samp>cbor</samp>, the first call negotiates the binary format,
+     * and all subsequent calls use it.
+     */
+    @Param({ "json", "cbor" })
+    public String format;
+
+    /**
+     * Specifies the number of elements in each collection field of the
+     * bounced structure, and the number of structures tallied.
+     */
+    @Param({ "1", "16", "256" })
+    public int size;
+
+    private final Echo receiver = new Reflector();
+
+    private LongestPrefixDispatcher dispatcher;
+
+    private HttpServer webServer;
+
+    private ExecutorService executor;
+
+    private ServerPresence server;
+
+    private Echo proxy;
+
+    private Sample sample;
+
+    private List<Sample> samples;
+
+    /**
+     * Start a server on an ephemeral loopback port, expose the
+     * receiver through it, and create a proxy to the receiver.
+     * 
+     * @throws IOException if the server could not be started
+     * 
+     * @throws URISyntaxException if the server's address could not be
+     * expressed as a URI
+     */
+    @Setup
+    public void setUp() throws IOException, URISyntaxException {
+        /* The port is not known until the server is started, so the
+         * dispatcher can only be created afterwards. */
+        InetAddress local = InetAddress.getLoopbackAddress();
+        webServer = ServerBootstrap.bootstrap().setLocalAddress(local)
+            .setListenerPort(0).setServerInfo("CARP/1.0")
+            .setSocketConfig(SocketConfig.custom().setTcpNoDelay(true)
+                .build())
+            .setHandlerMapper(req -> dispatcher.lookup(req)).create();
+        webServer.start();
+        URI base = new URI("http", null, local.getHostAddress(),
+                           webServer.getLocalPort(), "/", null, null);
+        dispatcher = new LongestPrefixDispatcher(base);
+
+        executor = Executors.newFixedThreadPool(3);
+        server = Carp.start().with(Carp.PLACEMENT, dispatcher.register("/"))
+            .with(Carp.ASYNCHRONOUS_EXECUTOR, executor).buildServer();
+        server.bind("echo", Echo.class, receiver);
+        URI location = server.expose(Echo.class, receiver);
+
+        ClientPresence client = Carp.start().enable(Carp.POOLED_CLIENTS)
+            .with(Carp.BINARY_WIRE_FORMAT, format.equals("cbor"))
+            .buildClient();
+        proxy = client.elaborate(Echo.class, location);
+
+        sample = Samples.sample(0, size);
+        samples = Samples.samples(size);
+    }
+
+    /**
+     * Withdraw the receiver, and stop the server.
+     */
+    @TearDown
+    public void tearDown() {
+        server.unbind("echo");
+        webServer.shutdown(1, TimeUnit.SECONDS);
+        executor.shutdown();
+    }
+
+    /**
+     * Send a structure, and get it back.
+     * 
+     * @return the response
+     */
+    @Benchmark
+    public Echo.Bounce bounce() {
+        return proxy.bounce(sample);
+    }
+
+    /**
+     * Send a sequence of structures, and get back a count.
+     * 
+     * @return the response
+     */
+    @Benchmark
+    public Echo.Tally tally() {
+        return proxy.tally(samples);
+    }
+
+    /**
+     * Send a structure, and get it back, from several threads at once.
+     * 
+     * @return the response
+     */
+    @Benchmark
+    @Threads(8)
+    public Echo.Bounce bounceContended() {
+        return proxy.bounce(sample);
+    }
+}
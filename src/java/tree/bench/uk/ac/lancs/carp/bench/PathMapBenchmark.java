@@ -0,0 +1,176 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp.bench;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.lancs.carp.component.Agency;
+import uk.ac.lancs.carp.component.Agent;
+import uk.ac.lancs.carp.component.Binding;
+import uk.ac.lancs.carp.component.ManagedReceiver;
+import uk.ac.lancs.carp.component.PathMap;
+import uk.ac.lancs.carp.component.PathMatch;
+import uk.ac.lancs.carp.component.std.IntegerDiscriminator;
+
+/**
+ * Measures {@link PathMap#resolve(List)} against a chain of components,
+ * each reached from its parent through an {@link Agency}, so that
+ * resolution must descend through every level.
+ * 
+ * @author simpsons
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathMapBenchmark {
+    /**
+     * A component in the chain. Each holds its only child strongly, so
+     * that no level is lost to garbage collection during a run.
+     */
+    static final class Node {
+        final Node child;
+
+        Node(Node child) {
+            this.child = child;
+        }
+    }
+
+    /**
+     * Yields the child of any node under <samp>child/<var>n</var></samp>.
+     * The same agent serves every level.
+     */
+    private static final Agent AGENT =
+        Agent.of(Node.class, Node.class, IntegerDiscriminator.unpadded(10),
+                 (Node container, BigInteger id) -> ManagedReceiver
+                     .of(container.child, PathMapBenchmark.agency()));
+
+    private static final Agency AGENCY =
+        new Agency(List.of(Binding.of("child", AGENT)));
+
+    private static Agency agency() {
+        return AGENCY;
+    }
+
+    /**
+     * Specifies the number of levels beneath the registered root.
+     */
+    @Param({ "0", "1", "4", "16" })
+    public int depth;
+
+    private final PathMap map = new PathMap();
+
+    private Node root;
+
+    private List<String> deepest;
+
+    private List<String> beyond;
+
+    /**
+     * Build the chain, register its root, and work out the paths to
+     * resolve.
+     */
+    @Setup
+    public void setUp() {
+        Node node = null;
+        for (int i = 0; i <= depth; i++)
+            node = new Node(node);
+        root = node;
+        map.register(List.of("root"), Node.class, root, AGENCY);
+
+        List<String> path = new ArrayList<>();
+        path.add("root");
+        for (int i = 0; i < depth; i++) {
+            path.add("child");
+            path.add(Integer.toString(i));
+        }
+        deepest = List.copyOf(path);
+        path.add("no-such-child");
+        path.add("0");
+        beyond = List.copyOf(path);
+    }
+
+    /**
+     * Resolve the deepest component exactly.
+     * 
+     * @return the match
+     */
+    @Benchmark
+    public PathMatch resolveDeepest() {
+        return map.resolve(deepest);
+    }
+
+    /**
+     * Resolve a path extending beyond the deepest component, so that
+     * the last agency is consulted and fails to match.
+     * 
+     * @return the match
+     */
+    @Benchmark
+    public PathMatch resolveBeyond() {
+        return map.resolve(beyond);
+    }
+
+    /**
+     * Resolve the deepest component from several threads at once.
+     * 
+     * @return the match
+     */
+    @Benchmark
+    @Threads(4)
+    public PathMatch resolveContended() {
+        return map.resolve(deepest);
+    }
+}
@@ -0,0 +1,159 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp.bench;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import uk.ac.lancs.carp.bench.echo.Sample;
+import uk.ac.lancs.carp.map.ExternalName;
+import uk.ac.lancs.carp.model.Type;
+import uk.ac.lancs.carp.model.std.IntegerType;
+import uk.ac.lancs.carp.model.std.MapType;
+import uk.ac.lancs.carp.model.std.Member;
+import uk.ac.lancs.carp.model.std.SequenceType;
+import uk.ac.lancs.carp.model.std.StringType;
+import uk.ac.lancs.carp.model.std.StructureType;
+
+/**
+ * Builds payloads and type models shared by several benchmarks.
+ * 
+ * @author simpsons
+ */
+final class Samples {
+    private Samples() {}
+
+    /**
+     * Models <samp>int32</samp>.
+     */
+    static final Type INT32 =
+        new IntegerType(Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+    /**
+     * Models <samp>*string</samp>.
+     */
+    static final Type STRINGS = new SequenceType(StringType.INSTANCE);
+
+    /**
+     * Models <samp>string -&gt; int32</samp>.
+     */
+    static final Type SCORES = new MapType(StringType.INSTANCE, INT32);
+
+    /**
+     * Models <samp>uk.ac.lancs.carp.bench.echo.sample</samp>, as
+     * defined in the module's IDL, so that its codecs can be obtained
+     * without loading the module's properties.
+     */
+    static final StructureType SAMPLE;
+
+    /**
+     * Models <samp>*uk.ac.lancs.carp.bench.echo.sample</samp>.
+     */
+    static final Type SAMPLES;
+
+    static {
+        Map<ExternalName, Member> members = new LinkedHashMap<>();
+        members.put(ExternalName.parse("id"), Member.required(INT32));
+        members.put(ExternalName.parse("name"),
+                    Member.required(StringType.INSTANCE));
+        members.put(ExternalName.parse("tags"), Member.required(STRINGS));
+        members.put(ExternalName.parse("scores"), Member.required(SCORES));
+        SAMPLE = new StructureType(members);
+        SAMPLES = new SequenceType(SAMPLE);
+    }
+
+    /**
+     * Create a list of distinct strings.
+     * 
+     * @param size the number of strings
+     * 
+     * @return the new list
+     */
+    static List<String> strings(int size) {
+        List<String> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            result.add("item-" + i);
+        return result;
+    }
+
+    /**
+     * Create a map from distinct strings to integers.
+     * 
+     * @param size the number of entries
+     * 
+     * @return the new map
+     */
+    static Map<String, Integer> scores(int size) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++)
+            result.put("key-" + i, i * 31);
+        return result;
+    }
+
+    /**
+     * Create a structure whose sequence and map fields have a given
+     * number of elements.
+     * 
+     * @param id the structure's identifier
+     * 
+     * @param size the number of elements in each collection field
+     * 
+     * @return the new structure
+     */
+    static Sample sample(int id, int size) {
+        return Sample.id(id).name("sample-" + id).tags(strings(size))
+            .scores(scores(size)).$done();
+    }
+
+    /**
+     * Create a list of structures, each with a few elements in its
+     * collection fields.
+     * 
+     * @param size the number of structures
+     * 
+     * @return the new list
+     */
+    static List<Sample> samples(int size) {
+        List<Sample> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            result.add(sample(i, 4));
+        return result;
+    }
+}
@@ -0,0 +1,165 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp.bench;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.json.JsonValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.lancs.carp.codec.Codecs;
+
+/**
+ * Measures the conversions between scalar Java values and JSON
+ * provided by {@link Codecs}, on which all composite codecs depend.
+ * 
+ * @author simpsons
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScalarCodecBenchmark {
+    private int intValue = 123456789;
+
+    private long longValue = 1234567890123456789L;
+
+    private double doubleValue = Math.PI;
+
+    private BigInteger bigValue = BigInteger.TWO.pow(100).negate();
+
+    private BigDecimal decimalValue = new BigDecimal("-1234.5678e-9");
+
+    private String stringValue = "the quick brown fox";
+
+    private UUID uuidValue = new UUID(0x0123456789abcdefL, 0xfedcba9876543210L);
+
+    private String uuidText = uuidValue.toString();
+
+    /**
+     * Convert an {@code int} to JSON, and render it.
+     * 
+     * @return the rendered number
+     */
+    @Benchmark
+    public String intToJson() {
+        return Codecs.asJson(intValue).toString();
+    }
+
+    /**
+     * Convert a {@code long} to JSON, and render it.
+     * 
+     * @return the rendered number
+     */
+    @Benchmark
+    public String longToJson() {
+        return Codecs.asJson(longValue).toString();
+    }
+
+    /**
+     * Convert a {@code double} to JSON, and render it.
+     * 
+     * @return the rendered number
+     */
+    @Benchmark
+    public String doubleToJson() {
+        return Codecs.asJson(doubleValue).toString();
+    }
+
+    /**
+     * Convert a {@link BigInteger} to JSON, and render it.
+     * 
+     * @return the rendered number
+     */
+    @Benchmark
+    public String bigIntegerToJson() {
+        return Codecs.asJson(bigValue).toString();
+    }
+
+    /**
+     * Convert a {@link BigDecimal} to JSON, and render it.
+     * 
+     * @return the rendered number
+     */
+    @Benchmark
+    public String bigDecimalToJson() {
+        return Codecs.asJson(decimalValue).toString();
+    }
+
+    /**
+     * Convert a string to JSON.
+     * 
+     * @return the JSON string
+     */
+    @Benchmark
+    public JsonValue stringToJson() {
+        return Codecs.asJson(stringValue);
+    }
+
+    /**
+     * Convert a UUID to JSON.
+     * 
+     * @return the JSON string
+     */
+    @Benchmark
+    public JsonValue uuidToJson() {
+        return Codecs.asJson(uuidValue);
+    }
+
+    /**
+     * Parse a UUID from its textual form.
+     * 
+     * @return the parsed UUID
+     */
+    @Benchmark
+    public UUID uuidFromString() {
+        return Codecs.asUUID(uuidText);
+    }
+}
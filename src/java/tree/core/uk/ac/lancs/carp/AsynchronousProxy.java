@@ -0,0 +1,86 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2021,2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Invokes a remote receiver without blocking the caller. A call is
+ * expressed as a function applied to a stand-in for the receiver. The
+ * function must invoke exactly one method of the service type on the
+ * stand-in, and otherwise do nothing, as the stand-in merely records
+ * the method and its arguments. For example:
+ * 
+ * <pre>
+ * AsynchronousProxy&lt;Shop&gt; shop = presence.elaborateAsync(Shop.class, loc);
+ * CompletableFuture&lt;Shop.Order&gt; rsp = shop.call(s -&gt; s.order(item, 3));
+ * </pre>
+ * 
+ * <p>
+ * The stand-in's method returns a meaningless value, so the function's
+ * result is discarded. The future instead completes with the response
+ * union of the recorded call, or {@code null} if the call has no
+ * response types. If the call fails, the future completes
+ * exceptionally with the same exception that a blocking call through
+ * {@link ClientPresence#elaborate(Class, java.net.URI)} would have
+ * thrown.
+ * 
+ * @param <Srv> the service type
+ * 
+ * @see ClientPresence#elaborateAsync(Class, java.net.URI)
+ * 
+ * @author simpsons
+ */
+public interface AsynchronousProxy<Srv> {
+    /**
+     * Invoke the remote receiver asynchronously.
+     * 
+     * @param <R> the response type of the invoked method
+     * 
+     * @param invocation a function invoking exactly one method on its
+     * argument
+     * 
+     * @return a future completed with the response
+     * 
+     * @throws IllegalArgumentException if the function does not invoke
+     * exactly one remotely invokable method
+     */
+    <R> CompletableFuture<R> call(Function<? super Srv, ? extends R> invocation);
+}
@@ -0,0 +1,98 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp;
+
+import java.net.URI;
+
+/**
+ * Gathers asynchronous calls so that they can be sent together. Calls
+ * made through proxies obtained from a batch are held until the batch
+ * is flushed, and then all calls to the same server are sent in a
+ * single request. For example:
+ * 
+ * <pre>
+ * try (CallBatch batch = presence.openBatch()) {
+ *     CompletableFuture&lt;Shop.Order&gt; rsp1 =
+ *         batch.elaborate(Shop.class, loc1).call(s -&gt; s.order(item, 3));
+ *     CompletableFuture&lt;Shop.Order&gt; rsp2 =
+ *         batch.elaborate(Shop.class, loc2).call(s -&gt; s.order(item, 1));
+ * }
+ * </pre>
+ * 
+ * <p>
+ * The server executes the calls of a request in the order they were
+ * made, and each future completes as it would have done had its call
+ * been made through
+ * {@link ClientPresence#elaborateAsync(Class, URI)}. Calls to local
+ * receivers are not held, but invoked immediately.
+ * 
+ * @see ClientPresence#openBatch()
+ * 
+ * @author simpsons
+ */
+public interface CallBatch extends AutoCloseable {
+    /**
+     * Create a proxy whose calls are held in this batch.
+     * 
+     * @param <Srv> the service type
+     * 
+     * @param type the service type
+     * 
+     * @param location the service location
+     * 
+     * @return a proxy to the remote service
+     */
+    <Srv> AsynchronousProxy<Srv> elaborate(Class<Srv> type, URI location);
+
+    /**
+     * Send all calls held so far. The batch remains usable, and
+     * subsequent calls are held until the next flush.
+     */
+    void flush();
+
+    /**
+     * Send all calls held so far.
+     * 
+     * @default {@link #flush()} is invoked.
+     */
+    @Override
+    default void close() {
+        flush();
+    }
+}
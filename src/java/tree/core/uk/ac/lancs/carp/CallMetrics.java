@@ -0,0 +1,87 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp;
+
+import uk.ac.lancs.carp.map.ExternalName;
+
+/**
+ * Receives measurements of individual calls made or served by a
+ * presence. Set {@link Carp#METRICS} to have a presence report to an
+ * implementation.
+ * 
+ * <p>
+ * Records are delivered once each call is complete, on the thread that
+ * completes it. For a synchronous call, that is the thread that made
+ * or served it. An asynchronous call is reported on the thread that
+ * completes its result, such as one receiving its response, and a
+ * served call whose response is streamed is reported on the thread
+ * that finishes writing it. Implementations must therefore be
+ * thread-safe, and should return quickly. Exceptions thrown by an
+ * implementation are logged and otherwise ignored.
+ * 
+ * @author simpsons
+ */
+public interface CallMetrics {
+    /**
+     * Record the measurements of a call.
+     * 
+     * @param record the measurements
+     */
+    void record(CallRecord record);
+
+    /**
+     * Record that a call with no response types is about to be
+     * executed, having been queued by a server presence. By default,
+     * this does nothing.
+     * 
+     * @param interfaceName the IDL name of the interface declaring the
+     * call
+     * 
+     * @param callName the IDL name of the call
+     * 
+     * @param waitNanos the time the call spent queued, in nanoseconds
+     * 
+     * @param depth the number of such calls outstanding, including
+     * this one
+     * 
+     * @see Carp#ONE_WAY_QUEUE_CAPACITY
+     */
+    default void dequeued(ExternalName interfaceName, ExternalName callName,
+                          long waitNanos, int depth) {}
+}
@@ -0,0 +1,200 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp;
+
+import uk.ac.lancs.carp.map.ExternalName;
+
+/**
+ * Holds the measurements of a single call, made or served by a
+ * presence.
+ * 
+ * <p>
+ * Requests and responses are streamed, so encoding and decoding
+ * overlap with transmission. Encoding time is the time spent writing
+ * the message, and decoding time is the time spent reading it,
+ * including any waiting for data from the peer. On the client side,
+ * transport time is the remainder of the call's duration. On the
+ * server side, it cannot be distinguished, and is reported as zero.
+ * 
+ * @see CallMetrics
+ * 
+ * @author simpsons
+ */
+public final class CallRecord {
+    /**
+     * Identifies which side of a call a record was made on.
+     */
+    public enum Side {
+        /**
+         * The call was made through a proxy.
+         */
+        CLIENT,
+
+        /**
+         * The call was served to a receiver.
+         */
+        SERVER;
+    }
+
+    /**
+     * The side of the call that made this record
+     */
+    public final Side side;
+
+    /**
+     * The IDL name of the interface declaring the call; or
+     * {@code null} if the request could not be identified
+     */
+    public final ExternalName interfaceName;
+
+    /**
+     * The IDL name of the call; or {@code null} if the request could
+     * not be identified
+     */
+    public final ExternalName callName;
+
+    /**
+     * The time spent encoding the outgoing message, in nanoseconds
+     */
+    public final long encodeNanos;
+
+    /**
+     * The time spent waiting for the peer, in nanoseconds, excluding
+     * encoding and decoding
+     */
+    public final long transportNanos;
+
+    /**
+     * The time spent decoding the incoming message, in nanoseconds
+     */
+    public final long decodeNanos;
+
+    /**
+     * The time spent in the receiver, in nanoseconds; always zero on
+     * the client side, and for calls without responses, which are
+     * executed after the record is made
+     */
+    public final long executionNanos;
+
+    /**
+     * The size of the request message in bytes; or {@code -1} if
+     * unknown
+     */
+    public final long requestBytes;
+
+    /**
+     * The size of the response message in bytes; or {@code -1} if
+     * unknown
+     */
+    public final long responseBytes;
+
+    /**
+     * The IDL name of the response type; or {@code null} if the call
+     * has no responses, or failed
+     */
+    public final ExternalName responseType;
+
+    /**
+     * The class of the exception that caused the call to fail; or
+     * {@code null} if it succeeded
+     */
+    public final Class<? extends Throwable> error;
+
+    /**
+     * Create a call record.
+     * 
+     * @param side the side of the call that made the record
+     * 
+     * @param interfaceName the IDL name of the interface declaring the
+     * call
+     * 
+     * @param callName the IDL name of the call
+     * 
+     * @param encodeNanos the time spent encoding the outgoing message
+     * 
+     * @param transportNanos the time spent waiting for the peer
+     * 
+     * @param decodeNanos the time spent decoding the incoming message
+     * 
+     * @param executionNanos the time spent in the receiver
+     * 
+     * @param requestBytes the size of the request message
+     * 
+     * @param responseBytes the size of the response message
+     * 
+     * @param responseType the IDL name of the response type
+     * 
+     * @param error the class of the exception that caused the call to
+     * fail
+     */
+    public CallRecord(Side side, ExternalName interfaceName,
+                      ExternalName callName, long encodeNanos,
+                      long transportNanos, long decodeNanos,
+                      long executionNanos, long requestBytes,
+                      long responseBytes, ExternalName responseType,
+                      Class<? extends Throwable> error) {
+        this.side = side;
+        this.interfaceName = interfaceName;
+        this.callName = callName;
+        this.encodeNanos = encodeNanos;
+        this.transportNanos = transportNanos;
+        this.decodeNanos = decodeNanos;
+        this.executionNanos = executionNanos;
+        this.requestBytes = requestBytes;
+        this.responseBytes = responseBytes;
+        this.responseType = responseType;
+        this.error = error;
+    }
+
+    /**
+     * Get a string representation of this record.
+     * 
+     * @return a string representation of this record, suitable for
+     * logging
+     */
+    @Override
+    public String toString() {
+        return String.format("%s %s.%s enc=%dns tx=%dns dec=%dns"
+            + " exec=%dns req=%dB rsp=%dB rsp-type=%s error=%s", side,
+                             interfaceName, callName, encodeNanos,
+                             transportNanos, decodeNanos, executionNanos,
+                             requestBytes, responseBytes, responseType,
+                             error == null ? null : error.getName());
+    }
+}
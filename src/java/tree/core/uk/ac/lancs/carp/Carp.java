@@ -42,17 +42,21 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
 import java.net.URI;
-import java.util.Arrays;
-import java.util.Collections;
+import java.net.http.HttpClient;
+import java.time.Duration;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import javax.net.ssl.SSLContext;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
 import uk.ac.lancs.carp.Configuration.Key;
 import static uk.ac.lancs.carp.Configuration.key;
 import uk.ac.lancs.carp.map.Completable;
@@ -82,23 +86,201 @@ public final class Carp {
 
     /**
      * Identifies an executor for a server presence to invoke methods
-     * with no response types.
+     * with no response types. A presence that invokes local receivers
+     * directly also uses it to make asynchronous calls on them.
      */
     public static final Key<Executor> ASYNCHRONOUS_EXECUTOR = key();
 
+    /**
+     * Specifies whether a server presence should invoke each call with
+     * no response types on a thread of its own, rather than on a small
+     * fixed pool. The threads are virtual if the JDK supports them. This
+     * parameter is ignored if {@link #ASYNCHRONOUS_EXECUTOR} is set.
+     * 
+     * @see #newThreadPerCallExecutor()
+     */
+    public static final Key<Boolean> VIRTUAL_THREADS = key();
+
+    /**
+     * Specifies the maximum number of calls that a server presence may
+     * invoke concurrently on receivers of any one service type, unless
+     * overridden by {@link #TYPE_CALL_LIMITS}. Calls beyond the limit
+     * wait for earlier ones to complete. If not specified, there is no
+     * limit.
+     */
+    public static final Key<Integer> MAX_CALLS_PER_TYPE = key();
+
+    /**
+     * Specifies the maximum number of calls that a server presence may
+     * invoke concurrently on receivers of specific service types. A
+     * non-positive limit removes any limit set by
+     * {@link #MAX_CALLS_PER_TYPE}.
+     */
+    public static final Key<Map<Class<?>, Integer>> TYPE_CALL_LIMITS = key();
+
+    /**
+     * Specifies the maximum number of proxies to remote receivers that
+     * a presence keeps for reuse, even while nothing else refers to
+     * them. Beyond this, the least recently used are kept only while
+     * they are still referenced elsewhere. If not specified, or
+     * non-positive, no proxies are kept beyond that.
+     */
+    public static final Key<Integer> PROXY_CACHE_CAPACITY = key();
+
     /**
      * Identifies a supplier of HTTP clients that a client presence can
-     * use to invoke remote objects.
+     * use to invoke remote objects. The supplier is invoked once per
+     * call, and the client is closed afterwards. This parameter is
+     * ignored if {@link #POOLED_CLIENTS} is enabled.
      */
     public static final Key<Supplier<? extends CloseableHttpClient>> CLIENTS =
         key();
 
+    /**
+     * Specifies whether a client presence should manage a single,
+     * long-lived HTTP client with a connection pool, rather than
+     * obtaining a fresh client from {@link #CLIENTS} for each call.
+     * Connections to each peer are then kept alive and re-used between
+     * calls. The pool can be tuned with {@link #CLIENT_BUILDER},
+     * {@link #SSL_CONTEXT}, {@link #MAX_CONNECTIONS},
+     * {@link #MAX_CONNECTIONS_PER_PEER},
+     * {@link #PEER_CONNECTION_LIMITS} and
+     * {@link #IDLE_CONNECTION_TIMEOUT}.
+     */
+    public static final Key<Boolean> POOLED_CLIENTS = key();
+
+    /**
+     * Identifies a source of partially configured HTTP-client builders
+     * for a pooled client. The presence replaces the builder's
+     * connection manager with its own, so transport security must be
+     * configured with {@link #SSL_CONTEXT} instead. If not specified,
+     * {@link org.apache.http.impl.client.HttpClients#custom()} is used.
+     */
+    public static final Key<Supplier<? extends HttpClientBuilder>> CLIENT_BUILDER =
+        key();
+
+    /**
+     * Identifies the SSL context with which a pooled client should
+     * establish HTTPS connections. If not specified, the system default
+     * is used.
+     */
+    public static final Key<SSLContext> SSL_CONTEXT = key();
+
+    /**
+     * Specifies the maximum number of connections that a pooled client
+     * may hold open in total.
+     */
+    public static final Key<Integer> MAX_CONNECTIONS = key();
+
+    /**
+     * Specifies the maximum number of connections that a pooled client
+     * may hold open to any one peer, unless overridden by
+     * {@link #PEER_CONNECTION_LIMITS}.
+     */
+    public static final Key<Integer> MAX_CONNECTIONS_PER_PEER = key();
+
+    /**
+     * Specifies the maximum number of connections that a pooled client
+     * may hold open to specific peers. Peers are identified as by
+     * {@link #getPeer(URI)}.
+     */
+    public static final Key<Map<InetSocketAddress, Integer>> PEER_CONNECTION_LIMITS =
+        key();
+
+    /**
+     * Specifies how long a pooled connection may remain idle before it
+     * is closed.
+     */
+    public static final Key<Duration> IDLE_CONNECTION_TIMEOUT = key();
+
+    /**
+     * Identifies a non-blocking HTTP client that a client presence can
+     * use to invoke remote objects asynchronously, through
+     * {@link ClientPresence#elaborateAsync(Class, URI)}. If not
+     * specified, a default client is created when first required.
+     */
+    public static final Key<HttpClient> ASYNCHRONOUS_CLIENT = key();
+
+    /**
+     * Specifies whether a client presence should make all calls, not
+     * just asynchronous ones, with the JDK's HTTP client, which
+     * negotiates HTTP/2 with peers that support it. Concurrent calls to
+     * such a peer then share one connection. {@link #CLIENTS} and
+     * {@link #POOLED_CLIENTS} are not required, and are ignored if
+     * this is enabled. If this is disabled, such a presence is not
+     * chosen. If not specified, it is chosen only if no other means of
+     * making calls is configured.
+     * 
+     * @see HttpServerPlacement
+     */
+    public static final Key<Boolean> HTTP2 = key();
+
+    /**
+     * Specifies whether a client presence should offer servers a
+     * compact binary wire format. Servers that support it respond in
+     * that format, and further requests to such servers are sent in it
+     * too. Other servers continue to exchange JSON. Servers always
+     * accept either format.
+     */
+    public static final Key<Boolean> BINARY_WIRE_FORMAT = key();
+
     /**
      * Identifies a repository to allow a presence to keep track of
      * fingerprints of HTTPS peers.
      */
     public static final Key<FingerprintRepository> FINGERPRINTS = key();
 
+    /**
+     * Identifies a recipient of per-call measurements, made on both
+     * client and server sides of a presence. If not specified, no
+     * measurements are taken.
+     */
+    public static final Key<CallMetrics> METRICS = key();
+
+    /**
+     * Specifies how long a client presence may hold back calls with no
+     * response types, so that several to the same server can be sent in
+     * a single request. Such calls then return before they have been
+     * sent, and failures to deliver them are only logged. If not
+     * specified, each call is sent as it is made.
+     * 
+     * @see ClientPresence#openBatch()
+     */
+    public static final Key<Duration> ONE_WAY_BATCH_WINDOW = key();
+
+    /**
+     * Specifies the maximum number of calls with no response types that
+     * a server presence may hold outstanding, whether waiting to be
+     * executed or executing. Further calls are dealt with according to
+     * {@link #ONE_WAY_OVERLOAD_POLICY}. If not specified, there is no
+     * limit.
+     */
+    public static final Key<Integer> ONE_WAY_QUEUE_CAPACITY = key();
+
+    /**
+     * Specifies what a server presence does with calls with no response
+     * types when {@link #ONE_WAY_QUEUE_CAPACITY} is reached, unless
+     * overridden by {@link #ONE_WAY_OVERLOAD_POLICIES}. If not
+     * specified, {@link OverloadPolicy#REJECT} is used.
+     */
+    public static final Key<OverloadPolicy> ONE_WAY_OVERLOAD_POLICY = key();
+
+    /**
+     * Specifies what a server presence does with calls with no response
+     * types on receivers of specific service types when
+     * {@link #ONE_WAY_QUEUE_CAPACITY} is reached.
+     */
+    public static final Key<Map<Class<?>, OverloadPolicy>> ONE_WAY_OVERLOAD_POLICIES =
+        key();
+
+    /**
+     * Specifies how long a server presence tells callers to wait before
+     * retrying calls that it rejected because
+     * {@link #ONE_WAY_QUEUE_CAPACITY} was reached. If not specified,
+     * one second is suggested.
+     */
+    public static final Key<Duration> ONE_WAY_RETRY_AFTER = key();
+
     /**
      * Prepare to create a presence.
      * 
@@ -108,6 +290,28 @@ public final class Carp {
         return Configuration.builder();
     }
 
+    /**
+     * Create an executor that runs each task on a new thread. Virtual
+     * threads are used if the JDK supports them, so that tasks blocking
+     * on I/O are cheap. Otherwise, including when virtual threads are
+     * only a disabled preview feature, a cached pool of platform
+     * threads is used.
+     * 
+     * @return a new executor
+     */
+    public static ExecutorService newThreadPerCallExecutor() {
+        try {
+            Method factory =
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException
+            | InvocationTargetException ex) {
+            /* On JDKs 19 and 20, the method exists, but throws unless
+             * preview features are enabled. */
+            return Executors.newCachedThreadPool();
+        }
+    }
+
     /**
      * Get the peer identity for a URI.
      *
@@ -289,8 +493,7 @@ public final class Carp {
      * @return a list of the path's parts
      */
     public static List<String> pathAsParts(CharSequence path) {
-        return Arrays.asList(SLASHES.split(path)).stream()
-            .filter(e -> !e.isEmpty()).collect(Collectors.toList());
+        return PathCursor.parts(path, 0, false);
     }
 
     /**
@@ -315,14 +518,7 @@ public final class Carp {
      * @return a list of the path's parts
      */
     public static List<String> pathAsPartsWithEmptyTail(String path) {
-        List<String> unfiltered = Arrays.asList(SLASHES.split(path));
-        if (unfiltered.isEmpty()) return unfiltered;
-        int last = unfiltered.size() - 1;
-        List<String> head = unfiltered.subList(0, last);
-        List<String> tail = Collections.singletonList(unfiltered.get(last));
-        return Stream
-            .concat(head.stream().filter(e -> !e.isEmpty()), tail.stream())
-            .collect(Collectors.toList());
+        return PathCursor.parts(path, 0, true);
     }
 
     /**
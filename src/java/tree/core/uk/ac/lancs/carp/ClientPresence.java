@@ -58,4 +58,33 @@ public interface ClientPresence {
      * @param <Srv> the service type
      */
     <Srv> Srv elaborate(Class<Srv> type, URI location);
+
+    /**
+     * Create a proxy to invoke a remote service without blocking.
+     * 
+     * @param type the service type
+     * 
+     * @param location the service location
+     * 
+     * @return a proxy to the remote service
+     * 
+     * @param <Srv> the service type
+     * 
+     * @default {@link UnsupportedOperationException} is thrown.
+     */
+    default <Srv> AsynchronousProxy<Srv> elaborateAsync(Class<Srv> type,
+                                                        URI location) {
+        throw new UnsupportedOperationException("unimplemented");
+    }
+
+    /**
+     * Start gathering asynchronous calls to be sent together.
+     * 
+     * @return a new batch
+     * 
+     * @default {@link UnsupportedOperationException} is thrown.
+     */
+    default CallBatch openBatch() {
+        throw new UnsupportedOperationException("unimplemented");
+    }
 }
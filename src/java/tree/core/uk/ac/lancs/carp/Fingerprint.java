@@ -38,7 +38,6 @@
 
 package uk.ac.lancs.carp;
 
-import java.io.ByteArrayOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateEncodingException;
@@ -81,11 +80,10 @@ public final class Fingerprint {
      * @return the represented fingerprint
      */
     public static Fingerprint of(String algo, IntStream bytes) {
-        byte[] buf = bytes
-            .collect(ByteArrayOutputStream::new,
-                     (baos, i) -> baos.write((byte) i), (baos1, baos2) -> baos1
-                         .write(baos2.toByteArray(), 0, baos2.size()))
-            .toByteArray();
+        int[] vals = bytes.toArray();
+        byte[] buf = new byte[vals.length];
+        for (int i = 0; i < vals.length; i++)
+            buf[i] = (byte) vals[i];
         return new Fingerprint(algo, buf);
     }
 
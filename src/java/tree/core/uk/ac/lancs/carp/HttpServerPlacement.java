@@ -0,0 +1,200 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpEntityEnclosingRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+
+/**
+ * Places a presence in the JDK's built-in HTTP server, rather than
+ * Apache HttpCore's. Requests are presented to the registered handler
+ * as HttpCore messages, and its responses are streamed back through
+ * the server's exchange. For example:
+ * 
+ * <pre>
+ * HttpServer server = HttpServer.create(new InetSocketAddress(8080), 0);
+ * server.setExecutor(Carp.newThreadPerCallExecutor());
+ * WebPlacement place = new HttpServerPlacement(server,
+ *     URI.create("http://example.com:8080/carp/"));
+ * server.start();
+ * </pre>
+ * 
+ * <p>
+ * The JDK's server only speaks HTTP/1.1, so clients offering HTTP/2
+ * fall back to it, but it keeps connections alive between calls.
+ * Without an executor, the server handles exchanges one at a time on
+ * its dispatcher thread, so synchronous calls cannot overlap.
+ * 
+ * @author simpsons
+ */
+public final class HttpServerPlacement implements WebPlacement {
+    private final HttpServer server;
+
+    private final URI base;
+
+    private final String path;
+
+    private final Pattern pattern;
+
+    private HttpContext context;
+
+    /**
+     * Create a placement in a JDK HTTP server. The virtual path of the
+     * placement is taken from the public URI.
+     * 
+     * @param server the server to serve requests from
+     * 
+     * @param base the public URI of the placement
+     */
+    public HttpServerPlacement(HttpServer server, URI base) {
+        this.server = server;
+        this.base = Carp.normalizePrefix(base);
+        String prefix = Carp.normalizePrefix(base.getPath());
+        this.path = prefix.isEmpty() ? "/" : prefix;
+        this.pattern = Carp.getPrefixPattern(prefix, "tail");
+    }
+
+    @Override
+    public URI base() {
+        return base;
+    }
+
+    @Override
+    public String subpath(CharSequence path) {
+        Matcher m = pattern.matcher(path);
+        if (!m.matches()) throw new IllegalArgumentException("no match: "
+            + pattern + " vs " + path);
+        return m.group("tail");
+    }
+
+    @Override
+    public synchronized void register(HttpRequestHandler handler) {
+        if (context != null) server.removeContext(context);
+        context = server.createContext(path, ex -> serve(handler, ex));
+    }
+
+    @Override
+    public synchronized void deregister() {
+        if (context == null) return;
+        server.removeContext(context);
+        context = null;
+    }
+
+    private static void serve(HttpRequestHandler handler, HttpExchange exch)
+        throws IOException {
+        try {
+            /* Present the request as an HttpCore message. */
+            URI uri = exch.getRequestURI();
+            String target = uri.getRawQuery() == null ? uri.getRawPath() :
+                uri.getRawPath() + "?" + uri.getRawQuery();
+            BasicHttpEntityEnclosingRequest req =
+                new BasicHttpEntityEnclosingRequest(exch.getRequestMethod(),
+                                                    target,
+                                                    HttpVersion.HTTP_1_1);
+            Headers reqHeaders = exch.getRequestHeaders();
+            for (var entry : reqHeaders.entrySet())
+                for (String value : entry.getValue())
+                    req.addHeader(entry.getKey(), value);
+            InputStreamEntity reqEnt =
+                new InputStreamEntity(exch.getRequestBody());
+            reqEnt.setContentType(reqHeaders.getFirst("Content-Type"));
+            req.setEntity(reqEnt);
+
+            /* Let the handler populate the response. */
+            BasicHttpResponse rsp =
+                new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK,
+                                      null);
+            try {
+                handler.handle(req, rsp, new BasicHttpContext());
+            } catch (HttpException | RuntimeException ex) {
+                /* The handler rejects paths outside the placement, as
+                 * the server's context matching is coarser. */
+                int status = ex instanceof IllegalArgumentException ?
+                    HttpStatus.SC_NOT_FOUND :
+                    HttpStatus.SC_INTERNAL_SERVER_ERROR;
+                if (status != HttpStatus.SC_NOT_FOUND)
+                    logger.log(Level.SEVERE, "handling " + target, ex);
+                exch.sendResponseHeaders(status, -1);
+                return;
+            }
+
+            /* Stream the response back. */
+            Headers rspHeaders = exch.getResponseHeaders();
+            for (Header h : rsp.getAllHeaders())
+                rspHeaders.add(h.getName(), h.getValue());
+            final int status = rsp.getStatusLine().getStatusCode();
+            HttpEntity rspEnt = rsp.getEntity();
+            if (rspEnt == null || status == HttpStatus.SC_NO_CONTENT) {
+                exch.sendResponseHeaders(status, -1);
+                return;
+            }
+            Header type = rspEnt.getContentType();
+            if (type != null) rspHeaders.set("Content-Type", type.getValue());
+            long len = rspEnt.getContentLength();
+            exch.sendResponseHeaders(status, len < 0 ? 0 : len == 0 ? -1 : len);
+            try (OutputStream out = exch.getResponseBody()) {
+                rspEnt.writeTo(out);
+            }
+        } finally {
+            exch.close();
+        }
+    }
+
+    private static final Logger logger =
+        Logger.getLogger("uk.ac.lancs.carp.placement");
+}
@@ -39,11 +39,8 @@
 package uk.ac.lancs.carp;
 
 import java.net.URI;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.apache.http.HttpRequest;
@@ -54,10 +51,109 @@ import org.apache.http.protocol.HttpRequestHandlerMapper;
  * Handles requests by matching the longest specific sub-path, and
  * presenting internal and external contextual information to the user.
  * 
+ * <p>
+ * Registered prefixes are held as a tree of path elements, so a request
+ * is matched in a single pass over its virtual path, without splitting
+ * it into strings.
+ * 
  * @author simpsons
  */
 public class LongestPrefixDispatcher implements HttpRequestHandlerMapper {
-    private final Map<List<String>, Foo> handlers = new ConcurrentHashMap<>();
+    /**
+     * Holds the placement registered at a path, and the nodes for
+     * longer paths. Nodes are only added while holding the
+     * dispatcher's lock, and the children are replaced as a whole, so
+     * they can be searched without locking.
+     */
+    private static final class Node {
+        private static final Node[] NONE = new Node[0];
+
+        final String name;
+
+        final int hash;
+
+        volatile Foo placement;
+
+        /**
+         * Holds the children in an open-addressed table indexed by
+         * their names' hash codes. Its length is a power of two, and
+         * at least twice the number of children.
+         */
+        private volatile Node[] children = NONE;
+
+        private int population;
+
+        Node(String name) {
+            this.name = name;
+            this.hash = name.hashCode();
+        }
+
+        private static int spread(int h) {
+            return h ^ (h >>> 16);
+        }
+
+        /**
+         * Find the child named by the cursor's current segment.
+         * 
+         * @param cur the cursor positioned at a segment
+         * 
+         * @return the child; or {@code null} if there is none
+         */
+        Node child(PathCursor cur) {
+            Node[] table = children;
+            if (table.length == 0) return null;
+            final int hash = cur.segmentHash();
+            final int mask = table.length - 1;
+            for (int i = spread(hash) & mask;; i = (i + 1) & mask) {
+                Node cand = table[i];
+                if (cand == null) return null;
+                if (cand.hash == hash && cur.matches(cand.name)) return cand;
+            }
+        }
+
+        /**
+         * Get or create a child node.
+         * 
+         * @param name the child's name
+         * 
+         * @return the child
+         */
+        Node open(String name) {
+            Node[] table = children;
+            final int hash = name.hashCode();
+            if (table.length > 0) {
+                final int mask = table.length - 1;
+                for (int i = spread(hash) & mask;; i = (i + 1) & mask) {
+                    Node cand = table[i];
+                    if (cand == null) break;
+                    if (cand.name.equals(name)) return cand;
+                }
+            }
+
+            /* Rebuild the table with the new child. */
+            Node result = new Node(name);
+            int len = Math.max(4, table.length);
+            while (len < (population + 1) * 2)
+                len *= 2;
+            Node[] repl = new Node[len];
+            for (Node n : table)
+                if (n != null) insert(repl, n);
+            insert(repl, result);
+            population++;
+            children = repl;
+            return result;
+        }
+
+        private static void insert(Node[] table, Node node) {
+            final int mask = table.length - 1;
+            int i = spread(node.hash) & mask;
+            while (table[i] != null)
+                i = (i + 1) & mask;
+            table[i] = node;
+        }
+    }
+
+    private final Node root = new Node("");
 
     private final HttpRequestHandler defaultAction;
 
@@ -128,50 +224,39 @@ public class LongestPrefixDispatcher implements HttpRequestHandlerMapper {
      */
     @Override
     public HttpRequestHandler lookup(HttpRequest req) {
-        List<String> parts = Carp.pathAsParts(req.getRequestLine().getUri());
-
-        do {
-            Foo foo = handlers.get(parts);
-            HttpRequestHandler h;
-            if (foo == null || (h = foo.handler()) == null) {
-                if (parts.isEmpty()) return defaultAction;
-
-                /* Remove a trailing path element, and try again. */
-                parts = parts.subList(0, parts.size() - 1);
-                continue;
-            }
+        PathCursor cur = new PathCursor(req.getRequestLine().getUri());
+        Node node = root;
+        HttpRequestHandler best = handlerOf(node);
+        while (cur.next() && (node = node.child(cur)) != null) {
+            HttpRequestHandler h = handlerOf(node);
+            if (h != null) best = h;
+        }
+        return best == null ? defaultAction : best;
+    }
 
-            /* The prefix matched, and the handler is available. */
-            return h;
-        } while (true);
+    private static HttpRequestHandler handlerOf(Node node) {
+        Foo foo = node.placement;
+        return foo == null ? null : foo.delegate;
     }
 
     private class Foo implements WebPlacement {
-        private HttpRequestHandler delegate;
+        volatile HttpRequestHandler delegate;
 
-        private final List<String> key;
+        private final Node node;
 
-        private final URI base;
+        private final String[] key;
 
-        private final Pattern pattern;
+        private final URI base;
 
-        Foo(List<String> key, List<String> parts) {
+        Foo(Node node, List<String> key, List<String> parts) {
             assert key.subList(prefix.size(), key.size()).equals(parts);
-            this.key = key;
+            this.node = node;
+            this.key = key.toArray(new String[0]);
 
             /* Resolve the parts against the base URI. This is where the
              * user should regard their presence to be. */
             this.base = LongestPrefixDispatcher.this.base.resolve(parts.stream()
                 .map(s -> s + "/").collect(Collectors.joining()));
-
-            /* Form a pattern to match the full path and yield the
-             * remainder. */
-            this.pattern =
-                Pattern
-                    .compile("^"
-                        + Pattern.quote(key.stream().map(s -> "/" + s)
-                            .collect(Collectors.joining()))
-                        + "(?:/(?<tail>.*))?$");
         }
 
         @Override
@@ -179,27 +264,56 @@ public class LongestPrefixDispatcher implements HttpRequestHandlerMapper {
             return base;
         }
 
+        /**
+         * Find where the sub-path begins within a virtual path.
+         * 
+         * @param path the virtual path
+         * 
+         * @return the position of the slash separating the sub-path
+         * from this placement's path; or the length of the virtual
+         * path if there is no sub-path
+         * 
+         * @throws IllegalArgumentException if the virtual path is not
+         * under this placement
+         */
+        private int tailOffset(CharSequence path) {
+            PathCursor cur = new PathCursor(path);
+            for (String elem : key)
+                if (!cur.next() || !cur.matches(elem))
+                    throw new IllegalArgumentException("no match: "
+                        + Arrays.asList(key) + " vs " + path);
+            final int pos = cur.end();
+            if (pos < path.length() && path.charAt(pos) != '/')
+                throw new IllegalArgumentException("no match: "
+                    + Arrays.asList(key) + " vs " + path);
+            return pos;
+        }
+
         @Override
         public String subpath(CharSequence path) {
-            Matcher m = pattern.matcher(path);
-            if (!m.matches()) throw new IllegalArgumentException("no match: "
-                + pattern + " vs " + path);
-            return m.group("tail");
+            final int pos = tailOffset(path);
+            if (pos == path.length()) return null;
+            return path.subSequence(pos + 1, path.length()).toString();
         }
 
         @Override
-        public synchronized void register(HttpRequestHandler handler) {
-            this.delegate = handler;
+        public List<String> subparts(CharSequence path) {
+            final int pos = tailOffset(path);
+            return PathCursor.parts(path, Math.min(pos + 1, path.length()),
+                                    true);
         }
 
         @Override
-        public synchronized void deregister() {
-            this.delegate = null;
-            LongestPrefixDispatcher.this.handlers.remove(key, this);
+        public void register(HttpRequestHandler handler) {
+            this.delegate = handler;
         }
 
-        synchronized HttpRequestHandler handler() {
-            return delegate;
+        @Override
+        public void deregister() {
+            this.delegate = null;
+            synchronized (LongestPrefixDispatcher.this) {
+                if (node.placement == this) node.placement = null;
+            }
         }
     }
 
@@ -212,14 +326,16 @@ public class LongestPrefixDispatcher implements HttpRequestHandlerMapper {
      * @return the corresponding location; or {@code null} if already in
      * use
      */
-    public WebPlacement register(String path) {
+    public synchronized WebPlacement register(String path) {
         List<String> subparts = Carp.pathAsParts(path);
         List<String> key = Stream.concat(prefix.stream(), subparts.stream())
             .collect(Collectors.toList());
-        Foo result = new Foo(key, subparts);
-        if (handlers.putIfAbsent(key, result) == null)
-            return result;
-        else
-            return null;
+        Node node = root;
+        for (String elem : key)
+            node = node.open(elem);
+        if (node.placement != null) return null;
+        Foo result = new Foo(node, key, subparts);
+        node.placement = result;
+        return result;
     }
 }
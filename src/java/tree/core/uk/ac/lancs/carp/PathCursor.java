@@ -0,0 +1,172 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Steps through the slash-separated segments of a path without copying
+ * them. Empty segments, i.e., those produced by leading, trailing or
+ * adjacent slashes, are skipped.
+ * 
+ * @author simpsons
+ */
+final class PathCursor {
+    private final CharSequence path;
+
+    private final int limit;
+
+    private int start, end;
+
+    /**
+     * Prepare to step through the segments of a path.
+     * 
+     * @param path the path
+     * 
+     * @param from the position within the path to start from
+     */
+    PathCursor(CharSequence path, int from) {
+        this.path = path;
+        this.limit = path.length();
+        this.start = this.end = from;
+    }
+
+    /**
+     * Prepare to step through the segments of a path from its start.
+     * 
+     * @param path the path
+     */
+    PathCursor(CharSequence path) {
+        this(path, 0);
+    }
+
+    /**
+     * Move to the next non-empty segment.
+     * 
+     * @return {@code true} if there is another segment; {@code false}
+     * if the end of the path has been reached
+     */
+    boolean next() {
+        int pos = end;
+        while (pos < limit && path.charAt(pos) == '/')
+            pos++;
+        if (pos == limit) {
+            start = end = limit;
+            return false;
+        }
+        start = pos;
+        while (pos < limit && path.charAt(pos) != '/')
+            pos++;
+        end = pos;
+        return true;
+    }
+
+    /**
+     * Get the position just after the current segment.
+     * 
+     * @return the end of the current segment; or the starting position
+     * if {@link #next()} has not yet been called
+     */
+    int end() {
+        return end;
+    }
+
+    /**
+     * Compute the hash code of the current segment. This is the same
+     * as {@link String#hashCode()} of the segment as a string.
+     * 
+     * @return the segment's hash code
+     */
+    int segmentHash() {
+        int h = 0;
+        for (int i = start; i < end; i++)
+            h = 31 * h + path.charAt(i);
+        return h;
+    }
+
+    /**
+     * Determine whether the current segment matches a string.
+     * 
+     * @param name the string to compare with
+     * 
+     * @return {@code true} if the segment and the string have the same
+     * characters
+     */
+    boolean matches(String name) {
+        final int len = end - start;
+        if (name.length() != len) return false;
+        for (int i = 0; i < len; i++)
+            if (name.charAt(i) != path.charAt(start + i)) return false;
+        return true;
+    }
+
+    /**
+     * Get the current segment as a string.
+     * 
+     * @return the current segment
+     */
+    String segment() {
+        return path.subSequence(start, end).toString();
+    }
+
+    /**
+     * Split part of a path into its non-empty segments.
+     * 
+     * @param path the path
+     * 
+     * @param from the position within the path to start from
+     * 
+     * @param emptyTail whether to yield a single empty segment if the
+     * path is empty from the starting position
+     * 
+     * @return the segments
+     */
+    static List<String> parts(CharSequence path, int from,
+                              boolean emptyTail) {
+        if (emptyTail && from == path.length())
+            return Collections.singletonList("");
+        PathCursor cur = new PathCursor(path, from);
+        List<String> result = new ArrayList<>();
+        while (cur.next())
+            result.add(cur.segment());
+        return result;
+    }
+}
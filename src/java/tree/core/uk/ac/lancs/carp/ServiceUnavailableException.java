@@ -0,0 +1,79 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp;
+
+import java.time.Duration;
+
+/**
+ * Indicates that a remote peer is temporarily unable to accept a call,
+ * typically because too many calls are already waiting to be executed.
+ * The call was not executed, and may be retried later.
+ * 
+ * @author simpsons
+ */
+public class ServiceUnavailableException extends RemoteInvocationException {
+    /**
+     * The time the peer suggests waiting before retrying; or
+     * {@code null} if not specified
+     */
+    public final Duration retryAfter;
+
+    /**
+     * Create an exception.
+     * 
+     * @param retryAfter the time to wait before retrying; or
+     * {@code null} if not specified
+     */
+    public ServiceUnavailableException(Duration retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Create an exception with a detail message.
+     * 
+     * @param retryAfter the time to wait before retrying; or
+     * {@code null} if not specified
+     * 
+     * @param message the detail message
+     */
+    public ServiceUnavailableException(Duration retryAfter, String message) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+}
@@ -39,6 +39,7 @@
 package uk.ac.lancs.carp;
 
 import java.net.URI;
+import java.util.List;
 import org.apache.http.HttpRequest;
 import org.apache.http.RequestLine;
 import org.apache.http.protocol.HttpRequestHandler;
@@ -108,6 +109,46 @@ public interface WebPlacement {
         return subpath(req.getRequestLine());
     }
 
+    /**
+     * Split the portion of the virtual path that goes beyond the base
+     * path into its non-empty elements.
+     * 
+     * @param path the virtual path of a request
+     * 
+     * @return the elements of the sub-path with respect to the
+     * location, or a single empty element if the sub-path is empty
+     * 
+     * @throws IllegalArgumentException if the virtual path is not under
+     * this location
+     * 
+     * @default The sub-path is obtained from
+     * {@link #subpath(java.lang.CharSequence)}, and split with
+     * {@link Carp#pathAsPartsWithEmptyTail(String)}.
+     */
+    default List<String> subparts(CharSequence path) {
+        String tail = subpath(path);
+        return Carp.pathAsPartsWithEmptyTail(tail == null ? "" : tail);
+    }
+
+    /**
+     * Split the portion of the request's virtual path that goes beyond
+     * the base path into its non-empty elements.
+     * 
+     * @param req the request
+     * 
+     * @return the elements of the sub-path with respect to the
+     * location, or a single empty element if the sub-path is empty
+     * 
+     * @throws IllegalArgumentException if the virtual path is not under
+     * this location
+     * 
+     * @default The virtual path is extracted from the request, and
+     * passed to {@link #subparts(java.lang.CharSequence)}.
+     */
+    default List<String> subparts(HttpRequest req) {
+        return subparts(req.getRequestLine().getUri());
+    }
+
     /**
      * Send matching requests to a handler.
      * 
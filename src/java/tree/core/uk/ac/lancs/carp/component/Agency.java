@@ -54,6 +54,24 @@ import java.util.stream.Stream;
 public final class Agency {
     private final Map<List<String>, Agent> agents;
 
+    /**
+     * Indexes agents by successive path elements of their sub-paths.
+     * Nodes are not modified once the agency is constructed.
+     */
+    private static final class Node {
+        final Node parent;
+
+        final Map<String, Node> children = new HashMap<>();
+
+        Agent agent;
+
+        Node(Node parent) {
+            this.parent = parent;
+        }
+    }
+
+    private final Node root = new Node(null);
+
     /**
      * Create an agency.
      * 
@@ -64,6 +82,18 @@ public final class Agency {
         for (Binding b : bindings)
             components.put(b.subpath, b.agent);
         this.agents = Map.copyOf(components);
+
+        /* Compile the sub-paths into a tree, so that a path can be
+         * resolved in a single pass. */
+        for (var entry : agents.entrySet()) {
+            Node node = root;
+            for (String elem : entry.getKey()) {
+                final Node parent = node;
+                node = parent.children.computeIfAbsent(elem,
+                                                       k -> new Node(parent));
+            }
+            node.agent = entry.getValue();
+        }
     }
 
     private static final Agency EMPTY = new Agency(Collections.emptySet());
@@ -84,32 +114,41 @@ public final class Agency {
 
         public final Class<?> type;
 
-        public final List<String> head;
-
-        public final List<String> tail;
+        /**
+         * The number of elements of the path identifying the receiver
+         */
+        public final int consumed;
 
         public Resolution(Object receiver, Agency manager, Class<?> type,
-                          List<String> head, List<String> tail) {
+                          int consumed) {
             this.receiver = receiver;
             this.agent = manager;
             this.type = type;
-            this.head = head;
-            this.tail = tail;
+            this.consumed = consumed;
         }
     }
 
     Resolution resolve(Object container, List<String> tail) {
+        /* Descend the tree as far as the path allows. */
         final int tailLen = tail.size();
-        for (int i = tailLen; i > 0; i--) {
-            List<String> prefix = tail.subList(0, i);
-            Agent comp = agents.get(prefix);
+        Node node = root;
+        int depth = 0;
+        while (depth < tailLen) {
+            Node next = node.children.get(tail.get(depth));
+            if (next == null) break;
+            node = next;
+            depth++;
+        }
+
+        /* Try the agents passed on the way, longest sub-path first. */
+        for (; node != root; node = node.parent, depth--) {
+            Agent comp = node.agent;
             if (comp == null) continue;
-            Match match = comp.match(container, tail.subList(i, tailLen));
+            Match match = comp.match(container, tail.subList(depth, tailLen));
             if (match == null) continue;
             return new Resolution(match.receiver, match.agency,
                                   comp.serviceType(),
-                                  concat(prefix, match.matched),
-                                  match.unmatched);
+                                  depth + match.consumed);
         }
         return null;
     }
@@ -43,6 +43,8 @@ import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Generates receivers for components of a containing receiver.
@@ -103,6 +105,29 @@ public abstract class Agent {
      */
     abstract void register(Object container, Listener listener);
 
+    /**
+     * Get a means to recognize and decode path components with a
+     * discriminator. Its own parser is used if it has one. Otherwise,
+     * its pattern is compiled and used to match components.
+     * 
+     * @param <Id> the index type
+     * 
+     * @param discr the discriminator
+     * 
+     * @return a function yielding the key decoded from a path
+     * component, or {@code null} if the component is not recognized
+     */
+    static <Id> Function<? super CharSequence, ? extends Id>
+        parserOf(Discriminator<Id> discr) {
+        Function<? super CharSequence, ? extends Id> parser = discr.parser();
+        if (parser != null) return parser;
+        Pattern pattern = Pattern.compile("^" + discr.pattern() + "$");
+        return text -> {
+            Matcher matcher = pattern.matcher(text);
+            return matcher.matches() ? discr.decode(matcher) : null;
+        };
+    }
+
     /**
      * Define a shared component family with a destructor.
      * 
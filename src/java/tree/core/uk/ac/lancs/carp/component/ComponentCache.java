@@ -0,0 +1,391 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+package uk.ac.lancs.carp.component;
+
+import java.lang.ref.Reference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Holds the components created for one container by an indexed agent.
+ * Each component is created at most once per id, even if requested
+ * concurrently, but components with different ids are created in
+ * parallel, and components that already exist are obtained without
+ * taking a shared lock.
+ * 
+ * <p>
+ * A component is destroyed when it is garbage-collected, or, if held
+ * according to its {@link Retention}, when it is evicted. Idle
+ * components are expired when next requested, and are also swept out
+ * when other components are created.
+ * 
+ * @param <Impl> the component class
+ * 
+ * @param <Id> the index type
+ * 
+ * @author simpsons
+ */
+final class ComponentCache<Impl, Id> {
+    /**
+     * Visits existing components.
+     * 
+     * @param <Impl> the component class
+     * 
+     * @param <Id> the index type
+     */
+    interface Visitor<Impl, Id> {
+        /**
+         * Visit a component.
+         * 
+         * @param id the component's id
+         * 
+         * @param receiver the component
+         * 
+         * @param agency the component's agency
+         * 
+         * @return {@code true} if no further components should be
+         * visited; {@code false} otherwise
+         */
+        boolean visit(Id id, Impl receiver, Agency agency);
+    }
+
+    private final Retention retention;
+
+    private final Consumer<? super Id> destructor;
+
+    private final Map<Id, Slot> slots = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean trimming = new AtomicBoolean();
+
+    private volatile long lastSweep = System.nanoTime();
+
+    /**
+     * Create a cache of components.
+     * 
+     * @param retention how long to keep components
+     * 
+     * @param destructor invoked with the id of each component
+     * destroyed
+     */
+    ComponentCache(Retention retention, Consumer<? super Id> destructor) {
+        this.retention = retention;
+        this.destructor = destructor;
+    }
+
+    /**
+     * Holds the component for one id, from just before it is created
+     * until it is destroyed.
+     */
+    private final class Slot {
+        final Id id;
+
+        /**
+         * Set when the component is retired, to destroy it exactly
+         * once
+         */
+        final AtomicBoolean retired = new AtomicBoolean();
+
+        /**
+         * Weakly refers to the component; or {@code null} if not yet
+         * created
+         */
+        private Reference<Impl> ref;
+
+        /**
+         * Holds the component strongly if required by the retention
+         */
+        private Impl held;
+
+        private Agency agency;
+
+        /**
+         * Set when the component must no longer be obtained
+         */
+        private boolean dead;
+
+        volatile long used = System.nanoTime();
+
+        volatile int uses;
+
+        /**
+         * Set once the component has been created and first returned,
+         * so that it is not evicted or expired while it is still being
+         * built or handed over
+         */
+        volatile boolean published;
+
+        Slot(Id id) {
+            this.id = id;
+        }
+
+        /**
+         * Get the component, creating it if necessary.
+         * 
+         * @return the result of the action; or {@code null} if the
+         * slot has been retired, and must be replaced
+         */
+        <R> R obtain(Function<? super Id,
+                              ? extends ManagedReceiver<? extends Impl>> constructor,
+                     BiConsumer<? super Impl, ? super Agency> created,
+                     BiFunction<? super Impl, ? super Agency,
+                                ? extends R> action) {
+            final long now = System.nanoTime();
+            final Impl receiver;
+            final Agency agency;
+            final boolean fresh;
+            synchronized (this) {
+                if (dead) return null;
+                if (ref == null) {
+                    ManagedReceiver<? extends Impl> mr = constructor.apply(id);
+                    receiver = mr.receiver;
+                    agency = mr.agency;
+                    this.agency = agency;
+                    this.ref = PathMap.watch(receiver, r -> retire(this));
+                    if (retention.strong) this.held = receiver;
+                    fresh = true;
+                } else {
+                    receiver = ref.get();
+                    if (receiver == null || idle(now)) {
+                        dead = true;
+                        held = null;
+                        return null;
+                    }
+                    agency = this.agency;
+                    fresh = false;
+                }
+                used = now;
+                uses++;
+            }
+            if (!fresh) return action.apply(receiver, agency);
+            try {
+                created.accept(receiver, agency);
+                trim(now);
+                return action.apply(receiver, agency);
+            } finally {
+                published = true;
+            }
+        }
+
+        boolean idle(long now) {
+            return retention.idleNanos > 0 &&
+                now - used > retention.idleNanos;
+        }
+
+        long rank() {
+            return retention.order == Retention.Order.LEAST_FREQUENTLY_USED ?
+                uses : used;
+        }
+
+        /**
+         * Mark the slot as dead, and release its component.
+         * 
+         * @return whether the component had been created
+         */
+        synchronized boolean kill() {
+            dead = true;
+            held = null;
+            return ref != null;
+        }
+
+        synchronized void age() {
+            uses >>= 1;
+        }
+
+        synchronized boolean visit(Visitor<? super Impl, ? super Id> visitor) {
+            if (dead || ref == null) return false;
+            Impl receiver = ref.get();
+            if (receiver == null) return false;
+            return visitor.visit(id, receiver, agency);
+        }
+    }
+
+    /**
+     * Remove a slot, and destroy its component if it was created.
+     * Nothing happens if the slot has already been retired.
+     * 
+     * @param slot the slot to retire
+     */
+    private void retire(Slot slot) {
+        if (!slot.retired.compareAndSet(false, true)) return;
+        boolean created = slot.kill();
+        slots.remove(slot.id, slot);
+        if (created) destructor.accept(slot.id);
+    }
+
+    /**
+     * Get a component, creating it if necessary.
+     * 
+     * @param <R> the type of the result
+     * 
+     * @param id the component's id
+     * 
+     * @param constructor a means to create the component if it doesn't
+     * exist
+     * 
+     * @param created invoked with a component and its agency just after
+     * creating it
+     * 
+     * @param action invoked with the component and its agency to yield
+     * the result
+     * 
+     * @return the result of the action
+     */
+    <R> R get(Id id,
+              Function<? super Id,
+                       ? extends ManagedReceiver<? extends Impl>> constructor,
+              BiConsumer<? super Impl, ? super Agency> created,
+              BiFunction<? super Impl, ? super Agency, ? extends R> action) {
+        for (;;) {
+            Slot slot = slots.get(id);
+            if (slot == null) {
+                Slot fresh = new Slot(id);
+                slot = slots.putIfAbsent(id, fresh);
+                if (slot == null) slot = fresh;
+            }
+            R result = slot.obtain(constructor, created, action);
+            if (result != null) return result;
+
+            /* The component has gone or expired. Destroy it, and make
+             * way for a new one. */
+            retire(slot);
+        }
+    }
+
+    /**
+     * Visit each existing component.
+     * 
+     * @param visitor the visitor
+     * 
+     * @return {@code true} if the visitor asked to stop; {@code false}
+     * otherwise
+     */
+    boolean visit(Visitor<? super Impl, ? super Id> visitor) {
+        for (Slot slot : slots.values())
+            if (slot.visit(visitor)) return true;
+        return false;
+    }
+
+    /**
+     * Forget all components without destroying them.
+     */
+    void clear() {
+        for (Slot slot : slots.values())
+            slot.retired.set(true);
+        slots.clear();
+    }
+
+    /**
+     * Expire idle components. Nothing happens if the retention does not
+     * limit idle time.
+     * 
+     * @param now the current time
+     */
+    void expire(long now) {
+        if (retention.idleNanos <= 0) return;
+        for (Slot slot : slots.values())
+            if (slot.published && slot.idle(now)) retire(slot);
+    }
+
+    /**
+     * Expire idle components, and evict components in excess of the
+     * capacity. Components still being created are spared. Only one
+     * thread trims at a time; others carry on without waiting.
+     * 
+     * <p>
+     * When components are evicted by frequency of use, the counts of
+     * the survivors are then halved, so that components used heavily
+     * in the past do not hold their places indefinitely against a new
+     * working set.
+     * 
+     * @param now the current time
+     */
+    private void trim(long now) {
+        final int capacity = retention.capacity;
+        final boolean over = capacity > 0 && slots.size() > capacity;
+        final boolean sweep = retention.idleNanos > 0 &&
+            now - lastSweep >= retention.idleNanos / 2;
+        if (!over && !sweep) return;
+        if (!trimming.compareAndSet(false, true)) return;
+        try {
+            if (sweep) {
+                lastSweep = now;
+                expire(now);
+            }
+            final int excess = slots.size() - capacity;
+            if (capacity <= 0 || excess <= 0) return;
+            final int target = Math.max(excess, capacity / 8);
+
+            /* Find the rank of the highest-ranking slot to go. The
+             * ranks are copied first, as other threads might change
+             * them. */
+            long[] ranks = new long[slots.size() + 16];
+            int count = 0;
+            for (Slot slot : slots.values()) {
+                if (!slot.published) continue;
+                if (count == ranks.length)
+                    ranks = Arrays.copyOf(ranks, count * 2);
+                ranks[count++] = slot.rank();
+            }
+            if (count == 0) return;
+            Arrays.sort(ranks, 0, count);
+            final long threshold = ranks[Math.min(target, count) - 1];
+
+            /* Evict slots ranking no higher. */
+            int removed = 0;
+            for (Slot slot : slots.values()) {
+                if (removed == target) break;
+                if (!slot.published || slot.rank() > threshold) continue;
+                retire(slot);
+                removed++;
+            }
+
+            /* Age the survivors' counts. */
+            if (retention.order == Retention.Order.LEAST_FREQUENTLY_USED)
+                for (Slot slot : slots.values())
+                    slot.age();
+        } finally {
+            trimming.set(false);
+        }
+    }
+}
@@ -39,6 +39,7 @@
 package uk.ac.lancs.carp.component;
 
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 
 /**
@@ -79,4 +80,20 @@ public interface Discriminator<T> {
      * @return the discriminator's pattern
      */
     String pattern();
+
+    /**
+     * Get a means to recognize and decode a path component without a
+     * regular expression. Agents use this in preference to
+     * {@link #pattern()} and {@link #decode(Matcher)} to resolve
+     * paths.
+     * 
+     * @default This implementation returns {@code null}.
+     * 
+     * @return a function yielding the key decoded from a path
+     * component, or {@code null} if the component does not match
+     * {@link #pattern()}; or {@code null} if there is no such function
+     */
+    default Function<? super CharSequence, ? extends T> parser() {
+        return null;
+    }
 }
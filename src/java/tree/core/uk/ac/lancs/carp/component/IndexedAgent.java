@@ -41,20 +41,18 @@ package uk.ac.lancs.carp.component;
 import java.lang.ref.Reference;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.WeakHashMap;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Function;
 
 /**
  * Manages a family of components of the same type, distinguished by an
- * index type, for a single container.
+ * index type, for a single container. Components are kept only while
+ * referenced elsewhere, unless the agent is told to
+ * {@linkplain #retain(Retention) retain} them.
  * 
  * @param <Impl> the component class
  * 
@@ -65,9 +63,8 @@ import java.util.regex.Pattern;
 public final class IndexedAgent<Impl, Id> extends Agent {
     private final Reference<?> container;
 
-    private final Map<Id, Reference<Impl>> cache = new HashMap<>();
-
-    private final Map<Impl, Agency> agencies = new WeakHashMap<>();
+    private volatile ComponentCache<Impl, Id> cache =
+        new ComponentCache<>(Retention.weak(), this::destroy);
 
     private final Class<?> serviceType;
 
@@ -80,7 +77,7 @@ public final class IndexedAgent<Impl, Id> extends Agent {
 
     private final Discriminator<Id> discr;
 
-    private final Pattern pattern;
+    private final Function<? super CharSequence, ? extends Id> parser;
 
     <Ctr> IndexedAgent(Class<Ctr> containerType,
                        Class<? super Impl> serviceType, Ctr container,
@@ -94,43 +91,45 @@ public final class IndexedAgent<Impl, Id> extends Agent {
             (c, i) -> constructor.apply(containerType.cast(c), i);
         this.destructor = (c, i) -> destructor.accept(containerType.cast(c), i);
         this.discr = discr;
-        this.pattern = Pattern.compile("^" + discr.pattern() + "$");
+        this.parser = parserOf(discr);
         this.container = PathMap.watch(container, ref -> clearOut());
     }
 
-    private synchronized void clearOut() {
-        agencies.clear();
+    /**
+     * Set how long to keep components. This should be called before
+     * the agent is used, as components already created are forgotten
+     * without being destroyed.
+     * 
+     * @param retention how long to keep components
+     * 
+     * @return this object
+     */
+    public IndexedAgent<Impl, Id> retain(Retention retention) {
+        cache = new ComponentCache<>(retention, this::destroy);
+        return this;
+    }
+
+    private void clearOut() {
         cache.clear();
     }
 
-    private synchronized void clean(Id id, Reference<Impl> ref) {
+    private void destroy(Id id) {
         Object container = this.container.get();
         if (container == null) return;
-        if (cache.remove(id, ref)) destructor.accept(container, id);
+        destructor.accept(container, id);
     }
 
     private <R> R internalGet(Object container, Id id,
                               BiFunction<? super Impl, ? super Agency,
                                          ? extends R> action) {
-        assert Thread.holdsLock(this);
-        Reference<Impl> ref = cache.get(id);
-        Impl receiver;
-        Agency agency;
-        if (ref == null || (receiver = ref.get()) == null) {
-            if (ref != null) destructor.accept(container, id);
-            ManagedReceiver<? extends Impl> mr =
-                constructor.apply(container, id);
-            receiver = mr.receiver;
-            agency = mr.agency;
-            agencies.put(receiver, agency);
-            ref = PathMap.watch(receiver, r -> clean(id, r));
-            cache.put(id, ref);
-            inform(receiver, Collections.singletonList(discr.encode(id)),
-                   agency);
-        } else {
-            agency = agencies.get(receiver);
-        }
-        return action.apply(receiver, agency);
+        return cache.get(id, k -> constructor.apply(container, k),
+                         (receiver, agency) -> {
+                             synchronized (this) {
+                                 inform(receiver, Collections
+                                     .singletonList(discr.encode(id)),
+                                        agency);
+                             }
+                         }, action);
     }
 
     /**
@@ -143,7 +142,7 @@ public final class IndexedAgent<Impl, Id> extends Agent {
      * 
      * @return the requested instance
      */
-    public synchronized Impl get(Id id) {
+    public Impl get(Id id) {
         Object container = this.container.get();
         if (container == null) return null;
         return internalGet(container, id, (receiver, agency) -> receiver);
@@ -153,13 +152,10 @@ public final class IndexedAgent<Impl, Id> extends Agent {
     Match match(Object container, List<? extends CharSequence> subpath) {
         if (container != this.container.get()) return null;
         if (subpath.isEmpty()) return null;
-        Matcher matcher = pattern.matcher(subpath.get(0));
-        if (!matcher.matches()) return null;
-        Id id = discr.decode(matcher);
+        Id id = parser.apply(subpath.get(0));
+        if (id == null) return null;
         BiFunction<Impl, Agency, Match> action =
-            (receiver, agency) -> new Match(subpath.subList(0, 1),
-                                            subpath.subList(1, subpath.size()),
-                                            receiver, agency);
+            (receiver, agency) -> new Match(1, receiver, agency);
         return internalGet(containerType.cast(container), id, action);
     }
 
@@ -179,17 +175,10 @@ public final class IndexedAgent<Impl, Id> extends Agent {
 
         /* Tell the new listener about any components already created
          * for this container. */
-        var index = cache;
-        if (index == null) return;
-        for (var entry : index.entrySet()) {
-            Id id = entry.getKey();
-            Impl impl = entry.getValue().get();
-            if (impl == null) continue;
-            Agency agency = agencies.getOrDefault(impl, Agency.empty());
-            if (listener.update(Collections.singletonList(discr.encode(id)),
-                                impl, agency))
-                return;
-        }
+        if (cache.visit((id, impl, agency) -> listener
+            .update(Collections.singletonList(discr.encode(id)), impl,
+                    agency)))
+            return;
         listeners.add(listener);
     }
 
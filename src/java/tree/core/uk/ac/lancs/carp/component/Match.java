@@ -38,9 +38,6 @@
 
 package uk.ac.lancs.carp.component;
 
-import java.util.List;
-import java.util.stream.Collectors;
-
 /**
  * Indicates that a component has been identified with respect to its
  * container.
@@ -48,21 +45,17 @@ import java.util.stream.Collectors;
  * @author simpsons
  */
 final class Match {
-    final List<String> matched;
-
-    final List<String> unmatched;
+    /**
+     * The number of elements of the sub-path identifying the component
+     */
+    final int consumed;
 
     final Object receiver;
 
     final Agency agency;
 
-    Match(List<? extends CharSequence> matched,
-          List<? extends CharSequence> unmatched, Object receiver,
-          Agency manager) {
-        this.matched =
-            matched.stream().map(Object::toString).collect(Collectors.toList());
-        this.unmatched =
-            matched.stream().map(Object::toString).collect(Collectors.toList());
+    Match(int consumed, Object receiver, Agency manager) {
+        this.consumed = consumed;
         this.receiver = receiver;
         this.agency = manager;
     }
@@ -41,21 +41,20 @@ package uk.ac.lancs.carp.component;
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.UUID;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * Maintains typed receivers, including their components, in a string
@@ -64,6 +63,14 @@ import java.util.stream.Stream;
  * service type. The same object may be registered with a different
  * service type under a different path.
  * 
+ * <p>
+ * {@link #resolve(List)} never blocks. The path index is a concurrent
+ * map, so resolution can proceed while registrations are being made.
+ * All other operations are serialized with each other, and also apply
+ * any installations of dynamically created components reported by
+ * agencies in the meantime. Resolution applies such installations only
+ * if it can do so without waiting.
+ * 
  * @author simpsons
  */
 public final class PathMap {
@@ -109,7 +116,7 @@ public final class PathMap {
      * to garbage collection.
      */
     static AtomicReference<Collection<Object>> currentRefs =
-        new AtomicReference<>(new HashSet<>());
+        new AtomicReference<>(ConcurrentHashMap.newKeySet());
 
     /**
      * Pack-rats not-so-recent references. Assigned from
@@ -158,7 +165,8 @@ public final class PathMap {
                     final long now = System.currentTimeMillis();
                     if (now >= nextPurge) {
                         nextPurge += PACKRAT_PERIOD;
-                        oldRefs = currentRefs.getAndSet(new HashSet<>());
+                        oldRefs = currentRefs
+                            .getAndSet(ConcurrentHashMap.newKeySet());
                     }
                 }
             }
@@ -176,6 +184,13 @@ public final class PathMap {
 
         final List<String> path;
 
+        /**
+         * Holds objects derived from the service type and the types
+         * of components resolved beneath this service, so that they
+         * live as long as the registration does.
+         */
+        final Map<Class<?>, Object> attachments = new ConcurrentHashMap<>();
+
         public Service(Class<?> type, Object receiver, List<String> path,
                        Agency agency) {
             this.path = path;
@@ -187,12 +202,27 @@ public final class PathMap {
         }
     }
 
-    private final Map<List<String>, Service> paths = new HashMap<>();
+    /**
+     * Indexes services by path. This may be read without holding
+     * {@link #lock}, but must only be modified while holding it, except
+     * to remove garbage-collected entries. Keys are immutable.
+     */
+    private final Map<List<String>, Service> paths =
+        new ConcurrentHashMap<>();
 
+    /**
+     * Indexes services by receiver and type. This must only be
+     * accessed while holding {@link #lock}.
+     */
     private final Map<Object, Map<Class<?>, Service>> services =
         new WeakHashMap<>();
 
-    synchronized void cleanOut(List<String> path, Object value) {
+    /**
+     * Serializes all operations except {@link #resolve(List)}.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    void cleanOut(List<String> path, Object value) {
         paths.remove(path, value);
     }
 
@@ -212,9 +242,10 @@ public final class PathMap {
      */
     private void install(List<String> path, Class<?> type, Object receiver,
                          Agency agency) {
-        assert Thread.holdsLock(this);
+        assert lock.isHeldByCurrentThread();
         /* Create a new entry, and index it by path and by service id
          * (type and receiver). */
+        path = List.copyOf(path);
         Service srv = new Service(type, receiver, path, agency);
         Service oldSrvByReceiver = services
             .computeIfAbsent(receiver, k -> new HashMap<>()).put(type, srv);
@@ -251,7 +282,7 @@ public final class PathMap {
             Service srv =
                 services.getOrDefault(receiver, Collections.emptyMap())
                     .get(serviceType);
-            if (srv != null) return List.copyOf(srv.path);
+            if (srv != null) return srv.path;
             return null;
         });
     }
@@ -272,12 +303,11 @@ public final class PathMap {
             Service srv =
                 services.getOrDefault(receiver, Collections.emptyMap())
                     .get(serviceType);
-            if (srv != null) return List.copyOf(srv.path);
+            if (srv != null) return srv.path;
 
             /* We don't know the receiver, so create an anonymous path
              * for it. */
-            List<String> path =
-                Arrays.asList("anon", UUID.randomUUID().toString());
+            List<String> path = List.of("anon", UUID.randomUUID().toString());
             install(path, serviceType, receiver, Agency.empty());
             return path;
         });
@@ -303,39 +333,47 @@ public final class PathMap {
      * position; or {@code null} if no receiver was found
      */
     public PathMatch resolve(List<String> path) {
-        return processCallbacks(() -> {
-            final int pathLen = path.size();
-            for (int i = pathLen; i > 0; i--) {
-                /* Gradually shorten the path until we get a match. */
-                List<String> head = path.subList(0, i);
-                Service rec = paths.get(head);
-                if (rec == null) continue;
-
-                /* Get the receiver, and make sure we hang on to it for
-                 * a while. */
-                Object receiver = rec.receiver.get();
-                if (receiver == null) continue;
-                keep(receiver);
-
-                /* Keep resolving down until the tail is consumed, */
-                List<String> tail = path.subList(i, pathLen);
-                Agency agency = services.get(receiver).get(rec.type).agency;
-                Class<?> type = rec.type;
-                Agency.Resolution resol;
-                while (!tail.isEmpty() &&
-                    (resol = agency.resolve(receiver, tail)) != null) {
-                    /* Record the latest results as the new current
-                     * position. */
-                    receiver = resol.receiver;
-                    agency = resol.agent;
-                    type = resol.type;
-                    head = concat(head, resol.head);
-                    tail = resol.tail;
-                }
-                return new PathMatch(type, receiver, head, tail);
+        /* Apply pending installations only if nobody else is busy with
+         * the indices. */
+        if (!callbacks.isEmpty() && lock.tryLock()) {
+            try {
+                clearCallbacks();
+            } finally {
+                lock.unlock();
             }
-            return null;
-        });
+        }
+
+        final int pathLen = path.size();
+        for (int i = pathLen; i > 0; i--) {
+            /* Gradually shorten the path until we get a match. */
+            List<String> head = path.subList(0, i);
+            Service rec = paths.get(head);
+            if (rec == null) continue;
+
+            /* Get the receiver, and make sure we hang on to it for a
+             * while. */
+            Object receiver = rec.receiver.get();
+            if (receiver == null) continue;
+            keep(receiver);
+
+            /* Keep resolving down until the tail is consumed, */
+            int pos = i;
+            Agency agency = rec.agency;
+            Class<?> type = rec.type;
+            Agency.Resolution resol;
+            while (pos < pathLen && (resol = agency
+                .resolve(receiver, path.subList(pos, pathLen))) != null) {
+                /* Record the latest results as the new current
+                 * position. */
+                receiver = resol.receiver;
+                agency = resol.agent;
+                type = resol.type;
+                pos += resol.consumed;
+            }
+            return new PathMatch(type, receiver, path.subList(0, pos),
+                                 path.subList(pos, pathLen), rec.attachments);
+        }
+        return null;
     }
 
     private static class WeakInstaller implements Agency.Installer {
@@ -350,10 +388,9 @@ public final class PathMap {
                                Object receiver, Agency agency) {
             PathMap base = ref.get();
             if (base == null) return true;
-            /* We cannot synchronize on ourselves here, as it risks
-             * deadlock. Instead, we add a job safely to separate
-             * collection. We will process these jobs next time we
-             * synchronize on ourselves. */
+            /* We cannot take our lock here, as it risks deadlock.
+             * Instead, we add a job safely to separate collection. We
+             * will process these jobs next time we hold the lock. */
             base.addCallback(() -> base.install(path, type, receiver, agency));
             return false;
         }
@@ -432,35 +469,24 @@ public final class PathMap {
         });
     }
 
-    private static <E> List<E> concat(List<? extends E> a,
-                                      List<? extends E> b) {
-        return Stream.concat(a.stream(), b.stream())
-            .collect(Collectors.toList());
-    }
-
-    private final List<Runnable> callbacks = new ArrayList<>();
+    private final Queue<Runnable> callbacks = new ConcurrentLinkedQueue<>();
 
     private void addCallback(Runnable action) {
-        synchronized (callbacks) {
-            callbacks.add(action);
-        }
+        callbacks.add(action);
     }
 
     private void clearCallbacks() {
-        assert Thread.holdsLock(this);
-
-        /* Lock on the callbacks to extract them, then release. Only
-         * then do we invoke the callbacks, so other callbacks may be
-         * added meanwhile. */
-        final Collection<Runnable> copy;
-        synchronized (callbacks) {
-            copy = List.copyOf(callbacks);
-            callbacks.clear();
-        }
-        copy.forEach(Runnable::run);
+        assert lock.isHeldByCurrentThread();
+
+        /* Other callbacks may be added while we invoke these, and will
+         * be picked up by the same loop. */
+        Runnable action;
+        while ((action = callbacks.poll()) != null)
+            action.run();
     }
 
-    private synchronized <R> R processCallbacks(Supplier<R> action) {
+    private <R> R processCallbacks(Supplier<R> action) {
+        lock.lock();
         try {
             /* Perform all the callbacks, then run the supplied action,
              * and return its value. */
@@ -468,7 +494,11 @@ public final class PathMap {
             return action.get();
         } finally {
             /* Just before we go, check for more callbacks. */
-            clearCallbacks();
+            try {
+                clearCallbacks();
+            } finally {
+                lock.unlock();
+            }
         }
     }
 }
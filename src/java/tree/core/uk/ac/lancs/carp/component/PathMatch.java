@@ -39,6 +39,8 @@
 package uk.ac.lancs.carp.component;
 
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 /**
  * Stores the result of searching for a receiver under a given path.
@@ -71,11 +73,41 @@ public final class PathMatch {
      */
     public final List<String> tail;
 
+    private final Map<Class<?>, Object> attachments;
+
     PathMatch(Class<?> type, Object receiver, List<String> head,
-              List<String> tail) {
+              List<String> tail, Map<Class<?>, Object> attachments) {
         this.type = type;
         this.receiver = receiver;
         this.head = head;
         this.tail = tail;
+        this.attachments = attachments;
+    }
+
+    /**
+     * Get an object derived from the matched service type, creating it
+     * if necessary. The object is retained by the registration under
+     * which the receiver was found, so later matches through the same
+     * registration yield it without locking, for as long as the
+     * registration lasts.
+     * 
+     * @param <T> the type of derived object
+     * 
+     * @param kind the type of derived object
+     * 
+     * @param factory a means to derive the object from the service
+     * type
+     * 
+     * @return the derived object
+     * 
+     * @throws ClassCastException if an object of a different kind has
+     * already been derived from the service type
+     */
+    public <T> T attachment(Class<T> kind,
+                            Function<? super Class<?>, ? extends T> factory) {
+        Object result = attachments.get(type);
+        if (result == null)
+            result = attachments.computeIfAbsent(type, factory::apply);
+        return kind.cast(result);
     }
 }
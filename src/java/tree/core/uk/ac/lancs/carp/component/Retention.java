@@ -0,0 +1,137 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+package uk.ac.lancs.carp.component;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Specifies how long an indexed agent keeps the components it has
+ * created. By default, components are kept only for as long as
+ * something else refers to them, and are destroyed when
+ * garbage-collected. Alternatively, components can be held, up to a
+ * maximum number and for a maximum idle period, and destroyed when
+ * evicted.
+ * 
+ * @see IndexedAgent#retain(Retention)
+ * 
+ * @see StaticIndexedAgent#retain(Retention)
+ * 
+ * @author simpsons
+ */
+public final class Retention {
+    /**
+     * Identifies which components to evict first when there are too
+     * many.
+     */
+    public enum Order {
+        /**
+         * Evict the components least recently obtained.
+         */
+        LEAST_RECENTLY_USED,
+
+        /**
+         * Evict the components obtained least often. The counts of
+         * the remaining components are halved at each eviction, so
+         * that recent use counts for more than old use.
+         */
+        LEAST_FREQUENTLY_USED;
+    }
+
+    final boolean strong;
+
+    final int capacity;
+
+    final long idleNanos;
+
+    final Order order;
+
+    private Retention(boolean strong, int capacity, Duration idle,
+                      Order order) {
+        this.strong = strong;
+        this.capacity = capacity;
+        this.idleNanos = idle == null ? 0 : idle.toNanos();
+        this.order = order;
+    }
+
+    private static final Retention WEAK =
+        new Retention(false, 0, null, Order.LEAST_RECENTLY_USED);
+
+    /**
+     * Keep components only while they are referenced elsewhere. This
+     * is the default.
+     * 
+     * @return the requested retention
+     */
+    public static Retention weak() {
+        return WEAK;
+    }
+
+    /**
+     * Hold components, subject to limits. Evicted components are
+     * destroyed, even if still referenced elsewhere, and a later
+     * request for one creates it afresh.
+     * 
+     * @param capacity the maximum number of components to hold per
+     * container; or non-positive if unlimited
+     * 
+     * @param idle the longest time a component may be held without
+     * being obtained; or {@code null} if unlimited
+     * 
+     * @param order which components to evict first when the capacity
+     * is exceeded
+     * 
+     * @return the requested retention
+     * 
+     * @throws NullPointerException if the order is {@code null}
+     */
+    public static Retention bounded(int capacity, Duration idle,
+                                    Order order) {
+        Objects.requireNonNull(order, "order");
+        return new Retention(true, capacity, idle, order);
+    }
+
+    @Override
+    public String toString() {
+        if (!strong) return "weak";
+        return String.format("bounded(%d, %s, %s)", capacity,
+                             idleNanos == 0 ? null : Duration
+                                 .ofNanos(idleNanos),
+                             order);
+    }
+}
@@ -129,8 +129,7 @@ public final class SingletonAgent<Impl> extends Agent {
         if (!containerType.isInstance(container)) return null;
         return internalGet(containerType.cast(container),
                            (receiver,
-                            agency) -> new Match(Collections.emptyList(),
-                                                 suffix, receiver, agency));
+                            agency) -> new Match(0, receiver, agency));
     }
 
     private void inform(Impl receiver, List<? extends CharSequence> subpath) {
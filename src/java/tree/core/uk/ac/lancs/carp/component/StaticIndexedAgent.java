@@ -42,20 +42,23 @@ import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Manages a family of components of the same type, distinguished by an
- * index type, for each container.
+ * index type, for each container. Components are kept only while
+ * referenced elsewhere, unless the agent is told to
+ * {@linkplain #retain(Retention) retain} them.
  * 
  * @param <Ctr> the container class
  * 
@@ -66,10 +69,66 @@ import java.util.regex.Pattern;
  * @author simpsons
  */
 public class StaticIndexedAgent<Ctr, Impl, Id> extends Agent {
-    private final Map<Ctr, Map<Id, Reference<Impl>>> cache =
-        new WeakHashMap<>();
+    /**
+     * Weakly references a container as a key of {@link #cache},
+     * comparing by identity. A cleared key is equal only to itself.
+     */
+    private static final class Identity {
+        final int hash;
+
+        final Reference<Object> ref;
+
+        Identity(Object referent, Consumer<? super Identity> cleaner) {
+            this.hash = System.identityHashCode(referent);
+            this.ref = PathMap.watch(referent, r -> cleaner.accept(this));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
 
-    private final Map<Impl, Agency> agencies = new WeakHashMap<>();
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (!(obj instanceof Identity)) return false;
+            Object referent = ref.get();
+            return referent != null && referent == ((Identity) obj).ref.get();
+        }
+    }
+
+    /**
+     * Looks up a container in {@link #cache} without creating a
+     * reference to it.
+     */
+    private static final class Probe {
+        final Object referent;
+
+        Probe(Object referent) {
+            this.referent = referent;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(referent);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Identity &&
+                ((Identity) obj).ref.get() == referent;
+        }
+    }
+
+    /**
+     * Holds the components of each container. This may be read
+     * without locking, but entries are only added while holding the
+     * map's lock, so that each container gets one set of components.
+     */
+    private final Map<Object, ComponentCache<Impl, Id>> cache =
+        new ConcurrentHashMap<>();
+
+    private volatile Retention retention = Retention.weak();
 
     private final Class<?> serviceType;
 
@@ -82,7 +141,7 @@ public class StaticIndexedAgent<Ctr, Impl, Id> extends Agent {
 
     private final Discriminator<Id> discr;
 
-    private final Pattern pattern;
+    private final Function<? super CharSequence, ? extends Id> parser;
 
     StaticIndexedAgent(Class<Ctr> containerType,
                        Class<? super Impl> serviceType, Discriminator<Id> discr,
@@ -94,41 +153,106 @@ public class StaticIndexedAgent<Ctr, Impl, Id> extends Agent {
         this.constructor = constructor;
         this.destructor = destructor;
         this.discr = discr;
-        this.pattern = Pattern.compile("^" + discr.pattern() + "$");
+        this.parser = parserOf(discr);
     }
 
-    private synchronized void clean(Reference<Ctr> cref, Id id,
-                                    Reference<Impl> ref) {
-        Ctr container = cref.get();
-        if (container == null) return;
-        if (cache.getOrDefault(container, Collections.emptyMap())
-            .remove(id, ref)) destructor.accept(container, id);
+    /**
+     * Set how long to keep components. This should be called before
+     * the agent is used, as it affects only containers whose
+     * components have not yet been requested.
+     * 
+     * <p>
+     * Components usually refer to their container, so a container
+     * cannot be collected while the agent holds any of its components.
+     * Held components must therefore have an idle limit. Whenever the
+     * agent is used, components idle for longer are expired across all
+     * containers, so an abandoned container is eventually released.
+     * 
+     * @param retention how long to keep components of each container
+     * 
+     * @return this object
+     * 
+     * @throws IllegalArgumentException if components are to be held
+     * without an idle limit
+     */
+    public StaticIndexedAgent<Ctr, Impl, Id> retain(Retention retention) {
+        if (retention.strong && retention.idleNanos <= 0)
+            throw new IllegalArgumentException("no idle limit: "
+                + retention);
+        this.retention = retention;
+        return this;
+    }
+
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    private volatile long lastSweep = System.nanoTime();
+
+    /**
+     * Expire idle components of all containers, if half the idle limit
+     * has passed since the last time. Only one thread sweeps at a time;
+     * others carry on without waiting.
+     * 
+     * @param now the current time
+     */
+    private void sweep(long now) {
+        final long idleNanos = retention.idleNanos;
+        if (idleNanos <= 0 || now - lastSweep < idleNanos / 2) return;
+        if (!sweeping.compareAndSet(false, true)) return;
+        try {
+            lastSweep = now;
+            for (ComponentCache<Impl, Id> components : cache.values())
+                components.expire(now);
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /**
+     * Get the components of a container.
+     * 
+     * @param container the container
+     * 
+     * @param create whether to create an empty set of components if
+     * none exists
+     * 
+     * @return the container's components; or {@code null} if the
+     * container has none and none was to be created
+     */
+    private ComponentCache<Impl, Id> cacheOf(Ctr container,
+                                             boolean create) {
+        final Probe probe = new Probe(container);
+        ComponentCache<Impl, Id> result = cache.get(probe);
+        if (result != null || !create) return result;
+        synchronized (cache) {
+            result = cache.get(probe);
+            if (result != null) return result;
+
+            /* The components must not refer to their container
+             * strongly, or it will never be collected. */
+            Reference<Ctr> cref = new WeakReference<>(container);
+            result = new ComponentCache<>(retention, id -> {
+                Ctr ctr = cref.get();
+                if (ctr != null) destructor.accept(ctr, id);
+            });
+            /* Drop the components when the container goes. */
+            cache.put(new Identity(container, cache::remove), result);
+            return result;
+        }
     }
 
     private <R> R internalGet(Ctr container, Id id,
                               BiFunction<? super Impl, ? super Agency,
                                          ? extends R> action) {
-        assert Thread.holdsLock(this);
-        var map = cache.computeIfAbsent(container, k -> new HashMap<>());
-        Reference<Impl> ref = map.get(id);
-        Impl receiver;
-        Agency agency;
-        if (ref == null || (receiver = ref.get()) == null) {
-            if (ref != null) destructor.accept(container, id);
-            ManagedReceiver<? extends Impl> mr =
-                constructor.apply(container, id);
-            receiver = mr.receiver;
-            agency = mr.agency;
-            agencies.put(receiver, agency);
-            Reference<Ctr> cref = new WeakReference<>(container);
-            ref = PathMap.watch(receiver, r -> clean(cref, id, r));
-            map.put(id, ref);
-            inform(container, receiver,
-                   Collections.singletonList(discr.encode(id)), agency);
-        } else {
-            agency = agencies.get(receiver);
-        }
-        return action.apply(receiver, agency);
+        sweep(System.nanoTime());
+        return cacheOf(container, true)
+            .get(id, k -> constructor.apply(container, k),
+                 (receiver, agency) -> {
+                     synchronized (this) {
+                         inform(container, receiver,
+                                Collections.singletonList(discr.encode(id)),
+                                agency);
+                     }
+                 }, action);
     }
 
     /**
@@ -143,7 +267,7 @@ public class StaticIndexedAgent<Ctr, Impl, Id> extends Agent {
      * 
      * @return the requested instance
      */
-    public synchronized Impl get(Ctr container, Id id) {
+    public Impl get(Ctr container, Id id) {
         return internalGet(container, id, (receiver, agency) -> receiver);
     }
 
@@ -151,13 +275,10 @@ public class StaticIndexedAgent<Ctr, Impl, Id> extends Agent {
     Match match(Object container, List<? extends CharSequence> subpath) {
         if (!containerType.isInstance(container)) return null;
         if (subpath.isEmpty()) return null;
-        Matcher matcher = pattern.matcher(subpath.get(0));
-        if (!matcher.matches()) return null;
-        Id id = discr.decode(matcher);
+        Id id = parser.apply(subpath.get(0));
+        if (id == null) return null;
         BiFunction<Impl, Agency, Match> action =
-            (receiver, agency) -> new Match(subpath.subList(0, 1),
-                                            subpath.subList(1, subpath.size()),
-                                            receiver, agency);
+            (receiver, agency) -> new Match(1, receiver, agency);
         return internalGet(containerType.cast(container), id, action);
     }
 
@@ -185,17 +306,12 @@ public class StaticIndexedAgent<Ctr, Impl, Id> extends Agent {
 
         /* Tell the new listener about any components already created
          * for this container. */
-        var index = cache.get(ctr);
-        if (index == null) return;
-        for (var entry : index.entrySet()) {
-            Id id = entry.getKey();
-            Impl impl = entry.getValue().get();
-            if (impl == null) continue;
-            Agency agency = agencies.getOrDefault(impl, Agency.empty());
-            if (listener.update(Collections.singletonList(discr.encode(id)),
-                                impl, agency))
-                return;
-        }
+        var index = cacheOf(ctr, false);
+        if (index != null &&
+            index.visit((id, impl, agency) -> listener
+                .update(Collections.singletonList(discr.encode(id)), impl,
+                        agency)))
+            return;
         listeners.add(listener);
     }
 
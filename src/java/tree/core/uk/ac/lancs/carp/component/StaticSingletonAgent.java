@@ -134,8 +134,7 @@ public final class StaticSingletonAgent<Ctr, Impl> extends Agent {
         if (!containerType.isInstance(container)) return null;
         return internalGet(containerType.cast(container),
                            (receiver,
-                            bindings) -> new Match(Collections.emptyList(),
-                                                   suffix, receiver, bindings));
+                            bindings) -> new Match(0, receiver, bindings));
     }
 
     private void inform(Ctr container, Impl receiver,
@@ -43,6 +43,7 @@ import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import uk.ac.lancs.carp.component.Discriminator;
@@ -111,4 +112,15 @@ public class EnumDiscriminator<E extends Enum<E>> implements Discriminator<E> {
     public String pattern() {
         return pattern;
     }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @default This implementation looks the component up in a table
+     * of the constants' encoded forms.
+     */
+    @Override
+    public Function<? super CharSequence, ? extends E> parser() {
+        return text -> mapFromString.get(text.toString());
+    }
 }
@@ -40,6 +40,7 @@ package uk.ac.lancs.carp.component.std;
 
 import java.math.BigInteger;
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import uk.ac.lancs.carp.component.Discriminator;
 
@@ -57,11 +58,21 @@ public final class IntegerDiscriminator implements Discriminator<BigInteger> {
 
     private final String group;
 
+    /**
+     * The maximum number of digits that can be accumulated in a
+     * {@code long} without overflow
+     */
+    private final int longDigits;
+
     private IntegerDiscriminator(int base, int pad) {
         if (base < Character.MIN_RADIX || base > Character.MAX_RADIX)
             throw new IllegalArgumentException("base out of range: " + base);
 
         this.base = base;
+        int longDigits = 0;
+        for (long v = 1; v <= Long.MAX_VALUE / base; v *= base)
+            longDigits++;
+        this.longDigits = longDigits;
         this.group = "id" + UUID.randomUUID().toString().replace("-", "");
         if (pad < 1) {
             this.pattern = "(?<" + this.group + ">[0-9]+)";
@@ -119,4 +130,30 @@ public final class IntegerDiscriminator implements Discriminator<BigInteger> {
     public String pattern() {
         return pattern;
     }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @default This implementation checks the digits and accumulates
+     * their value directly, unless there are too many to fit in a
+     * {@code long}. Digits not valid in the base are not recognized.
+     */
+    @Override
+    public Function<? super CharSequence, ? extends BigInteger> parser() {
+        return this::parse;
+    }
+
+    private BigInteger parse(CharSequence text) {
+        final int len = text.length();
+        if (len == 0 || (padding != null && len != padding.length()))
+            return null;
+        long value = 0;
+        for (int i = 0; i < len; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || digit >= base) return null;
+            value = value * base + digit;
+        }
+        if (len <= longDigits) return BigInteger.valueOf(value);
+        return new BigInteger(text.toString(), base);
+    }
 }
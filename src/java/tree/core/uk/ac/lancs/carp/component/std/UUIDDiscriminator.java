@@ -39,6 +39,7 @@
 package uk.ac.lancs.carp.component.std;
 
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import uk.ac.lancs.carp.component.Discriminator;
 
@@ -55,14 +56,17 @@ public final class UUIDDiscriminator implements Discriminator<UUID> {
 
     private final boolean upper;
 
+    private final boolean tolerant;
+
     private UUIDDiscriminator(boolean upper, boolean tolerant) {
         String digit =
             tolerant ? "[0-9a-fA-F]" : upper ? "[0-9A-F]" : "[0-9a-f]";
 
         this.upper = upper;
+        this.tolerant = tolerant;
         this.group = "id" + UUID.randomUUID().toString().replace("-", "");
-        pattern = "(?<" + group + ">" + digit + "{4}-" + digit + "{2}-" + digit
-            + "{2}-" + digit + "{2}-" + digit + "{6})";
+        pattern = "(?<" + group + ">" + digit + "{8}-" + digit + "{4}-" + digit
+            + "{4}-" + digit + "{4}-" + digit + "{12})";
     }
 
     /**
@@ -119,4 +123,41 @@ public final class UUIDDiscriminator implements Discriminator<UUID> {
     public String pattern() {
         return pattern;
     }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @default This implementation checks the hyphens and digits, and
+     * accumulates the UUID's bits directly.
+     */
+    @Override
+    public Function<? super CharSequence, ? extends UUID> parser() {
+        return this::parse;
+    }
+
+    private UUID parse(CharSequence text) {
+        if (text.length() != 36) return null;
+        long msb = 0, lsb = 0;
+        for (int i = 0; i < 36; i++) {
+            char c = text.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') return null;
+                continue;
+            }
+            int digit = digit(c);
+            if (digit < 0) return null;
+            if (i < 18)
+                msb = msb << 4 | digit;
+            else
+                lsb = lsb << 4 | digit;
+        }
+        return new UUID(msb, lsb);
+    }
+
+    private int digit(char c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'f' && (tolerant || !upper)) return c - 'a' + 10;
+        if (c >= 'A' && c <= 'F' && (tolerant || upper)) return c - 'A' + 10;
+        return -1;
+    }
 }
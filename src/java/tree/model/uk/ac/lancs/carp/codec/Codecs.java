@@ -44,6 +44,7 @@ import java.util.UUID;
 import javax.json.JsonNumber;
 import javax.json.JsonString;
 import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
 
 /**
  * Static utilities for JSON conversion
@@ -682,7 +683,18 @@ public final class Codecs {
      * @return the converted value
      */
     public static UUID asUUID(JsonString value) {
-        String s = value.getString();
+        return asUUID(value.getString());
+    }
+
+    /**
+     * Create a UUID from a string. The string is processed as by
+     * {@link #asUUID(JsonString)}.
+     * 
+     * @param s the value to be converted
+     * 
+     * @return the converted value
+     */
+    public static UUID asUUID(String s) {
         s = s.replaceAll("[^0-9a-fA-F]", "");
         s = s.subSequence(0, 8) + "-" + s.subSequence(8, 12) + "-"
             + s.subSequence(12, 16) + "-" + s.subSequence(16, 20) + "-"
@@ -690,5 +702,48 @@ public final class Codecs {
         return UUID.fromString(s);
     }
 
+    /**
+     * Check that a parser is positioned at the start of an expected
+     * kind of JSON value.
+     * 
+     * @param dir the direction of the operation being performed
+     * 
+     * @param expected the expected event
+     * 
+     * @param actual the event at which the parser is positioned
+     * 
+     * @throws TypeMismatchException if the events differ
+     */
+    public static void expect(Direction dir, JsonParser.Event expected,
+                              JsonParser.Event actual) {
+        if (actual != expected)
+            throw new TypeMismatchException(dir, "expected " + expected
+                + "; got " + actual);
+    }
+
+    /**
+     * Skip over a JSON value in a stream. The parser must be
+     * positioned at the first event of the value, and is left
+     * positioned at its last event.
+     * 
+     * @param event the event at which the parser is positioned
+     * 
+     * @param in the source of the value
+     */
+    public static void skipValue(JsonParser.Event event, JsonParser in) {
+        switch (event) {
+        case START_OBJECT:
+            in.skipObject();
+            break;
+
+        case START_ARRAY:
+            in.skipArray();
+            break;
+
+        default:
+            break;
+        }
+    }
+
     private Codecs() {}
 }
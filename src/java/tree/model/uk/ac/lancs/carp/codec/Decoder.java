@@ -39,9 +39,16 @@
 package uk.ac.lancs.carp.codec;
 
 import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
 
 /**
  * Decodes JSON into Java objects.
+ * 
+ * <p>
+ * A decoder can convert a JSON value already held in memory, or it can
+ * consume the value's events directly from a parser with
+ * {@link #readJson(JsonParser.Event, JsonParser, DecodingContext)}, so
+ * that large structures never exist as a JSON tree.
  *
  * @author simpsons
  * 
@@ -60,4 +67,32 @@ public interface Decoder {
      * @throws CodecException if there was an error decoding from JSON
      */
     Object decodeJson(JsonValue value, DecodingContext ctxt);
+
+    /**
+     * Decode a JSON value from a stream into a Java object. The parser
+     * must be positioned at the first event of the value, which is
+     * also supplied. On return, the whole value will have been
+     * consumed, so the parser will be positioned at its last event,
+     * e.g., {@link JsonParser.Event#END_OBJECT} for an object.
+     * 
+     * @default This implementation reads the value into memory with
+     * {@link JsonParser#getValue()}, and passes it to
+     * {@link #decodeJson(JsonValue, DecodingContext)}. Implementations
+     * of compound types should override it to consume their components
+     * from the stream.
+     * 
+     * @param event the event at which the parser is positioned
+     * 
+     * @param in the source of the JSON value
+     * 
+     * @param ctxt a context for decoding external resources
+     * 
+     * @return the decoded value
+     * 
+     * @throws CodecException if there was an error decoding from JSON
+     */
+    default Object readJson(JsonParser.Event event, JsonParser in,
+                            DecodingContext ctxt) {
+        return decodeJson(in.getValue(), ctxt);
+    }
 }
@@ -39,10 +39,17 @@
 package uk.ac.lancs.carp.codec;
 
 import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
 
 /**
  * Encodes Java objects into JSON.
  * 
+ * <p>
+ * An encoder can build a JSON value for the caller to write, or it can
+ * write the encoding directly to a stream with
+ * {@link #writeJson(Object, EncodingContext, JsonGenerator)}, so that
+ * large structures need not be held in memory as a JSON tree.
+ * 
  * @author simpsons
  * 
  * @see Decoder
@@ -60,4 +67,28 @@ public interface Encoder {
      * @throws CodecException if there was an error encoding to JSON
      */
     JsonValue encodeJson(Object value, EncodingContext ctxt);
+
+    /**
+     * Encode a Java object as JSON, and write it to a stream. The value
+     * is written as the next value in the generator's current context,
+     * i.e., as an array element, as the value of a key just written
+     * with {@link JsonGenerator#writeKey(String)}, or as the whole
+     * document.
+     * 
+     * @default This implementation writes the result of
+     * {@link #encodeJson(Object, EncodingContext)}. Implementations of
+     * compound types should override it to stream their components.
+     * 
+     * @param value the value to be encoded
+     * 
+     * @param ctxt a context for encoding external resources
+     * 
+     * @param out the destination of the JSON encoding
+     * 
+     * @throws CodecException if there was an error encoding to JSON
+     */
+    default void writeJson(Object value, EncodingContext ctxt,
+                           JsonGenerator out) {
+        out.write(encodeJson(value, ctxt));
+    }
 }
@@ -40,6 +40,7 @@ package uk.ac.lancs.carp.codec.std;
 
 import java.math.BigDecimal;
 import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
 import uk.ac.lancs.carp.codec.Codecs;
 import uk.ac.lancs.carp.codec.Encoder;
 import uk.ac.lancs.carp.codec.EncodingContext;
@@ -67,4 +68,11 @@ public class BigDecimalEncoder implements Encoder {
         // TODO: Something with precision?
         return Codecs.asJson(typed);
     }
+
+    @Override
+    public void writeJson(Object value, EncodingContext ctxt,
+                          JsonGenerator out) {
+        BigDecimal typed = (BigDecimal) value;
+        out.write(typed);
+    }
 }
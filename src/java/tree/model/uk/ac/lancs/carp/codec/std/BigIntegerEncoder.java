@@ -44,6 +44,7 @@ import java.util.Map;
 import java.util.WeakHashMap;
 import java.util.function.Function;
 import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
 import uk.ac.lancs.carp.codec.CodecException;
 import uk.ac.lancs.carp.codec.Codecs;
 import uk.ac.lancs.carp.codec.Direction;
@@ -100,4 +101,12 @@ public class BigIntegerEncoder implements Encoder {
         check(typed);
         return Codecs.asJson(typed);
     }
+
+    @Override
+    public void writeJson(Object value, EncodingContext ctxt,
+                          JsonGenerator out) {
+        BigInteger typed = (BigInteger) value;
+        check(typed);
+        out.write(typed);
+    }
 }
@@ -43,6 +43,7 @@ import java.util.Map;
 import java.util.WeakHashMap;
 import java.util.function.IntFunction;
 import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
 import uk.ac.lancs.carp.codec.CodecException;
 import uk.ac.lancs.carp.codec.Codecs;
 import uk.ac.lancs.carp.codec.Direction;
@@ -96,4 +97,12 @@ public class ByteEncoder implements Encoder {
         check(typed);
         return Codecs.asJson(typed);
     }
+
+    @Override
+    public void writeJson(Object value, EncodingContext ctxt,
+                          JsonGenerator out) {
+        byte typed = ((Number) value).byteValue();
+        check(typed);
+        out.write(typed);
+    }
 }
@@ -39,6 +39,7 @@
 package uk.ac.lancs.carp.codec.std;
 
 import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
 import uk.ac.lancs.carp.codec.Codecs;
 import uk.ac.lancs.carp.codec.Encoder;
 import uk.ac.lancs.carp.codec.EncodingContext;
@@ -66,4 +67,11 @@ public class DoubleEncoder implements Encoder {
         // TODO: Something with precision?
         return Codecs.asJson(typed);
     }
+
+    @Override
+    public void writeJson(Object value, EncodingContext ctxt,
+                          JsonGenerator out) {
+        double typed = (Double) value;
+        out.write(typed);
+    }
 }
@@ -39,6 +39,7 @@
 package uk.ac.lancs.carp.codec.std;
 
 import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
 import uk.ac.lancs.carp.codec.Codecs;
 import uk.ac.lancs.carp.codec.Encoder;
 import uk.ac.lancs.carp.codec.EncodingContext;
@@ -66,4 +67,19 @@ public class FloatEncoder implements Encoder {
         // TODO: Something with precision?
         return Codecs.asJson(typed);
     }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @default This implementation writes the value as a
+     * {@code double} directly to the generator. The value is widened
+     * through its decimal form, so that it is written as it would be
+     * by {@link #encodeJson(Object, EncodingContext)}.
+     */
+    @Override
+    public void writeJson(Object value, EncodingContext ctxt,
+                          JsonGenerator out) {
+        float typed = (Float) value;
+        out.write(Double.parseDouble(Float.toString(typed)));
+    }
 }
@@ -43,6 +43,7 @@ import java.util.IdentityHashMap;
 import java.util.Map;
 import javax.json.JsonString;
 import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
 import uk.ac.lancs.carp.codec.CodecException;
 import uk.ac.lancs.carp.codec.Decoder;
 import uk.ac.lancs.carp.codec.Direction;
@@ -104,19 +105,31 @@ public class MappedObjectDecoder implements Decoder {
         return new MappedObjectDecoder(toObject);
     }
 
+    private Object lookUp(String key) {
+        Object res = toObject.get(key);
+        if (res == null)
+            throw new MissingFieldException(Direction.DECODING,
+                                            "unknown value: " + key);
+        return res;
+    }
+
     @Override
     public Object decodeJson(JsonValue value, DecodingContext ctxt) {
         try {
             JsonString str = (JsonString) value;
-            Object res = toObject.get(str.getString());
-            if (res == null)
-                throw new MissingFieldException(Direction.DECODING,
-                                                "unknown value: "
-                                                    + str.getString());
-            return res;
+            return lookUp(str.getString());
         } catch (ClassCastException ex) {
             throw new CodecException(Direction.DECODING, "expected string; got "
                 + value.getValueType(), ex);
         }
     }
+
+    @Override
+    public Object readJson(JsonParser.Event event, JsonParser in,
+                           DecodingContext ctxt) {
+        if (event != JsonParser.Event.VALUE_STRING)
+            throw new CodecException(Direction.DECODING,
+                                     "expected string; got " + event);
+        return lookUp(in.getString());
+    }
 }
@@ -42,6 +42,7 @@ import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Map;
 import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
 import uk.ac.lancs.carp.codec.Codecs;
 import uk.ac.lancs.carp.codec.Direction;
 import uk.ac.lancs.carp.codec.Encoder;
@@ -111,4 +112,14 @@ public class MappedObjectEncoder implements Encoder {
                                             "unknown value: " + value);
         return Codecs.asJson(alt);
     }
+
+    @Override
+    public void writeJson(Object value, EncodingContext ctxt,
+                          JsonGenerator out) {
+        String alt = toString.get(value);
+        if (alt == null)
+            throw new MissingFieldException(Direction.ENCODING,
+                                            "unknown value: " + value);
+        out.write(alt);
+    }
 }
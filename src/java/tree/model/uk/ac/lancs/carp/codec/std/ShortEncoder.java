@@ -43,6 +43,7 @@ import java.util.Map;
 import java.util.WeakHashMap;
 import java.util.function.IntFunction;
 import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
 import uk.ac.lancs.carp.codec.CodecException;
 import uk.ac.lancs.carp.codec.Codecs;
 import uk.ac.lancs.carp.codec.Direction;
@@ -96,4 +97,12 @@ public class ShortEncoder implements Encoder {
         check(typed);
         return Codecs.asJson(typed);
     }
+
+    @Override
+    public void writeJson(Object value, EncodingContext ctxt,
+                          JsonGenerator out) {
+        short typed = ((Number) value).shortValue();
+        check(typed);
+        out.write(typed);
+    }
 }
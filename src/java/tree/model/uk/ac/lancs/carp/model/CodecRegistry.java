@@ -0,0 +1,433 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp.model;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
+import uk.ac.lancs.carp.codec.Decoder;
+import uk.ac.lancs.carp.codec.DecodingContext;
+import uk.ac.lancs.carp.codec.Encoder;
+import uk.ac.lancs.carp.codec.EncodingContext;
+import uk.ac.lancs.carp.map.ExternalName;
+
+/**
+ * Builds each encoder and decoder once, and shares it with all callers.
+ * Codecs are obtained through
+ * {@link LinkContext#getEncoder(Type, Class)} and
+ * {@link LinkContext#getDecoder(Type, Class)}, and are remembered
+ * against the Java class that their type maps to, so types that map to
+ * no class are rebuilt each time, but are usually cheap. Codecs are
+ * held in a way that does not prevent their classes from being
+ * unloaded.
+ * 
+ * <p>
+ * Type information found through the base context is also remembered,
+ * against the type's name and the loader it was sought from, so each
+ * type's module is consulted and its class is loaded only once. Failed
+ * searches are not remembered. The information refers to the type's
+ * class, and so to its loader, so it is held weakly, and kept alive
+ * only by that class. A loader that is otherwise unused can then be
+ * unloaded.
+ * 
+ * <p>
+ * A type may refer to itself, directly or indirectly, so building its
+ * codec would recurse without end. While a codec is being built, a
+ * request for the same codec yields a forward reference to it instead,
+ * which delegates to the codec once it has been built. Codecs are only
+ * shared once the outermost build on a thread has completed, so a
+ * failed build leaves no dangling forward reference behind.
+ * 
+ * <p>
+ * Type definitions pass themselves the context they were given, so the
+ * registry must be the outermost context; for example, wrap the result
+ * of {@link uk.ac.lancs.carp.model.std.BuiltIns#wrap(LinkContext)}, not
+ * the other way round.
+ * 
+ * @author simpsons
+ */
+public final class CodecRegistry implements LinkContext {
+    private final LinkContext base;
+
+    /**
+     * Create a registry of codecs.
+     * 
+     * @param base the context to locate type definitions through
+     */
+    public CodecRegistry(LinkContext base) {
+        this.base = base;
+    }
+
+    /**
+     * Holds the type information already found, by the loader it was
+     * sought from. The values are held weakly, as they would otherwise
+     * keep their keys from being collected. Each is kept alive instead
+     * by {@link #anchors}.
+     */
+    private final Map<ClassLoader,
+                      Map<ExternalName, Reference<TypeInfo>>> types =
+                          Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Holds the type information found, against the class that the
+     * type maps to, or that defines the type if it maps to none. The
+     * information lasts as long as that class, which is loaded by the
+     * loader the information was sought from, or by one of its
+     * ancestors.
+     */
+    private final ClassValue<Collection<TypeInfo>> anchors =
+        new ClassValue<>() {
+            @Override
+            protected Collection<TypeInfo> computeValue(Class<?> type) {
+                return new ConcurrentLinkedQueue<>();
+            }
+        };
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @default This implementation returns the information already
+     * found for the name and loader, or delegates to the base context
+     * and remembers the result.
+     */
+    @Override
+    public TypeInfo seek(ExternalName typeName, ClassLoader source) {
+        Map<ExternalName, Reference<TypeInfo>> known =
+            types.computeIfAbsent(source, k -> new ConcurrentHashMap<>());
+        Reference<TypeInfo> ref = known.get(typeName);
+        TypeInfo result = ref == null ? null : ref.get();
+        if (result != null) return result;
+
+        /* Don't hold any lock while seeking, as loading the class
+         * might initialize it, which might seek other types. If
+         * another thread beats us, use its result, unless it has
+         * already been cleared. */
+        result = base.seek(typeName, source);
+        if (result == null) return null;
+        final TypeInfo found = result;
+        TypeInfo prev = known.compute(typeName, (k, old) -> {
+            if (old != null && old.get() != null) return old;
+            Class<?> anchor =
+                found.type != null ? found.type : found.def.getClass();
+            anchors.get(anchor).add(found);
+            return new WeakReference<>(found);
+        }).get();
+        return prev == null ? found : prev;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @default This implementation returns the encoder already built
+     * for the class, if the type definition matches. Otherwise, it
+     * builds one with {@link Type#getEncoder(Class, LinkContext)},
+     * passing this registry as the context.
+     */
+    @Override
+    public Encoder getEncoder(Type def, Class<?> type) {
+        return obtain(ENCODER, def, type);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @default This implementation returns the decoder already built
+     * for the class, if the type definition matches. Otherwise, it
+     * builds one with {@link Type#getDecoder(Class, LinkContext)},
+     * passing this registry as the context.
+     */
+    @Override
+    public Decoder getDecoder(Type def, Class<?> type) {
+        return obtain(DECODER, def, type);
+    }
+
+    /**
+     * Holds the codecs built for one Java class.
+     */
+    private static final class Slot {
+        private Type def;
+
+        private Encoder encoder;
+
+        private Decoder decoder;
+
+        synchronized <C> C get(Kind<C> kind, Type def) {
+            return this.def == def ? kind.get(this) : null;
+        }
+
+        synchronized <C> void offer(Kind<C> kind, Type def, C codec) {
+            if (this.def == null) this.def = def;
+            if (this.def == def && kind.get(this) == null)
+                kind.set(this, codec);
+        }
+    }
+
+    private final ClassValue<Slot> slots = new ClassValue<>() {
+        @Override
+        protected Slot computeValue(Class<?> type) {
+            return new Slot();
+        }
+    };
+
+    /**
+     * Distinguishes encoders from decoders, so that the same logic can
+     * build and share both.
+     * 
+     * @param <C> the codec type
+     */
+    private static abstract class Kind<C> {
+        abstract C build(Type def, Class<?> type, LinkContext ctxt);
+
+        abstract Forward<C> forward();
+
+        abstract C get(Slot slot);
+
+        abstract void set(Slot slot, C codec);
+    }
+
+    private static final Kind<Encoder> ENCODER = new Kind<>() {
+        @Override
+        Encoder build(Type def, Class<?> type, LinkContext ctxt) {
+            return def.getEncoder(type, ctxt);
+        }
+
+        @Override
+        Forward<Encoder> forward() {
+            return new ForwardEncoder();
+        }
+
+        @Override
+        Encoder get(Slot slot) {
+            return slot.encoder;
+        }
+
+        @Override
+        void set(Slot slot, Encoder codec) {
+            slot.encoder = codec;
+        }
+    };
+
+    private static final Kind<Decoder> DECODER = new Kind<>() {
+        @Override
+        Decoder build(Type def, Class<?> type, LinkContext ctxt) {
+            return def.getDecoder(type, ctxt);
+        }
+
+        @Override
+        Forward<Decoder> forward() {
+            return new ForwardDecoder();
+        }
+
+        @Override
+        Decoder get(Slot slot) {
+            return slot.decoder;
+        }
+
+        @Override
+        void set(Slot slot, Decoder codec) {
+            slot.decoder = codec;
+        }
+    };
+
+    /**
+     * Stands in for a codec that is still being built.
+     * 
+     * @param <C> the codec type
+     */
+    private static abstract class Forward<C> {
+        private volatile C target;
+
+        C target() {
+            C result = target;
+            if (result == null)
+                throw new IllegalStateException("codec not yet built");
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        C self() {
+            return (C) this;
+        }
+    }
+
+    private static final class ForwardEncoder extends Forward<Encoder>
+        implements Encoder {
+        @Override
+        public JsonValue encodeJson(Object value, EncodingContext ctxt) {
+            return target().encodeJson(value, ctxt);
+        }
+
+        @Override
+        public void writeJson(Object value, EncodingContext ctxt,
+                              JsonGenerator out) {
+            target().writeJson(value, ctxt, out);
+        }
+    }
+
+    private static final class ForwardDecoder extends Forward<Decoder>
+        implements Decoder {
+        @Override
+        public Object decodeJson(JsonValue value, DecodingContext ctxt) {
+            return target().decodeJson(value, ctxt);
+        }
+
+        @Override
+        public Object readJson(JsonParser.Event event, JsonParser in,
+                               DecodingContext ctxt) {
+            return target().readJson(event, in, ctxt);
+        }
+    }
+
+    /**
+     * Identifies a codec being built.
+     */
+    private static final class Key {
+        final Kind<?> kind;
+
+        final Type def;
+
+        final Class<?> type;
+
+        Key(Kind<?> kind, Type def, Class<?> type) {
+            this.kind = kind;
+            this.def = def;
+            this.type = type;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(kind) * 31 * 31 +
+                System.identityHashCode(def) * 31 + Objects.hashCode(type);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return kind == other.kind && def == other.def &&
+                type == other.type;
+        }
+    }
+
+    /**
+     * Records the codecs being built on one thread.
+     */
+    private static final class Build {
+        /**
+         * Identifies codecs under construction. Each maps to its
+         * forward reference, or {@code null} if none has been needed
+         * yet.
+         */
+        final Map<Key, Forward<?>> pending = new HashMap<>();
+
+        /**
+         * Shares completed codecs, once the outermost build completes.
+         */
+        final List<Runnable> commits = new ArrayList<>();
+    }
+
+    private final ThreadLocal<Build> builds = new ThreadLocal<>();
+
+    private <C> C obtain(Kind<C> kind, Type def, Class<?> type) {
+        /* Use the codec already built for the class, if there is
+         * one. */
+        final Slot slot = type == null ? null : slots.get(type);
+        if (slot != null) {
+            C result = slot.get(kind, def);
+            if (result != null) return result;
+        }
+
+        Build build = builds.get();
+        final boolean outer = build == null;
+        if (outer) {
+            build = new Build();
+            builds.set(build);
+        }
+        try {
+            /* If we're already building this codec, we've found a
+             * cycle. Yield a forward reference to the codec. */
+            Key key = new Key(kind, def, type);
+            if (build.pending.containsKey(key)) {
+                @SuppressWarnings("unchecked")
+                Forward<C> fwd = (Forward<C>) build.pending.get(key);
+                if (fwd == null) {
+                    fwd = kind.forward();
+                    build.pending.put(key, fwd);
+                }
+                return fwd.self();
+            }
+
+            /* Build the codec, and resolve any forward references to
+             * it. */
+            build.pending.put(key, null);
+            final C result;
+            try {
+                result = kind.build(def, type, this);
+            } catch (RuntimeException | Error ex) {
+                build.pending.remove(key);
+                throw ex;
+            }
+            @SuppressWarnings("unchecked")
+            Forward<C> fwd = (Forward<C>) build.pending.remove(key);
+            if (fwd != null) fwd.target = result;
+
+            /* Share the codec only when everything it might refer to
+             * forward has been built. */
+            if (slot != null)
+                build.commits.add(() -> slot.offer(kind, def, result));
+            if (outer) build.commits.forEach(Runnable::run);
+            return result;
+        } finally {
+            if (outer) builds.remove();
+        }
+    }
+}
@@ -40,7 +40,6 @@ package uk.ac.lancs.carp.model;
 
 import java.util.Objects;
 import java.util.Properties;
-import java.util.ServiceLoader;
 
 /**
  * Knows how to load a type specification from various representations.
@@ -66,7 +65,8 @@ public interface CompiledTypeFactory {
 
     /**
      * Get the type factory suitable for loading a type definition from
-     * a properties file.
+     * a properties file. The providers available through each loader
+     * are found and indexed only on the first call for that loader.
      * 
      * @param typeKey the definition kind
      * 
@@ -76,14 +76,6 @@ public interface CompiledTypeFactory {
      */
     static CompiledTypeFactory getFactory(String typeKey, ClassLoader loader) {
         Objects.requireNonNull(typeKey, "typeKey");
-        for (CompiledTypeFactory fact : ServiceLoader
-            .load(CompiledTypeFactory.class, loader)) {
-            TypeKey got = fact.getClass().getAnnotation(TypeKey.class);
-            if (got == null) continue;
-            assert got != null;
-            if (!typeKey.equals(got.value())) continue;
-            return fact;
-        }
-        return null;
+        return FactoryRegistry.get(typeKey, loader);
     }
 }
@@ -0,0 +1,130 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp.model;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Indexes the type factories available through each class loader by
+ * their {@link TypeKey}s. Each loader's providers are scanned once, on
+ * first use.
+ * 
+ * @author simpsons
+ */
+final class FactoryRegistry {
+    private FactoryRegistry() {}
+
+    /**
+     * Maps each class loader to its factories, indexed by type key.
+     * The indices are never modified once created, so they can be read
+     * without locking. The factories are held weakly, as their classes
+     * would otherwise keep their loaders from being collected. Each is
+     * kept alive instead by its class, through {@link #anchors}, so it
+     * lasts as long as the loader that found it.
+     */
+    private static final Map<ClassLoader,
+                             Map<String,
+                                 Reference<CompiledTypeFactory>>> indices =
+                                     Collections
+                                         .synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Holds the factory instance of each factory class.
+     */
+    private static final ClassValue<AtomicReference<CompiledTypeFactory>>
+        anchors = new ClassValue<>() {
+            @Override
+            protected AtomicReference<CompiledTypeFactory>
+                computeValue(Class<?> type) {
+                return new AtomicReference<>();
+            }
+        };
+
+    /**
+     * Get the type factory for a definition kind.
+     * 
+     * @param typeKey the definition kind
+     * 
+     * @param loader the class loader to search for implementations
+     * 
+     * @return the matching factory; or {@code null} if not recognized
+     */
+    static CompiledTypeFactory get(String typeKey, ClassLoader loader) {
+        Map<String, Reference<CompiledTypeFactory>> index = indices.get(loader);
+        if (index == null) {
+            /* Scan without holding the lock, as loading providers can
+             * be slow, and could recurse. If another thread beats us,
+             * use its index. */
+            index = scan(loader);
+            Map<String, Reference<CompiledTypeFactory>> prev =
+                indices.putIfAbsent(loader, index);
+            if (prev != null) index = prev;
+        }
+        Reference<CompiledTypeFactory> ref = index.get(typeKey);
+        return ref == null ? null : ref.get();
+    }
+
+    private static Map<String, Reference<CompiledTypeFactory>>
+        scan(ClassLoader loader) {
+        Map<String, Reference<CompiledTypeFactory>> result = new HashMap<>();
+        for (CompiledTypeFactory fact : ServiceLoader
+            .load(CompiledTypeFactory.class, loader)) {
+            TypeKey got = fact.getClass().getAnnotation(TypeKey.class);
+            if (got == null) continue;
+
+            /* The first provider for each key takes precedence, as
+             * when the loader was searched on every call. Share the
+             * instance anchored to its class, if another loader has
+             * already found it. */
+            if (result.containsKey(got.value())) continue;
+            AtomicReference<CompiledTypeFactory> anchor =
+                anchors.get(fact.getClass());
+            anchor.compareAndSet(null, fact);
+            result.put(got.value(), new WeakReference<>(anchor.get()));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+}
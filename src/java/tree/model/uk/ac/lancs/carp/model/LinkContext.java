@@ -38,6 +38,8 @@
 
 package uk.ac.lancs.carp.model;
 
+import uk.ac.lancs.carp.codec.Decoder;
+import uk.ac.lancs.carp.codec.Encoder;
 import uk.ac.lancs.carp.map.ExternalName;
 
 /**
@@ -60,4 +62,48 @@ public interface LinkContext {
      * corresponding Java class
      */
     TypeInfo seek(ExternalName typeName, ClassLoader source);
+
+    /**
+     * Get an encoder for a type. Types that reference other types by
+     * name should obtain encoders for them through this method, so that
+     * a context can share encoders and resolve cycles.
+     * 
+     * @param def the type definition
+     * 
+     * @param type the Java type that the definition maps to; or
+     * {@code null} if it maps to no type
+     * 
+     * @return the requested encoder
+     * 
+     * @default This implementation invokes
+     * {@link Type#getEncoder(Class, LinkContext)} on the definition,
+     * passing this context.
+     * 
+     * @see CodecRegistry
+     */
+    default Encoder getEncoder(Type def, Class<?> type) {
+        return def.getEncoder(type, this);
+    }
+
+    /**
+     * Get a decoder for a type. Types that reference other types by
+     * name should obtain decoders for them through this method, so that
+     * a context can share decoders and resolve cycles.
+     * 
+     * @param def the type definition
+     * 
+     * @param type the Java type that the definition maps to; or
+     * {@code null} if it maps to no type
+     * 
+     * @return the requested decoder
+     * 
+     * @default This implementation invokes
+     * {@link Type#getDecoder(Class, LinkContext)} on the definition,
+     * passing this context.
+     * 
+     * @see CodecRegistry
+     */
+    default Decoder getDecoder(Type def, Class<?> type) {
+        return def.getDecoder(type, this);
+    }
 }
@@ -0,0 +1,386 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import uk.ac.lancs.carp.map.ExternalName;
+
+/**
+ * Holds a module definition in a compact binary form, from which types
+ * can be loaded individually. An image is written alongside the
+ * module's properties by
+ * {@link #write(ModuleDefinition, String, OutputStream)}, and can be
+ * read from a buffer, which may be memory-mapped, with
+ * {@link #wrap(ByteBuffer)}.
+ * 
+ * <p>
+ * Each type is held as the properties that
+ * {@link Type#describe(String, Properties)} yields for it with an empty
+ * prefix, so types are loaded by the same factories as from a
+ * properties file. All strings are held once in a table, and each type
+ * has its own offset, so only the index of names is read when the
+ * image is opened.
+ * 
+ * <p>
+ * All integers are big-endian and four bytes long. The layout is:
+ * 
+ * <ol>
+ * 
+ * <li>the magic number <samp>0x43415250</samp>, i.e.,
+ * <samp>CARP</samp>, and the format version;
+ * 
+ * <li>the number of strings, and the offset of each string;
+ * 
+ * <li>the strings, each as a length and that many bytes of UTF-8;
+ * 
+ * <li>the string index of the Java package;
+ * 
+ * <li>the number of types, and for each the string index of its name
+ * and the offset of its properties;
+ * 
+ * <li>the properties of each type, as their number, and pairs of string
+ * indices for the key and value of each.
+ * 
+ * </ol>
+ * 
+ * @author simpsons
+ */
+public final class ModuleImage {
+    private static final int MAGIC = 0x43415250;
+
+    private static final int VERSION = 1;
+
+    private final ByteBuffer buf;
+
+    private final int stringBase;
+
+    /**
+     * Caches decoded strings. Strings are immutable, so threads racing
+     * to decode the same one merely duplicate the work.
+     */
+    private final String[] strings;
+
+    private final String javaPackage;
+
+    private final Map<ExternalName, Integer> offsets;
+
+    private ModuleImage(ByteBuffer buf) {
+        this.buf = buf;
+        if (buf.capacity() < 12 || buf.getInt(0) != MAGIC)
+            throw new IllegalArgumentException("not a module image");
+        final int version = buf.getInt(4);
+        if (version != VERSION)
+            throw new IllegalArgumentException("unsupported module image"
+                + " version " + version);
+        final int stringCount = count(8, 4);
+        this.stringBase = 12;
+        this.strings = new String[stringCount];
+
+        /* Locate the index, which follows the last string. */
+        int pos = stringBase + 4 * stringCount;
+        if (stringCount > 0) {
+            int last = offset(stringBase + 4 * (stringCount - 1));
+            pos = last + 4 + length(last);
+        }
+        this.javaPackage = string(intAt(pos));
+        final int typeCount = count(pos + 4, 8);
+        pos += 8;
+        Map<ExternalName, Integer> offsets = new HashMap<>();
+        for (int i = 0; i < typeCount; i++, pos += 8)
+            offsets.put(ExternalName.parse(string(intAt(pos))),
+                        offset(pos + 4));
+        this.offsets = Collections.unmodifiableMap(offsets);
+    }
+
+    /**
+     * Read an integer from the image, checking that it lies within the
+     * buffer.
+     * 
+     * @param pos the position of the integer
+     * 
+     * @return the integer's value
+     * 
+     * @throws IllegalArgumentException if the integer lies outside the
+     * buffer
+     */
+    private int intAt(int pos) {
+        if (pos < 0 || pos > buf.capacity() - 4)
+            throw new IllegalArgumentException("truncated module image");
+        return buf.getInt(pos);
+    }
+
+    /**
+     * Read an offset from the image, and check that it points to at
+     * least one integer within the buffer.
+     * 
+     * @param pos the position of the offset
+     * 
+     * @return the offset
+     * 
+     * @throws IllegalArgumentException if the offset or its target lies
+     * outside the buffer
+     */
+    private int offset(int pos) {
+        final int result = intAt(pos);
+        if (result < 0 || result > buf.capacity() - 4)
+            throw new IllegalArgumentException("bad offset " + result
+                + " at " + pos + " in module image");
+        return result;
+    }
+
+    /**
+     * Read the length of a string from the image, and check that its
+     * bytes lie within the buffer.
+     * 
+     * @param off the position of the length, immediately followed by
+     * the bytes
+     * 
+     * @return the length
+     * 
+     * @throws IllegalArgumentException if the length is negative, or
+     * the bytes extend beyond the buffer
+     */
+    private int length(int off) {
+        final int result = intAt(off);
+        if (result < 0 || result > buf.capacity() - off - 4)
+            throw new IllegalArgumentException("bad length " + result
+                + " at " + off + " in module image");
+        return result;
+    }
+
+    /**
+     * Read a count of entries from the image, and check that the
+     * entries could fit within the buffer.
+     * 
+     * @param pos the position of the count, immediately followed by
+     * the entries
+     * 
+     * @param size the size of each entry in bytes
+     * 
+     * @return the count
+     * 
+     * @throws IllegalArgumentException if the count is negative, or the
+     * entries would extend beyond the buffer
+     */
+    private int count(int pos, int size) {
+        final int result = intAt(pos);
+        if (result < 0 || result > (buf.capacity() - pos - 4) / size)
+            throw new IllegalArgumentException("bad count " + result
+                + " at " + pos + " in module image");
+        return result;
+    }
+
+    /**
+     * Open a module image held in a buffer. The buffer's position and
+     * limit are ignored, and its contents must not be changed while
+     * the image is in use.
+     * 
+     * @param buf the buffer containing the image
+     * 
+     * @return the image
+     * 
+     * @throws IllegalArgumentException if the buffer does not contain
+     * a module image of a supported version, or the image is truncated
+     * or corrupt
+     * 
+     * @constructor
+     */
+    public static ModuleImage wrap(ByteBuffer buf) {
+        return new ModuleImage(buf);
+    }
+
+    private String string(int index) {
+        if (index < 0 || index >= strings.length)
+            throw new IllegalArgumentException("bad string index " + index
+                + " in module image");
+        String result = strings[index];
+        if (result != null) return result;
+        final int off = offset(stringBase + 4 * index);
+        byte[] bytes = new byte[length(off)];
+        ByteBuffer src = buf.duplicate();
+        src.position(off + 4);
+        src.get(bytes);
+        return strings[index] = new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the Java package that the module maps to.
+     * 
+     * @return the Java package name
+     */
+    public String javaPackage() {
+        return javaPackage;
+    }
+
+    /**
+     * Get the names of the types in the module.
+     * 
+     * @return an immutable set of the type names
+     */
+    public Set<ExternalName> names() {
+        return offsets.keySet();
+    }
+
+    /**
+     * Load a type from the image.
+     * 
+     * @param typeName the type's name
+     * 
+     * @param ctxt the context for loading nested types
+     * 
+     * @return the type specification; or {@code null} if the module
+     * does not define the type, or its kind is not recognized
+     * 
+     * @throws IllegalArgumentException if the type's entry in the image
+     * is corrupt
+     * 
+     * @constructor
+     */
+    public Type load(ExternalName typeName, LoadContext ctxt) {
+        Integer off = offsets.get(typeName);
+        if (off == null) return null;
+        int pos = off;
+        final int count = count(pos, 8);
+        pos += 4;
+        Properties props = new Properties();
+        for (int i = 0; i < count; i++, pos += 8)
+            props.setProperty(string(intAt(pos)), string(intAt(pos + 4)));
+        return Type.load("", props, ctxt);
+    }
+
+    /**
+     * Write a module definition as an image.
+     * 
+     * @param module the module definition, whose names should be fully
+     * qualified
+     * 
+     * @param javaPackage the Java package that the module maps to
+     * 
+     * @param out the destination for the image
+     * 
+     * @throws IOException if an I/O error occurs
+     */
+    public static void write(ModuleDefinition module, String javaPackage,
+                             OutputStream out)
+        throws IOException {
+        /* Describe each type, and gather the distinct strings. */
+        Map<String, Integer> codes = new LinkedHashMap<>();
+        final int pkgCode = intern(codes, javaPackage);
+        List<Integer> names = new ArrayList<>();
+        List<int[]> entries = new ArrayList<>();
+        for (var entry : module.types.entrySet()) {
+            Properties props = new Properties();
+            entry.getValue().describe("", props);
+            Map<String, String> sorted = new TreeMap<>();
+            for (String key : props.stringPropertyNames())
+                sorted.put(key, props.getProperty(key));
+            int[] pairs = new int[sorted.size() * 2];
+            int i = 0;
+            for (var prop : sorted.entrySet()) {
+                pairs[i++] = intern(codes, prop.getKey());
+                pairs[i++] = intern(codes, prop.getValue());
+            }
+            names.add(intern(codes, entry.getKey().toString()));
+            entries.add(pairs);
+        }
+
+        /* Lay out the strings after the header and their offsets. */
+        List<byte[]> texts = new ArrayList<>(codes.size());
+        for (String s : codes.keySet())
+            texts.add(s.getBytes(StandardCharsets.UTF_8));
+        int pos = 12 + 4 * texts.size();
+        int[] textOffsets = new int[texts.size()];
+        for (int i = 0; i < textOffsets.length; i++) {
+            textOffsets[i] = pos;
+            pos += 4 + texts.get(i).length;
+        }
+
+        /* Lay out the types' properties after the index. */
+        pos += 8 + 8 * names.size();
+        int[] typeOffsets = new int[entries.size()];
+        for (int i = 0; i < typeOffsets.length; i++) {
+            typeOffsets[i] = pos;
+            pos += 4 + 4 * entries.get(i).length;
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(pos);
+        DataOutputStream data = new DataOutputStream(buffer);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(texts.size());
+        for (int off : textOffsets)
+            data.writeInt(off);
+        for (byte[] text : texts) {
+            data.writeInt(text.length);
+            data.write(text);
+        }
+        data.writeInt(pkgCode);
+        data.writeInt(names.size());
+        for (int i = 0; i < typeOffsets.length; i++) {
+            data.writeInt(names.get(i));
+            data.writeInt(typeOffsets[i]);
+        }
+        for (int[] pairs : entries) {
+            data.writeInt(pairs.length / 2);
+            for (int code : pairs)
+                data.writeInt(code);
+        }
+        data.flush();
+        assert buffer.size() == pos;
+        buffer.writeTo(out);
+    }
+
+    private static int intern(Map<String, Integer> codes, String text) {
+        return codes.computeIfAbsent(text, k -> codes.size());
+    }
+}
@@ -40,9 +40,13 @@ package uk.ac.lancs.carp.model.std;
 
 import java.util.Properties;
 import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
 import uk.ac.lancs.carp.codec.Codecs;
 import uk.ac.lancs.carp.codec.Decoder;
+import uk.ac.lancs.carp.codec.DecodingContext;
 import uk.ac.lancs.carp.codec.Encoder;
+import uk.ac.lancs.carp.codec.EncodingContext;
 import uk.ac.lancs.carp.map.ExternalName;
 import uk.ac.lancs.carp.model.ExpansionContext;
 import uk.ac.lancs.carp.model.LinkContext;
@@ -99,20 +103,48 @@ public class BooleanType implements Type {
         return this;
     }
 
-    private static final Encoder encoder =
-        (value, ctxt) -> Codecs.asJson((Boolean) value);
+    private static final Encoder encoder = new Encoder() {
+        @Override
+        public JsonValue encodeJson(Object value, EncodingContext ctxt) {
+            return Codecs.asJson((Boolean) value);
+        }
+
+        @Override
+        public void writeJson(Object value, EncodingContext ctxt,
+                              JsonGenerator out) {
+            out.write((Boolean) value);
+        }
+    };
+
+    private static final Decoder decoder = new Decoder() {
+        @Override
+        public Object decodeJson(JsonValue value, DecodingContext ctxt) {
+            JsonValue.ValueType type = value.getValueType();
+            switch (type) {
+            case TRUE:
+                return Boolean.TRUE;
+
+            case FALSE:
+                return Boolean.FALSE;
+
+            default:
+                throw new ClassCastException("not boolean, but " + type);
+            }
+        }
 
-    private static final Decoder decoder = (value, ctxt) -> {
-        JsonValue.ValueType type = value.getValueType();
-        switch (type) {
-        case TRUE:
-            return Boolean.TRUE;
+        @Override
+        public Object readJson(JsonParser.Event event, JsonParser in,
+                               DecodingContext ctxt) {
+            switch (event) {
+            case VALUE_TRUE:
+                return Boolean.TRUE;
 
-        case FALSE:
-            return Boolean.FALSE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
 
-        default:
-            throw new ClassCastException("not boolean, but " + type);
+            default:
+                throw new ClassCastException("not boolean, but " + event);
+            }
         }
     };
 
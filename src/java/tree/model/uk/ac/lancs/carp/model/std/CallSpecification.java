@@ -262,6 +262,48 @@ public final class CallSpecification {
             .toString();
     }
 
+    /**
+     * Write a method of a client stub implementing this call.
+     * 
+     * @param out the destination for the method definition
+     * 
+     * @param ownerName the Java name of the interface declaring the call
+     * 
+     * @param name the call's name
+     * 
+     * @param index the position of the call in the stub's list
+     * 
+     * @param ctxt a context for expanding parameter types
+     */
+    void defineStubMethod(TextFile out, String ownerName, ExternalName name,
+                          int index, ExpansionContext ctxt) {
+        String rspType = responses.isEmpty() ? "void" :
+            ownerName + '.' + name.asJavaClassName();
+        out.format("@java.lang.Override%n");
+        out.format("public %s %s(", rspType, name.asJavaMethodName());
+        String sep = "";
+        StringBuilder args = new StringBuilder();
+        for (Map.Entry<ExternalName, Member> entry : parameters.members
+            .entrySet()) {
+            ExternalName parName = entry.getKey();
+            Member memb = entry.getValue();
+            out.format("%s%s %s", sep,
+                       memb.type.declareJava(memb.required, false, ctxt),
+                       parName.asJavaMethodName());
+            args.append(sep).append(parName.asJavaMethodName());
+            sep = ", ";
+        }
+        out.format(") {%n");
+        String argList = args.length() == 0 ? "new java.lang.Object[0]" :
+            "new java.lang.Object[] { " + args + " }";
+        if (responses.isEmpty())
+            out.format("  carp$target.invoke(%d, %s);%n", index, argList);
+        else
+            out.format("  return (%s) carp$target.invoke(%d, %s);%n", rspType,
+                       index, argList);
+        out.format("}%n");
+    }
+
     void defineJavaType(TextFile out, ExternalName typeName, ExternalName name,
                         ExpansionContext ctxt) {
         {
@@ -49,12 +49,18 @@ import java.util.Properties;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
 import uk.ac.lancs.carp.codec.Codecs;
 import uk.ac.lancs.carp.codec.Decoder;
 import uk.ac.lancs.carp.codec.DecodingContext;
+import uk.ac.lancs.carp.codec.Direction;
 import uk.ac.lancs.carp.codec.Encoder;
 import uk.ac.lancs.carp.codec.EncodingContext;
 import uk.ac.lancs.carp.map.ExternalName;
+import uk.ac.lancs.carp.map.Stub;
+import uk.ac.lancs.carp.map.StubTarget;
 import uk.ac.lancs.carp.map.TypeModel;
 import uk.ac.lancs.carp.model.DocContext;
 import uk.ac.lancs.carp.model.DocRef;
@@ -85,6 +91,12 @@ public class InterfaceType implements Type {
      */
     public final Map<ExternalName, CallSpecification> calls;
 
+    /**
+     * The name of the client stub class nested in each generated
+     * interface
+     */
+    public static final String STUB_CLASS_NAME = "$Stub";
+
     /**
      * {@inheritDoc}
      * 
@@ -95,10 +107,22 @@ public class InterfaceType implements Type {
     @Override
     public Encoder getEncoder(Class<?> type, LinkContext ctxt) {
         Objects.requireNonNull(type, "type");
-        return (value, dctxt) -> {
-            URI location = dctxt.establishCallback(type, value);
-            String loc = location.toASCIIString();
-            return Codecs.asJson(loc);
+        return new Encoder() {
+            @Override
+            public JsonValue encodeJson(Object value, EncodingContext dctxt) {
+                return Codecs.asJson(locate(value, dctxt));
+            }
+
+            @Override
+            public void writeJson(Object value, EncodingContext dctxt,
+                                  JsonGenerator out) {
+                out.write(locate(value, dctxt));
+            }
+
+            private String locate(Object value, EncodingContext dctxt) {
+                URI location = dctxt.establishCallback(type, value);
+                return location.toASCIIString();
+            }
         };
     }
 
@@ -112,10 +136,22 @@ public class InterfaceType implements Type {
     @Override
     public Decoder getDecoder(Class<?> type, LinkContext ctxt) {
         Objects.requireNonNull(type, "type");
-        return (value, dctxt) -> {
-            JsonString typed = (JsonString) value;
-            URI location = URI.create(typed.getString());
-            return dctxt.seek(type, location);
+        return new Decoder() {
+            @Override
+            public Object decodeJson(JsonValue value, DecodingContext dctxt) {
+                JsonString typed = (JsonString) value;
+                URI location = URI.create(typed.getString());
+                return dctxt.seek(type, location);
+            }
+
+            @Override
+            public Object readJson(JsonParser.Event event, JsonParser in,
+                                   DecodingContext dctxt) {
+                Codecs.expect(Direction.DECODING,
+                              JsonParser.Event.VALUE_STRING, event);
+                URI location = URI.create(in.getString());
+                return dctxt.seek(type, location);
+            }
         };
     }
 
@@ -404,7 +440,10 @@ public class InterfaceType implements Type {
      * @default This implementation writes a Java interface type. Each
      * call gets its own method and nested return type. Inherited types
      * are listed in the {@code extends} clause, having been translated
-     * to their Java names.
+     * to their Java names. If the definitions of all inherited types are
+     * available, a nested client stub is also written, implementing
+     * every call, inherited or not, by passing its arguments to a
+     * {@link StubTarget}.
      */
     @Override
     public void defineJavaType(TextFile out, ExternalName name,
@@ -473,6 +512,14 @@ public class InterfaceType implements Type {
                 call.defineJavaType(out, name, callName, ctxt);
             }
 
+            String javaName =
+                pkgName + '.' + name.getLeaf().asJavaClassName();
+            Map<ExternalName, String> owners = new LinkedHashMap<>();
+            Map<ExternalName, CallSpecification> allCalls =
+                new LinkedHashMap<>();
+            if (gatherCalls(this, javaName, ctxt, owners, allCalls))
+                defineStub(out, javaName, owners, allCalls, ctxt);
+
             try (Tab tab2 = out.comment()) {
                 out.format("Thanks.");
             }
@@ -481,6 +528,101 @@ public class InterfaceType implements Type {
         out.format("}%n");
     }
 
+    /**
+     * Gather the calls of an interface type and its ancestors, and the
+     * Java names of the interfaces declaring them.
+     * 
+     * @param type the interface type
+     * 
+     * @param javaName the Java name of the interface type
+     * 
+     * @param ctxt a context for finding the definitions of ancestors
+     * 
+     * @param owners updated with the Java name of each call's declaring
+     * interface
+     * 
+     * @param calls updated with the specification of each call
+     * 
+     * @return {@code true} if all calls were found; {@code false} if
+     * an ancestor's definition was not available
+     */
+    private static boolean
+        gatherCalls(InterfaceType type, String javaName,
+                    ExpansionContext ctxt, Map<ExternalName, String> owners,
+                    Map<ExternalName, CallSpecification> calls) {
+        for (var entry : type.calls.entrySet()) {
+            owners.putIfAbsent(entry.getKey(), javaName);
+            calls.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+        for (Type anc : type.ancestors) {
+            if (!(anc instanceof ReferenceType)) return false;
+            Type model = ctxt.getModel(((ReferenceType) anc).name);
+            if (!(model instanceof InterfaceType)) return false;
+            if (!gatherCalls((InterfaceType) model,
+                             anc.declareJava(false, false, ctxt), ctxt,
+                             owners, calls))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Write a client stub as a nested class.
+     * 
+     * @param out the destination for the class definition
+     * 
+     * @param javaName the Java name of the implemented interface
+     * 
+     * @param owners the Java name of each call's declaring interface
+     * 
+     * @param calls the specification of each call
+     * 
+     * @param ctxt a context for expanding parameter types
+     */
+    private static void defineStub(TextFile out, String javaName,
+                                   Map<ExternalName, String> owners,
+                                   Map<ExternalName,
+                                       CallSpecification> calls,
+                                   ExpansionContext ctxt) {
+        try (Tab tab1 = out.documentation()) {
+            out.format("Invokes a remote receiver. This class is used "
+                + "by the run-time library; there is no need to use it "
+                + "directly.%n");
+            out.format("@undocumented%n");
+        }
+        out.format("@%s({", Stub.class.getCanonicalName());
+        String sep = " ";
+        for (ExternalName callName : calls.keySet()) {
+            out.format("%s\"%s\"", sep, callName);
+            sep = ", ";
+        }
+        out.format(" })%n");
+        out.format("final class %s implements %s {%n", STUB_CLASS_NAME,
+                   javaName);
+        try (Tab tab1 = out.tab("  ")) {
+            String target = StubTarget.class.getCanonicalName();
+            out.format("private final %s carp$target;%n%n", target);
+            out.format("public %s(%s carp$target) {%n", STUB_CLASS_NAME,
+                       target);
+            out.format("  this.carp$target = carp$target;%n");
+            out.format("}%n%n");
+
+            out.format("@java.lang.Override%n");
+            out.format("public java.lang.String toString() {%n");
+            out.format("  return carp$target.toString();%n");
+            out.format("}%n");
+
+            int index = 0;
+            for (var entry : calls.entrySet()) {
+                ExternalName callName = entry.getKey();
+                out.format("%n");
+                entry.getValue().defineStubMethod(out, owners.get(callName),
+                                                  callName, index++, ctxt);
+            }
+        }
+        out.format("}%n%n");
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -46,9 +46,14 @@ import javax.json.Json;
 import javax.json.JsonArray;
 import javax.json.JsonArrayBuilder;
 import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
+import uk.ac.lancs.carp.codec.Codecs;
 import uk.ac.lancs.carp.codec.Decoder;
+import uk.ac.lancs.carp.codec.DecodingContext;
 import uk.ac.lancs.carp.codec.Direction;
 import uk.ac.lancs.carp.codec.Encoder;
+import uk.ac.lancs.carp.codec.EncodingContext;
 import uk.ac.lancs.carp.codec.TypeMismatchException;
 import uk.ac.lancs.carp.map.ExternalName;
 import uk.ac.lancs.carp.model.ExpansionContext;
@@ -96,9 +101,10 @@ public final class MapType implements Type {
     public Encoder getEncoder(Class<?> type, LinkContext ctxt) {
         Encoder keyCodec = keyType.getEncoder(null, ctxt);
         Encoder valueCodec = valueType.getEncoder(null, ctxt);
-        return (value, dctxt) -> {
-            try {
-                Map<?, ?> typed = (Map<?, ?>) value;
+        return new Encoder() {
+            @Override
+            public JsonValue encodeJson(Object value, EncodingContext dctxt) {
+                Map<?, ?> typed = asMap(value);
                 JsonArrayBuilder builder = Json.createArrayBuilder();
                 for (var entry : typed.entrySet()) {
                     JsonValue encKey =
@@ -110,12 +116,32 @@ public final class MapType implements Type {
                     builder.add(elem);
                 }
                 return builder.build();
-            } catch (ClassCastException ex) {
-                throw new TypeMismatchException(Direction.DECODING,
-                                                "unexpected Java type"
-                                                    + " for map: "
-                                                    + value.getClass(),
-                                                ex);
+            }
+
+            @Override
+            public void writeJson(Object value, EncodingContext dctxt,
+                                  JsonGenerator out) {
+                Map<?, ?> typed = asMap(value);
+                out.writeStartArray();
+                for (var entry : typed.entrySet()) {
+                    out.writeStartArray();
+                    keyCodec.writeJson(entry.getKey(), dctxt, out);
+                    valueCodec.writeJson(entry.getValue(), dctxt, out);
+                    out.writeEnd();
+                }
+                out.writeEnd();
+            }
+
+            private Map<?, ?> asMap(Object value) {
+                try {
+                    return (Map<?, ?>) value;
+                } catch (ClassCastException ex) {
+                    throw new TypeMismatchException(Direction.DECODING,
+                                                    "unexpected Java type"
+                                                        + " for map: "
+                                                        + value.getClass(),
+                                                    ex);
+                }
             }
         };
     }
@@ -135,21 +161,46 @@ public final class MapType implements Type {
     public Decoder getDecoder(Class<?> type, LinkContext ctxt) {
         Decoder keyCodec = keyType.getDecoder(null, ctxt);
         Decoder valueCodec = valueType.getDecoder(null, ctxt);
-        return (value, dctxt) -> {
-            try {
-                JsonArray typed = (JsonArray) value;
+        return new Decoder() {
+            @Override
+            public Object decodeJson(JsonValue value, DecodingContext dctxt) {
+                try {
+                    JsonArray typed = (JsonArray) value;
+                    Map<Object, Object> result = new HashMap<>();
+                    for (var entry : typed.getValuesAs(JsonArray.class)) {
+                        Object decKey =
+                            keyCodec.decodeJson(entry.get(0), dctxt);
+                        Object decVal =
+                            valueCodec.decodeJson(entry.get(1), dctxt);
+                        result.put(decKey, decVal);
+                    }
+                    return result;
+                } catch (ClassCastException ex) {
+                    throw new TypeMismatchException(Direction.DECODING,
+                                                    "expected JSON array;"
+                                                        + " got "
+                                                        + value.getValueType(),
+                                                    ex);
+                }
+            }
+
+            @Override
+            public Object readJson(JsonParser.Event event, JsonParser in,
+                                   DecodingContext dctxt) {
+                Codecs.expect(Direction.DECODING,
+                              JsonParser.Event.START_ARRAY, event);
                 Map<Object, Object> result = new HashMap<>();
-                for (var entry : typed.getValuesAs(JsonArray.class)) {
-                    Object decKey = keyCodec.decodeJson(entry.get(0), dctxt);
-                    Object decVal = valueCodec.decodeJson(entry.get(1), dctxt);
+                for (var ev = in.next(); ev != JsonParser.Event.END_ARRAY;
+                     ev = in.next()) {
+                    Codecs.expect(Direction.DECODING,
+                                  JsonParser.Event.START_ARRAY, ev);
+                    Object decKey = keyCodec.readJson(in.next(), in, dctxt);
+                    Object decVal = valueCodec.readJson(in.next(), in, dctxt);
+                    Codecs.expect(Direction.DECODING,
+                                  JsonParser.Event.END_ARRAY, in.next());
                     result.put(decKey, decVal);
                 }
                 return result;
-            } catch (ClassCastException ex) {
-                throw new TypeMismatchException(Direction.DECODING,
-                                                "expected JSON array;" + " got "
-                                                    + value.getValueType(),
-                                                ex);
             }
         };
     }
@@ -358,27 +358,27 @@ public final class ReferenceType implements Type {
      * {@inheritDoc}
      * 
      * @default The referenced type's name and class loader are passed
-     * to {@link LinkContext#seek(ExternalName, ClassLoader)}, and
-     * {@link Type#getEncoder(Class, LinkContext)} is applied to the
-     * resultant type definition.
+     * to {@link LinkContext#seek(ExternalName, ClassLoader)}, and the
+     * resultant type definition and class are passed to
+     * {@link LinkContext#getEncoder(Type, Class)}.
      */
     @Override
     public Encoder getEncoder(Class<?> type, LinkContext ctxt) {
         TypeInfo typeInfo = ctxt.seek(this.name, source);
-        return typeInfo.def.getEncoder(typeInfo.type, ctxt);
+        return ctxt.getEncoder(typeInfo.def, typeInfo.type);
     }
 
     /**
      * {@inheritDoc}
      * 
      * @default The referenced type's name and class loader are passed
-     * to {@link LinkContext#seek(ExternalName, ClassLoader)}, and
-     * {@link Type#getDecoder(Class, LinkContext)} is applied to the
-     * resultant type definition.
+     * to {@link LinkContext#seek(ExternalName, ClassLoader)}, and the
+     * resultant type definition and class are passed to
+     * {@link LinkContext#getDecoder(Type, Class)}.
      */
     @Override
     public Decoder getDecoder(Class<?> type, LinkContext ctxt) {
         TypeInfo typeInfo = ctxt.seek(this.name, source);
-        return typeInfo.def.getDecoder(typeInfo.type, ctxt);
+        return ctxt.getDecoder(typeInfo.def, typeInfo.type);
     }
 }
@@ -48,8 +48,14 @@ import javax.json.Json;
 import javax.json.JsonArray;
 import javax.json.JsonArrayBuilder;
 import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
+import uk.ac.lancs.carp.codec.Codecs;
 import uk.ac.lancs.carp.codec.Decoder;
+import uk.ac.lancs.carp.codec.DecodingContext;
+import uk.ac.lancs.carp.codec.Direction;
 import uk.ac.lancs.carp.codec.Encoder;
+import uk.ac.lancs.carp.codec.EncodingContext;
 import uk.ac.lancs.carp.map.ExternalName;
 import uk.ac.lancs.carp.model.ExpansionContext;
 import uk.ac.lancs.carp.model.LinkContext;
@@ -84,12 +90,25 @@ public final class SequenceType implements Type {
     @Override
     public Encoder getEncoder(Class<?> type, LinkContext ctxt) {
         Encoder elemCodec = elementType.getEncoder(null, ctxt);
-        return (value, c) -> {
-            Collection<?> typed = (Collection<?>) value;
-            JsonArrayBuilder builder = Json.createArrayBuilder();
-            for (Object v : typed)
-                builder.add(elemCodec.encodeJson(v, c));
-            return builder.build();
+        return new Encoder() {
+            @Override
+            public JsonValue encodeJson(Object value, EncodingContext c) {
+                Collection<?> typed = (Collection<?>) value;
+                JsonArrayBuilder builder = Json.createArrayBuilder();
+                for (Object v : typed)
+                    builder.add(elemCodec.encodeJson(v, c));
+                return builder.build();
+            }
+
+            @Override
+            public void writeJson(Object value, EncodingContext c,
+                                  JsonGenerator out) {
+                Collection<?> typed = (Collection<?>) value;
+                out.writeStartArray();
+                for (Object v : typed)
+                    elemCodec.writeJson(v, c, out);
+                out.writeEnd();
+            }
         };
     }
 
@@ -105,12 +124,27 @@ public final class SequenceType implements Type {
     @Override
     public Decoder getDecoder(Class<?> type, LinkContext ctxt) {
         Decoder elemCodec = elementType.getDecoder(null, ctxt);
-        return (value, c) -> {
-            JsonArray arr = (JsonArray) value;
-            List<Object> result = new ArrayList<>(arr.size());
-            for (JsonValue v : arr)
-                result.add(elemCodec.decodeJson(v, c));
-            return result;
+        return new Decoder() {
+            @Override
+            public Object decodeJson(JsonValue value, DecodingContext c) {
+                JsonArray arr = (JsonArray) value;
+                List<Object> result = new ArrayList<>(arr.size());
+                for (JsonValue v : arr)
+                    result.add(elemCodec.decodeJson(v, c));
+                return result;
+            }
+
+            @Override
+            public Object readJson(JsonParser.Event event, JsonParser in,
+                                   DecodingContext c) {
+                Codecs.expect(Direction.DECODING,
+                              JsonParser.Event.START_ARRAY, event);
+                List<Object> result = new ArrayList<>();
+                for (var ev = in.next(); ev != JsonParser.Event.END_ARRAY;
+                     ev = in.next())
+                    result.add(elemCodec.readJson(ev, in, c));
+                return result;
+            }
         };
     }
 
@@ -51,11 +51,14 @@ import javax.json.JsonArray;
 import javax.json.JsonArrayBuilder;
 import javax.json.JsonNumber;
 import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
 import uk.ac.lancs.carp.codec.Codecs;
 import uk.ac.lancs.carp.codec.Decoder;
 import uk.ac.lancs.carp.codec.DecodingContext;
 import uk.ac.lancs.carp.codec.Direction;
 import uk.ac.lancs.carp.codec.Encoder;
+import uk.ac.lancs.carp.codec.EncodingContext;
 import uk.ac.lancs.carp.codec.TypeMismatchException;
 import uk.ac.lancs.carp.map.ExternalName;
 import uk.ac.lancs.carp.model.ExpansionContext;
@@ -92,8 +95,19 @@ public final class SetType implements Type {
         }
     }
 
+    private static BigInteger toBigInteger(BitSet typed) {
+        /* Get a big-endian byte representation of the bitset, so we
+         * can convert it to a big integer. */
+        byte[] raw = typed.toByteArray();
+        reverse(raw);
+        return new BigInteger(raw);
+    }
+
     private static BitSet decodeToBitset(JsonNumber num) {
-        BigInteger zark = num.bigIntegerValue();
+        return decodeToBitset(num.bigIntegerValue());
+    }
+
+    private static BitSet decodeToBitset(BigInteger zark) {
         byte[] raw = zark.toByteArray();
         reverse(raw);
         BitSet typed = BitSet.valueOf(raw);
@@ -110,9 +124,23 @@ public final class SetType implements Type {
         return result;
     }
 
+    private static BitSet readToBitset(JsonParser in, Decoder sub,
+                                       DecodingContext ctxt) {
+        BitSet result = new BitSet();
+        for (var ev = in.next(); ev != JsonParser.Event.END_ARRAY;
+             ev = in.next()) {
+            Number o = (Number) sub.readJson(ev, in, ctxt);
+            result.set(o.intValue());
+        }
+        return result;
+    }
+
     private static Collection<?> decodeToCollection(JsonNumber num) {
-        BitSet result = decodeToBitset(num);
-        return result.stream().boxed().collect(Collectors.toSet());
+        return decodeToCollection(decodeToBitset(num));
+    }
+
+    private static Collection<?> decodeToCollection(BitSet bits) {
+        return bits.stream().boxed().collect(Collectors.toSet());
     }
 
     private static Collection<?> decodeToCollection(JsonArray arr, Decoder sub,
@@ -125,6 +153,23 @@ public final class SetType implements Type {
         return result;
     }
 
+    private static Collection<?> readToCollection(JsonParser in, Decoder sub,
+                                                  DecodingContext ctxt) {
+        Collection<Object> result = new HashSet<>();
+        for (var ev = in.next(); ev != JsonParser.Event.END_ARRAY;
+             ev = in.next()) {
+            Object o = sub.readJson(ev, in, ctxt);
+            result.add(o);
+        }
+        return result;
+    }
+
+    private static TypeMismatchException mismatch(Object got) {
+        return new TypeMismatchException(Direction.DECODING,
+                                         "expected JSON array"
+                                             + " or number; got " + got);
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -140,24 +185,41 @@ public final class SetType implements Type {
     @Override
     public Encoder getEncoder(Class<?> type, LinkContext ctxt) {
         if (elementType.isBitSetIndex()) {
-            return (value, ectxt) -> {
-                BitSet typed = (BitSet) value;
-
-                /* Get a big-endian byte representation of the bitset,
-                 * so we can convert it to a big integer. */
-                byte[] raw = typed.toByteArray();
-                reverse(raw);
-                BigInteger zark = new BigInteger(raw);
-                return Codecs.asJson(zark);
+            return new Encoder() {
+                @Override
+                public JsonValue encodeJson(Object value,
+                                            EncodingContext ectxt) {
+                    return Codecs.asJson(toBigInteger((BitSet) value));
+                }
+
+                @Override
+                public void writeJson(Object value, EncodingContext ectxt,
+                                      JsonGenerator out) {
+                    out.write(toBigInteger((BitSet) value));
+                }
             };
         } else {
             final Encoder elemCodec = elementType.getEncoder(null, ctxt);
-            return (value, ectxt) -> {
-                Collection<?> typed = (Collection<?>) value;
-                JsonArrayBuilder builder = Json.createArrayBuilder();
-                for (Object elem : typed)
-                    builder.add(elemCodec.encodeJson(elem, ectxt));
-                return builder.build();
+            return new Encoder() {
+                @Override
+                public JsonValue encodeJson(Object value,
+                                            EncodingContext ectxt) {
+                    Collection<?> typed = (Collection<?>) value;
+                    JsonArrayBuilder builder = Json.createArrayBuilder();
+                    for (Object elem : typed)
+                        builder.add(elemCodec.encodeJson(elem, ectxt));
+                    return builder.build();
+                }
+
+                @Override
+                public void writeJson(Object value, EncodingContext ectxt,
+                                      JsonGenerator out) {
+                    Collection<?> typed = (Collection<?>) value;
+                    out.writeStartArray();
+                    for (Object elem : typed)
+                        elemCodec.writeJson(elem, ectxt, out);
+                    out.writeEnd();
+                }
             };
         }
     }
@@ -193,29 +255,64 @@ public final class SetType implements Type {
     public Decoder getDecoder(Class<?> type, LinkContext ctxt) {
         final Decoder elemCodec = elementType.getDecoder(null, ctxt);
         if (elementType.isBitSetIndex()) {
-            return (value, dctxt) -> {
-                assert value != null;
-                if (value instanceof JsonNumber)
-                    return decodeToBitset((JsonNumber) value);
-                else if (value instanceof JsonArray)
-                    return decodeToBitset((JsonArray) value, elemCodec, dctxt);
-                throw new TypeMismatchException(Direction.DECODING,
-                                                "expected JSON array"
-                                                    + " or number; got "
-                                                    + value.getValueType());
+            return new Decoder() {
+                @Override
+                public Object decodeJson(JsonValue value,
+                                         DecodingContext dctxt) {
+                    assert value != null;
+                    if (value instanceof JsonNumber)
+                        return decodeToBitset((JsonNumber) value);
+                    else if (value instanceof JsonArray)
+                        return decodeToBitset((JsonArray) value, elemCodec,
+                                              dctxt);
+                    throw mismatch(value.getValueType());
+                }
+
+                @Override
+                public Object readJson(JsonParser.Event event, JsonParser in,
+                                       DecodingContext dctxt) {
+                    switch (event) {
+                    case VALUE_NUMBER:
+                        return decodeToBitset(in.getBigDecimal()
+                            .toBigInteger());
+
+                    case START_ARRAY:
+                        return readToBitset(in, elemCodec, dctxt);
+
+                    default:
+                        throw mismatch(event);
+                    }
+                }
             };
         } else {
-            return (value, dctxt) -> {
-                assert value != null;
-                if (value instanceof JsonNumber)
-                    return decodeToCollection((JsonNumber) value);
-                else if (value instanceof JsonArray)
-                    return decodeToCollection((JsonArray) value, elemCodec,
-                                              dctxt);
-                throw new TypeMismatchException(Direction.DECODING,
-                                                "expected JSON array"
-                                                    + " or number; got "
-                                                    + value.getValueType());
+            return new Decoder() {
+                @Override
+                public Object decodeJson(JsonValue value,
+                                         DecodingContext dctxt) {
+                    assert value != null;
+                    if (value instanceof JsonNumber)
+                        return decodeToCollection((JsonNumber) value);
+                    else if (value instanceof JsonArray)
+                        return decodeToCollection((JsonArray) value,
+                                                  elemCodec, dctxt);
+                    throw mismatch(value.getValueType());
+                }
+
+                @Override
+                public Object readJson(JsonParser.Event event, JsonParser in,
+                                       DecodingContext dctxt) {
+                    switch (event) {
+                    case VALUE_NUMBER:
+                        return decodeToCollection(decodeToBitset(in
+                            .getBigDecimal().toBigInteger()));
+
+                    case START_ARRAY:
+                        return readToCollection(in, elemCodec, dctxt);
+
+                    default:
+                        throw mismatch(event);
+                    }
+                }
             };
         }
     }
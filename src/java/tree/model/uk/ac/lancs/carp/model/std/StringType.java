@@ -40,9 +40,15 @@ package uk.ac.lancs.carp.model.std;
 
 import java.util.Properties;
 import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
 import uk.ac.lancs.carp.codec.Codecs;
 import uk.ac.lancs.carp.codec.Decoder;
+import uk.ac.lancs.carp.codec.DecodingContext;
+import uk.ac.lancs.carp.codec.Direction;
 import uk.ac.lancs.carp.codec.Encoder;
+import uk.ac.lancs.carp.codec.EncodingContext;
 import uk.ac.lancs.carp.map.ExternalName;
 import uk.ac.lancs.carp.model.ExpansionContext;
 import uk.ac.lancs.carp.model.LinkContext;
@@ -95,8 +101,18 @@ public final class StringType implements Type {
         return this;
     }
 
-    private static final Encoder encoder =
-        (value, ctxt) -> Codecs.asJson(value.toString());
+    private static final Encoder encoder = new Encoder() {
+        @Override
+        public JsonValue encodeJson(Object value, EncodingContext ctxt) {
+            return Codecs.asJson(value.toString());
+        }
+
+        @Override
+        public void writeJson(Object value, EncodingContext ctxt,
+                              JsonGenerator out) {
+            out.write(value.toString());
+        }
+    };
 
     /**
      * {@inheritDoc}
@@ -109,8 +125,20 @@ public final class StringType implements Type {
         return encoder;
     }
 
-    private static final Decoder decoder =
-        (value, ctxt) -> ((JsonString) value).getString();
+    private static final Decoder decoder = new Decoder() {
+        @Override
+        public Object decodeJson(JsonValue value, DecodingContext ctxt) {
+            return ((JsonString) value).getString();
+        }
+
+        @Override
+        public Object readJson(JsonParser.Event event, JsonParser in,
+                               DecodingContext ctxt) {
+            Codecs.expect(Direction.DECODING, JsonParser.Event.VALUE_STRING,
+                          event);
+            return in.getString();
+        }
+    };
 
     /**
      * {@inheritDoc}
@@ -38,7 +38,9 @@
 
 package uk.ac.lancs.carp.model.std;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -54,10 +56,15 @@ import javax.json.Json;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
 import uk.ac.lancs.carp.codec.CodecException;
+import uk.ac.lancs.carp.codec.Codecs;
 import uk.ac.lancs.carp.codec.Decoder;
+import uk.ac.lancs.carp.codec.DecodingContext;
 import uk.ac.lancs.carp.codec.Direction;
 import uk.ac.lancs.carp.codec.Encoder;
+import uk.ac.lancs.carp.codec.EncodingContext;
 import uk.ac.lancs.carp.map.Builder;
 import uk.ac.lancs.carp.map.Completable;
 import uk.ac.lancs.carp.map.Completer;
@@ -101,6 +108,33 @@ public final class StructureType implements Type {
             memb.type.gatherReferences(referrent, dest);
     }
 
+    /**
+     * Get a method handle for a reflected method, adapted to accept and
+     * return only {@link Object}s. Access checks are suppressed on the
+     * method first, so it need not be public.
+     * 
+     * @param m the method, or {@code null}
+     * 
+     * @param dir the direction of the codec requiring the method
+     * 
+     * @return a handle on the method, taking the receiver (if not
+     * static) as its first argument; or {@code null} if the method is
+     * {@code null}
+     * 
+     * @throws CodecException if access to the method was denied
+     */
+    private static MethodHandle handleOf(Method m, Direction dir) {
+        if (m == null) return null;
+        m.setAccessible(true);
+        try {
+            MethodHandle h = MethodHandles.lookup().unreflect(m);
+            return h.asType(MethodType.genericMethodType(h.type()
+                .parameterCount()));
+        } catch (IllegalAccessException ex) {
+            throw new CodecException(dir, "reflecting " + m, ex);
+        }
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -112,6 +146,11 @@ public final class StructureType implements Type {
      * converts to JSON using the corresponding getter, and adds the
      * converted value to a JSON structure, under the corresponding
      * member name.
+     * 
+     * <p>
+     * Getters are resolved to method handles, and the fields are laid
+     * out in a fixed order, once when the encoder is created, so no
+     * reflection or map iteration takes place per value.
      */
     @Override
     public Encoder getEncoder(Class<?> type, LinkContext ctxt) {
@@ -122,7 +161,7 @@ public final class StructureType implements Type {
 
             boolean required;
         }
-        final Map<ExternalName, Row> rows = new HashMap<>();
+        final Map<ExternalName, Row> rows = new LinkedHashMap<>();
 
         /**
          * Find out how to read fields from the structure.
@@ -131,7 +170,6 @@ public final class StructureType implements Type {
             var ann = m.getAnnotation(Getter.class);
             if (ann != null) {
                 ExternalName n = ExternalName.parse(ann.value());
-                m.setAccessible(true);
                 rows.computeIfAbsent(n, k -> new Row()).getter = m;
             }
         }
@@ -146,22 +184,55 @@ public final class StructureType implements Type {
                 rows.computeIfAbsent(key, k -> new Row()).required = true;
         }
 
-        return (value, dctxt) -> {
-            JsonObjectBuilder builder = Json.createObjectBuilder();
-            for (var entry : rows.entrySet()) {
-                ExternalName key = entry.getKey();
+        /* Flatten the rows into parallel arrays. */
+        final int len = rows.size();
+        final String[] keys = new String[len];
+        final MethodHandle[] getters = new MethodHandle[len];
+        final Encoder[] codecs = new Encoder[len];
+        int i = 0;
+        for (var entry : rows.entrySet()) {
+            Row row = entry.getValue();
+            keys[i] = entry.getKey().toString();
+            getters[i] = handleOf(row.getter, Direction.ENCODING);
+            codecs[i] = row.codec;
+            i++;
+        }
+
+        return new Encoder() {
+            @Override
+            public JsonValue encodeJson(Object value, EncodingContext dctxt) {
+                JsonObjectBuilder builder = Json.createObjectBuilder();
+                for (int j = 0; j < len; j++) {
+                    Object v = get(value, j);
+                    JsonValue jv = codecs[j].encodeJson(v, dctxt);
+                    builder.add(keys[j], jv);
+                }
+                return builder.build();
+            }
+
+            @Override
+            public void writeJson(Object value, EncodingContext dctxt,
+                                  JsonGenerator out) {
+                out.writeStartObject();
+                for (int j = 0; j < len; j++) {
+                    Object v = get(value, j);
+                    out.writeKey(keys[j]);
+                    codecs[j].writeJson(v, dctxt, out);
+                }
+                out.writeEnd();
+            }
+
+            private Object get(Object value, int j) {
                 try {
-                    Row row = entry.getValue();
-                    Object v = row.getter.invoke(value);
-                    JsonValue jv = row.codec.encodeJson(v, dctxt);
-                    builder.add(key.toString(), jv);
-                } catch (IllegalAccessException | IllegalArgumentException |
-                         InvocationTargetException ex) {
+                    return (Object) getters[j].invokeExact(value);
+                } catch (CodecException | Error ex) {
+                    throw ex;
+                } catch (Throwable ex) {
                     throw new CodecException(Direction.ENCODING,
-                                             "reflecting key " + key, ex);
+                                             "reflecting key " + keys[j],
+                                             ex);
                 }
             }
-            return builder.build();
         };
     }
 
@@ -182,6 +253,11 @@ public final class StructureType implements Type {
      * uses the corresponding member decoder to convert to Java, and the
      * corresponding setter to record that member's value. Finally, it
      * calls a completer to create the structure instance.
+     * 
+     * <p>
+     * As with {@link #getEncoder(Class, LinkContext)}, setters and
+     * completers are resolved to method handles in a fixed field order
+     * when the decoder is created.
      */
     @Override
     public Decoder getDecoder(Class<?> type, LinkContext ctxt) {
@@ -191,38 +267,20 @@ public final class StructureType implements Type {
             Decoder codec;
 
             boolean required;
-
-            /**
-             * Set this field.
-             * 
-             * @param builder the current builder object, or
-             * {@code null} if it has not yet been created
-             * 
-             * @param value the value to set this field to
-             * 
-             * @return a builder for subsequent settings of other fields
-             */
-            Object set(Object builder, Object value)
-                throws IllegalAccessException,
-                    IllegalArgumentException,
-                    InvocationTargetException {
-                if (builder == null)
-                    return initialSetter.invoke(null, value);
-                else
-                    return setter.invoke(builder, value);
-            }
         }
-        final Map<ExternalName, Row> rows = new HashMap<>();
+        final Map<ExternalName, Row> rows = new LinkedHashMap<>();
         final Class<?> builderType = Arrays.asList(type.getDeclaredClasses())
             .stream().filter(c -> c.getAnnotation(Builder.class) != null)
             .findAny().get();
-        final Method end = Arrays.asList(builderType.getDeclaredMethods())
-            .stream().filter(m -> m.getAnnotation(Completer.class) != null)
-            .findAny().get();
-        final Method initialEnd = Arrays.asList(type.getDeclaredMethods())
-            .stream().filter(c -> c.getParameterCount() == 0)
-            .filter(c -> c.getAnnotation(Completer.class) != null).findAny()
-            .get();
+        final MethodHandle end =
+            handleOf(Arrays.asList(builderType.getDeclaredMethods()).stream()
+                .filter(m -> m.getAnnotation(Completer.class) != null)
+                .findAny().get(), Direction.DECODING);
+        final MethodHandle initialEnd =
+            handleOf(Arrays.asList(type.getDeclaredMethods()).stream()
+                .filter(c -> c.getParameterCount() == 0)
+                .filter(c -> c.getAnnotation(Completer.class) != null)
+                .findAny().get(), Direction.DECODING);
 
         /**
          * Find out how to set initial fields from the structure.
@@ -231,7 +289,6 @@ public final class StructureType implements Type {
             var ann = m.getAnnotation(Setter.class);
             if (ann != null) {
                 ExternalName n = ExternalName.parse(ann.value());
-                m.setAccessible(true);
                 rows.computeIfAbsent(n, k -> new Row()).initialSetter = m;
             }
         }
@@ -243,7 +300,6 @@ public final class StructureType implements Type {
             var ann = m.getAnnotation(Setter.class);
             if (ann == null) continue;
             ExternalName n = ExternalName.parse(ann.value());
-            m.setAccessible(true);
             rows.computeIfAbsent(n, k -> new Row()).setter = m;
         }
 
@@ -256,32 +312,88 @@ public final class StructureType implements Type {
                 rows.computeIfAbsent(key, k -> new Row()).required = true;
         }
 
-        return (value, dctxt) -> {
-            assert value != null;
-            JsonObject typed = (JsonObject) value;
-            Object builder = null;
-            for (var entry : rows.entrySet()) {
-                ExternalName key = entry.getKey();
+        /* Flatten the rows into parallel arrays. */
+        final int len = rows.size();
+        final String[] keys = new String[len];
+        final MethodHandle[] setters = new MethodHandle[len];
+        final MethodHandle[] initialSetters = new MethodHandle[len];
+        final Decoder[] codecs = new Decoder[len];
+        final Map<String, Integer> index = new HashMap<>();
+        int i = 0;
+        for (var entry : rows.entrySet()) {
+            Row row = entry.getValue();
+            keys[i] = entry.getKey().toString();
+            setters[i] = handleOf(row.setter, Direction.DECODING);
+            initialSetters[i] =
+                handleOf(row.initialSetter, Direction.DECODING);
+            codecs[i] = row.codec;
+            if (row.codec != null) index.put(keys[i], i);
+            i++;
+        }
+
+        return new Decoder() {
+            private Object set(Object builder, int j, Object v) {
                 try {
-                    Row row = entry.getValue();
-                    JsonValue jv = typed.getOrDefault(key.toString(), null);
-                    if (jv == null) continue;
-                    Object v = row.codec.decodeJson(jv, dctxt);
-                    builder = row.set(builder, v);
-                } catch (IllegalAccessException | IllegalArgumentException |
-                         InvocationTargetException ex) {
+                    if (builder == null)
+                        return (Object) initialSetters[j].invokeExact(v);
+                    else
+                        return (Object) setters[j].invokeExact(builder, v);
+                } catch (CodecException | Error ex) {
+                    throw ex;
+                } catch (Throwable ex) {
                     throw new CodecException(Direction.DECODING,
-                                             "reflecting key " + key, ex);
+                                             "reflecting key " + keys[j],
+                                             ex);
                 }
             }
 
-            try {
-                return builder == null ? initialEnd.invoke(null) :
-                    end.invoke(builder);
-            } catch (IllegalAccessException | IllegalArgumentException |
-                     InvocationTargetException ex) {
-                throw new CodecException(Direction.DECODING,
-                                         "reflecting completion", ex);
+            private Object complete(Object builder) {
+                try {
+                    return builder == null ?
+                        (Object) initialEnd.invokeExact() :
+                        (Object) end.invokeExact(builder);
+                } catch (CodecException | Error ex) {
+                    throw ex;
+                } catch (Throwable ex) {
+                    throw new CodecException(Direction.DECODING,
+                                             "reflecting completion", ex);
+                }
+            }
+
+            @Override
+            public Object decodeJson(JsonValue value, DecodingContext dctxt) {
+                assert value != null;
+                JsonObject typed = (JsonObject) value;
+                Object builder = null;
+                for (int j = 0; j < len; j++) {
+                    JsonValue jv = typed.getOrDefault(keys[j], null);
+                    if (jv == null) continue;
+                    Object v = codecs[j].decodeJson(jv, dctxt);
+                    builder = set(builder, j, v);
+                }
+                return complete(builder);
+            }
+
+            @Override
+            public Object readJson(JsonParser.Event event, JsonParser in,
+                                   DecodingContext dctxt) {
+                Codecs.expect(Direction.DECODING,
+                              JsonParser.Event.START_OBJECT, event);
+                Object builder = null;
+                for (var ev = in.next(); ev != JsonParser.Event.END_OBJECT;
+                     ev = in.next()) {
+                    Integer j = index.get(in.getString());
+                    ev = in.next();
+                    if (j == null) {
+                        /* Ignore unrecognized members, as the in-memory
+                         * decoder does. */
+                        Codecs.skipValue(ev, in);
+                        continue;
+                    }
+                    Object v = codecs[j].readJson(ev, in, dctxt);
+                    builder = set(builder, j, v);
+                }
+                return complete(builder);
             }
         };
     }
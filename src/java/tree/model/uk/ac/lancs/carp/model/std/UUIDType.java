@@ -41,9 +41,15 @@ package uk.ac.lancs.carp.model.std;
 import java.util.Properties;
 import java.util.UUID;
 import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
 import uk.ac.lancs.carp.codec.Codecs;
 import uk.ac.lancs.carp.codec.Decoder;
+import uk.ac.lancs.carp.codec.DecodingContext;
+import uk.ac.lancs.carp.codec.Direction;
 import uk.ac.lancs.carp.codec.Encoder;
+import uk.ac.lancs.carp.codec.EncodingContext;
 import uk.ac.lancs.carp.map.ExternalName;
 import uk.ac.lancs.carp.model.ExpansionContext;
 import uk.ac.lancs.carp.model.LinkContext;
@@ -96,8 +102,18 @@ public final class UUIDType implements Type {
         return this;
     }
 
-    private static final Encoder encoder =
-        (value, ctxt) -> Codecs.asJson((UUID) value);
+    private static final Encoder encoder = new Encoder() {
+        @Override
+        public JsonValue encodeJson(Object value, EncodingContext ctxt) {
+            return Codecs.asJson((UUID) value);
+        }
+
+        @Override
+        public void writeJson(Object value, EncodingContext ctxt,
+                              JsonGenerator out) {
+            out.write(((UUID) value).toString());
+        }
+    };
 
     /**
      * {@inheritDoc}
@@ -110,8 +126,20 @@ public final class UUIDType implements Type {
         return encoder;
     }
 
-    private static final Decoder decoder =
-        (value, ctxt) -> Codecs.asUUID((JsonString) value);
+    private static final Decoder decoder = new Decoder() {
+        @Override
+        public Object decodeJson(JsonValue value, DecodingContext ctxt) {
+            return Codecs.asUUID((JsonString) value);
+        }
+
+        @Override
+        public Object readJson(JsonParser.Event event, JsonParser in,
+                               DecodingContext ctxt) {
+            Codecs.expect(Direction.DECODING, JsonParser.Event.VALUE_STRING,
+                          event);
+            return Codecs.asUUID(in.getString());
+        }
+    };
 
     /**
      * {@inheritDoc}
@@ -41,29 +41,35 @@ package uk.ac.lancs.carp.runtime;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Proxy;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.json.Json;
 import javax.json.JsonException;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
-import javax.json.JsonReader;
-import javax.json.JsonReaderFactory;
 import javax.json.JsonWriter;
 import javax.json.JsonWriterFactory;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpException;
@@ -73,23 +79,31 @@ import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.EntityTemplate;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.protocol.HttpContext;
+import uk.ac.lancs.carp.AsynchronousProxy;
+import uk.ac.lancs.carp.CallBatch;
+import uk.ac.lancs.carp.CallMetrics;
 import uk.ac.lancs.carp.Carp;
 import uk.ac.lancs.carp.ClientPresence;
 import uk.ac.lancs.carp.Configuration;
 import uk.ac.lancs.carp.Fingerprint;
 import uk.ac.lancs.carp.FingerprintRepository;
+import uk.ac.lancs.carp.OverloadPolicy;
 import uk.ac.lancs.carp.Presence;
 import uk.ac.lancs.carp.PresenceFactory;
 import uk.ac.lancs.carp.ServerPresence;
+import uk.ac.lancs.carp.ServiceUnavailableException;
 import uk.ac.lancs.carp.WebPlacement;
+import uk.ac.lancs.carp.codec.Codecs;
 import uk.ac.lancs.carp.codec.DecodingContext;
 import uk.ac.lancs.carp.codec.EncodingContext;
 import uk.ac.lancs.carp.component.Agency;
 import uk.ac.lancs.carp.component.PathMap;
 import uk.ac.lancs.carp.component.PathMatch;
 import uk.ac.lancs.carp.errors.StatusModificationException;
+import uk.ac.lancs.carp.model.CodecRegistry;
 import uk.ac.lancs.carp.model.LinkContext;
 import uk.ac.lancs.carp.model.LinkException;
 import uk.ac.lancs.carp.model.TypeInfo;
@@ -104,7 +118,9 @@ import uk.ac.lancs.scc.jardeps.Service;
  * <ul>
  * 
  * <li>a supply of Apache Commons {@link HttpClient}, allowing them to
- * be configured with (for example) an appropriate SSL context;
+ * be configured with (for example) an appropriate SSL context, or a
+ * request to manage a single pooled client
+ * ({@link Carp#POOLED_CLIENTS});
  * 
  * <li>an optional {@link FingerprintRepository} (may be {@code null}),
  * allowing (for example) an SSL context to be updated on self-signed
@@ -125,48 +141,190 @@ public class BasicPresence implements Presence {
 
     private final boolean shortCircuit;
 
+    /**
+     * Runs asynchronous calls on local receivers; or {@code null} if
+     * local receivers are not invoked directly
+     */
+    private final Executor localExecutor;
+
+    /**
+     * Creates the client for asynchronous requests on demand.
+     */
+    private final Supplier<? extends java.net.http.HttpClient>
+        asyncClientFactory;
+
+    /**
+     * Sends asynchronous requests, once created.
+     */
+    private java.net.http.HttpClient asyncClient;
+
     /**
      * Create a basic presence with distinct base URI and root virtual
      * path.
      * 
      * @param clientFactory Invoked to obtain fresh HTTP clients on
-     * demand.
+     * demand; or {@code null} to make blocking calls with the
+     * non-blocking client.
+     * 
+     * @param asyncClientFactory Invoked once, on demand, to obtain a
+     * non-blocking HTTP client for asynchronous and batched calls
      * 
      * @param fingerprints a repository of learned fingerprints
      * 
      * @param placement the place where this presence is being served
      * from
      * 
-     * @param executor an executor for asynchronous calls
+     * @param queue admits calls with no response types for execution
+     * 
+     * @param callLimits yields the maximum number of calls to serve
+     * concurrently on receivers of each service type, non-positive if
+     * unlimited; or {@code null} if no type is limited
      * 
      * @param shortCircuit whether to return direct local receivers
      * instead of proxies
+     * 
+     * @param localExecutor runs asynchronous calls on local receivers;
+     * or {@code null} if local receivers are not short-circuited
+     * 
+     * @param offerBinary whether to offer servers the binary wire
+     * format
+     * 
+     * @param metrics a recipient of per-call measurements, both made
+     * and served; or {@code null} if none are to be taken
+     * 
+     * @param oneWayWindow the maximum time to hold calls with no
+     * response types, so that they can be sent together; or
+     * {@code null} if such calls are to be sent as they are made
+     * 
+     * @param proxyCapacity the maximum number of proxies to keep for
+     * reuse while unreferenced; or non-positive if none are kept
      */
     BasicPresence(Supplier<? extends CloseableHttpClient> clientFactory,
+                  Supplier<? extends java.net.http.HttpClient>
+                      asyncClientFactory,
                   WebPlacement placement, FingerprintRepository fingerprints,
-                  Executor executor, boolean shortCircuit) {
+                  OneWayQueue queue,
+                  ToIntFunction<? super Class<?>> callLimits,
+                  boolean shortCircuit, Executor localExecutor,
+                  boolean offerBinary, CallMetrics metrics,
+                  Duration oneWayWindow, int proxyCapacity) {
         this.clientFactory = clientFactory;
+        this.asyncClientFactory = asyncClientFactory;
         this.placement = placement;
         this.fingerprints = fingerprints;
         this.shortCircuit = shortCircuit;
+        this.localExecutor = localExecutor;
+        this.proxies = new ProxyCache(this::createProxy, proxyCapacity);
         this.typeClients = new ClientTranslatorCache(linkCtxt, clientFactory,
+                                                     offerBinary, metrics,
+                                                     oneWayWindow,
+                                                     this::getAsyncClient,
                                                      this::getEncodingContext,
                                                      this::getDecodingContext);
-        this.typeServers = new ServerTranslatorCache(linkCtxt, executor,
+        this.typeServers = new ServerTranslatorCache(linkCtxt, queue,
+                                                     callLimits, metrics,
                                                      this::getEncodingContext,
                                                      this::getDecodingContext);
     }
 
     private final ClientTranslatorCache typeClients;
 
-    private static final LinkContext linkCtxt = BuiltIns.wrap((n, cl) -> {
-        TypeContext.Record rec = TypeContext.getType(n, cl);
-        try {
-            return new TypeInfo(rec.def, rec.getBaseClass());
-        } catch (ClassNotFoundException ex) {
-            throw new LinkException(n.toString(), ex);
-        }
-    });
+    /**
+     * Get a means to obtain the non-blocking HTTP client specified by
+     * configuration. {@link Carp#ASYNCHRONOUS_CLIENT} is used if set.
+     * Otherwise, a client is built on demand, trusting peers according
+     * to {@link Carp#SSL_CONTEXT} if set, as blocking calls do.
+     * 
+     * @param params the configuration
+     * 
+     * @return a source of the non-blocking client
+     */
+    static Supplier<java.net.http.HttpClient>
+        asyncClientOf(Configuration params) {
+        var client = params.get(Carp.ASYNCHRONOUS_CLIENT);
+        if (client != null) return () -> client;
+        var sslContext = params.get(Carp.SSL_CONTEXT);
+        return () -> {
+            var builder = java.net.http.HttpClient.newBuilder();
+            if (sslContext != null) builder.sslContext(sslContext);
+            return builder.build();
+        };
+    }
+
+    /**
+     * Get the executor for asynchronous calls specified by
+     * configuration. If {@link Carp#ASYNCHRONOUS_EXECUTOR} is not set,
+     * a thread-per-call executor is created if
+     * {@link Carp#VIRTUAL_THREADS} is set, or a small fixed pool
+     * otherwise, and recorded in the configuration.
+     * 
+     * @param params the configuration
+     * 
+     * @return the executor for asynchronous calls
+     */
+    static Executor executorOf(Configuration params) {
+        return params.computeIfAbsent(Carp.ASYNCHRONOUS_EXECUTOR, () -> {
+            if (params.get(Carp.VIRTUAL_THREADS, false))
+                return Carp.newThreadPerCallExecutor();
+            return Executors.newFixedThreadPool(3);
+        });
+    }
+
+    /**
+     * Create a queue for calls with no response types, as specified by
+     * configuration. The queue's executor is obtained as by
+     * {@link #executorOf(Configuration)}. {@link Carp#METRICS},
+     * {@link Carp#ONE_WAY_QUEUE_CAPACITY},
+     * {@link Carp#ONE_WAY_OVERLOAD_POLICY},
+     * {@link Carp#ONE_WAY_OVERLOAD_POLICIES} and
+     * {@link Carp#ONE_WAY_RETRY_AFTER} are also consulted.
+     * 
+     * @param params the configuration
+     * 
+     * @return the new queue
+     */
+    static OneWayQueue oneWayQueueOf(Configuration params) {
+        return new OneWayQueue(executorOf(params),
+                               params.get(Carp.ONE_WAY_QUEUE_CAPACITY, 0),
+                               params.get(Carp.ONE_WAY_OVERLOAD_POLICY,
+                                          OverloadPolicy.REJECT),
+                               params.get(Carp.ONE_WAY_OVERLOAD_POLICIES,
+                                          Map.of()),
+                               params.get(Carp.ONE_WAY_RETRY_AFTER,
+                                          Duration.ofSeconds(1)),
+                               params.get(Carp.METRICS));
+    }
+
+    /**
+     * Get the per-type call limits specified by configuration, as
+     * {@link Carp#MAX_CALLS_PER_TYPE} and {@link Carp#TYPE_CALL_LIMITS}.
+     * 
+     * @param params the configuration
+     * 
+     * @return a function yielding the limit for each service type; or
+     * {@code null} if no type is limited
+     */
+    static ToIntFunction<Class<?>> callLimitsOf(Configuration params) {
+        final int dflt = params.get(Carp.MAX_CALLS_PER_TYPE, 0);
+        final Map<Class<?>, Integer> limits =
+            Map.copyOf(params.get(Carp.TYPE_CALL_LIMITS, Map.of()));
+        if (dflt <= 0 && limits.isEmpty()) return null;
+        return type -> limits.getOrDefault(type, dflt);
+    }
+
+    /**
+     * Locates type definitions, and shares their codecs between all
+     * presences and translators.
+     */
+    private static final LinkContext linkCtxt =
+        new CodecRegistry(BuiltIns.wrap((n, cl) -> {
+            TypeContext.Record rec = TypeContext.getType(n, cl);
+            try {
+                return new TypeInfo(rec.def, rec.getBaseClass());
+            } catch (ClassNotFoundException ex) {
+                throw new LinkException(n.toString(), ex);
+            }
+        }));
 
     /**
      * Create a proxy for a remote receiver. The client translator for
@@ -183,11 +341,7 @@ public class BasicPresence implements Presence {
      * @return a new proxy
      */
     private <Srv> Srv createProxy(Class<Srv> type, URI location) {
-        ClientTranslator z = typeClients.get(type);
-        ClassLoader cl = type.getClassLoader();
-        Class<?>[] ta = new Class<?>[] { type };
-        InvocationHandler h = z.getHandler(location);
-        return type.cast(Proxy.newProxyInstance(cl, ta, h));
+        return typeClients.get(type).getProxy(type, location);
     }
 
     @Override
@@ -208,6 +362,69 @@ public class BasicPresence implements Presence {
         return proxies.getProxy(type, location);
     }
 
+    private synchronized java.net.http.HttpClient getAsyncClient() {
+        if (asyncClient == null) asyncClient = asyncClientFactory.get();
+        return asyncClient;
+    }
+
+    @Override
+    public <Srv> AsynchronousProxy<Srv> elaborateAsync(Class<Srv> type,
+                                                       URI location) {
+        /* Check for a local object. We might be able to invoke it
+         * directly. */
+        URI relative = this.placement == null ? location :
+            this.placement.base().relativize(location);
+        if (shortCircuit && relative != location) {
+            Srv receiver = elaborate(type, location);
+            return new AsynchronousProxy<Srv>() {
+                @Override
+                public <R> CompletableFuture<R>
+                    call(Function<? super Srv, ? extends R> invocation) {
+                    /* Don't block the caller for the duration of the
+                     * call. */
+                    CompletableFuture<R> result = new CompletableFuture<>();
+                    try {
+                        localExecutor.execute(() -> {
+                            try {
+                                result.complete(invocation.apply(receiver));
+                            } catch (RuntimeException ex) {
+                                result.completeExceptionally(ex);
+                            }
+                        });
+                    } catch (RuntimeException ex) {
+                        result.completeExceptionally(ex);
+                    }
+                    return result;
+                }
+            };
+        }
+
+        return typeClients.get(type)
+            .getAsynchronousProxy(type, location, getAsyncClient());
+    }
+
+    @Override
+    public CallBatch openBatch() {
+        BatchRequest batch = new BatchRequest();
+        return new CallBatch() {
+            @Override
+            public <Srv> AsynchronousProxy<Srv>
+                elaborate(Class<Srv> type, URI location) {
+                /* Local receivers are invoked directly. */
+                if (shortCircuit && placement != null &&
+                    placement.base().relativize(location) != location)
+                    return elaborateAsync(type, location);
+                return typeClients.get(type)
+                    .getBatchProxy(type, location, batch);
+            }
+
+            @Override
+            public void flush() {
+                batch.flush(getAsyncClient());
+            }
+        };
+    }
+
     @Override
     public <Srv> void bind(String suffix, Class<Srv> type, Srv receiver,
                            Agency agency) {
@@ -233,7 +450,7 @@ public class BasicPresence implements Presence {
     /**
      * Caches proxies to remote objects.
      */
-    private final ProxyCache proxies = new ProxyCache(this::createProxy);
+    private final ProxyCache proxies;
 
     /**
      * Get an encoding context that also looks up the fingerprint of the
@@ -297,18 +514,28 @@ public class BasicPresence implements Presence {
                                    HttpContext ctxt)
         throws HttpException,
             IOException {
-        String path = placement.subpath(req);
+        List<String> parts = placement.subparts(req);
+        CallProbe probe = null;
 
         try {
+            /* A batch addresses several receivers, so its path is only
+             * where it was posted to. */
+            if (req.containsHeader(BatchRequest.HEADER) &&
+                req instanceof HttpEntityEnclosingRequest) {
+                handleBatch((HttpEntityEnclosingRequest) req, rsp);
+                return;
+            }
+
             /* Identify the receiver and its interface type. Get the
              * translator for that type. */
-            PathMatch res =
-                pathMap.resolve(Carp.pathAsPartsWithEmptyTail(path));
+            PathMatch res = pathMap.resolve(parts);
             if (!res.tail.isEmpty()) {
                 rsp.setStatusCode(HttpStatus.SC_NOT_FOUND);
                 return;
             }
-            ServerTranslator trans = typeServers.get(res.type, res.receiver);
+            ServerTranslator trans =
+                res.attachment(ServerTranslator.class, typeServers::get);
+            probe = trans.startProbe();
 
             final String transMethod = req.getRequestLine().getMethod();
             switch (transMethod) {
@@ -319,28 +546,46 @@ public class BasicPresence implements Presence {
                  * request. Extract the method-specific part, and
                  * deliver it to the right receiver. */
                 try {
-                    /* Interpret the request body as JSON. TODO:
-                     * Decoding errors should be reported as a 400 Bad
-                     * Request. */
-                    final JsonObject jsonReq = jsonOf(req);
-
                     /* Invoke the user-defined behaviour, translating
-                     * the supplied JSON into an argument list, and
-                     * translating the result into JSON. */
-                    JsonObject jsonRsp = trans.invoke(res.receiver, jsonReq);
+                     * the supplied JSON into an argument list as it is
+                     * parsed. The result is translated into JSON as the
+                     * response is sent. TODO: Decoding errors should be
+                     * reported as a 400 Bad Request. */
+                    final Consumer<JsonGenerator> jsonRsp;
+                    HttpEntityEnclosingRequest ereq =
+                        (HttpEntityEnclosingRequest) req;
+                    HttpEntity reqEnt = ereq.getEntity();
+                    try (InputStream in = probe == null ? reqEnt.getContent() :
+                        probe.countRequest(reqEnt.getContent());
+                         JsonParser parser =
+                             formatOf(reqEnt).createParser(in)) {
+                        jsonRsp = trans.prepare(res.receiver, parser, probe);
+                    }
 
-                    /* Put the resultant JSON into the HTTP response. */
+                    /* Stream the resultant JSON into the HTTP
+                     * response. */
                     if (jsonRsp != null) {
-                        rsp.setEntity(entityOf(jsonRsp));
+                        Header accept = req.getFirstHeader("Accept");
+                        WireFormat rspFormat = WireFormat
+                            .negotiate(accept == null ? null :
+                                accept.getValue());
+                        rsp.setEntity(entityOf(jsonRsp, rspFormat, probe));
 
-                        /* Complete and return the response. */
+                        /* Complete and return the response. The
+                         * measurements are reported once it has been
+                         * streamed. */
                         rsp.setStatusCode(HttpStatus.SC_OK);
                     } else {
                         /* There is no response. */
                         rsp.setStatusCode(HttpStatus.SC_NO_CONTENT);
+                        if (probe != null) probe.report();
                     }
                     return;
                 } catch (JsonException ex) {
+                    if (probe != null) {
+                        probe.fail(ex);
+                        probe.report();
+                    }
                     rsp.setStatusCode(HttpStatus.SC_BAD_REQUEST);
                     // TODO: Set response body.
                     return;
@@ -355,24 +600,304 @@ public class BasicPresence implements Presence {
                 break;
             }
         } catch (StatusModificationException ex) {
-            JsonObject jsonRsp =
-                Json.createObjectBuilder().add("app-error", "bad-status-mod")
-                    .add("params", jsonOf(ex.params))
-                    .add("message", ex.getMessage()).build();
-            rsp.setEntity(entityOf(jsonRsp));
+            if (probe != null) {
+                probe.fail(ex);
+                probe.report();
+            }
+            rsp.setEntity(entityOf(jsonOf(ex)));
             rsp.setStatusCode(HttpStatus.SC_UNPROCESSABLE_ENTITY);
+        } catch (ServiceUnavailableException ex) {
+            if (probe != null) {
+                probe.fail(ex);
+                probe.report();
+            }
+            if (ex.retryAfter != null)
+                rsp.setHeader("Retry-After",
+                              Long.toString(retrySeconds(ex.retryAfter)));
+            rsp.setEntity(entityOf(jsonOf(ex)));
+            rsp.setStatusCode(HttpStatus.SC_SERVICE_UNAVAILABLE);
         } catch (Throwable t) {
-            /* Create an error id, and log the error detail locally.
-             * Meanwhile, report the error id back to the client. */
-            UUID errorId = UUID.randomUUID();
-            logger.log(Level.SEVERE, "server error " + errorId, t);
-            JsonObject jsonRsp = Json.createObjectBuilder()
-                .add("error", errorId.toString()).build();
-            rsp.setEntity(entityOf(jsonRsp));
+            if (probe != null) {
+                probe.fail(t);
+                probe.report();
+            }
+            rsp.setEntity(entityOf(serverError(t)));
             rsp.setStatusCode(HttpStatus.SC_INTERNAL_SERVER_ERROR);
         }
     }
 
+    /**
+     * Records the outcome of a call served as part of a batch.
+     */
+    private static final class Outcome {
+        /**
+         * The status code the call would have yielded on its own
+         */
+        final int status;
+
+        /**
+         * Writes the response message; or {@code null} if there is
+         * none
+         */
+        final Consumer<JsonGenerator> message;
+
+        /**
+         * Holds measurements of the call; or {@code null} if none are
+         * being taken
+         */
+        final CallProbe probe;
+
+        Outcome(int status, Consumer<JsonGenerator> message,
+                CallProbe probe) {
+            this.status = status;
+            this.message = message;
+            this.probe = probe;
+        }
+    }
+
+    /**
+     * Holds the receiver's path and the request message of one call of
+     * a batch.
+     */
+    private static final class Envelope {
+        final String to;
+
+        final JsonObject msg;
+
+        Envelope(String to, JsonObject msg) {
+            this.to = to;
+            this.msg = msg;
+        }
+    }
+
+    /**
+     * Creates parsers over request messages already read from a batch.
+     */
+    private static final JsonParserFactory envelopeParsers =
+        Json.createParserFactory(null);
+
+    /**
+     * Serve a batch of calls. The whole batch is read and checked
+     * before any call is invoked, so a malformed batch is rejected as a
+     * whole without side effects, and the client can safely send its
+     * calls again on their own. Calls are then invoked in order, and
+     * their outcomes are streamed back as an array in the same order
+     * once all have been invoked. A call whose message is unsuitable
+     * for its receiver yields a bad request for that call alone.
+     * 
+     * @param req the request
+     * 
+     * @param rsp the response to populate
+     * 
+     * @throws IOException if an I/O error occurs in reading the
+     * request
+     * 
+     * @see BatchRequest
+     */
+    private void handleBatch(HttpEntityEnclosingRequest req,
+                             HttpResponse rsp)
+        throws IOException {
+        List<Envelope> envelopes = new ArrayList<>();
+        HttpEntity reqEnt = req.getEntity();
+        try (InputStream in = reqEnt.getContent();
+             JsonParser parser = formatOf(reqEnt).createParser(in)) {
+            if (parser.next() != JsonParser.Event.START_ARRAY)
+                throw new JsonException("batch not an array");
+            for (var ev = parser.next(); ev != JsonParser.Event.END_ARRAY;
+                 ev = parser.next()) {
+                if (ev != JsonParser.Event.START_OBJECT)
+                    throw new JsonException("envelope not an object");
+                envelopes.add(readEnvelope(parser));
+            }
+        } catch (JsonException ex) {
+            rsp.setStatusCode(HttpStatus.SC_BAD_REQUEST);
+            return;
+        }
+
+        List<Outcome> outcomes = new ArrayList<>(envelopes.size());
+        for (Envelope envelope : envelopes)
+            outcomes.add(serveMessage(envelope.to, envelope.msg));
+
+        Header accept = req.getFirstHeader("Accept");
+        WireFormat format =
+            WireFormat.negotiate(accept == null ? null : accept.getValue());
+        EntityTemplate result = new EntityTemplate(out -> {
+            try (JsonGenerator gen = format.createGenerator(out)) {
+                gen.writeStartArray();
+                for (Outcome outcome : outcomes) {
+                    gen.writeStartObject();
+                    gen.write("status", outcome.status);
+                    if (outcome.message != null) {
+                        gen.writeKey("msg");
+                        outcome.message.accept(gen);
+                    }
+                    gen.writeEnd();
+                }
+                gen.writeEnd();
+            } catch (RuntimeException ex) {
+                /* The status has already been sent, so all we can do
+                 * is abort the response. */
+                UUID errorId = UUID.randomUUID();
+                logger.log(Level.SEVERE, "server error " + errorId, ex);
+                throw new IOException("encoding response " + errorId, ex);
+            } finally {
+                for (Outcome outcome : outcomes)
+                    if (outcome.probe != null) outcome.probe.report();
+            }
+        });
+        result.setContentType(format.contentType.toString());
+        rsp.setEntity(result);
+        rsp.setStatusCode(HttpStatus.SC_OK);
+    }
+
+    /**
+     * Read one envelope of a batch.
+     * 
+     * @param in a parser positioned within the envelope
+     * 
+     * @return the envelope's contents
+     * 
+     * @throws JsonException if the envelope is malformed
+     */
+    private static Envelope readEnvelope(JsonParser in) {
+        String to = null;
+        JsonObject msg = null;
+        for (var ev = in.next(); ev != JsonParser.Event.END_OBJECT;
+             ev = in.next()) {
+            switch (in.getString()) {
+            case "to":
+                if (in.next() != JsonParser.Event.VALUE_STRING)
+                    throw new JsonException("to not a string");
+                to = in.getString();
+                break;
+
+            case "msg":
+                if (in.next() != JsonParser.Event.START_OBJECT)
+                    throw new JsonException("msg not an object");
+                msg = in.getObject();
+                break;
+
+            default:
+                Codecs.skipValue(in.next(), in);
+                break;
+            }
+        }
+        if (to == null) throw new JsonException("no to");
+        if (msg == null) throw new JsonException("no msg");
+        return new Envelope(to, msg);
+    }
+
+    /**
+     * Serve a call of a batch, given its receiver's path.
+     * 
+     * @param to the virtual path of the receiver
+     * 
+     * @param request the request message
+     * 
+     * @return the outcome of the call
+     */
+    private Outcome serveMessage(String to, JsonObject request) {
+        final List<String> parts;
+        try {
+            parts = placement.subparts(to);
+        } catch (IllegalArgumentException ex) {
+            return new Outcome(BatchRequest.MISDIRECTED, null, null);
+        }
+        PathMatch res = pathMap.resolve(parts);
+        if (!res.tail.isEmpty())
+            return new Outcome(HttpStatus.SC_NOT_FOUND, null, null);
+        ServerTranslator trans =
+            res.attachment(ServerTranslator.class, typeServers::get);
+        CallProbe probe = trans.startProbe();
+        Throwable failure;
+        try (JsonParser in = envelopeParsers.createParser(request)) {
+            Consumer<JsonGenerator> rspMsg =
+                trans.prepare(res.receiver, in, probe);
+            if (rspMsg == null)
+                return new Outcome(HttpStatus.SC_NO_CONTENT, null, probe);
+            return new Outcome(HttpStatus.SC_OK, rspMsg, probe);
+        } catch (JsonException ex) {
+            /* The envelope was well formed, but its message did not
+             * suit the receiver, so only this call is refused. */
+            if (probe != null) probe.fail(ex);
+            return new Outcome(HttpStatus.SC_BAD_REQUEST, null, probe);
+        } catch (InvocationTargetException ex) {
+            failure = ex.getCause();
+        } catch (Throwable t) {
+            failure = t;
+        }
+        if (probe != null) probe.fail(failure);
+        if (failure instanceof StatusModificationException) {
+            JsonObject msg = jsonOf((StatusModificationException) failure);
+            return new Outcome(HttpStatus.SC_UNPROCESSABLE_ENTITY,
+                               out -> out.write(msg), probe);
+        }
+        if (failure instanceof ServiceUnavailableException) {
+            JsonObject msg = jsonOf((ServiceUnavailableException) failure);
+            return new Outcome(HttpStatus.SC_SERVICE_UNAVAILABLE,
+                               out -> out.write(msg), probe);
+        }
+        JsonObject msg = serverError(failure);
+        return new Outcome(HttpStatus.SC_INTERNAL_SERVER_ERROR,
+                           out -> out.write(msg), probe);
+    }
+
+    /**
+     * Describe a status modification rejected by a receiver.
+     * 
+     * @param ex the receiver's exception
+     * 
+     * @return the error message to send to the client
+     */
+    private static JsonObject jsonOf(StatusModificationException ex) {
+        return Json.createObjectBuilder().add("app-error", "bad-status-mod")
+            .add("params", jsonOf(ex.params)).add("message", ex.getMessage())
+            .build();
+    }
+
+    /**
+     * Describe a call refused because the server is overloaded.
+     * 
+     * @param ex the exception refusing the call
+     * 
+     * @return the error message to send to the client
+     */
+    private static JsonObject jsonOf(ServiceUnavailableException ex) {
+        JsonObjectBuilder builder = Json.createObjectBuilder()
+            .add("message", ex.getMessage());
+        if (ex.retryAfter != null)
+            builder.add("retry-after", retrySeconds(ex.retryAfter));
+        return builder.build();
+    }
+
+    /**
+     * Express a retry hint in whole seconds, as required by
+     * <samp>Retry-After</samp>, rounding up.
+     * 
+     * @param delay the hint
+     * 
+     * @return the hint in seconds
+     */
+    private static long retrySeconds(Duration delay) {
+        long secs = delay.getSeconds();
+        return delay.getNano() > 0 ? secs + 1 : secs;
+    }
+
+    /**
+     * Create an error id, and log the error detail locally. Meanwhile,
+     * report the error id back to the client.
+     * 
+     * @param t the unexpected exception
+     * 
+     * @return the error message to send to the client
+     */
+    private static JsonObject serverError(Throwable t) {
+        UUID errorId = UUID.randomUUID();
+        logger.log(Level.SEVERE, "server error " + errorId, t);
+        return Json.createObjectBuilder().add("error", errorId.toString())
+            .build();
+    }
+
     private static JsonObject
         jsonOf(Map<? extends String, ? extends String> params) {
         JsonObjectBuilder builder = Json.createObjectBuilder();
@@ -381,16 +906,6 @@ public class BasicPresence implements Presence {
         return builder.build();
     }
 
-    private static JsonObject jsonOf(HttpRequest req) throws IOException {
-        HttpEntityEnclosingRequest ereq = (HttpEntityEnclosingRequest) req;
-        HttpEntity ent = ereq.getEntity();
-        try (InputStream in = ent.getContent();
-             JsonReader reader =
-                 jsonReaders.createReader(in, StandardCharsets.UTF_8)) {
-            return reader.readObject();
-        }
-    }
-
     private static HttpEntity entityOf(JsonObject jsonRsp) {
         ByteArrayOutputStream buffer = new ByteArrayOutputStream();
         try (JsonWriter writer =
@@ -401,10 +916,57 @@ public class BasicPresence implements Presence {
         return new ByteArrayEntity(buf, ContentType.APPLICATION_JSON);
     }
 
-    private static final Logger logger = Logger.getLogger("uk.ac.lancs.carp");
+    /**
+     * Identify the format of a request entity. Entities of unspecified
+     * or unrecognized type are assumed to be JSON.
+     * 
+     * @param ent the request entity
+     * 
+     * @return the entity's format
+     */
+    private static WireFormat formatOf(HttpEntity ent) {
+        ContentType type = ContentType.getLenient(ent);
+        WireFormat result =
+            type == null ? null : WireFormat.forMimeType(type.getMimeType());
+        return result == null ? WireFormat.JSON : result;
+    }
 
-    private static final JsonReaderFactory jsonReaders =
-        Json.createReaderFactory(Collections.emptyMap());
+    /**
+     * Create an entity that streams a message as it is sent, rather
+     * than buffering it.
+     * 
+     * @param jsonRsp an action to write the message
+     * 
+     * @param format the format in which to encode the message
+     * 
+     * @param probe a record of the call's measurements, to be reported
+     * once the message has been written; or {@code null} if no
+     * measurements are being taken
+     * 
+     * @return the entity
+     */
+    private static HttpEntity entityOf(Consumer<JsonGenerator> jsonRsp,
+                                       WireFormat format, CallProbe probe) {
+        EntityTemplate result = new EntityTemplate(out -> {
+            if (probe != null) out = probe.countResponse(out);
+            try (JsonGenerator gen = format.createGenerator(out)) {
+                jsonRsp.accept(gen);
+            } catch (RuntimeException ex) {
+                /* The status has already been sent, so all we can do
+                 * is abort the response. */
+                if (probe != null) probe.fail(ex);
+                UUID errorId = UUID.randomUUID();
+                logger.log(Level.SEVERE, "server error " + errorId, ex);
+                throw new IOException("encoding response " + errorId, ex);
+            } finally {
+                if (probe != null) probe.report();
+            }
+        });
+        result.setContentType(format.contentType.toString());
+        return result;
+    }
+
+    private static final Logger logger = Logger.getLogger("uk.ac.lancs.carp");
 
     private static final JsonWriterFactory jsonWriters =
         Json.createWriterFactory(Collections.emptyMap());
@@ -424,11 +986,45 @@ public class BasicPresence implements Presence {
      */
     @Service(PresenceFactory.class)
     public static class Factory implements PresenceFactory {
+        /**
+         * Determine whether configuration provides no means to obtain
+         * HTTP clients.
+         * 
+         * @param params the configuration
+         * 
+         * @return {@code true} if neither {@link Carp#CLIENTS} nor
+         * {@link Carp#POOLED_CLIENTS} is set; {@code false} otherwise
+         */
+        private static boolean lacksClients(Configuration params) {
+            return params.lacks(Carp.CLIENTS) &&
+                !params.get(Carp.POOLED_CLIENTS, false);
+        }
+
+        /**
+         * Get the source of HTTP clients specified by configuration.
+         * If {@link Carp#POOLED_CLIENTS} is set, a new pooled client is
+         * created. Otherwise, {@link Carp#CLIENTS} is used.
+         * 
+         * @param params the configuration
+         * 
+         * @return the source of HTTP clients
+         * 
+         * @throws IllegalArgumentException if neither parameter is set
+         */
+        private static Supplier<? extends CloseableHttpClient>
+            clientsOf(Configuration params) {
+            if (params.get(Carp.POOLED_CLIENTS, false))
+                return new ClientPool(params);
+            params.require(Carp.CLIENTS, "no HTTP clients");
+            return params.get(Carp.CLIENTS);
+        }
+
         @Override
         public PresenceFactory.Suitability
             considerClient(Configuration params) {
-            if (params.lacks(Carp.CLIENTS)) return Suitability.UNMET;
-            if (params.lacks(Carp.PLACEMENT)) return Suitability.SUBOPTIMAL;
+            if (lacksClients(params)) return Suitability.UNMET;
+            if (params.lacks(Carp.PLACEMENT) || params.get(Carp.HTTP2, false))
+                return Suitability.SUBOPTIMAL;
             return Suitability.OKAY;
         }
 
@@ -436,23 +1032,32 @@ public class BasicPresence implements Presence {
         public PresenceFactory.Suitability
             considerServer(Configuration params) {
             if (params.lacks(Carp.PLACEMENT)) return Suitability.UNMET;
-            if (params.lacks(Carp.CLIENTS)) return Suitability.SUBOPTIMAL;
+            if (lacksClients(params) || params.get(Carp.HTTP2, false))
+                return Suitability.SUBOPTIMAL;
             return Suitability.OKAY;
         }
 
         @Override
         public PresenceFactory.Suitability consider(Configuration params) {
-            if (params.lacksAny(Carp.CLIENTS, Carp.PLACEMENT))
+            if (lacksClients(params) || params.lacks(Carp.PLACEMENT))
                 return Suitability.UNMET;
+            if (params.get(Carp.HTTP2, false)) return Suitability.SUBOPTIMAL;
             return Suitability.OKAY;
         }
 
         @Override
         public ClientPresence buildClient(Configuration params) {
-            params.require(Carp.CLIENTS, "no HTTP clients");
-            var clients = params.get(Carp.CLIENTS);
+            var clients = clientsOf(params);
             var fingerprints = params.get(Carp.FINGERPRINTS);
-            return new BasicPresence(clients, null, fingerprints, null, false);
+            var asyncClient = asyncClientOf(params);
+            var binary = params.get(Carp.BINARY_WIRE_FORMAT, false);
+            var metrics = params.get(Carp.METRICS);
+            var oneWayWindow = params.get(Carp.ONE_WAY_BATCH_WINDOW);
+            return new BasicPresence(clients, asyncClient, null, fingerprints,
+                                     null, null, false, null, binary,
+                                     metrics, oneWayWindow,
+                                     params.get(Carp.PROXY_CACHE_CAPACITY,
+                                                0));
         }
 
         @Override
@@ -460,30 +1065,38 @@ public class BasicPresence implements Presence {
             params.require(Carp.PLACEMENT, "no base");
             var fingerprints = params.get(Carp.FINGERPRINTS);
             var location = params.get(Carp.PLACEMENT);
-            var executor =
-                params.computeIfAbsent(Carp.ASYNCHRONOUS_EXECUTOR,
-                                       () -> Executors.newFixedThreadPool(3));
+            var queue = oneWayQueueOf(params);
+            var callLimits = callLimitsOf(params);
+            var metrics = params.get(Carp.METRICS);
             BasicPresence result =
-                new BasicPresence(null, location, fingerprints, executor,
-                                  false);
+                new BasicPresence(null, asyncClientOf(params), location,
+                                  fingerprints,
+                                  queue, callLimits, false, null, false,
+                                  metrics, null, 0);
             result.register();
             return result;
         }
 
         @Override
         public Presence build(Configuration params) {
-            params.require(Carp.CLIENTS, "no HTTP clients");
             params.require(Carp.PLACEMENT, "no base");
-            var clients = params.get(Carp.CLIENTS);
+            var clients = clientsOf(params);
             var fingerprints = params.get(Carp.FINGERPRINTS);
             var location = params.get(Carp.PLACEMENT);
-            var executor =
-                params.computeIfAbsent(Carp.ASYNCHRONOUS_EXECUTOR,
-                                       () -> Executors.newFixedThreadPool(3));
+            var queue = oneWayQueueOf(params);
+            var callLimits = callLimitsOf(params);
             var shortCircuit = params.get(Carp.LOCAL_SHORT_CIRCUIT, true);
+            var asyncClient = asyncClientOf(params);
+            var binary = params.get(Carp.BINARY_WIRE_FORMAT, false);
+            var metrics = params.get(Carp.METRICS);
+            var oneWayWindow = params.get(Carp.ONE_WAY_BATCH_WINDOW);
             BasicPresence result =
-                new BasicPresence(clients, location, fingerprints, executor,
-                                  shortCircuit);
+                new BasicPresence(clients, asyncClient, location,
+                                  fingerprints, queue, callLimits,
+                                  shortCircuit, executorOf(params), binary,
+                                  metrics,
+                                  oneWayWindow,
+                                  params.get(Carp.PROXY_CACHE_CAPACITY, 0));
             result.register();
             return result;
         }
@@ -0,0 +1,332 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
+import org.apache.http.HttpStatus;
+import uk.ac.lancs.carp.Carp;
+import uk.ac.lancs.carp.ProtocolException;
+import uk.ac.lancs.carp.RemoteInvocationException;
+import uk.ac.lancs.carp.TransportException;
+import uk.ac.lancs.carp.codec.Codecs;
+
+/**
+ * Holds calls to be sent together, one request per peer. A batch
+ * request is a JSON array of envelopes, each an object holding the
+ * path of the receiver as <samp>to</samp> and the usual request message
+ * as <samp>msg</samp>. It is posted to the first receiver of the peer,
+ * and is identified by the {@value #HEADER} header. The response is an
+ * array of results in the same order, each an object holding the
+ * status code the call would have yielded on its own as
+ * <samp>status</samp>, and any response message as <samp>msg</samp>.
+ * 
+ * <p>
+ * A result of {@value #MISDIRECTED} indicates that the receiver is not
+ * served by the placement that received the batch, and the call is
+ * sent again on its own. A peer that does not recognize batches
+ * rejects the array as a bad request, without invoking anything. A
+ * peer that does reads and checks the whole batch before invoking any
+ * call, and rejects a malformed batch in the same way, while a message
+ * unsuitable for its receiver yields a bad request for that call
+ * alone. A bad request for the whole batch therefore always precedes
+ * any invocation, so all calls are then safely sent again on their
+ * own.
+ * 
+ * @author simpsons
+ */
+final class BatchRequest {
+    /**
+     * A call held in a batch
+     */
+    interface Entry {
+        /**
+         * Get the receiver of the call.
+         * 
+         * @return the receiver's location
+         */
+        URI location();
+
+        /**
+         * Write the request message of the call.
+         * 
+         * @param out the destination of the message
+         */
+        void writeRequest(JsonGenerator out);
+
+        /**
+         * Complete the call with its result. Failures are reported
+         * through the call's own completion, rather than thrown.
+         * 
+         * @param status the status code that the call yielded
+         * 
+         * @param in a parser positioned before the response message,
+         * which must be consumed; or {@code null} if there is no
+         * message
+         */
+        void receive(int status, JsonParser in);
+
+        /**
+         * Send the call again on its own.
+         * 
+         * @param engine the HTTP client to send the call with
+         */
+        void resend(HttpClient engine);
+
+        /**
+         * Complete the call with a failure. This has no effect if the
+         * call has already completed.
+         * 
+         * @param t the cause of the failure
+         */
+        void fail(Throwable t);
+    }
+
+    /**
+     * The name of the header identifying a batch request
+     */
+    static final String HEADER = "Carp-Batch";
+
+    /**
+     * The status of a call that was sent in a batch to the wrong
+     * placement
+     */
+    static final int MISDIRECTED = 421;
+
+    private final Map<InetSocketAddress, List<Entry>> pending =
+        new LinkedHashMap<>();
+
+    /**
+     * Hold a call until the next flush.
+     * 
+     * @param entry the call
+     */
+    synchronized void add(Entry entry) {
+        pending.computeIfAbsent(Carp.getPeer(entry.location()),
+                                k -> new ArrayList<>())
+            .add(entry);
+    }
+
+    /**
+     * Send all calls held so far, one request per peer. This call does
+     * not block.
+     * 
+     * @param engine the HTTP client to send requests with
+     */
+    void flush(HttpClient engine) {
+        final Collection<List<Entry>> groups;
+        synchronized (this) {
+            if (pending.isEmpty()) return;
+            groups = List.copyOf(pending.values());
+            pending.clear();
+        }
+        for (List<Entry> group : groups) {
+            if (group.size() == 1)
+                group.get(0).resend(engine);
+            else
+                send(engine, group);
+        }
+    }
+
+    /**
+     * Send calls to a single peer in one request.
+     * 
+     * @param engine the HTTP client to send the request with
+     * 
+     * @param entries the calls to send
+     */
+    private static void send(HttpClient engine, List<Entry> entries) {
+        /* Encode each message separately, so that a call that can't be
+         * encoded fails alone. */
+        List<Entry> sent = new ArrayList<>(entries.size());
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write('[');
+        for (Entry entry : entries) {
+            ByteArrayOutputStream msg = new ByteArrayOutputStream();
+            try (JsonGenerator gen = WireFormat.JSON.createGenerator(msg)) {
+                entry.writeRequest(gen);
+            } catch (RuntimeException ex) {
+                entry.fail(ex);
+                continue;
+            }
+            if (!sent.isEmpty()) body.write(',');
+            String to = Json.createValue(entry.location().getRawPath())
+                .toString();
+            body.writeBytes(("{\"to\":" + to + ",\"msg\":")
+                .getBytes(StandardCharsets.UTF_8));
+            body.writeBytes(msg.toByteArray());
+            body.write('}');
+            sent.add(entry);
+        }
+        body.write(']');
+        if (sent.isEmpty()) return;
+
+        final URI target = sent.get(0).location();
+        HttpRequest treq = HttpRequest.newBuilder(target)
+            .header("Content-Type", WireFormat.JSON.contentType.toString())
+            .header(HEADER, "1")
+            .POST(BodyPublishers.ofByteArray(body.toByteArray())).build();
+        engine.sendAsync(treq, BodyHandlers.ofByteArray())
+            .whenComplete((trsp, ex) -> {
+                if (ex != null) {
+                    if (ex instanceof CompletionException &&
+                        ex.getCause() != null) ex = ex.getCause();
+                    failAll(sent, 0,
+                            new TransportException(target.toString(), ex));
+                    return;
+                }
+                receive(engine, target, trsp, sent);
+            });
+    }
+
+    /**
+     * Distribute the results of a batch request to its calls.
+     * 
+     * @param engine the HTTP client to resend calls with
+     * 
+     * @param target the URI the batch was posted to
+     * 
+     * @param trsp the response to the batch request
+     * 
+     * @param entries the calls of the batch, in order
+     */
+    private static void receive(HttpClient engine, URI target,
+                                HttpResponse<byte[]> trsp,
+                                List<Entry> entries) {
+        switch (trsp.statusCode()) {
+        case HttpStatus.SC_OK:
+            break;
+
+        case HttpStatus.SC_BAD_REQUEST:
+            /* The peer doesn't understand batches, or found this one
+             * malformed. Either way, it has invoked nothing. */
+            for (Entry entry : entries)
+                entry.resend(engine);
+            return;
+
+        default:
+            failAll(entries, 0, new RemoteInvocationException("bad code "
+                + trsp.statusCode() + " from " + target));
+            return;
+        }
+
+        String mimeType = trsp.headers().firstValue("Content-Type")
+            .map(t -> t.split(";", 2)[0].trim()).orElse(null);
+        WireFormat format = WireFormat.forMimeType(mimeType);
+        if (format == null) {
+            failAll(entries, 0, new ProtocolException("unsupported type ("
+                + mimeType + ") from " + target));
+            return;
+        }
+
+        int i = 0;
+        try (JsonParser in =
+            format.createParser(new ByteArrayInputStream(trsp.body()))) {
+            if (in.next() != JsonParser.Event.START_ARRAY)
+                throw new ProtocolException("batch response not an array");
+            for (var ev = in.next(); ev != JsonParser.Event.END_ARRAY;
+                 ev = in.next()) {
+                if (i == entries.size())
+                    throw new ProtocolException("excess results");
+                if (ev != JsonParser.Event.START_OBJECT)
+                    throw new ProtocolException("result not an object");
+                Entry entry = entries.get(i++);
+                int status = -1;
+                boolean received = false;
+                for (ev = in.next(); ev != JsonParser.Event.END_OBJECT;
+                     ev = in.next()) {
+                    switch (in.getString()) {
+                    case "status":
+                        in.next();
+                        status = in.getInt();
+                        break;
+
+                    case "msg":
+                        if (status < 0 || status == MISDIRECTED) {
+                            Codecs.skipValue(in.next(), in);
+                            break;
+                        }
+                        entry.receive(status, in);
+                        received = true;
+                        break;
+
+                    default:
+                        Codecs.skipValue(in.next(), in);
+                        break;
+                    }
+                }
+                if (status < 0)
+                    throw new ProtocolException("result without status");
+                if (status == MISDIRECTED)
+                    entry.resend(engine);
+                else if (!received) entry.receive(status, null);
+            }
+            if (i < entries.size())
+                throw new ProtocolException("missing results");
+        } catch (RuntimeException ex) {
+            failAll(entries, Math.max(0, i - 1),
+                    new ProtocolException("bad batch response from "
+                        + target, ex));
+        }
+    }
+
+    private static void failAll(List<Entry> entries, int from,
+                                Throwable t) {
+        for (Entry entry : entries.subList(from, entries.size()))
+            entry.fail(t);
+    }
+}
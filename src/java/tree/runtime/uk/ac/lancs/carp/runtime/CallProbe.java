@@ -0,0 +1,254 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp.runtime;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.function.LongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import uk.ac.lancs.carp.CallMetrics;
+import uk.ac.lancs.carp.CallRecord;
+import uk.ac.lancs.carp.map.ExternalName;
+
+/**
+ * Accumulates the measurements of a single call, and reports them to a
+ * {@link CallMetrics} once the call is complete. A probe is used by
+ * one thread at a time, so it is not synchronized.
+ * 
+ * @author simpsons
+ */
+final class CallProbe {
+    private final CallMetrics sink;
+
+    private final CallRecord.Side side;
+
+    private final long start = System.nanoTime();
+
+    ExternalName interfaceName;
+
+    ExternalName callName;
+
+    long encodeNanos;
+
+    long decodeNanos;
+
+    long executionNanos;
+
+    long requestBytes = -1;
+
+    long responseBytes = -1;
+
+    ExternalName responseType;
+
+    Class<? extends Throwable> error;
+
+    private boolean reported;
+
+    /**
+     * Start measuring a call.
+     * 
+     * @param sink the recipient of the measurements
+     * 
+     * @param side the side of the call being measured
+     */
+    CallProbe(CallMetrics sink, CallRecord.Side side) {
+        this.sink = sink;
+        this.side = side;
+    }
+
+    /**
+     * Create a probe for a call, if measurements are required.
+     * 
+     * @param sink the recipient of the measurements; or {@code null}
+     * if none are required
+     * 
+     * @param side the side of the call being measured
+     * 
+     * @return a new probe; or {@code null} if the sink is
+     * {@code null}
+     */
+    static CallProbe start(CallMetrics sink, CallRecord.Side side) {
+        return sink == null ? null : new CallProbe(sink, side);
+    }
+
+    /**
+     * Note the exception that caused the call to fail. Exceptions
+     * wrapped by reflective invocation are unwrapped.
+     * 
+     * @param t the exception
+     */
+    void fail(Throwable t) {
+        if (t instanceof InvocationTargetException && t.getCause() != null)
+            t = t.getCause();
+        error = t.getClass();
+    }
+
+    /**
+     * Count the bytes of a request as they are written.
+     * 
+     * @param out the destination of the request
+     * 
+     * @return a stream that counts bytes, and passes them on
+     */
+    OutputStream countRequest(OutputStream out) {
+        requestBytes = 0;
+        return new CountingOutputStream(out, n -> requestBytes += n);
+    }
+
+    /**
+     * Count the bytes of a response as they are written.
+     * 
+     * @param out the destination of the response
+     * 
+     * @return a stream that counts bytes, and passes them on
+     */
+    OutputStream countResponse(OutputStream out) {
+        responseBytes = 0;
+        return new CountingOutputStream(out, n -> responseBytes += n);
+    }
+
+    /**
+     * Count the bytes of a request as they are read.
+     * 
+     * @param in the source of the request
+     * 
+     * @return a stream that counts bytes as it passes them on
+     */
+    InputStream countRequest(InputStream in) {
+        requestBytes = 0;
+        return new CountingInputStream(in, n -> requestBytes += n);
+    }
+
+    /**
+     * Count the bytes of a response as they are read.
+     * 
+     * @param in the source of the response
+     * 
+     * @return a stream that counts bytes as it passes them on
+     */
+    InputStream countResponse(InputStream in) {
+        responseBytes = 0;
+        return new CountingInputStream(in, n -> responseBytes += n);
+    }
+
+    /**
+     * Passes bytes on to another stream, and adds the number written
+     * to a field of the probe.
+     */
+    private static final class CountingOutputStream
+        extends FilterOutputStream {
+        private final LongConsumer counter;
+
+        CountingOutputStream(OutputStream out, LongConsumer counter) {
+            super(out);
+            this.counter = counter;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            counter.accept(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            counter.accept(len);
+        }
+    }
+
+    /**
+     * Passes on bytes read from another stream, and adds the number
+     * read to a field of the probe.
+     */
+    private static final class CountingInputStream
+        extends FilterInputStream {
+        private final LongConsumer counter;
+
+        CountingInputStream(InputStream in, LongConsumer counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) counter.accept(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int got = in.read(b, off, len);
+            if (got > 0) counter.accept(got);
+            return got;
+        }
+    }
+
+    /**
+     * Deliver the measurements to the sink. On the client side, the
+     * time not accounted for by encoding and decoding is attributed to
+     * transport. Only the first invocation has any effect.
+     */
+    void report() {
+        if (reported) return;
+        reported = true;
+        long transportNanos = 0;
+        if (side == CallRecord.Side.CLIENT)
+            transportNanos = Math.max(0, System.nanoTime() - start
+                - encodeNanos - decodeNanos);
+        CallRecord rec =
+            new CallRecord(side, interfaceName, callName, encodeNanos,
+                           transportNanos, decodeNanos, executionNanos,
+                           requestBytes, responseBytes, responseType, error);
+        try {
+            sink.record(rec);
+        } catch (RuntimeException ex) {
+            logger.log(Level.WARNING, "metrics failure", ex);
+        }
+    }
+
+    private static final Logger logger =
+        Logger.getLogger("uk.ac.lancs.carp.metrics");
+}
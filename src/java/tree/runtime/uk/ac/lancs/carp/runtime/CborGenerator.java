@@ -0,0 +1,347 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+package uk.ac.lancs.carp.runtime;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.stream.JsonGenerationException;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * Writes JSON events as CBOR (RFC 8949). Objects and arrays are written
+ * with indefinite length, so that they can be streamed. Integers are
+ * written as CBOR integers, or as bignums if they exceed 64 bits.
+ * Non-integral decimals are written as decimal fractions, and doubles
+ * as 64-bit floats.
+ * 
+ * @author simpsons
+ */
+final class CborGenerator implements JsonGenerator {
+    private final OutputStream out;
+
+    /**
+     * Counts the number of containers opened but not yet ended.
+     */
+    private int depth;
+
+    /**
+     * Create a CBOR generator.
+     * 
+     * @param out the destination stream
+     */
+    CborGenerator(OutputStream out) {
+        this.out = new BufferedOutputStream(out);
+    }
+
+    private void put(int b) {
+        try {
+            out.write(b);
+        } catch (IOException ex) {
+            throw new JsonException("writing CBOR", ex);
+        }
+    }
+
+    private void put(byte[] b) {
+        try {
+            out.write(b);
+        } catch (IOException ex) {
+            throw new JsonException("writing CBOR", ex);
+        }
+    }
+
+    /**
+     * Write the initial bytes of a data item.
+     * 
+     * @param major the major type
+     * 
+     * @param n the argument, treated as unsigned
+     */
+    private void head(int major, long n) {
+        final int mt = major << 5;
+        if (n >= 0 && n < 24) {
+            put(mt | (int) n);
+        } else if (n >= 0 && n <= 0xffL) {
+            put(mt | 24);
+            put((int) n);
+        } else if (n >= 0 && n <= 0xffffL) {
+            put(mt | 25);
+            putBytes(n, 2);
+        } else if (n >= 0 && n <= 0xffffffffL) {
+            put(mt | 26);
+            putBytes(n, 4);
+        } else {
+            put(mt | 27);
+            putBytes(n, 8);
+        }
+    }
+
+    private void putBytes(long n, int count) {
+        for (int i = count - 1; i >= 0; i--)
+            put((int) (n >>> (i * 8)) & 0xff);
+    }
+
+    private JsonGenerator start(int major) {
+        put((major << 5) | 31);
+        depth++;
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeStartObject() {
+        return start(5);
+    }
+
+    @Override
+    public JsonGenerator writeStartObject(String name) {
+        writeKey(name);
+        return writeStartObject();
+    }
+
+    @Override
+    public JsonGenerator writeKey(String name) {
+        return write(name);
+    }
+
+    @Override
+    public JsonGenerator writeStartArray() {
+        return start(4);
+    }
+
+    @Override
+    public JsonGenerator writeStartArray(String name) {
+        writeKey(name);
+        return writeStartArray();
+    }
+
+    @Override
+    public JsonGenerator write(String name, JsonValue value) {
+        writeKey(name);
+        return write(value);
+    }
+
+    @Override
+    public JsonGenerator write(String name, String value) {
+        writeKey(name);
+        return write(value);
+    }
+
+    @Override
+    public JsonGenerator write(String name, BigInteger value) {
+        writeKey(name);
+        return write(value);
+    }
+
+    @Override
+    public JsonGenerator write(String name, BigDecimal value) {
+        writeKey(name);
+        return write(value);
+    }
+
+    @Override
+    public JsonGenerator write(String name, int value) {
+        writeKey(name);
+        return write(value);
+    }
+
+    @Override
+    public JsonGenerator write(String name, long value) {
+        writeKey(name);
+        return write(value);
+    }
+
+    @Override
+    public JsonGenerator write(String name, double value) {
+        writeKey(name);
+        return write(value);
+    }
+
+    @Override
+    public JsonGenerator write(String name, boolean value) {
+        writeKey(name);
+        return write(value);
+    }
+
+    @Override
+    public JsonGenerator writeNull(String name) {
+        writeKey(name);
+        return writeNull();
+    }
+
+    @Override
+    public JsonGenerator writeEnd() {
+        if (depth == 0)
+            throw new JsonGenerationException("no container to end");
+        depth--;
+        put(0xff);
+        return this;
+    }
+
+    @Override
+    public JsonGenerator write(JsonValue value) {
+        switch (value.getValueType()) {
+        case OBJECT:
+            writeStartObject();
+            for (Map.Entry<String, JsonValue> entry : ((JsonObject) value)
+                .entrySet())
+                write(entry.getKey(), entry.getValue());
+            return writeEnd();
+
+        case ARRAY:
+            writeStartArray();
+            for (JsonValue elem : (JsonArray) value)
+                write(elem);
+            return writeEnd();
+
+        case STRING:
+            return write(((JsonString) value).getString());
+
+        case NUMBER:
+            JsonNumber num = (JsonNumber) value;
+            if (num.isIntegral()) return write(num.bigIntegerValue());
+            return write(num.bigDecimalValue());
+
+        case TRUE:
+            return write(true);
+
+        case FALSE:
+            return write(false);
+
+        default:
+            return writeNull();
+        }
+    }
+
+    @Override
+    public JsonGenerator write(String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        head(3, utf8.length);
+        put(utf8);
+        return this;
+    }
+
+    @Override
+    public JsonGenerator write(BigDecimal value) {
+        if (value.scale() == 0) return write(value.unscaledValue());
+
+        /* Write a decimal fraction as [ exponent, mantissa ]. */
+        head(6, 4);
+        head(4, 2);
+        write(-(long) value.scale());
+        return write(value.unscaledValue());
+    }
+
+    @Override
+    public JsonGenerator write(BigInteger value) {
+        if (value.bitLength() < 64) return write(value.longValue());
+
+        /* Write a bignum, whose negative form holds -1 - n. */
+        final boolean neg = value.signum() < 0;
+        if (neg) value = value.not();
+        byte[] raw = value.toByteArray();
+        if (raw[0] == 0) raw = Arrays.copyOfRange(raw, 1, raw.length);
+        head(6, neg ? 3 : 2);
+        head(2, raw.length);
+        put(raw);
+        return this;
+    }
+
+    @Override
+    public JsonGenerator write(int value) {
+        return write((long) value);
+    }
+
+    @Override
+    public JsonGenerator write(long value) {
+        if (value >= 0)
+            head(0, value);
+        else
+            head(1, -1 - value);
+        return this;
+    }
+
+    @Override
+    public JsonGenerator write(double value) {
+        put((7 << 5) | 27);
+        putBytes(Double.doubleToLongBits(value), 8);
+        return this;
+    }
+
+    @Override
+    public JsonGenerator write(boolean value) {
+        put(value ? 0xf5 : 0xf4);
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeNull() {
+        put(0xf6);
+        return this;
+    }
+
+    @Override
+    public void close() {
+        try {
+            out.close();
+        } catch (IOException ex) {
+            throw new JsonException("closing CBOR", ex);
+        }
+        if (depth != 0)
+            throw new JsonGenerationException("incomplete CBOR value");
+    }
+
+    @Override
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException ex) {
+            throw new JsonException("flushing CBOR", ex);
+        }
+    }
+}
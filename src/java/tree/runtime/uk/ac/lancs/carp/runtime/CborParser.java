@@ -0,0 +1,518 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+package uk.ac.lancs.carp.runtime;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.NoSuchElementException;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+import javax.json.stream.JsonLocation;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParsingException;
+
+/**
+ * Reads CBOR (RFC 8949) as JSON events. Definite- and
+ * indefinite-length items are accepted. Map keys must be text strings.
+ * Bignums, decimal fractions and floats are reported as numbers. Byte
+ * strings and other tags are not supported.
+ * 
+ * @author simpsons
+ */
+final class CborParser implements JsonParser {
+    private final InputStream in;
+
+    /**
+     * Counts the bytes consumed so far.
+     */
+    private long offset;
+
+    /**
+     * Records progress through an open array or map.
+     */
+    private static final class Frame {
+        final boolean map;
+
+        /**
+         * Holds the number of elements or pairs remaining, or -1 if
+         * the container has indefinite length.
+         */
+        long remaining;
+
+        boolean expectKey;
+
+        Frame(boolean map, long remaining) {
+            this.map = map;
+            this.remaining = remaining;
+            this.expectKey = map;
+        }
+    }
+
+    private final Deque<Frame> stack = new ArrayDeque<>();
+
+    private boolean started, finished;
+
+    private Event event;
+
+    private String string;
+
+    private BigDecimal number;
+
+    /**
+     * Create a CBOR parser.
+     * 
+     * @param in the source stream
+     */
+    CborParser(InputStream in) {
+        this.in = new BufferedInputStream(in);
+    }
+
+    private JsonParsingException error(String msg) {
+        return new JsonParsingException(msg, getLocation());
+    }
+
+    private int peek() {
+        try {
+            in.mark(1);
+            int b = in.read();
+            in.reset();
+            if (b < 0) throw error("truncated CBOR");
+            return b;
+        } catch (IOException ex) {
+            throw new JsonException("reading CBOR", ex);
+        }
+    }
+
+    private int get() {
+        try {
+            int b = in.read();
+            if (b < 0) throw error("truncated CBOR");
+            offset++;
+            return b;
+        } catch (IOException ex) {
+            throw new JsonException("reading CBOR", ex);
+        }
+    }
+
+    /**
+     * Limits how much is read at once into a string's content.
+     */
+    private static final int CHUNK = 8192;
+
+    private byte[] get(long len) {
+        if (len < 0 || len > Integer.MAX_VALUE)
+            throw error("CBOR item too long");
+
+        /* The length is only the peer's claim, so grow the content as
+         * it actually arrives, rather than allocating it up front. */
+        int remaining = (int) len;
+        byte[] chunk = new byte[Math.min(remaining, CHUNK)];
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(chunk.length);
+        try {
+            while (remaining > 0) {
+                int got = in.read(chunk, 0, Math.min(remaining, chunk.length));
+                if (got < 0) throw error("truncated CBOR");
+                buf.write(chunk, 0, got);
+                offset += got;
+                remaining -= got;
+            }
+        } catch (IOException ex) {
+            throw new JsonException("reading CBOR", ex);
+        }
+        return buf.toByteArray();
+    }
+
+    private long getBytes(int count) {
+        long r = 0;
+        for (int i = 0; i < count; i++)
+            r = (r << 8) | get();
+        return r;
+    }
+
+    /**
+     * Read the argument of a data item.
+     * 
+     * @param info the additional information of the initial byte
+     * 
+     * @return the argument, as an unsigned value; or -1 if the item
+     * has indefinite length
+     */
+    private long argument(int info) {
+        if (info < 24) return info;
+        switch (info) {
+        case 24:
+            return getBytes(1);
+        case 25:
+            return getBytes(2);
+        case 26:
+            return getBytes(4);
+        case 27:
+            return getBytes(8);
+        case 31:
+            return -1;
+        default:
+            throw error("bad CBOR additional information " + info);
+        }
+    }
+
+    private static BigInteger unsigned(long n) {
+        return n >= 0 ? BigInteger.valueOf(n) :
+            new BigInteger(Long.toUnsignedString(n));
+    }
+
+    private String readText(int initial) {
+        if (initial >>> 5 != 3) throw error("expected CBOR text string");
+        long len = argument(initial & 31);
+        if (len >= 0) return new String(get(len), StandardCharsets.UTF_8);
+
+        /* Concatenate definite-length chunks. */
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        for (int b = get(); b != 0xff; b = get()) {
+            if (b >>> 5 != 3 || (b & 31) == 31)
+                throw error("bad CBOR text chunk");
+            buf.writeBytes(get(argument(b & 31)));
+        }
+        return buf.toString(StandardCharsets.UTF_8);
+    }
+
+    private BigInteger readInteger() {
+        int b = get();
+        long n = argument(b & 31);
+        switch (b >>> 5) {
+        case 0:
+            return unsigned(n);
+        case 1:
+            return unsigned(n).not();
+        case 6:
+            if (n == 2 || n == 3) {
+                int s = get();
+                if (s >>> 5 != 2 || (s & 31) == 31)
+                    throw error("bad CBOR bignum");
+                BigInteger v = new BigInteger(1, get(argument(s & 31)));
+                return n == 2 ? v : v.not();
+            }
+            break;
+        default:
+            break;
+        }
+        throw error("expected CBOR integer");
+    }
+
+    private static double halfToDouble(int bits) {
+        int exp = (bits >>> 10) & 0x1f;
+        int mant = bits & 0x3ff;
+        double val;
+        if (exp == 0)
+            val = Math.scalb((double) mant, -24);
+        else if (exp != 31)
+            val = Math.scalb((double) (mant + 1024), exp - 25);
+        else
+            val = mant == 0 ? Double.POSITIVE_INFINITY : Double.NaN;
+        return (bits & 0x8000) == 0 ? val : -val;
+    }
+
+    private Event number(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            throw error("non-finite CBOR float");
+        number = BigDecimal.valueOf(value);
+        return scalar(Event.VALUE_NUMBER);
+    }
+
+    private Event scalar(Event ev) {
+        Frame f = stack.peek();
+        if (f == null) {
+            finished = true;
+        } else {
+            if (f.remaining > 0) f.remaining--;
+            f.expectKey = f.map;
+        }
+        return ev;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !finished;
+    }
+
+    @Override
+    public Event next() {
+        if (finished) throw new NoSuchElementException();
+        started = true;
+        string = null;
+        number = null;
+        return event = advance();
+    }
+
+    private Event advance() {
+        Frame f = stack.peek();
+        if (f != null) {
+            /* Detect the end of the current container. */
+            if (f.remaining == 0 || (f.remaining < 0 && peek() == 0xff)) {
+                if (f.remaining < 0) get();
+                stack.pop();
+                return scalar(f.map ? Event.END_OBJECT : Event.END_ARRAY);
+            }
+
+            if (f.expectKey) {
+                f.expectKey = false;
+                string = readText(get());
+                return Event.KEY_NAME;
+            }
+        }
+
+        final int b = peek();
+        final int info = b & 31;
+        switch (b >>> 5) {
+        case 0:
+        case 1:
+            number = new BigDecimal(readInteger());
+            return scalar(Event.VALUE_NUMBER);
+
+        case 3:
+            string = readText(get());
+            return scalar(Event.VALUE_STRING);
+
+        case 4:
+            get();
+            stack.push(new Frame(false, argument(info)));
+            return Event.START_ARRAY;
+
+        case 5:
+            get();
+            stack.push(new Frame(true, argument(info)));
+            return Event.START_OBJECT;
+
+        case 6:
+            if (info == 2 || info == 3) {
+                number = new BigDecimal(readInteger());
+                return scalar(Event.VALUE_NUMBER);
+            }
+            if (info == 4) {
+                /* A decimal fraction is [ exponent, mantissa ]. */
+                get();
+                int a = get();
+                if (a != 0x82) throw error("bad CBOR decimal fraction");
+                int exp = readInteger().intValueExact();
+                number = new BigDecimal(readInteger(), -exp);
+                return scalar(Event.VALUE_NUMBER);
+            }
+            throw error("unsupported CBOR tag " + info);
+
+        case 7:
+            get();
+            switch (info) {
+            case 20:
+                return scalar(Event.VALUE_FALSE);
+            case 21:
+                return scalar(Event.VALUE_TRUE);
+            case 22:
+            case 23:
+                return scalar(Event.VALUE_NULL);
+            case 25:
+                return number(halfToDouble((int) getBytes(2)));
+            case 26:
+                return number(Float.intBitsToFloat((int) getBytes(4)));
+            case 27:
+                return number(Double.longBitsToDouble(getBytes(8)));
+            default:
+                throw error("unsupported CBOR simple value " + info);
+            }
+
+        default:
+            throw error("unsupported CBOR major type " + (b >>> 5));
+        }
+    }
+
+    @Override
+    public String getString() {
+        switch (event) {
+        case KEY_NAME:
+        case VALUE_STRING:
+            return string;
+        case VALUE_NUMBER:
+            return number.toString();
+        default:
+            throw new IllegalStateException("not at string: " + event);
+        }
+    }
+
+    private BigDecimal number() {
+        if (event != Event.VALUE_NUMBER)
+            throw new IllegalStateException("not at number: " + event);
+        return number;
+    }
+
+    @Override
+    public boolean isIntegralNumber() {
+        return number().scale() <= 0;
+    }
+
+    @Override
+    public int getInt() {
+        return number().intValue();
+    }
+
+    @Override
+    public long getLong() {
+        return number().longValue();
+    }
+
+    @Override
+    public BigDecimal getBigDecimal() {
+        return number();
+    }
+
+    @Override
+    public JsonLocation getLocation() {
+        final long at = offset;
+        return new JsonLocation() {
+            @Override
+            public long getLineNumber() {
+                return -1;
+            }
+
+            @Override
+            public long getColumnNumber() {
+                return -1;
+            }
+
+            @Override
+            public long getStreamOffset() {
+                return at;
+            }
+        };
+    }
+
+    @Override
+    public JsonValue getValue() {
+        if (!started) throw new IllegalStateException("no current event");
+        switch (event) {
+        case START_OBJECT:
+            return getObject();
+        case START_ARRAY:
+            return getArray();
+        case KEY_NAME:
+        case VALUE_STRING:
+            return Json.createValue(string);
+        case VALUE_NUMBER:
+            return isIntegralNumber() ?
+                Json.createValue(number.toBigIntegerExact()) :
+                Json.createValue(number);
+        case VALUE_TRUE:
+            return JsonValue.TRUE;
+        case VALUE_FALSE:
+            return JsonValue.FALSE;
+        case VALUE_NULL:
+            return JsonValue.NULL;
+        default:
+            throw new IllegalStateException("not at value: " + event);
+        }
+    }
+
+    @Override
+    public JsonObject getObject() {
+        if (event != Event.START_OBJECT)
+            throw new IllegalStateException("not at object: " + event);
+        JsonObjectBuilder builder = Json.createObjectBuilder();
+        while (next() != Event.END_OBJECT) {
+            String key = string;
+            next();
+            builder.add(key, getValue());
+        }
+        return builder.build();
+    }
+
+    @Override
+    public JsonArray getArray() {
+        if (event != Event.START_ARRAY)
+            throw new IllegalStateException("not at array: " + event);
+        JsonArrayBuilder builder = Json.createArrayBuilder();
+        while (next() != Event.END_ARRAY)
+            builder.add(getValue());
+        return builder.build();
+    }
+
+    private void skipContainer() {
+        int depth = 1;
+        while (depth > 0) {
+            switch (next()) {
+            case START_OBJECT:
+            case START_ARRAY:
+                depth++;
+                break;
+            case END_OBJECT:
+            case END_ARRAY:
+                depth--;
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void skipArray() {
+        skipContainer();
+    }
+
+    @Override
+    public void skipObject() {
+        skipContainer();
+    }
+
+    @Override
+    public void close() {
+        try {
+            in.close();
+        } catch (IOException ex) {
+            throw new JsonException("closing CBOR", ex);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2021,2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp.runtime;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import javax.net.ssl.SSLContext;
+import org.apache.http.HttpHost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import uk.ac.lancs.carp.Carp;
+import uk.ac.lancs.carp.Configuration;
+
+/**
+ * Supplies the same long-lived HTTP client on every call, backed by a
+ * connection pool that keeps connections to each peer alive between
+ * calls. The client's connection manager is marked as shared, so
+ * closing the supplied client after each call does not close the pool.
+ * 
+ * <p>
+ * Idle and expired connections are periodically closed by a single
+ * daemon thread shared by all pools. A pool's connections are shut
+ * down once the pool itself has been garbage-collected.
+ * 
+ * @author simpsons
+ */
+final class ClientPool implements Supplier<CloseableHttpClient> {
+    private final PoolingHttpClientConnectionManager manager;
+
+    private final CloseableHttpClient client;
+
+    /**
+     * Create a pooled client according to configuration. The following
+     * parameters are consulted:
+     * 
+     * <ul>
+     * 
+     * <li>{@link Carp#CLIENT_BUILDER}
+     * 
+     * <li>{@link Carp#SSL_CONTEXT}
+     * 
+     * <li>{@link Carp#MAX_CONNECTIONS}
+     * 
+     * <li>{@link Carp#MAX_CONNECTIONS_PER_PEER}
+     * 
+     * <li>{@link Carp#PEER_CONNECTION_LIMITS}
+     * 
+     * <li>{@link Carp#IDLE_CONNECTION_TIMEOUT}
+     * 
+     * </ul>
+     * 
+     * @param params the configuration
+     */
+    ClientPool(Configuration params) {
+        SSLContext sslCtxt = params.get(Carp.SSL_CONTEXT);
+        ConnectionSocketFactory secure = sslCtxt == null ?
+            SSLConnectionSocketFactory.getSocketFactory() :
+            new SSLConnectionSocketFactory(sslCtxt);
+        Registry<ConnectionSocketFactory> registry =
+            RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http",
+                          PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", secure).build();
+        this.manager = new PoolingHttpClientConnectionManager(registry);
+
+        if (params.has(Carp.MAX_CONNECTIONS))
+            manager.setMaxTotal(params.get(Carp.MAX_CONNECTIONS, 0));
+        if (params.has(Carp.MAX_CONNECTIONS_PER_PEER))
+            manager.setDefaultMaxPerRoute(params
+                .get(Carp.MAX_CONNECTIONS_PER_PEER, 0));
+
+        /* We don't know which scheme each peer will be contacted with,
+         * so set the limit for both. */
+        Map<InetSocketAddress, Integer> limits =
+            params.get(Carp.PEER_CONNECTION_LIMITS, Map.of());
+        for (var entry : limits.entrySet()) {
+            InetSocketAddress peer = entry.getKey();
+            for (String scheme : new String[] { "http", "https" }) {
+                HttpHost host = new HttpHost(peer.getHostString(),
+                                             peer.getPort(), scheme);
+                /* The route's security must match those the pool
+                 * creates, or the limit will never apply. */
+                HttpRoute route =
+                    new HttpRoute(host, null, "https".equals(scheme));
+                manager.setMaxPerRoute(route, entry.getValue());
+            }
+        }
+
+        HttpClientBuilder builder =
+            params.computeIfAbsent(Carp.CLIENT_BUILDER, () -> HttpClients::custom)
+                .get();
+        this.client = builder.setConnectionManager(manager)
+            .setConnectionManagerShared(true).build();
+
+        watch(this, manager, params.get(Carp.IDLE_CONNECTION_TIMEOUT));
+    }
+
+    /**
+     * Get the pooled client. The same client is returned on every call.
+     * 
+     * @return the pooled client
+     */
+    @Override
+    public CloseableHttpClient get() {
+        return client;
+    }
+
+    private static final ScheduledExecutorService evictor =
+        Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, ClientPool.class.getCanonicalName());
+            t.setDaemon(true);
+            return t;
+        });
+
+    /**
+     * Specifies how often to check pools with no idle timeout, in
+     * milliseconds.
+     */
+    private static final long DEFAULT_CHECK_PERIOD = 30 * 1000;
+
+    /**
+     * Periodically close idle and expired connections of a pool until
+     * its owner is garbage-collected, then shut the pool down.
+     * 
+     * @param owner the object whose lifetime governs the pool
+     * 
+     * @param manager the connection pool
+     * 
+     * @param idle the time after which an idle connection is closed;
+     * or {@code null} if only expired connections are to be closed
+     */
+    private static void watch(Object owner,
+                              PoolingHttpClientConnectionManager manager,
+                              Duration idle) {
+        final Reference<Object> ref = new WeakReference<>(owner);
+        final long period = idle == null ? DEFAULT_CHECK_PERIOD :
+            Math.max(1, idle.toMillis() / 2);
+        final AtomicReference<ScheduledFuture<?>> handle =
+            new AtomicReference<>();
+        handle.set(evictor.scheduleWithFixedDelay(() -> {
+            if (ref.get() == null) {
+                /* The owner has gone, so nothing can use the pool any
+                 * more. If we haven't yet got our own handle, we'll be
+                 * run again, and can cancel then. */
+                manager.shutdown();
+                ScheduledFuture<?> self = handle.get();
+                if (self != null) self.cancel(false);
+                return;
+            }
+            manager.closeExpiredConnections();
+            if (idle != null)
+                manager.closeIdleConnections(idle.toMillis(),
+                                             TimeUnit.MILLISECONDS);
+        }, period, period, TimeUnit.MILLISECONDS));
+    }
+}
@@ -38,13 +38,26 @@
 
 package uk.ac.lancs.carp.runtime;
 
-import java.io.StringWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -53,34 +66,47 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 import javax.json.Json;
+import javax.json.JsonNumber;
 import javax.json.JsonObject;
-import javax.json.JsonObjectBuilder;
 import javax.json.JsonReader;
 import javax.json.JsonReaderFactory;
 import javax.json.JsonValue;
-import javax.json.JsonWriter;
-import javax.json.JsonWriterFactory;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpStatus;
-import org.apache.http.client.entity.EntityBuilder;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.EntityTemplate;
 import org.apache.http.impl.client.CloseableHttpClient;
+import uk.ac.lancs.carp.AsynchronousProxy;
+import uk.ac.lancs.carp.CallMetrics;
+import uk.ac.lancs.carp.CallRecord;
+import uk.ac.lancs.carp.Carp;
 import uk.ac.lancs.carp.Fingerprint;
 import uk.ac.lancs.carp.InternalServerException;
 import uk.ac.lancs.carp.MissingEndpointException;
 import uk.ac.lancs.carp.ProtocolException;
 import uk.ac.lancs.carp.RemoteInvocationException;
+import uk.ac.lancs.carp.ServiceUnavailableException;
 import uk.ac.lancs.carp.TransportException;
+import uk.ac.lancs.carp.codec.Codecs;
 import uk.ac.lancs.carp.codec.Decoder;
 import uk.ac.lancs.carp.codec.DecodingContext;
+import uk.ac.lancs.carp.codec.Direction;
 import uk.ac.lancs.carp.codec.Encoder;
 import uk.ac.lancs.carp.codec.EncodingContext;
 import uk.ac.lancs.carp.errors.StatusModificationException;
@@ -91,8 +117,11 @@ import uk.ac.lancs.carp.map.Completer;
 import uk.ac.lancs.carp.map.ExternalName;
 import uk.ac.lancs.carp.map.ResponseModel;
 import uk.ac.lancs.carp.map.Setter;
+import uk.ac.lancs.carp.map.Stub;
+import uk.ac.lancs.carp.map.StubTarget;
 import uk.ac.lancs.carp.map.TypeModel;
 import uk.ac.lancs.carp.model.LinkContext;
+import uk.ac.lancs.carp.model.LinkException;
 import uk.ac.lancs.carp.model.TypeInfo;
 import uk.ac.lancs.carp.model.std.CallSpecification;
 import uk.ac.lancs.carp.model.std.InterfaceType;
@@ -101,12 +130,18 @@ import uk.ac.lancs.carp.model.std.ResponseSpecification;
 
 /**
  * Remembers how to implement a proxy for a specific IDL-generated
- * interface type. Its primary purpose is to generate an
- * {@link InvocationHandler} for any given URI endpoint, so that a proxy
- * can be constructed to make calls to that endpoint.
+ * interface type. Its primary purpose is to create a proxy for any
+ * given URI endpoint, to make calls to that endpoint. The proxy is an
+ * instance of the client stub generated with the interface if there is
+ * one, and otherwise a dynamic proxy with an {@link InvocationHandler}.
+ * It can also generate an {@link AsynchronousProxy} for an endpoint.
+ * 
+ * @see #getProxy(Class, URI)
  * 
  * @see #getHandler(java.net.URI)
  * 
+ * @see #getAsynchronousProxy(Class, URI, HttpClient)
+ * 
  * @resume A client-side call translator
  * 
  * @author simpsons
@@ -133,21 +168,51 @@ public class ClientTranslator {
     private static final JsonReaderFactory jsonReaders =
         Json.createReaderFactory(Collections.emptyMap());
 
-    private static final JsonWriterFactory jsonWriters =
-        Json.createWriterFactory(Collections.emptyMap());
-
     /**
      * Locates run-time IDL type definitions.
      */
     private final LinkContext linkCtxt;
 
     /**
-     * Provides fresh HTTP clients. This is invoked once per CARP call.
-     * It's up to the client factory to persist any context between
-     * calls.
+     * Provides HTTP clients. This is invoked once per CARP call, and
+     * the client is closed afterwards. It's up to the client factory to
+     * persist any context between calls. A pooled factory may return
+     * the same client each time, provided that closing it does not shut
+     * down its connection manager.
      */
     private final Supplier<? extends CloseableHttpClient> clientFactory;
 
+    /**
+     * Provides the non-blocking HTTP client. If {@link #clientFactory}
+     * is {@code null}, blocking calls are made with it too.
+     */
+    private final Supplier<? extends HttpClient> asyncClients;
+
+    /**
+     * Records peers known to accept binary requests; or {@code null}
+     * if the binary wire format is not to be offered.
+     */
+    private final Set<InetSocketAddress> binaryPeers;
+
+    /**
+     * Receives measurements of each call; or {@code null} if none are
+     * to be taken.
+     */
+    private final CallMetrics metrics;
+
+    /**
+     * Gathers calls with no response types to be sent together; or
+     * {@code null} if such calls are sent as they are made.
+     */
+    private final OneWayWindow oneWayWindow;
+
+    /**
+     * Remembers which fingerprints each peer has already been sent; or
+     * {@code null} if all relevant fingerprints are sent with every
+     * request.
+     */
+    private final FingerprintLedger printLedger;
+
     /**
      * Creates encoding contexts to allow a proxy to generate request
      * messages. The provided table maps peer addresses to their
@@ -170,41 +235,25 @@ public class ClientTranslator {
                            ? extends DecodingContext> decodingContextProvider;
 
     /**
-     * Provides the implementation of a single method of an
-     * {@link InvocationHandler}.
+     * Defines how to implement each method of a proxy. The same map
+     * serves proxies for all endpoints, which are supplied with each
+     * invocation.
      */
-    private interface MethodImplementation {
-        /**
-         * Invoke the method. Note that this is identical to
-         * {@link InvocationHandler#invoke(Object, Method, Object[])},
-         * except that the <code>method</code> argument is missing, as
-         * that information has already been used by this stage to
-         * select which instance of this interface is to be invoked.
-         * 
-         * @param proxy the proxy through which the method is being
-         * invoked
-         * 
-         * @param args the method arguments
-         * 
-         * @return the return type
-         * 
-         * @throws Throwable if an exception is thrown
-         */
-        Object invoke(Object proxy, Object[] args) throws Throwable;
-    }
+    private final Map<Method, Call> callsByMethod = new HashMap<>();
 
     /**
-     * Defines how to implement each method of a proxy. Given the URI
-     * endpoint to invoke, an invocation handler is returned, allowing a
-     * map from {@link Method} to {@link MethodImplementation} to be
-     * built. This map can be given to a very simply invocation handler
-     * that looks up the method in the map, and relays the call on to
-     * the method-specific handler.
+     * Implements each call of the generated client stub, indexed as
+     * the stub identifies them; or {@code null} if the service type has
+     * no usable stub.
      */
-    private final Map<Method,
-                      Function<? super URI,
-                               ? extends MethodImplementation>> callsByMethod =
-                                   new HashMap<>();
+    private final Call[] stubCalls;
+
+    /**
+     * Creates an instance of the generated client stub given a
+     * {@link StubTarget}; or {@code null} if the service type has no
+     * usable stub.
+     */
+    private final Constructor<?> stubConstructor;
 
     /**
      * Create a client-side call translator.
@@ -212,7 +261,25 @@ public class ClientTranslator {
      * @param linkCtxt a source for IDL type definitions and their
      * native classes
      * 
-     * @param clientFactory a source of HTTP clients
+     * @param clientFactory a source of HTTP clients; or {@code null}
+     * if blocking calls are to be made with the non-blocking client
+     * 
+     * @param asyncClients a source of the non-blocking HTTP client
+     * 
+     * @param binaryPeers a mutable set of peers known to accept binary
+     * requests, to which peers responding in binary will be added; or
+     * {@code null} if the binary wire format is not to be offered
+     * 
+     * @param metrics a recipient of per-call measurements; or
+     * {@code null} if none are to be taken
+     * 
+     * @param oneWayWindow a means to gather calls with no response
+     * types to be sent together; or {@code null} if such calls are to
+     * be sent as they are made
+     * 
+     * @param printLedger a record of fingerprints already sent to each
+     * peer; or {@code null} if all relevant fingerprints are to be
+     * sent with every request
      * 
      * @param encodingContextProvider a means of creating encoding
      * contexts that take account of certificate fingerprints, given a
@@ -226,22 +293,33 @@ public class ClientTranslator {
      * 
      * @param type the service type
      */
-    public ClientTranslator(Class<?> type, LinkContext linkCtxt,
-                            Supplier<? extends CloseableHttpClient> clientFactory,
-                            Function<? super Map<? super InetSocketAddress,
-                                                 ? super Fingerprint>,
-                                     ? extends EncodingContext> encodingContextProvider,
-                            Function<? super Map<? super InetSocketAddress,
-                                                 ? extends Fingerprint>,
-                                     ? extends DecodingContext> decodingContextProvider) {
+    ClientTranslator(Class<?> type, LinkContext linkCtxt,
+                     Supplier<? extends CloseableHttpClient> clientFactory,
+                     Supplier<? extends HttpClient> asyncClients,
+                     Set<InetSocketAddress> binaryPeers, CallMetrics metrics,
+                     OneWayWindow oneWayWindow,
+                     FingerprintLedger printLedger,
+                     Function<? super Map<? super InetSocketAddress,
+                                          ? super Fingerprint>,
+                              ? extends EncodingContext> encodingContextProvider,
+                     Function<? super Map<? super InetSocketAddress,
+                                          ? extends Fingerprint>,
+                              ? extends DecodingContext> decodingContextProvider) {
         this.linkCtxt = linkCtxt;
         this.clientFactory = clientFactory;
+        this.asyncClients = asyncClients;
+        this.binaryPeers = binaryPeers;
+        this.metrics = metrics;
+        this.oneWayWindow = oneWayWindow;
+        this.printLedger = printLedger;
         this.encodingContextProvider = encodingContextProvider;
         this.decodingContextProvider = decodingContextProvider;
 
         /* To deal with inherited types, keep a map from Java class to
          * model element. */
         class Maplet {
+            final ExternalName name;
+
             final InterfaceType model;
 
             final Map<ExternalName, Class<?>> rspTypes;
@@ -270,6 +348,7 @@ public class ClientTranslator {
                 }
                 this.rspTypes = Map.copyOf(rspTypes);
                 this.model = (InterfaceType) info.def;
+                this.name = modelName;
             }
         }
         Map<Class<?>, Maplet> mapping = new HashMap<>();
@@ -289,11 +368,42 @@ public class ClientTranslator {
 
                     ExternalName mn = ExternalName.parse(mder.value());
                     CallSpecification cspec = declarerElem.calls.get(mn);
-                    Call c = new Call(mn, meth, maplet.rspTypes.get(mn), cspec);
+                    Call c = new Call(maplet.name, mn, meth,
+                                      maplet.rspTypes.get(mn), cspec);
                     callsByMethod.put(meth, c);
                 }
             }
         }
+
+        /* Look for a generated client stub, and identify each of its
+         * calls by index. Without one, or if it names a call we don't
+         * know, proxies will be dynamic. */
+        Map<ExternalName, Call> callsByName = new HashMap<>();
+        for (Call c : callsByMethod.values())
+            callsByName.putIfAbsent(c.name, c);
+        Call[] stubCalls = null;
+        Constructor<?> stubConstructor = null;
+        for (var cand : type.getDeclaredClasses()) {
+            Stub sder = cand.getAnnotation(Stub.class);
+            if (sder == null || !type.isAssignableFrom(cand)) continue;
+            String[] names = sder.value();
+            Call[] calls = new Call[names.length];
+            boolean complete = true;
+            for (int i = 0; complete && i < names.length; i++)
+                complete = (calls[i] = callsByName
+                    .get(ExternalName.parse(names[i]))) != null;
+            if (!complete) break;
+            try {
+                stubConstructor = cand.getConstructor(StubTarget.class);
+                stubCalls = calls;
+            } catch (NoSuchMethodException ex) {
+                logger.warning(() -> "stub " + cand.getName()
+                    + " has no binding constructor");
+            }
+            break;
+        }
+        this.stubCalls = stubCalls;
+        this.stubConstructor = stubConstructor;
     }
 
     /**
@@ -305,15 +415,72 @@ public class ClientTranslator {
      * @return the requested invocation handler
      */
     public InvocationHandler getHandler(URI location) {
-        Map<Method, MethodImplementation> meths = new HashMap<>();
-        meths.putAll(callsByMethod.entrySet().stream().collect(Collectors
-            .toMap(Map.Entry::getKey, e -> e.getValue().apply(location))));
-        meths.put(equalsMethod, (proxy, args) -> args[0] == proxy);
-        meths.put(toStringMethod, (proxy, args) -> "carp:" + location);
-        meths.put(hashCodeMethod,
-                  (proxy, args) -> System.identityHashCode(proxy));
-        var copy = Map.copyOf(meths);
-        return (proxy, method, args) -> copy.get(method).invoke(proxy, args);
+        return (proxy, method, args) -> {
+            Call call = callsByMethod.get(method);
+            if (call != null) return call.invoke(location, args);
+            if (method.equals(equalsMethod)) return args[0] == proxy;
+            if (method.equals(hashCodeMethod))
+                return System.identityHashCode(proxy);
+            if (method.equals(toStringMethod)) return "carp:" + location;
+            throw new UnsupportedOperationException(method.toString());
+        };
+    }
+
+    /**
+     * Get a proxy to invoke a URI. An instance of the service type's
+     * generated client stub is returned if it has one. Otherwise, a
+     * dynamic proxy is created using {@link #getHandler(URI)}.
+     * 
+     * @param <Srv> the service type
+     * 
+     * @param type the service type, which must be the type this
+     * translator was created for
+     * 
+     * @param location the remote location
+     * 
+     * @return a new proxy
+     */
+    public <Srv> Srv getProxy(Class<Srv> type, URI location) {
+        if (stubConstructor != null) {
+            try {
+                return type.cast(stubConstructor
+                    .newInstance(new StubBinding(location)));
+            } catch (InstantiationException | IllegalAccessException |
+                     InvocationTargetException ex) {
+                throw new LinkException("creating stub for " + type, ex);
+            }
+        }
+        ClassLoader cl = type.getClassLoader();
+        Class<?>[] ta = new Class<?>[] { type };
+        return type.cast(Proxy.newProxyInstance(cl, ta,
+                                                getHandler(location)));
+    }
+
+    /**
+     * Relays calls from a generated client stub to a remote receiver.
+     */
+    private final class StubBinding implements StubTarget {
+        private final URI location;
+
+        StubBinding(URI location) {
+            this.location = location;
+        }
+
+        @Override
+        public Object invoke(int call, Object[] args) {
+            try {
+                return stubCalls[call].invoke(location, args);
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable t) {
+                throw new UndeclaredThrowableException(t);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "carp:" + location;
+        }
     }
 
     private EncodingContext getEncodingContext(Map<? super InetSocketAddress,
@@ -326,7 +493,26 @@ public class ClientTranslator {
         return decodingContextProvider.apply(map);
     }
 
-    private class Call implements Function<URI, MethodImplementation> {
+    /**
+     * Choose the format in which to send a request.
+     * 
+     * @param base the endpoint to be invoked
+     * 
+     * @return the binary format if the endpoint's peer is known to
+     * accept it; JSON otherwise
+     */
+    private WireFormat requestFormat(URI base) {
+        if (binaryPeers != null && binaryPeers.contains(Carp.getPeer(base)))
+            return WireFormat.CBOR;
+        return WireFormat.JSON;
+    }
+
+    private class Call {
+        /**
+         * Identifies the interface type declaring the call.
+         */
+        private final ExternalName typeName;
+
         private final ExternalName name;
 
         class Response {
@@ -394,11 +580,12 @@ public class ClientTranslator {
                 for (var entry : spec.parameters.members.entrySet()) {
                     ExternalName pn = entry.getKey();
                     Member memb = entry.getValue();
-                    Decoder codec = memb.type.getDecoder(null, linkCtxt);
+                    Decoder codec = linkCtxt.getDecoder(memb.type, null);
                     Method setter = setters.get(pn);
                     Method initSetter = inits.get(pn);
                     InParam par = new InParam(pn, codec, setter, initSetter);
                     params.add(par);
+                    paramIndex.put(pn.toString(), par);
                 }
 
                 this.done = done;
@@ -427,6 +614,11 @@ public class ClientTranslator {
 
             final Collection<InParam> params = new HashSet<>();
 
+            /**
+             * Indexes the response parameters by name.
+             */
+            final Map<String, InParam> paramIndex = new HashMap<>();
+
             /**
              * Processes a response parameter.
              */
@@ -452,6 +644,19 @@ public class ClientTranslator {
                     JsonValue v = params.getOrDefault(name.toString(), null);
                     if (v == null) return builder;
                     Object jv = codec.decodeJson(v, ctxt);
+                    return set(builder, jv);
+                }
+
+                Object read(Object builder, JsonParser.Event event,
+                            JsonParser in, DecodingContext ctxt)
+                    throws IllegalAccessException,
+                        InvocationTargetException {
+                    return set(builder, codec.readJson(event, in, ctxt));
+                }
+
+                private Object set(Object builder, Object jv)
+                    throws IllegalAccessException,
+                        InvocationTargetException {
                     if (builder == null)
                         return initSetter.invoke(null, jv);
                     else
@@ -468,10 +673,32 @@ public class ClientTranslator {
                 return builder == null ? initDone.invoke(null) :
                     done.invoke(builder);
             }
+
+            Object read(DecodingContext ctxt, JsonParser.Event event,
+                        JsonParser in)
+                throws IllegalAccessException,
+                    InvocationTargetException {
+                Codecs.expect(Direction.DECODING,
+                              JsonParser.Event.START_OBJECT, event);
+                Object builder = null;
+                for (var ev = in.next(); ev != JsonParser.Event.END_OBJECT;
+                     ev = in.next()) {
+                    InParam ip = paramIndex.get(in.getString());
+                    ev = in.next();
+                    if (ip == null) {
+                        Codecs.skipValue(ev, in);
+                        continue;
+                    }
+                    builder = ip.read(builder, ev, in, ctxt);
+                }
+                return builder == null ? initDone.invoke(null) :
+                    done.invoke(builder);
+            }
         }
 
-        Call(ExternalName name, Method meth, Class<?> rspType,
-             CallSpecification spec) {
+        Call(ExternalName typeName, ExternalName name, Method meth,
+             Class<?> rspType, CallSpecification spec) {
+            this.typeName = typeName;
             this.name = name;
 
             /* Ensure that every parameter has a codec, indexed by
@@ -481,7 +708,7 @@ public class ClientTranslator {
                 var der = item.getAnnotation(Argument.class);
                 ExternalName parName = ExternalName.parse(der.value());
                 Member memb = spec.parameters.members.get(parName);
-                Encoder codec = memb.type.getEncoder(null, linkCtxt);
+                Encoder codec = linkCtxt.getEncoder(memb.type, null);
                 params.add(new OutParam(parName, codec));
             }
             this.params = List.copyOf(params);
@@ -520,9 +747,9 @@ public class ClientTranslator {
                 this.codec = codec;
             }
 
-            void encode(JsonObjectBuilder dest, EncodingContext ctxt,
-                        Object arg) {
-                dest.add(name.toString(), codec.encodeJson(arg, ctxt));
+            void write(JsonGenerator out, EncodingContext ctxt, Object arg) {
+                out.writeKey(name.toString());
+                codec.writeJson(arg, ctxt, out);
             }
         }
 
@@ -530,121 +757,785 @@ public class ClientTranslator {
 
         private final Map<ExternalName, Response> responses;
 
-        @Override
-        public MethodImplementation apply(URI base) {
-            return (proxy, args) -> {
-                Map<InetSocketAddress, Fingerprint> outPrints = new HashMap<>();
-                EncodingContext outCtxt = getEncodingContext(outPrints);
-
-                /* Build up outgoing parameters. */
-                JsonObjectBuilder outBuilder = Json.createObjectBuilder();
-                if (args != null) for (int i = 0; i < args.length; i++)
-                    params.get(i).encode(outBuilder, outCtxt, args[i]);
-
-                /* Create the outgoing request. */
-                JsonObjectBuilder reqBuilder = Json.createObjectBuilder();
-                reqBuilder.add("req-type", name.toString());
-                reqBuilder.add("req", outBuilder);
-                reqBuilder.add("prints", Internals.encodeFromMap(outPrints));
-                JsonObject req = reqBuilder.build();
-
-                final JsonObject rsp;
-                {
-                    /* Convert the JSON into an entity. */
-                    StringWriter out = new StringWriter();
-                    try (JsonWriter writer = jsonWriters.createWriter(out)) {
-                        writer.writeObject(req);
-                    }
-                    HttpEntity reqent = EntityBuilder.create()
-                        .setContentType(ContentType.APPLICATION_JSON)
-                        .setText(out.toString()).build();
-                    logger.fine(() -> String.format("Request: %s%n",
-                                                    out.toString()));
-
-                    /* Create the request. */
-                    HttpPost treq = new HttpPost(base);
-                    treq.setEntity(reqent);
-
-                    /* Call the server. */
-                    try (CloseableHttpClient client = clientFactory.get();
-                         CloseableHttpResponse trsp = client.execute(treq)) {
-                        logger.fine(() -> String
-                            .format("Response code: %d%n",
-                                    trsp.getStatusLine().getStatusCode()));
-
-                        /* Check for responses that don't imply a JSON
-                         * response. */
-                        int rcode = trsp.getStatusLine().getStatusCode();
-                        switch (rcode) {
-                        case HttpStatus.SC_NO_CONTENT:
-                            if (responses.isEmpty()) return null;
-                            throw new RemoteInvocationException("empty response");
-
-                        case HttpStatus.SC_NOT_FOUND:
-                            throw new MissingEndpointException(base.toString());
-
-                        default:
-                            break;
-                        }
+        /**
+         * Encode a request message, and write it to a stream. The
+         * fingerprints of peers mentioned in the arguments are only
+         * known once the arguments have been encoded, so they are
+         * written last.
+         * 
+         * @param base the endpoint to be invoked
+         * 
+         * @param args the call arguments
+         * 
+         * @param out the destination of the request message
+         * 
+         * @return the fingerprints that accompanied the request, to be
+         * confirmed once the request succeeds
+         */
+        Map<InetSocketAddress, Fingerprint>
+            writeRequest(URI base, Object[] args, JsonGenerator out) {
+            Map<InetSocketAddress, Fingerprint> outPrints = new HashMap<>();
+            EncodingContext outCtxt = getEncodingContext(outPrints);
+
+            out.writeStartObject();
+            out.write("req-type", name.toString());
+
+            /* Stream outgoing parameters. */
+            out.writeStartObject("req");
+            if (args != null) for (int i = 0; i < args.length; i++)
+                params.get(i).write(out, outCtxt, args[i]);
+            out.writeEnd();
+
+            /* Leave out fingerprints the peer already knows. */
+            if (printLedger != null)
+                outPrints = printLedger.unsent(Carp.getPeer(base), outPrints);
+            Internals.writePrints(out, outPrints);
+            out.writeEnd();
+            return outPrints;
+        }
 
-                        /* Check that the entity response type is
-                         * JSON. */
-                        ContentType rtype =
-                            ContentType.getLenient(trsp.getEntity());
-                        if (!ContentType.APPLICATION_JSON.getMimeType()
-                            .equalsIgnoreCase(rtype.getMimeType()))
-                            throw new ProtocolException("non-JSON (" + rtype
-                                + ") from " + base);
-
-                        /* Decode the response. */
-                        try (JsonReader reader = jsonReaders
-                            .createReader(trsp.getEntity().getContent(),
-                                          StandardCharsets.UTF_8)) {
-                            rsp = reader.readObject();
-                        }
+        /**
+         * Record that an endpoint's peer has received the fingerprints
+         * that accompanied a request, if the request succeeded.
+         * 
+         * @param base the endpoint that was invoked
+         * 
+         * @param rcode the status code of the response
+         * 
+         * @param prints the fingerprints that accompanied the request
+         */
+        private void confirm(URI base, int rcode,
+                             Map<InetSocketAddress, Fingerprint> prints) {
+            if (printLedger == null || rcode < 200 || rcode >= 300) return;
+            printLedger.confirm(Carp.getPeer(base), prints);
+        }
 
-                        /* Check for a normal response type. */
-                        switch (rcode) {
-                        case HttpStatus.SC_OK:
-                            break;
-
-                        case HttpStatus.SC_UNPROCESSABLE_ENTITY:
-                            throw new StatusModificationException(paramsOf(rsp
-                                .getJsonObject("params")), rsp
-                                    .getString("message"));
-
-                        case HttpStatus.SC_INTERNAL_SERVER_ERROR:
-                            UUID errorId =
-                                UUID.fromString(rsp.getString("error"));
-                            throw new InternalServerException(errorId,
-                                                              "server error "
-                                                                  + errorId);
-
-                        default:
-                            throw new RemoteInvocationException("bad code "
-                                + rcode + " from " + base);
-                        }
-                    } catch (RuntimeException | Error ex) {
-                        throw ex;
-                    } catch (Throwable ex) {
-                        throw new TransportException(base.toString(), ex);
+        /**
+         * Ensure that the next request to an endpoint's peer carries
+         * all relevant fingerprints. This is called when a call fails,
+         * as the peer might not have recorded the fingerprints it was
+         * sent.
+         * 
+         * @param base the endpoint that was invoked
+         */
+        private void resync(URI base) {
+            if (printLedger != null) printLedger.forget(Carp.getPeer(base));
+        }
+
+        /**
+         * Encode a request message, and write it to a stream.
+         * 
+         * @param base the endpoint to be invoked
+         * 
+         * @param args the call arguments
+         * 
+         * @param format the format of the request message
+         * 
+         * @param out the destination of the request message
+         * 
+         * @param probe a record of the call's measurements, to which
+         * the encoding time and request size are added; or
+         * {@code null} if no measurements are being taken
+         * 
+         * @return the fingerprints that accompanied the request, to be
+         * confirmed once the request succeeds
+         */
+        Map<InetSocketAddress, Fingerprint>
+            writeRequest(URI base, Object[] args, WireFormat format,
+                         OutputStream out, CallProbe probe) {
+            if (probe == null) {
+                try (JsonGenerator gen = format.createGenerator(out)) {
+                    return writeRequest(base, args, gen);
+                }
+            }
+            final long start = System.nanoTime();
+            try (JsonGenerator gen =
+                format.createGenerator(probe.countRequest(out))) {
+                return writeRequest(base, args, gen);
+            } finally {
+                probe.encodeNanos += System.nanoTime() - start;
+            }
+        }
+
+        /**
+         * Start measuring an invocation of this call.
+         * 
+         * @return a new record of the call's measurements; or
+         * {@code null} if no measurements are to be taken
+         */
+        private CallProbe startProbe() {
+            CallProbe probe = CallProbe.start(metrics, CallRecord.Side.CLIENT);
+            if (probe != null) {
+                probe.interfaceName = typeName;
+                probe.callName = name;
+            }
+            return probe;
+        }
+
+        /**
+         * Check the status of an HTTP response, and extract the
+         * response message.
+         * 
+         * @param base the endpoint that was invoked
+         * 
+         * @param rcode the HTTP status code
+         * 
+         * @param mimeType the MIME type of the response entity; or
+         * {@code null} if not specified
+         * 
+         * @param content the response entity
+         * 
+         * @param probe a record of the call's measurements, to which
+         * the decoding time, response size and type are added; or
+         * {@code null} if no measurements are being taken
+         * 
+         * @return the decoded response; or {@code null} if there is
+         * legitimately no response
+         * 
+         * @throws StatusModificationException if the receiver rejected
+         * the call because of the caller's mistake
+         * 
+         * @throws RemoteInvocationException if the server did not
+         * respond as expected
+         * 
+         * @throws IOException if there was an I/O error in reading the
+         * response
+         * 
+         * @throws IllegalAccessException if a response builder could
+         * not be accessed
+         * 
+         * @throws InvocationTargetException if a response builder
+         * failed
+         */
+        Object receive(URI base, int rcode, String mimeType,
+                       InputStream content, CallProbe probe)
+            throws StatusModificationException,
+                IOException,
+                IllegalAccessException,
+                InvocationTargetException {
+            if (probe == null)
+                return decodeResponse(base, rcode, mimeType, content, null);
+            final long start = System.nanoTime();
+            try {
+                return decodeResponse(base, rcode, mimeType,
+                                      content == null ? null :
+                                          probe.countResponse(content),
+                                      probe);
+            } finally {
+                probe.decodeNanos += System.nanoTime() - start;
+            }
+        }
+
+        /**
+         * Check the status of an HTTP response, and extract the
+         * response message.
+         * 
+         * @see #receive(URI, int, String, InputStream, CallProbe)
+         */
+        private Object decodeResponse(URI base, int rcode, String mimeType,
+                                      InputStream content, CallProbe probe)
+            throws StatusModificationException,
+                IOException,
+                IllegalAccessException,
+                InvocationTargetException {
+            logger.fine(() -> String.format("Response code: %d%n", rcode));
+
+            /* Check for responses that don't imply a JSON response. */
+            switch (rcode) {
+            case HttpStatus.SC_NO_CONTENT:
+                if (responses.isEmpty()) return null;
+                throw new RemoteInvocationException("empty response");
+
+            case HttpStatus.SC_NOT_FOUND:
+                throw new MissingEndpointException(base.toString());
+
+            default:
+                break;
+            }
+
+            /* Check that the entity response type is one we
+             * understand. */
+            WireFormat format = WireFormat.forMimeType(mimeType);
+            if (format == null)
+                throw new ProtocolException("unsupported type (" + mimeType
+                    + ") from " + base);
+
+            /* Decode a normal response as it is parsed. A binary
+             * response tells us that the peer will accept binary
+             * requests too. */
+            if (rcode == HttpStatus.SC_OK) {
+                if (format != WireFormat.JSON && binaryPeers != null)
+                    binaryPeers.add(Carp.getPeer(base));
+                try (JsonParser parser = format.createParser(content)) {
+                    return interpret(parser, probe);
+                }
+            }
+
+            /* Decode an error response, which is always JSON. */
+            if (format != WireFormat.JSON)
+                throw new ProtocolException("non-JSON (" + mimeType
+                    + ") from " + base);
+            final JsonObject rsp;
+            try (JsonReader reader =
+                jsonReaders.createReader(content, StandardCharsets.UTF_8)) {
+                rsp = reader.readObject();
+            }
+            throw errorOf(base, rcode, rsp);
+        }
+
+        /**
+         * Decode the result of a call sent in a batch. The result
+         * carries the status code and message that the call would have
+         * yielded on its own.
+         * 
+         * @param base the endpoint that was invoked
+         * 
+         * @param status the status code of the call
+         * 
+         * @param in a parser positioned before the response message;
+         * or {@code null} if there is no message
+         * 
+         * @param probe a record of the call's measurements, to which
+         * the decoding time and response type are added; or
+         * {@code null} if no measurements are being taken
+         * 
+         * @return the decoded response; or {@code null} if there is
+         * legitimately no response
+         * 
+         * @throws StatusModificationException if the receiver rejected
+         * the call because of the caller's mistake
+         * 
+         * @throws IllegalAccessException if a response builder could
+         * not be accessed
+         * 
+         * @throws InvocationTargetException if a response builder
+         * failed
+         */
+        Object receive(URI base, int status, JsonParser in,
+                       CallProbe probe)
+            throws StatusModificationException,
+                IllegalAccessException,
+                InvocationTargetException {
+            final long start = System.nanoTime();
+            try {
+                if (status == HttpStatus.SC_OK) {
+                    if (in == null)
+                        throw new ProtocolException("no response from "
+                            + base);
+                    return interpret(in, probe);
+                }
+
+                JsonObject rsp = null;
+                if (in != null) {
+                    in.next();
+                    rsp = in.getObject();
+                }
+                switch (status) {
+                case HttpStatus.SC_NO_CONTENT:
+                    if (responses.isEmpty()) return null;
+                    throw new RemoteInvocationException("empty response");
+
+                case HttpStatus.SC_NOT_FOUND:
+                    throw new MissingEndpointException(base.toString());
+
+                default:
+                    throw errorOf(base, status, rsp);
+                }
+            } finally {
+                if (probe != null)
+                    probe.decodeNanos += System.nanoTime() - start;
+            }
+        }
+
+        /**
+         * Read a response message from a stream, and decode it into
+         * the call's response type. The response body is decoded as it
+         * arrives if <samp>rsp-type</samp> precedes <samp>rsp</samp>,
+         * as it does in messages generated by {@link ServerTranslator};
+         * otherwise, the body is read into memory first.
+         * 
+         * @param in a parser positioned before the response message
+         * 
+         * @param probe a record of the call's measurements, to which
+         * the response type is added; or {@code null} if no
+         * measurements are being taken
+         * 
+         * @return the decoded response
+         * 
+         * @throws IllegalAccessException if a response builder could
+         * not be accessed
+         * 
+         * @throws InvocationTargetException if a response builder
+         * failed
+         */
+        Object interpret(JsonParser in, CallProbe probe)
+            throws IllegalAccessException,
+                InvocationTargetException {
+            /* Record the fingerprints of host:port tuples when they
+             * arrive. Don't accept them yet. */
+            DeferredDecodingContext inCtxt =
+                new DeferredDecodingContext(decodingContextProvider);
+
+            if (in.next() != JsonParser.Event.START_OBJECT)
+                throw new ProtocolException("response not an object");
+            Response rspObj = null;
+            Object result = null;
+            JsonObject rspBody = null;
+            boolean settled = false;
+            for (var ev = in.next(); ev != JsonParser.Event.END_OBJECT;
+                 ev = in.next()) {
+                String key = in.getString();
+                ev = in.next();
+                switch (key) {
+                case "rsp-type":
+                    /* Identify the response type. */
+                    ExternalName rspName = ExternalName.parse(in.getString());
+                    logger.fine(() -> String.format("Rsp: %s%n", rspName));
+                    rspObj = responses.get(rspName);
+                    break;
+
+                case "rsp":
+                    if (rspObj == null)
+                        rspBody = in.getObject();
+                    else
+                        result = rspObj.read(inCtxt, ev, in);
+                    break;
+
+                case "prints":
+                    inCtxt.settle(Internals.decodeToMap(in.getArray()));
+                    settled = true;
+                    break;
+
+                default:
+                    Codecs.skipValue(ev, in);
+                    break;
+                }
+            }
+            if (!settled) inCtxt.settle(Collections.emptyMap());
+            if (rspObj == null)
+                throw new ProtocolException("no known rsp-type");
+            if (probe != null) probe.responseType = rspObj.name;
+            if (rspBody != null) result = rspObj.decode(inCtxt, rspBody);
+            return result;
+        }
+
+        /**
+         * Invoke the call on a remote receiver. Unless the call is
+         * held to be sent with others, this blocks until the response
+         * has been received.
+         * 
+         * @param base the endpoint to invoke
+         * 
+         * @param args the call arguments
+         * 
+         * @return the decoded response; or {@code null} if the call
+         * has no response types
+         * 
+         * @throws Throwable if the call failed
+         */
+        Object invoke(URI base, Object[] args) throws Throwable {
+            if (oneWayWindow != null && responses.isEmpty()) {
+                /* Hold the call to be sent with others. Nobody is
+                 * waiting for the outcome, so just log failures. */
+                enqueue(oneWayWindow::add, base, args)
+                    .whenComplete((r, ex) -> {
+                        if (ex == null) return;
+                        logger.log(Level.WARNING, "one-way call " + name
+                            + " to " + base + " failed", ex);
+                    });
+                return null;
+            }
+            if (clientFactory == null) {
+                /* Wait for a non-blocking call. */
+                try {
+                    return invokeAsync(asyncClients.get(), base, args).join();
+                } catch (CompletionException ex) {
+                    throw ex.getCause();
+                }
+            }
+
+            CallProbe probe = startProbe();
+
+            /* Create an entity that encodes the request as it is
+             * sent. */
+            WireFormat format = requestFormat(base);
+            AtomicReference<Map<InetSocketAddress, Fingerprint>> sentPrints =
+                new AtomicReference<>(Collections.emptyMap());
+            EntityTemplate reqent = new EntityTemplate(out -> sentPrints
+                .set(writeRequest(base, args, format, out, probe)));
+            reqent.setContentType(format.contentType.toString());
+            logger.fine(() -> String.format("Request: %s to %s%n", name,
+                                            base));
+
+            /* Create the request. */
+            HttpPost treq = new HttpPost(base);
+            treq.setEntity(reqent);
+            if (binaryPeers != null)
+                treq.setHeader("Accept", WireFormat.BINARY_ACCEPT);
+
+            /* Call the server. */
+            try (CloseableHttpClient client = clientFactory.get();
+                 CloseableHttpResponse trsp = client.execute(treq)) {
+                HttpEntity ent = trsp.getEntity();
+                ContentType rtype =
+                    ent == null ? null : ContentType.getLenient(ent);
+                final int rcode = trsp.getStatusLine().getStatusCode();
+                confirm(base, rcode, sentPrints.get());
+                return receive(base, rcode,
+                               rtype == null ? null : rtype.getMimeType(),
+                               ent == null ? null : ent.getContent(), probe);
+            } catch (RuntimeException | Error | IllegalAccessException |
+                     InvocationTargetException ex) {
+                resync(base);
+                if (probe != null) probe.fail(ex);
+                throw ex;
+            } catch (Throwable ex) {
+                resync(base);
+                if (probe != null) probe.fail(ex);
+                throw new TransportException(base.toString(), ex);
+            } finally {
+                if (probe != null) probe.report();
+            }
+        }
+
+        /**
+         * Invoke the call without blocking.
+         * 
+         * @param engine the HTTP client to send the request with
+         * 
+         * @param base the endpoint to invoke
+         * 
+         * @param args the call arguments
+         * 
+         * @return a future completed with the decoded response
+         */
+        CompletableFuture<Object> invokeAsync(HttpClient engine, URI base,
+                                              Object[] args) {
+            CompletableFuture<Object> result = new CompletableFuture<>();
+            CallProbe probe = startProbe(result);
+            result.whenComplete((r, ex) -> {
+                if (ex != null) resync(base);
+            });
+            send(engine, base, args, result, probe);
+            return result;
+        }
+
+        /**
+         * Hold the call in a batch, to be sent with others.
+         * 
+         * @param batch the recipient of the held call
+         * 
+         * @param base the endpoint to invoke
+         * 
+         * @param args the call arguments
+         * 
+         * @return a future completed with the decoded response
+         */
+        CompletableFuture<Object>
+            enqueue(Consumer<? super BatchRequest.Entry> batch, URI base,
+                    Object[] args) {
+            CompletableFuture<Object> result = new CompletableFuture<>();
+            CallProbe probe = startProbe(result);
+            result.whenComplete((r, ex) -> {
+                if (ex != null) resync(base);
+            });
+            batch.accept(new BatchRequest.Entry() {
+                private Map<InetSocketAddress, Fingerprint> sentPrints =
+                    Collections.emptyMap();
+
+                @Override
+                public URI location() {
+                    return base;
+                }
+
+                @Override
+                public void writeRequest(JsonGenerator out) {
+                    if (probe == null) {
+                        sentPrints = Call.this.writeRequest(base, args, out);
+                        return;
+                    }
+                    final long start = System.nanoTime();
+                    try {
+                        sentPrints = Call.this.writeRequest(base, args, out);
+                    } finally {
+                        probe.encodeNanos += System.nanoTime() - start;
+                    }
+                }
+
+                @Override
+                public void receive(int status, JsonParser in) {
+                    confirm(base, status, sentPrints);
+                    try {
+                        result.complete(Call.this.receive(base, status, in,
+                                                          probe));
+                    } catch (InvocationTargetException ex) {
+                        result.completeExceptionally(ex.getCause());
+                    } catch (Throwable t) {
+                        result.completeExceptionally(t);
                     }
                 }
-                logger.fine(() -> String.format("Rsp: %s%n", rsp));
-
-                /* Record the fingerprints of host:port tuples. Don't
-                 * accept them yet. */
-                final Map<InetSocketAddress, Fingerprint> candPrints =
-                    Internals.decodeToMap(rsp.getJsonArray("prints"));
-
-                /* Identify the response type, decode the response, and
-                 * return it. */
-                ExternalName rspName =
-                    ExternalName.parse(rsp.getString("rsp-type"));
-                Response rspObj = responses.get(rspName);
-                DecodingContext inCtxt = getDecodingContext(candPrints);
-                return rspObj.decode(inCtxt, rsp.getJsonObject("rsp"));
-            };
+
+                @Override
+                public void resend(HttpClient engine) {
+                    send(engine, base, args, result, probe);
+                }
+
+                @Override
+                public void fail(Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            });
+            return result;
+        }
+
+        /**
+         * Start measuring an invocation of this call, and report the
+         * measurements when it completes.
+         * 
+         * @param result the eventual result of the invocation
+         * 
+         * @return a new record of the call's measurements; or
+         * {@code null} if no measurements are to be taken
+         */
+        private CallProbe startProbe(CompletableFuture<?> result) {
+            CallProbe probe = startProbe();
+            if (probe != null) result.whenComplete((r, ex) -> {
+                if (ex != null) probe.fail(ex);
+                probe.report();
+            });
+            return probe;
+        }
+
+        /**
+         * Send the call on its own without blocking.
+         * 
+         * @param engine the HTTP client to send the request with
+         * 
+         * @param base the endpoint to invoke
+         * 
+         * @param args the call arguments
+         * 
+         * @param result the future to complete with the decoded
+         * response
+         * 
+         * @param probe a record of the call's measurements; or
+         * {@code null} if no measurements are being taken
+         */
+        private void send(HttpClient engine, URI base, Object[] args,
+                          CompletableFuture<Object> result,
+                          CallProbe probe) {
+            try {
+                /* Encode the request into a body. */
+                WireFormat format = requestFormat(base);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                Map<InetSocketAddress, Fingerprint> sentPrints =
+                    writeRequest(base, args, format, out, probe);
+                HttpRequest.Builder treqBuilder = HttpRequest
+                    .newBuilder(base)
+                    .header("Content-Type", format.contentType.toString())
+                    .POST(BodyPublishers.ofByteArray(out.toByteArray()));
+                if (binaryPeers != null)
+                    treqBuilder.header("Accept", WireFormat.BINARY_ACCEPT);
+                HttpRequest treq = treqBuilder.build();
+
+                /* Call the server, and process the response when it
+                 * arrives. */
+                engine.sendAsync(treq, BodyHandlers.ofByteArray())
+                    .whenComplete((trsp, ex) -> {
+                        if (ex != null) {
+                            if (ex instanceof CompletionException &&
+                                ex.getCause() != null) ex = ex.getCause();
+                            result.completeExceptionally(new TransportException(base
+                                .toString(), ex));
+                            return;
+                        }
+                        confirm(base, trsp.statusCode(), sentPrints);
+                        try {
+                            String mimeType = trsp.headers()
+                                .firstValue("Content-Type")
+                                .map(ClientTranslator::mimeTypeOf)
+                                .orElse(null);
+                            result.complete(receive(base, trsp.statusCode(),
+                                                    mimeType,
+                                                    new ByteArrayInputStream(trsp
+                                                        .body()),
+                                                    probe));
+                        } catch (InvocationTargetException ex2) {
+                            result.completeExceptionally(ex2.getCause());
+                        } catch (Throwable t) {
+                            result.completeExceptionally(t);
+                        }
+                    });
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }
+    }
+
+    /**
+     * Interpret an error response.
+     * 
+     * @param base the endpoint that was invoked
+     * 
+     * @param rcode the status code
+     * 
+     * @param rsp the error message; or {@code null} if there is none
+     * 
+     * @return an exception describing the error, to be thrown
+     * 
+     * @throws StatusModificationException if the receiver rejected the
+     * call because of the caller's mistake
+     */
+    private static RemoteInvocationException errorOf(URI base, int rcode,
+                                                     JsonObject rsp)
+        throws StatusModificationException {
+        if (rsp != null) switch (rcode) {
+        case HttpStatus.SC_UNPROCESSABLE_ENTITY:
+            throw new StatusModificationException(paramsOf(rsp
+                .getJsonObject("params")), rsp.getString("message"));
+
+        case HttpStatus.SC_INTERNAL_SERVER_ERROR:
+            UUID errorId = UUID.fromString(rsp.getString("error"));
+            return new InternalServerException(errorId, "server error "
+                + errorId);
+
+        case HttpStatus.SC_SERVICE_UNAVAILABLE:
+            JsonNumber retry = rsp.getJsonNumber("retry-after");
+            return new ServiceUnavailableException(retry == null ? null :
+                Duration.ofSeconds(retry.longValue()), rsp
+                    .getString("message", "unavailable") + " at " + base);
+
+        default:
+            break;
+        }
+        return new RemoteInvocationException("bad code " + rcode + " from "
+            + base);
+    }
+
+    /**
+     * Get the MIME type of a content type, ignoring any parameters.
+     * 
+     * @param contentType the content type, as found in a
+     * <samp>Content-Type</samp> header
+     * 
+     * @return the MIME type
+     */
+    private static String mimeTypeOf(String contentType) {
+        int semi = contentType.indexOf(';');
+        return (semi < 0 ? contentType : contentType.substring(0, semi))
+            .trim();
+    }
+
+    /**
+     * Get a proxy that invokes a URI without blocking.
+     * 
+     * @param <Srv> the service type
+     * 
+     * @param type the service type, which must be the type this
+     * translator was created for
+     * 
+     * @param location the remote location
+     * 
+     * @param engine the HTTP client to send requests with
+     * 
+     * @return the requested proxy
+     */
+    public <Srv> AsynchronousProxy<Srv>
+        getAsynchronousProxy(Class<Srv> type, URI location,
+                             HttpClient engine) {
+        return recordingProxy(type, location,
+                              (call, args) -> call
+                                  .invokeAsync(engine, location, args));
+    }
+
+    /**
+     * Get a proxy that holds calls to a URI in a batch.
+     * 
+     * @param <Srv> the service type
+     * 
+     * @param type the service type, which must be the type this
+     * translator was created for
+     * 
+     * @param location the remote location
+     * 
+     * @param batch the batch to hold calls in
+     * 
+     * @return the requested proxy
+     */
+    <Srv> AsynchronousProxy<Srv> getBatchProxy(Class<Srv> type,
+                                               URI location,
+                                               BatchRequest batch) {
+        return recordingProxy(type, location,
+                              (call, args) -> call
+                                  .enqueue(batch::add, location, args));
+    }
+
+    /**
+     * Get a proxy that records each invocation on a stand-in, and
+     * passes the recorded call on.
+     * 
+     * @param <Srv> the service type
+     * 
+     * @param type the service type
+     * 
+     * @param location the remote location
+     * 
+     * @param invoker a means to invoke a recorded call with its
+     * arguments
+     * 
+     * @return the requested proxy
+     */
+    private <Srv> AsynchronousProxy<Srv>
+        recordingProxy(Class<Srv> type, URI location,
+                       BiFunction<Call, Object[],
+                                  CompletableFuture<Object>> invoker) {
+        return new AsynchronousProxy<Srv>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <R> CompletableFuture<R>
+                call(Function<? super Srv, ? extends R> invocation) {
+                /* Find out which method the user wants to call, and with
+                 * which arguments. */
+                Recording rec = new Recording();
+                invocation.apply(type.cast(Proxy
+                    .newProxyInstance(type.getClassLoader(),
+                                      new Class<?>[] { type }, rec)));
+                if (rec.method == null)
+                    throw new IllegalArgumentException("no call made");
+                Call call = callsByMethod.get(rec.method);
+                if (call == null)
+                    throw new IllegalArgumentException("not remote: "
+                        + rec.method);
+                return (CompletableFuture<R>) invoker.apply(call, rec.args);
+            }
+
+            @Override
+            public String toString() {
+                return "carp-async:" + location;
+            }
+        };
+    }
+
+    /**
+     * Records a single method invocation on a stand-in for a receiver.
+     */
+    private static class Recording implements InvocationHandler {
+        Method method;
+
+        Object[] args;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (this.method != null)
+                throw new IllegalArgumentException("multiple calls made");
+            this.method = method;
+            this.args = args;
+
+            /* The result is discarded, but must be assignable to the
+             * return type. */
+            Class<?> rt = method.getReturnType();
+            if (!rt.isPrimitive() || rt == void.class) return null;
+            return Array.get(Array.newInstance(rt, 1), 0);
         }
     }
 
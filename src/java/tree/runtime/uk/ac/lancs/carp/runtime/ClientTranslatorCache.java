@@ -40,11 +40,15 @@ package uk.ac.lancs.carp.runtime;
 
 import java.lang.ref.Reference;
 import java.net.InetSocketAddress;
+import java.time.Duration;
 import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import org.apache.http.impl.client.CloseableHttpClient;
+import uk.ac.lancs.carp.CallMetrics;
 import uk.ac.lancs.carp.Fingerprint;
 import uk.ac.lancs.carp.codec.DecodingContext;
 import uk.ac.lancs.carp.codec.EncodingContext;
@@ -69,6 +73,44 @@ public final class ClientTranslatorCache {
      */
     private final Supplier<? extends CloseableHttpClient> clientFactory;
 
+    /**
+     * Provides the non-blocking HTTP client.
+     */
+    private final Supplier<? extends java.net.http.HttpClient> asyncClients;
+
+    /**
+     * Records peers known to accept binary requests; or {@code null}
+     * if the binary wire format is not to be offered. This is shared
+     * by all translators from this cache.
+     */
+    private final Set<InetSocketAddress> binaryPeers;
+
+    /**
+     * Receives measurements of each call; or {@code null} if none are
+     * to be taken.
+     */
+    private final CallMetrics metrics;
+
+    /**
+     * Gathers calls with no response types to be sent together; or
+     * {@code null} if such calls are sent as they are made. This is
+     * shared by all translators from this cache.
+     */
+    private final OneWayWindow oneWayWindow;
+
+    /**
+     * The longest time for which a peer is assumed to remember the
+     * fingerprints it has been sent.
+     */
+    private static final Duration PRINT_SESSION = Duration.ofMinutes(10);
+
+    /**
+     * Remembers which fingerprints each peer has already been sent.
+     * This is shared by all translators from this cache.
+     */
+    private final FingerprintLedger printLedger =
+        new FingerprintLedger(PRINT_SESSION);
+
     /**
      * Creates encoding contexts to allow a proxy to generate request
      * messages. The provided table maps peer addresses to their
@@ -93,13 +135,30 @@ public final class ClientTranslatorCache {
     /**
      * Create a cache of client translators. The arguments provided here
      * are those to be passed to each call to
-     * {@link ClientTranslator#ClientTranslator(Class, LinkContext, Supplier, Function, Function)}.
+     * {@link ClientTranslator#ClientTranslator(Class, LinkContext, Supplier, Supplier, Set, CallMetrics, OneWayWindow, FingerprintLedger, Function, Function)},
+     * except that the set of peers accepting binary requests, the
+     * window for gathering calls with no response types, and the
+     * record of fingerprints sent to peers are created here.
      * (Its first argument is not known at this stage.)
      * 
      * @param linkCtxt a source for IDL type definitions and their
      * native classes
      * 
-     * @param clientFactory a source of HTTP clients
+     * @param clientFactory a source of HTTP clients; or {@code null}
+     * if blocking calls are to be made with the non-blocking client
+     * 
+     * @param offerBinary whether to offer servers the binary wire
+     * format
+     * 
+     * @param metrics a recipient of per-call measurements; or
+     * {@code null} if none are to be taken
+     * 
+     * @param oneWayWindow the maximum time to hold calls with no
+     * response types, so that they can be sent together; or
+     * {@code null} if such calls are to be sent as they are made
+     * 
+     * @param asyncClients a source of the non-blocking HTTP client,
+     * with which asynchronous and held calls are sent
      * 
      * @param encodingContextProvider a means of creating encoding
      * contexts that take account of certificate fingerprints, given a
@@ -113,6 +172,9 @@ public final class ClientTranslatorCache {
      */
     public ClientTranslatorCache(LinkContext linkCtxt,
                                  Supplier<? extends CloseableHttpClient> clientFactory,
+                                 boolean offerBinary, CallMetrics metrics,
+                                 Duration oneWayWindow,
+                                 Supplier<? extends java.net.http.HttpClient> asyncClients,
                                  Function<? super Map<? super InetSocketAddress,
                                                       ? super Fingerprint>,
                                           ? extends EncodingContext> encodingContextProvider,
@@ -121,6 +183,11 @@ public final class ClientTranslatorCache {
                                           ? extends DecodingContext> decodingContextProvider) {
         this.linkCtxt = linkCtxt;
         this.clientFactory = clientFactory;
+        this.asyncClients = asyncClients;
+        this.binaryPeers = offerBinary ? ConcurrentHashMap.newKeySet() : null;
+        this.metrics = metrics;
+        this.oneWayWindow = oneWayWindow == null ? null :
+            new OneWayWindow(oneWayWindow, asyncClients);
         this.encodingContextProvider = encodingContextProvider;
         this.decodingContextProvider = decodingContextProvider;
 
@@ -149,6 +216,9 @@ public final class ClientTranslatorCache {
         ClientTranslator result;
         if (ref == null || (result = ref.get()) == null) {
             result = new ClientTranslator(type, linkCtxt, clientFactory,
+                                          asyncClients,
+                                          binaryPeers, metrics, oneWayWindow,
+                                          printLedger,
                                           encodingContextProvider,
                                           decodingContextProvider);
             ref = Internals.watch(result, r -> purge(type, r));
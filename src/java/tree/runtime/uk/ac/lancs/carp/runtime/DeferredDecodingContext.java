@@ -0,0 +1,122 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+package uk.ac.lancs.carp.runtime;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import uk.ac.lancs.carp.Carp;
+import uk.ac.lancs.carp.Fingerprint;
+import uk.ac.lancs.carp.codec.DecodingContext;
+
+/**
+ * Decodes a streamed message whose fingerprints might not be known
+ * until after its body has been decoded. Fingerprints are written last
+ * in a message, as they are only known once the body has been encoded.
+ * A context obtained from the user-supplied provider can therefore only
+ * consult an empty table while the body is being decoded. This context
+ * remembers the endpoints sought in the meantime, and seeks them again
+ * through the provided context for any peers found to have
+ * fingerprints once the table is {@linkplain #settle(Map) settled}.
+ * 
+ * @author simpsons
+ */
+final class DeferredDecodingContext implements DecodingContext {
+    private final Map<InetSocketAddress, Fingerprint> prints =
+        new HashMap<>();
+
+    private final DecodingContext base;
+
+    private Collection<Seek> pending = new ArrayList<>();
+
+    private static final class Seek {
+        final Class<?> type;
+
+        final URI location;
+
+        Seek(Class<?> type, URI location) {
+            this.type = type;
+            this.location = location;
+        }
+    }
+
+    /**
+     * Create a deferring decoding context.
+     * 
+     * @param provider a means to create a decoding context given a
+     * table of fingerprints
+     */
+    DeferredDecodingContext(Function<? super Map<? super InetSocketAddress,
+                                                 ? extends Fingerprint>,
+                                     ? extends DecodingContext> provider) {
+        this.base = provider.apply(prints);
+    }
+
+    @Override
+    public Object seek(Class<?> type, URI location) {
+        if (pending != null) pending.add(new Seek(type, location));
+        return base.seek(type, location);
+    }
+
+    /**
+     * Supply the fingerprints of the message, and revisit any
+     * endpoints already decoded to peers with fingerprints. Endpoints
+     * decoded subsequently are passed directly to the provided context.
+     * 
+     * @param prints the fingerprints supplied with the message
+     * 
+     * @throws IllegalStateException if fingerprints have already been
+     * supplied
+     */
+    void settle(Map<? extends InetSocketAddress,
+                    ? extends Fingerprint> prints) {
+        if (pending == null)
+            throw new IllegalStateException("fingerprints already settled");
+        Collection<Seek> seen = pending;
+        pending = null;
+        this.prints.putAll(prints);
+        if (this.prints.isEmpty()) return;
+        for (Seek s : seen)
+            if (this.prints.containsKey(Carp.getPeer(s.location)))
+                base.seek(s.type, s.location);
+    }
+}
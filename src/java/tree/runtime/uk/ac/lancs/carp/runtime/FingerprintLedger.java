@@ -0,0 +1,145 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+package uk.ac.lancs.carp.runtime;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import uk.ac.lancs.carp.Fingerprint;
+
+/**
+ * Remembers which fingerprints each peer is known to have received, so
+ * that later requests to the peer need only carry those it has not yet
+ * been told about. A receiver records the fingerprints it is given,
+ * so repeating them is redundant. A fingerprint only counts as received
+ * once a request carrying it has been answered successfully.
+ * 
+ * <p>
+ * What a peer is known to have received forms a session, which lasts
+ * for a limited period, so that a peer that has lost what it learned
+ * (by restarting, say) is eventually told again. A session also ends when
+ * a call to its peer fails, so the next call carries the full set.
+ * 
+ * @author simpsons
+ */
+final class FingerprintLedger {
+    private static final class Session {
+        final long start;
+
+        final Map<InetSocketAddress, Fingerprint> sent =
+            new ConcurrentHashMap<>();
+
+        Session(long start) {
+            this.start = start;
+        }
+    }
+
+    private final long lifetimeNanos;
+
+    private final Map<InetSocketAddress, Session> sessions =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Create a ledger of fingerprints sent to peers.
+     * 
+     * @param lifetime the maximum duration of a session with a peer
+     */
+    FingerprintLedger(Duration lifetime) {
+        this.lifetimeNanos = lifetime.toNanos();
+    }
+
+    /**
+     * Select the fingerprints that a peer is not yet known to have
+     * received. Nothing is recorded, so concurrent requests and
+     * retries of the same request carry the same fingerprints until
+     * one of them is confirmed.
+     * 
+     * @param peer the peer about to be sent a request
+     * 
+     * @param prints the fingerprints relevant to the request
+     * 
+     * @return the subset of the fingerprints that must accompany the
+     * request
+     * 
+     * @see #confirm(InetSocketAddress, Map)
+     */
+    Map<InetSocketAddress, Fingerprint>
+        unsent(InetSocketAddress peer,
+               Map<InetSocketAddress, Fingerprint> prints) {
+        if (prints.isEmpty()) return prints;
+        Session session = sessions.get(peer);
+        if (session == null ||
+            System.nanoTime() - session.start > lifetimeNanos) return prints;
+        Map<InetSocketAddress, Fingerprint> result = new HashMap<>();
+        for (var entry : prints.entrySet()) {
+            if (!entry.getValue().equals(session.sent.get(entry.getKey())))
+                result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Record that a peer has accepted a request carrying some
+     * fingerprints, so later requests need not carry them. This is
+     * called only once a successful response has been received.
+     * 
+     * @param peer the peer that accepted the request
+     * 
+     * @param prints the fingerprints that accompanied the request
+     */
+    void confirm(InetSocketAddress peer,
+                 Map<InetSocketAddress, Fingerprint> prints) {
+        if (prints.isEmpty()) return;
+        final long now = System.nanoTime();
+        Session session = sessions.compute(peer, (k, v) -> v == null ||
+            now - v.start > lifetimeNanos ? new Session(now) : v);
+        session.sent.putAll(prints);
+    }
+
+    /**
+     * End the session with a peer, so that the next request to it
+     * carries all relevant fingerprints.
+     * 
+     * @param peer the peer
+     */
+    void forget(InetSocketAddress peer) {
+        sessions.remove(peer);
+    }
+}
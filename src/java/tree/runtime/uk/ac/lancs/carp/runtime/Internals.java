@@ -42,6 +42,7 @@ import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.net.InetSocketAddress;
+import java.util.Collections;
 import java.util.Map;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -51,6 +52,7 @@ import javax.json.JsonArray;
 import javax.json.JsonArrayBuilder;
 import javax.json.JsonNumber;
 import javax.json.JsonObject;
+import javax.json.stream.JsonGenerator;
 import uk.ac.lancs.carp.Fingerprint;
 
 /**
@@ -149,6 +151,35 @@ class Internals {
             .add("val", val).build();
     }
 
+    /**
+     * Write a mapping from peer identity to fingerprint as the
+     * {@code prints} member of the current object. The encoding is the
+     * same as {@link #encodeFromMap(Map)}, but is streamed rather than
+     * built first.
+     * 
+     * @param out the destination
+     * 
+     * @param in the mapping to encode
+     */
+    public static void writePrints(JsonGenerator out,
+                                   Map<? extends InetSocketAddress,
+                                       ? extends Fingerprint> in) {
+        out.writeStartArray("prints");
+        for (Map.Entry<? extends InetSocketAddress,
+                       ? extends Fingerprint> e : in.entrySet()) {
+            out.writeStartObject().write("host", e.getKey().getHostString())
+                .write("port", e.getKey().getPort());
+            Fingerprint print = e.getValue();
+            out.writeStartObject("print")
+                .write("algo", print.getAlgorithm())
+                .writeStartArray("val");
+            for (int b : print.getBytes().toArray())
+                out.write(b & 0xff);
+            out.writeEnd().writeEnd().writeEnd();
+        }
+        out.writeEnd();
+    }
+
     /**
      * Encode a mapping from peer identity to fingerprint into a JSON
      * array.
@@ -173,12 +204,13 @@ class Internals {
      * Decode a JSON array to a mapping from peer identity to
      * fingerprint.
      *
-     * @param in the array to decode
+     * @param in the array to decode; or {@code null} if absent
      *
      * @return an immutable map represented by the JSON
      */
     public static Map<InetSocketAddress, Fingerprint>
         decodeToMap(JsonArray in) {
+        if (in == null) return Collections.emptyMap();
         return in.getValuesAs(JsonObject.class).stream()
             .collect(Collectors.toMap(e -> {
                 String host = e.getString("host");
@@ -0,0 +1,175 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp.runtime;
+
+import java.net.http.HttpClient;
+import uk.ac.lancs.carp.Carp;
+import uk.ac.lancs.carp.ClientPresence;
+import uk.ac.lancs.carp.Configuration;
+import uk.ac.lancs.carp.Presence;
+import uk.ac.lancs.carp.PresenceFactory;
+import uk.ac.lancs.carp.ServerPresence;
+import uk.ac.lancs.scc.jardeps.Service;
+
+/**
+ * Creates basic presences that make all calls with the JDK's HTTP
+ * client, rather than Apache HttpClient. The client negotiates HTTP/2
+ * over TLS, and attempts an upgrade to cleartext HTTP/2 with plain HTTP
+ * peers, so that concurrent calls to a peer share one multiplexed
+ * connection. Peers that don't support HTTP/2 are called over
+ * HTTP/1.1 as usual.
+ * 
+ * <p>
+ * This factory is preferred if {@link Carp#HTTP2} is enabled, and is
+ * otherwise used only if no other means of making calls is
+ * configured. Server presences are served as by
+ * {@link BasicPresence.Factory}, through {@link Carp#PLACEMENT}, which
+ * may be a {@link uk.ac.lancs.carp.HttpServerPlacement} to avoid
+ * Apache HttpCore's server too.
+ * 
+ * @author simpsons
+ */
+@Service(PresenceFactory.class)
+public class JdkPresenceFactory implements PresenceFactory {
+    /**
+     * Determine how well the configuration calls for the JDK's HTTP
+     * client.
+     * 
+     * @param params the configuration
+     * 
+     * @return {@link Suitability#OKAY} if {@link Carp#HTTP2} is
+     * enabled; {@link Suitability#UNMET} if it is disabled;
+     * {@link Suitability#OVERKILL} otherwise, so that any other
+     * factory able to use the configuration is chosen first
+     */
+    private static Suitability clientSuitability(Configuration params) {
+        Boolean http2 = params.get(Carp.HTTP2);
+        if (http2 == null) return Suitability.OVERKILL;
+        return http2 ? Suitability.OKAY : Suitability.UNMET;
+    }
+
+    /**
+     * Get the HTTP client specified by configuration. If
+     * {@link Carp#ASYNCHRONOUS_CLIENT} is set, it is used. Otherwise, a
+     * new client preferring HTTP/2 is created, using
+     * {@link Carp#SSL_CONTEXT} if set.
+     * 
+     * @param params the configuration
+     * 
+     * @return the HTTP client
+     */
+    private static HttpClient clientOf(Configuration params) {
+        HttpClient client = params.get(Carp.ASYNCHRONOUS_CLIENT);
+        if (client != null) return client;
+        HttpClient.Builder builder =
+            HttpClient.newBuilder().version(HttpClient.Version.HTTP_2);
+        var sslContext = params.get(Carp.SSL_CONTEXT);
+        if (sslContext != null) builder.sslContext(sslContext);
+        return builder.build();
+    }
+
+    @Override
+    public Suitability considerClient(Configuration params) {
+        return clientSuitability(params);
+    }
+
+    @Override
+    public Suitability considerServer(Configuration params) {
+        if (params.lacks(Carp.PLACEMENT)) return Suitability.UNMET;
+        return clientSuitability(params);
+    }
+
+    @Override
+    public Suitability consider(Configuration params) {
+        if (params.lacks(Carp.PLACEMENT)) return Suitability.UNMET;
+        return clientSuitability(params);
+    }
+
+    @Override
+    public ClientPresence buildClient(Configuration params) {
+        var client = clientOf(params);
+        var fingerprints = params.get(Carp.FINGERPRINTS);
+        var binary = params.get(Carp.BINARY_WIRE_FORMAT, false);
+        var metrics = params.get(Carp.METRICS);
+        var oneWayWindow = params.get(Carp.ONE_WAY_BATCH_WINDOW);
+        return new BasicPresence(null, () -> client, null, fingerprints,
+                                 null, null, false, null, binary, metrics,
+                                 oneWayWindow,
+                                 params.get(Carp.PROXY_CACHE_CAPACITY, 0));
+    }
+
+    @Override
+    public ServerPresence buildServer(Configuration params) {
+        params.require(Carp.PLACEMENT, "no base");
+        var client = clientOf(params);
+        var fingerprints = params.get(Carp.FINGERPRINTS);
+        var location = params.get(Carp.PLACEMENT);
+        var queue = BasicPresence.oneWayQueueOf(params);
+        var callLimits = BasicPresence.callLimitsOf(params);
+        var metrics = params.get(Carp.METRICS);
+        BasicPresence result =
+            new BasicPresence(null, () -> client, location, fingerprints,
+                              queue, callLimits, false, null, false,
+                              metrics, null, 0);
+        result.register();
+        return result;
+    }
+
+    @Override
+    public Presence build(Configuration params) {
+        params.require(Carp.PLACEMENT, "no base");
+        var client = clientOf(params);
+        var fingerprints = params.get(Carp.FINGERPRINTS);
+        var location = params.get(Carp.PLACEMENT);
+        var queue = BasicPresence.oneWayQueueOf(params);
+        var callLimits = BasicPresence.callLimitsOf(params);
+        var shortCircuit = params.get(Carp.LOCAL_SHORT_CIRCUIT, true);
+        var binary = params.get(Carp.BINARY_WIRE_FORMAT, false);
+        var metrics = params.get(Carp.METRICS);
+        var oneWayWindow = params.get(Carp.ONE_WAY_BATCH_WINDOW);
+        BasicPresence result =
+            new BasicPresence(null, () -> client, location, fingerprints,
+                              queue, callLimits, shortCircuit,
+                              BasicPresence.executorOf(params), binary,
+                              metrics, oneWayWindow,
+                              params.get(Carp.PROXY_CACHE_CAPACITY, 0));
+        result.register();
+        return result;
+    }
+}
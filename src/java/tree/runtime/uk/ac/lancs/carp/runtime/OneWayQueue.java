@@ -0,0 +1,212 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp.runtime;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import uk.ac.lancs.carp.CallMetrics;
+import uk.ac.lancs.carp.OverloadPolicy;
+import uk.ac.lancs.carp.ServiceUnavailableException;
+import uk.ac.lancs.carp.map.ExternalName;
+
+/**
+ * Admits calls with no response types to an executor, bounding the
+ * number outstanding. A call is outstanding from when it is admitted
+ * until it completes, so calls waiting for the executor and calls
+ * waiting for a per-type call limit both count. Calls beyond the bound
+ * are dealt with according to the overload policy of their service
+ * type. One queue is shared by all service types of a presence.
+ * 
+ * @author simpsons
+ */
+public final class OneWayQueue {
+    private final Executor executor;
+
+    private final int capacity;
+
+    private final OverloadPolicy defaultPolicy;
+
+    private final Map<Class<?>, OverloadPolicy> policies;
+
+    private final Duration retryAfter;
+
+    private final CallMetrics metrics;
+
+    private final AtomicInteger depth = new AtomicInteger();
+
+    /**
+     * Create a queue for calls with no response types.
+     * 
+     * @param executor the means to execute calls
+     * 
+     * @param capacity the maximum number of calls outstanding; or
+     * non-positive if unlimited
+     * 
+     * @param defaultPolicy what to do with calls beyond the capacity,
+     * unless overridden for their service type
+     * 
+     * @param policies what to do with calls beyond the capacity, per
+     * service type
+     * 
+     * @param retryAfter the time to suggest to rejected callers before
+     * retrying
+     * 
+     * @param metrics a recipient of queue measurements; or
+     * {@code null} if none are to be taken
+     */
+    public OneWayQueue(Executor executor, int capacity,
+                       OverloadPolicy defaultPolicy,
+                       Map<Class<?>, OverloadPolicy> policies,
+                       Duration retryAfter, CallMetrics metrics) {
+        this.executor = executor;
+        this.capacity = capacity;
+        this.defaultPolicy = defaultPolicy;
+        this.policies = Map.copyOf(policies);
+        this.retryAfter = retryAfter;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Create an unbounded queue for calls with no response types.
+     * 
+     * @param executor the means to execute calls
+     */
+    public OneWayQueue(Executor executor) {
+        this(executor, 0, OverloadPolicy.REJECT, Map.of(), null, null);
+    }
+
+    /**
+     * Get the policy for calls beyond the capacity on a service type.
+     * 
+     * @param type the service type
+     * 
+     * @return the policy for the type
+     */
+    public OverloadPolicy policyFor(Class<?> type) {
+        return policies.getOrDefault(type, defaultPolicy);
+    }
+
+    /**
+     * Get the number of calls outstanding.
+     * 
+     * @return the number of calls admitted but not yet completed
+     */
+    public int depth() {
+        return depth.get();
+    }
+
+    /**
+     * Admit a call for execution.
+     * 
+     * @param interfaceName the IDL name of the interface declaring the
+     * call
+     * 
+     * @param callName the IDL name of the call
+     * 
+     * @param policy what to do if the queue is full
+     * 
+     * @param task the invocation of the call
+     * 
+     * @throws ServiceUnavailableException if the queue is full, and
+     * the policy is to reject the call
+     */
+    void submit(ExternalName interfaceName, ExternalName callName,
+                OverloadPolicy policy, Runnable task) {
+        int admitted = depth.incrementAndGet();
+        if (capacity > 0 && admitted > capacity) {
+            depth.decrementAndGet();
+            overload(interfaceName, callName, policy, task);
+            return;
+        }
+
+        final long queued = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                try {
+                    if (metrics != null)
+                        report(interfaceName, callName,
+                               System.nanoTime() - queued);
+                    task.run();
+                } finally {
+                    depth.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            /* The executor has a bound of its own, or has been shut
+             * down. */
+            depth.decrementAndGet();
+            overload(interfaceName, callName, policy, task);
+        }
+    }
+
+    private void overload(ExternalName interfaceName, ExternalName callName,
+                          OverloadPolicy policy, Runnable task) {
+        switch (policy) {
+        case DISCARD:
+            logger.warning(() -> String.format("discarded %s.%s",
+                                               interfaceName, callName));
+            return;
+
+        case CALLER_RUNS:
+            task.run();
+            return;
+
+        default:
+            throw new ServiceUnavailableException(retryAfter,
+                                                  "one-way queue full");
+        }
+    }
+
+    private void report(ExternalName interfaceName, ExternalName callName,
+                        long waitNanos) {
+        try {
+            metrics.dequeued(interfaceName, callName, waitNanos, depth.get());
+        } catch (RuntimeException ex) {
+            logger.log(Level.WARNING, "metrics failure", ex);
+        }
+    }
+
+    private static final Logger logger =
+        Logger.getLogger("uk.ac.lancs.carp.server");
+}
@@ -0,0 +1,107 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp.runtime;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Gathers calls with no response types over a short period, and then
+ * sends them together. The period starts with the first call to be
+ * held, so no call is held for longer than the period.
+ * 
+ * @author simpsons
+ */
+final class OneWayWindow {
+    private final long windowNanos;
+
+    private final Supplier<? extends HttpClient> engines;
+
+    private BatchRequest current;
+
+    /**
+     * Create a window for gathering calls.
+     * 
+     * @param window the maximum time to hold a call
+     * 
+     * @param engines a source of the HTTP client to send requests with
+     */
+    OneWayWindow(Duration window, Supplier<? extends HttpClient> engines) {
+        this.windowNanos = window.toNanos();
+        this.engines = engines;
+    }
+
+    /**
+     * Hold a call until the end of the current period, starting a
+     * period if necessary.
+     * 
+     * @param entry the call
+     */
+    synchronized void add(BatchRequest.Entry entry) {
+        if (current == null) {
+            current = new BatchRequest();
+            timer.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+        }
+        current.add(entry);
+    }
+
+    private void flush() {
+        final BatchRequest batch;
+        synchronized (this) {
+            batch = current;
+            current = null;
+        }
+        if (batch != null) batch.flush(engines.get());
+    }
+
+    /**
+     * Ends periods. Sending doesn't block, so one thread suffices for
+     * all windows.
+     */
+    private static final ScheduledExecutorService timer =
+        Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "carp-one-way-window");
+            t.setDaemon(true);
+            return t;
+        });
+}
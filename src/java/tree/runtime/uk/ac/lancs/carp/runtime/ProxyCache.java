@@ -39,11 +39,15 @@
 package uk.ac.lancs.carp.runtime;
 
 import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
 import java.net.URI;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiFunction;
 
 /**
@@ -52,17 +56,44 @@ import java.util.function.BiFunction;
  * the {@link #getProxy(Class, URI)} method will return the same value,
  * provided that value has not been garbage-collected in the interim.
  * 
+ * <p>
+ * Proxies that have been found are returned without locking, and a
+ * proxy is created under the lock of its entry, so there is never more
+ * than one proxy for the same arguments. The cache may be given a
+ * capacity, which is the number of most recently used proxies that it
+ * holds strongly, so they survive while nobody else refers to them.
+ * Beyond that, the least recently used are evicted in bulk. An evicted
+ * proxy is then held only weakly, like every proxy of an unbounded
+ * cache, so it is still returned, and its location can still be looked
+ * up by {@link #getLocation(Class, Object)}, for as long as it exists.
+ * 
  * @author simpsons
  */
 public final class ProxyCache {
     /**
-     * Create a proxy cache.
+     * Create an unbounded proxy cache.
      * 
      * @param constructor a means to create new proxies
      */
     public ProxyCache(BiFunction<? super Class<?>, ? super URI,
                                  ?> constructor) {
+        this(constructor, 0);
+    }
+
+    /**
+     * Create a proxy cache.
+     * 
+     * @param constructor a means to create new proxies
+     * 
+     * @param capacity the maximum number of proxies to hold strongly
+     * before evicting the least recently used; or non-positive if
+     * proxies are only to be held weakly
+     */
+    public ProxyCache(BiFunction<? super Class<?>, ? super URI,
+                                 ?> constructor,
+                      int capacity) {
         this.constructor = constructor;
+        this.capacity = capacity;
     }
 
     /**
@@ -72,35 +103,125 @@ public final class ProxyCache {
     private final BiFunction<? super Class<?>, ? super URI, ?> constructor;
 
     /**
-     * Remove a cleared reference from the maps.
-     * 
-     * @param location the endpoint
-     * 
-     * @param type the service type
-     * 
-     * @param value the reference being removed
-     */
-    private synchronized void purge(URI location, Class<?> type,
-                                    Reference<Object> value) {
-        /* Walk through the direct cache, and remove the reference, but
-         * only if it is the current one. */
-        Map<URI, Reference<Object>> inner = cache.get(type);
-        if (inner != null) {
-            inner.remove(location, value);
-            if (inner.isEmpty()) cache.remove(type);
+     * The maximum number of proxies to hold strongly; or non-positive
+     * if proxies are only held weakly.
+     */
+    private final int capacity;
+
+    /**
+     * Records a proxy's entry in both maps.
+     */
+    private final class Slot {
+        final Class<?> type;
+
+        final URI location;
+
+        final Identity identity;
+
+        final Reference<Object> ref;
+
+        /**
+         * The proxy, while the cache holds it strongly; or
+         * {@code null} once it has been evicted
+         */
+        final AtomicReference<Object> strong;
+
+        /**
+         * The time at which the proxy was last obtained from the
+         * cache, for eviction.
+         */
+        volatile long used = System.nanoTime();
+
+        Slot(Class<?> type, URI location, Object proxy) {
+            this.type = type;
+            this.location = location;
+            this.identity = new Identity(proxy);
+            this.ref = Internals.watch(proxy, r -> purge(this));
+            this.strong = new AtomicReference<>(capacity > 0 ? proxy : null);
+        }
+    }
+
+    /**
+     * Weakly references a proxy as a key of the reverse map, comparing
+     * by identity. A cleared key is equal only to itself.
+     */
+    private static final class Identity extends WeakReference<Object> {
+        final int hash;
+
+        Identity(Object referent) {
+            super(referent);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
         }
 
-        /* The inner map of the reverse cache should already have had
-         * its entry removed. If it is now empty, the entry in the outer
-         * map can be removed too. */
-        reverseCache.remove(type, Collections.emptyMap());
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (!(obj instanceof Identity)) return false;
+            Object referent = get();
+            return referent != null && referent == ((Identity) obj).get();
+        }
+    }
+
+    /**
+     * Looks up a proxy in the reverse map without creating a reference
+     * to it.
+     */
+    private static final class Probe {
+        final Object referent;
+
+        Probe(Object referent) {
+            this.referent = referent;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(referent);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Identity &&
+                ((Identity) obj).get() == referent;
+        }
     }
 
-    private final Map<Class<?>, Map<URI, Reference<Object>>> cache =
-        new HashMap<>();
+    private final Map<Class<?>, Map<URI, Slot>> cache =
+        new ConcurrentHashMap<>();
 
-    private final Map<Class<?>, Map<Object, URI>> reverseCache =
-        new HashMap<>();
+    private final Map<Object, URI> reverseCache = new ConcurrentHashMap<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Counts the proxies held strongly.
+     */
+    private final AtomicInteger retained = new AtomicInteger();
+
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Remove the entries of a garbage-collected proxy from the maps.
+     * 
+     * @param slot the proxy's entries
+     */
+    private void purge(Slot slot) {
+        /* Remove the direct entry only if it is the current one. */
+        Map<URI, Slot> inner = cache.get(slot.type);
+        if (inner != null && inner.remove(slot.location, slot))
+            size.decrementAndGet();
+        reverseCache.remove(slot.identity);
+    }
 
     /**
      * Get the address of a proxy.
@@ -112,8 +233,8 @@ public final class ProxyCache {
      * @return the location, or {@code null} if unknown
      */
     public URI getLocation(Class<?> type, Object proxy) {
-        return reverseCache.getOrDefault(type, Collections.emptyMap())
-            .get(proxy);
+        URI location = reverseCache.get(new Probe(proxy));
+        return location != null && type.isInstance(proxy) ? location : null;
     }
 
     /**
@@ -128,34 +249,137 @@ public final class ProxyCache {
      * 
      * @return the proxy
      */
-    public synchronized <Srv> Srv getProxy(Class<Srv> type, URI location) {
-        /* Make sure we have a direct mapping for the service type. */
-        Map<URI, Reference<Object>> inner =
-            cache.computeIfAbsent(type, k -> new HashMap<>());
-
-        /* Look up the URI. There might be no reference, or it might be
-         * cleared. In either case, we need to create the new proxy. It
-         * will be eligible for garbage collection, so we can't use any
-         * of the Map::compute* methods. */
-        Reference<Object> ref = inner.get(location);
-        Object proxy;
-        if (ref == null || (proxy = ref.get()) == null) {
-            /* Create the proxy, and a weak reference to it that will
-             * notify us when it goes. Put it in the direct inner
-             * map. */
-            proxy = constructor.apply(type, location);
-            ref = Internals.watch(proxy, r -> purge(location, type, r));
-            inner.put(location, ref);
-
-            /* Put the proxy weakly in the reverse map too. We don't
-             * need the result, as it's just the location, which we
-             * already have, so we can use Map::computeIfAbsent. */
-            reverseCache.computeIfAbsent(type, k -> new WeakHashMap<>())
-                .put(proxy, location);
+    public <Srv> Srv getProxy(Class<Srv> type, URI location) {
+        Map<URI, Slot> inner =
+            cache.computeIfAbsent(type, k -> new ConcurrentHashMap<>());
+
+        /* Look up the URI. If we have a live proxy, just present it as
+         * the right type. */
+        Slot slot = inner.get(location);
+        if (slot != null) {
+            Object proxy = slot.ref.get();
+            if (proxy != null) {
+                slot.used = System.nanoTime();
+                hits.increment();
+
+                /* Hold an evicted proxy strongly again. */
+                if (capacity > 0 && slot.strong.get() == null &&
+                    slot.strong.compareAndSet(null, proxy) &&
+                    retained.incrementAndGet() > capacity) evict();
+                return type.cast(proxy);
+            }
+        }
+        misses.increment();
+
+        /* There might be no entry, or its proxy might have been
+         * collected. Create the proxy under the entry's lock, unless
+         * another thread has beaten us to it. Keep a strong reference
+         * to it, or it might be collected before we return it. */
+        Object[] created = new Object[1];
+        inner.compute(location, (k, old) -> {
+            if (old != null && (created[0] = old.ref.get()) != null)
+                return old;
+            Object proxy = constructor.apply(type, location);
+            created[0] = proxy;
+            Slot fresh = new Slot(type, location, proxy);
+            reverseCache.put(fresh.identity, location);
+            if (old == null) size.incrementAndGet();
+            if (capacity > 0) retained.incrementAndGet();
+            return fresh;
+        });
+        if (capacity > 0 && retained.get() > capacity) evict();
+        return type.cast(created[0]);
+    }
+
+    /**
+     * Release the least recently used proxies held strongly, so that
+     * the cache is brought within an eighth of its capacity. Their
+     * entries remain until the proxies are collected, so that they are
+     * not duplicated. Only one thread evicts at a time; others carry on
+     * without waiting.
+     */
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) return;
+        try {
+            final int excess = retained.get() - capacity;
+            if (excess <= 0) return;
+            final int target = Math.max(excess, capacity / 8);
+
+            /* Find the time of last use of the newest proxy to go. The
+             * times are copied first, as other threads might change
+             * them. */
+            long[] times = new long[retained.get() + 16];
+            int count = 0;
+            for (Map<URI, Slot> inner : cache.values())
+                for (Slot slot : inner.values()) {
+                    if (slot.strong.get() == null) continue;
+                    if (count == times.length)
+                        times = Arrays.copyOf(times, count * 2);
+                    times[count++] = slot.used;
+                }
+            if (count == 0) return;
+            Arrays.sort(times, 0, count);
+            final long threshold = times[Math.min(target, count) - 1];
+
+            /* Release proxies not used since then. */
+            int removed = 0;
+            for (Map<URI, Slot> inner : cache.values())
+                for (Slot slot : inner.values()) {
+                    if (removed == target) return;
+                    if (slot.used > threshold) continue;
+                    if (slot.strong.getAndSet(null) == null) continue;
+                    retained.decrementAndGet();
+                    evictions.increment();
+                    removed++;
+                }
+        } finally {
+            evicting.set(false);
         }
+    }
+
+    /**
+     * Get the number of proxies currently cached, whether held strongly
+     * or weakly.
+     * 
+     * @return the number of cached proxies
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Get the number of requests for proxies that were satisfied from
+     * the cache.
+     * 
+     * @return the number of cache hits
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of requests for proxies that required a new proxy
+     * to be created.
+     * 
+     * @return the number of cache misses
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of times a proxy has stopped being held strongly
+     * to keep the cache within its capacity.
+     * 
+     * @return the number of evictions
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
 
-        /* Whether we've just created the proxy, or recovered it from
-         * the cache, we just have to present it as the right type. */
-        return type.cast(proxy);
+    @Override
+    public String toString() {
+        return String.format("proxies(size=%d, hits=%d, misses=%d,"
+            + " evictions=%d)", size(), hits(), misses(), evictions());
     }
 }
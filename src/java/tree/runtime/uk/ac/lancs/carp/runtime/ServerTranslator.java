@@ -38,25 +38,41 @@
 
 package uk.ac.lancs.carp.runtime;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.json.Json;
+import javax.json.JsonException;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
+import uk.ac.lancs.carp.CallMetrics;
+import uk.ac.lancs.carp.CallRecord;
 import uk.ac.lancs.carp.Fingerprint;
+import uk.ac.lancs.carp.OverloadPolicy;
+import uk.ac.lancs.carp.ServiceUnavailableException;
+import uk.ac.lancs.carp.codec.CodecException;
+import uk.ac.lancs.carp.codec.Codecs;
 import uk.ac.lancs.carp.codec.Decoder;
 import uk.ac.lancs.carp.codec.DecodingContext;
+import uk.ac.lancs.carp.codec.Direction;
 import uk.ac.lancs.carp.codec.Encoder;
 import uk.ac.lancs.carp.codec.EncodingContext;
 import uk.ac.lancs.carp.map.Accessor;
@@ -67,6 +83,7 @@ import uk.ac.lancs.carp.map.Getter;
 import uk.ac.lancs.carp.map.ResponseModel;
 import uk.ac.lancs.carp.map.Tester;
 import uk.ac.lancs.carp.map.TypeModel;
+import uk.ac.lancs.carp.map.Union;
 import uk.ac.lancs.carp.model.LinkContext;
 import uk.ac.lancs.carp.model.TypeInfo;
 import uk.ac.lancs.carp.model.std.CallSpecification;
@@ -89,10 +106,27 @@ public class ServerTranslator {
     private final LinkContext linkCtxt;
 
     /**
-     * Invokes one-way user-defined methods (i.e., those returning
-     * void).
+     * Admits one-way user-defined methods (i.e., those returning void)
+     * for invocation.
      */
-    private final Executor executor;
+    private final OneWayQueue queue;
+
+    /**
+     * Determines what happens to one-way calls when the queue is full.
+     */
+    private final OverloadPolicy overloadPolicy;
+
+    /**
+     * Bounds the number of concurrent invocations on receivers of the
+     * service type; or {@code null} if unbounded.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Receives measurements of each call; or {@code null} if none are
+     * to be taken.
+     */
+    private final CallMetrics metrics;
 
     /**
      * Creates encoding contexts to allow a receiver to generate
@@ -120,6 +154,12 @@ public class ServerTranslator {
      */
     private final Map<ExternalName, Call> calls;
 
+    /**
+     * Maps the canonical text of each call name to its call type, so
+     * that requests can usually be dispatched without parsing the name.
+     */
+    private final Map<String, Call> callsByText;
+
     /**
      * Create a server-side call translator.
      * 
@@ -138,10 +178,18 @@ public class ServerTranslator {
      * 
      * @param type the service type
      * 
-     * @param executor a means to execute asynchronous calls
+     * @param queue a means to execute asynchronous calls
+     * 
+     * @param callLimit the maximum number of calls to invoke
+     * concurrently on receivers of the type; or non-positive if
+     * unlimited
+     * 
+     * @param metrics a recipient of per-call measurements; or
+     * {@code null} if none are to be taken
      */
     public ServerTranslator(Class<?> type, LinkContext linkCtxt,
-                            Executor executor,
+                            OneWayQueue queue, int callLimit,
+                            CallMetrics metrics,
                             Function<? super Map<? super InetSocketAddress,
                                                  ? super Fingerprint>,
                                      ? extends EncodingContext> encodingContextProvider,
@@ -149,13 +197,18 @@ public class ServerTranslator {
                                                  ? extends Fingerprint>,
                                      ? extends DecodingContext> decodingContextProvider) {
         this.linkCtxt = linkCtxt;
-        this.executor = executor;
+        this.queue = queue;
+        this.overloadPolicy = queue.policyFor(type);
+        this.permits = callLimit > 0 ? new Semaphore(callLimit, true) : null;
+        this.metrics = metrics;
         this.encodingContextProvider = encodingContextProvider;
         this.decodingContextProvider = decodingContextProvider;
 
         /* To deal with inherited types, keep a map from Java class to
          * model element. */
         class Maplet {
+            final ExternalName name;
+
             final InterfaceType model;
 
             final Map<ExternalName, Class<?>> rspTypes;
@@ -184,6 +237,7 @@ public class ServerTranslator {
                 }
                 this.rspTypes = Map.copyOf(rspTypes);
                 this.model = (InterfaceType) info.def;
+                this.name = modelName;
             }
         }
         Map<Class<?>, Maplet> mapping = new HashMap<>();
@@ -210,12 +264,53 @@ public class ServerTranslator {
 
                     ExternalName mn = ExternalName.parse(mder.value());
                     CallSpecification cspec = declarerElem.calls.get(mn);
-                    Call c = new Call(meth, maplet.rspTypes.get(mn), cspec);
+                    Call c = new Call(maplet.name, mn, meth,
+                                      maplet.rspTypes.get(mn), cspec);
                     calls.put(mn, c);
                 }
             }
         }
         this.calls = Map.copyOf(calls);
+        Map<String, Call> callsByText = new HashMap<>();
+        for (Call c : calls.values())
+            callsByText.put(c.name.toString(), c);
+        this.callsByText = Map.copyOf(callsByText);
+    }
+
+    /**
+     * Identify a call type from the text of its name. The canonical
+     * form is looked up directly. Other forms are parsed first.
+     * 
+     * @param text the call name as it appears in a request
+     * 
+     * @return the call type; or {@code null} if not recognized
+     */
+    private Call callOf(String text) {
+        Call result = callsByText.get(text);
+        if (result != null) return result;
+        return calls.get(ExternalName.parse(text));
+    }
+
+    /**
+     * Get a handle for a public method, adapted to take and return
+     * {@link Object}s.
+     * 
+     * @param m the method; or {@code null}
+     * 
+     * @return the handle; or {@code null} if the method is
+     * {@code null}
+     * 
+     * @throws IllegalArgumentException if the method is not accessible
+     */
+    private static MethodHandle handleOf(Method m) {
+        if (m == null) return null;
+        try {
+            MethodHandle h = MethodHandles.publicLookup().unreflect(m);
+            return h.asType(MethodType.genericMethodType(h.type()
+                .parameterCount()));
+        } catch (IllegalAccessException ex) {
+            throw new IllegalArgumentException("inaccessible " + m, ex);
+        }
     }
 
     /**
@@ -245,6 +340,24 @@ public class ServerTranslator {
     public JsonObject invoke(Object receiver, JsonObject req)
         throws InvocationTargetException,
             IllegalAccessException {
+        CallProbe probe = startProbe();
+        try {
+            return invoke(receiver, req, probe);
+        } catch (RuntimeException | Error | InvocationTargetException |
+                 IllegalAccessException ex) {
+            if (probe != null) probe.fail(ex);
+            throw ex;
+        } finally {
+            if (probe != null) probe.report();
+        }
+    }
+
+    private JsonObject invoke(Object receiver, JsonObject req,
+                              CallProbe probe)
+        throws InvocationTargetException,
+            IllegalAccessException {
+        final long start = System.nanoTime();
+
         /* Make a note of any client-supplied fingerprints. */
         Map<InetSocketAddress, Fingerprint> foreignPrints =
             Internals.decodeToMap(req.getJsonArray("prints"));
@@ -253,54 +366,243 @@ public class ServerTranslator {
         EncodingContext encCtxt = getEncodingContext(nativePrints);
 
         /* Identify the method. */
-        ExternalName methName = ExternalName.parse(req.getString("req-type"));
-        Call call = calls.get(methName);
+        Call call = callOf(req.getString("req-type"));
 
         /* Invoke the receiver. */
         JsonObject reqBody = req.getJsonObject("req");
-        JsonObjectBuilder rspBuilder = Json.createObjectBuilder();
-        boolean data =
-            call.invoke(receiver, decCtxt, encCtxt, reqBody, rspBuilder);
-        if (data) {
-            /* Tack on the fingerprints of any peers we've mentioned in
-             * the response. */
-            rspBuilder.add("prints", Internals.encodeFromMap(nativePrints));
-            return rspBuilder.build();
-        } else {
+        logger.fine(() -> String.format("Incoming request: %s%n", reqBody));
+        Object[] args = call.decode(reqBody, decCtxt);
+        if (probe != null) call.identify(probe, System.nanoTime() - start);
+        Call.Result result = call.execute(receiver, args, probe);
+        if (result == null) {
             /* This is an asynchronous call; the result is empty. */
             return null;
         }
+
+        /* Encode the result, and tack on the fingerprints of any peers
+         * we've mentioned in the response. */
+        final long encStart = System.nanoTime();
+        JsonObjectBuilder rspBuilder = Json.createObjectBuilder();
+        result.encode(encCtxt, rspBuilder);
+        rspBuilder.add("prints", Internals.encodeFromMap(nativePrints));
+        JsonObject rsp = rspBuilder.build();
+        if (probe != null) probe.encodeNanos = System.nanoTime() - encStart;
+        return rsp;
+    }
+
+    /**
+     * Start measuring a call to be served by this translator.
+     * 
+     * @return a new record of the call's measurements; or
+     * {@code null} if no measurements are to be taken
+     */
+    CallProbe startProbe() {
+        return CallProbe.start(metrics, CallRecord.Side.SERVER);
+    }
+
+    /**
+     * Read a request from a stream, invoke a regular method on a
+     * receiver, and prepare to stream the response. Call arguments are
+     * decoded directly from the parser, so the request need not be
+     * held in memory as a JSON tree. The receiver is invoked
+     * immediately, but encoding of its result is deferred until the
+     * returned action is applied to a JSON generator.
+     * 
+     * <p>
+     * The request body is decoded as it arrives only if
+     * <samp>req-type</samp> precedes <samp>req</samp>, as it does in
+     * messages generated by {@link ClientTranslator}. Otherwise, the
+     * body is read into memory first.
+     * 
+     * @param receiver an implementation of the service type specified
+     * during construction
+     * 
+     * @param in a parser positioned before a JSON object with the same
+     * fields as expected by {@link #invoke(Object, JsonObject)}
+     * 
+     * @return an action to write the response object, with the same
+     * fields as returned by {@link #invoke(Object, JsonObject)}; or
+     * {@code null} if the call is asynchronous, and yields no response
+     * 
+     * @throws InvocationTargetException a checked exception is thrown
+     * by the receiver
+     * 
+     * @throws IllegalAccessException if the receiver's method is
+     * inaccessible
+     * 
+     * @throws JsonException if the request is not a well-formed
+     * request message
+     */
+    public Consumer<JsonGenerator> prepare(Object receiver, JsonParser in)
+        throws InvocationTargetException,
+            IllegalAccessException {
+        return prepare(receiver, in, null);
+    }
+
+    /**
+     * Read a request from a stream, invoke a regular method on a
+     * receiver, and prepare to stream the response, while taking
+     * measurements.
+     * 
+     * @param receiver an implementation of the service type specified
+     * during construction
+     * 
+     * @param in a parser positioned before the request message
+     * 
+     * @param probe a record of the call's measurements, to which the
+     * call's identity, decoding, execution and encoding times and
+     * response type are added; or {@code null} if no measurements are
+     * being taken
+     * 
+     * @return an action to write the response object; or {@code null}
+     * if the call is asynchronous, and yields no response
+     * 
+     * @throws InvocationTargetException a checked exception is thrown
+     * by the receiver
+     * 
+     * @throws IllegalAccessException if the receiver's method is
+     * inaccessible
+     * 
+     * @throws JsonException if the request is not a well-formed
+     * request message
+     * 
+     * @see #prepare(Object, JsonParser)
+     */
+    Consumer<JsonGenerator> prepare(Object receiver, JsonParser in,
+                                    CallProbe probe)
+        throws InvocationTargetException,
+            IllegalAccessException {
+        final long start = System.nanoTime();
+
+        /* Fingerprints arrive after the request body, so remember which
+         * peers are mentioned until we know them. */
+        DeferredDecodingContext decCtxt =
+            new DeferredDecodingContext(decodingContextProvider);
+
+        if (in.next() != JsonParser.Event.START_OBJECT)
+            throw new JsonException("request not an object");
+        Call call = null;
+        Object[] args = null;
+        JsonObject reqBody = null;
+        boolean settled = false;
+        for (var ev = in.next(); ev != JsonParser.Event.END_OBJECT;
+             ev = in.next()) {
+            String key = in.getString();
+            ev = in.next();
+            switch (key) {
+            case "req-type":
+                /* Identify the method. */
+                call = callOf(in.getString());
+                break;
+
+            case "req":
+                if (call == null) {
+                    /* We don't yet know how to decode the body. */
+                    reqBody = in.getObject();
+                } else {
+                    args = call.read(ev, in, decCtxt);
+                }
+                break;
+
+            case "prints":
+                /* Make a note of any client-supplied fingerprints. */
+                decCtxt.settle(Internals.decodeToMap(in.getArray()));
+                settled = true;
+                break;
+
+            default:
+                Codecs.skipValue(ev, in);
+                break;
+            }
+        }
+        if (!settled) decCtxt.settle(Collections.emptyMap());
+        if (call == null) throw new JsonException("no req-type");
+        final ExternalName reqType = call.name;
+        logger.fine(() -> String.format("Incoming request: %s%n", reqType));
+        if (args == null) {
+            if (reqBody == null) throw new JsonException("no req");
+            args = call.decode(reqBody, decCtxt);
+        }
+        if (probe != null) call.identify(probe, System.nanoTime() - start);
+
+        /* Invoke the receiver. */
+        Call.Result result = call.execute(receiver, args, probe);
+        if (result == null) return null;
+
+        return out -> {
+            final long encStart = System.nanoTime();
+            Map<InetSocketAddress, Fingerprint> nativePrints =
+                new HashMap<>();
+            EncodingContext encCtxt = getEncodingContext(nativePrints);
+            out.writeStartObject();
+            result.write(encCtxt, out);
+            Internals.writePrints(out, nativePrints);
+            out.writeEnd();
+            if (probe != null)
+                probe.encodeNanos = System.nanoTime() - encStart;
+        };
     }
 
     private class Call {
         private class InParam {
             final ExternalName name;
 
+            final String key;
+
             final Decoder codec;
 
             Object decode(JsonObject req, DecodingContext ctxt) {
                 // System.err.printf("getting in %s%n", name);
-                return codec.decodeJson(req.get(name.toString()), ctxt);
+                return codec.decodeJson(req.get(key), ctxt);
+            }
+
+            Object read(JsonParser.Event event, JsonParser in,
+                        DecodingContext ctxt) {
+                return codec.readJson(event, in, ctxt);
             }
 
             InParam(ExternalName name, Decoder codec) {
                 this.name = name;
+                this.key = name.toString();
                 this.codec = codec;
             }
         }
 
         private class Response {
             class OutParam {
-                final Method access;
+                final MethodHandle access;
 
                 final Encoder codec;
 
                 final ExternalName name;
 
+                final String key;
+
                 OutParam(ExternalName name, Encoder codec, Method access) {
-                    this.access = access;
+                    this.access = handleOf(access);
                     this.codec = codec;
                     this.name = name;
+                    this.key = name.toString();
+                }
+
+                /**
+                 * Get the value of the field from a specific response.
+                 * 
+                 * @param inner the specific response object
+                 * 
+                 * @return the field's value
+                 * 
+                 * @throws CodecException if the field could not be
+                 * accessed
+                 */
+                Object get(Object inner) {
+                    try {
+                        return (Object) access.invokeExact(inner);
+                    } catch (Throwable ex) {
+                        throw new CodecException(Direction.ENCODING,
+                                                 "reflecting key " + name,
+                                                 ex);
+                    }
                 }
 
                 /**
@@ -316,29 +618,55 @@ public class ServerTranslator {
                  * @return {@code true} if a non-{@code null} value was
                  * encoded; {@code false} otherwise
                  * 
-                 * @throws IllegalAccessException if the field could not
-                 * be accessed reflectively
-                 * 
-                 * @throws InvocationTargetException if the way to
-                 * access the field was broken in some awful way
+                 * @throws CodecException if the field could not be
+                 * accessed or encoded
                  */
                 boolean encode(Object inner, EncodingContext ctxt,
-                               JsonObjectBuilder rspBuilder)
-                    throws IllegalAccessException,
-                        InvocationTargetException {
-                    Object value = access.invoke(inner);
+                               JsonObjectBuilder rspBuilder) {
+                    Object value = get(inner);
                     if (value == null) return false;
                     JsonValue jv = codec.encodeJson(value, ctxt);
-                    rspBuilder.add(name.toString(), jv);
+                    rspBuilder.add(key, jv);
+                    return true;
+                }
+
+                /**
+                 * Write a single response field to a stream.
+                 * 
+                 * @param inner the value to encode
+                 * 
+                 * @param ctxt a context for encoding the value into
+                 * JSON
+                 * 
+                 * @param out the destination of the encoded field
+                 * 
+                 * @return {@code true} if a non-{@code null} value was
+                 * encoded; {@code false} otherwise
+                 * 
+                 * @throws CodecException if the field could not be
+                 * accessed or encoded
+                 */
+                boolean write(Object inner, EncodingContext ctxt,
+                              JsonGenerator out) {
+                    Object value = get(inner);
+                    if (value == null) return false;
+                    out.writeKey(key);
+                    codec.writeJson(value, ctxt, out);
                     return true;
                 }
             }
 
             final ExternalName name;
 
+            /**
+             * The text of the response name, as written in
+             * <samp>rsp-type</samp>
+             */
+            final String text;
+
             final Method test;
 
-            final Method access;
+            final MethodHandle access;
 
             final Collection<OutParam> params;
 
@@ -358,8 +686,9 @@ public class ServerTranslator {
             Response(ExternalName name, Method test, Method access,
                      Class<?> type, ResponseSpecification spec) {
                 this.name = name;
+                this.text = name.toString();
                 this.test = test;
-                this.access = access;
+                this.access = handleOf(access);
 
                 /* Create an index of getters on the specific response
                  * type. */
@@ -376,7 +705,7 @@ public class ServerTranslator {
                 for (var entry : spec.parameters.members.entrySet()) {
                     ExternalName pn = entry.getKey();
                     Member memb = entry.getValue();
-                    Encoder codec = memb.type.getEncoder(null, linkCtxt);
+                    Encoder codec = linkCtxt.getEncoder(memb.type, null);
                     Method getter = getters.get(pn);
                     OutParam par = new OutParam(pn, codec, getter);
                     params.add(par);
@@ -385,39 +714,155 @@ public class ServerTranslator {
             }
 
             /**
-             * Attempt to recognize the response object, and encode a
-             * response.
+             * Attempt to recognize the response object, and extract
+             * the specific response from it.
+             * 
+             * @param raw the value returned by the receiver
+             * 
+             * @return the specific response, ready for encoding; or
+             * {@code null} if the object was not recognized
+             */
+            Result recognize(Object raw)
+                throws IllegalAccessException,
+                    InvocationTargetException {
+                if (!((boolean) test.invoke(raw))) return null;
+                return extract(raw);
+            }
+
+            /**
+             * Extract the specific response from a response object
+             * already known to be of this type.
+             * 
+             * @param raw the value returned by the receiver
+             * 
+             * @return the specific response, ready for encoding
+             * 
+             * @throws InvocationTargetException if the accessor failed
+             */
+            Result extract(Object raw) throws InvocationTargetException {
+                try {
+                    return new Result(this, (Object) access.invokeExact(raw));
+                } catch (Throwable t) {
+                    throw new InvocationTargetException(t);
+                }
+            }
+
+            /**
+             * Encode a recognized response.
              * 
-             * @param raw the value to be encoded
+             * @param inner the specific response object
              * 
              * @param ctxt a context for encoding the response object
              * into JSON
              * 
              * @param rspBuilder the destination for encoded fields
-             * 
-             * @return {@code true} if the object was recognized;
-             * {@code false} otherwise
              */
-            boolean encode(Object raw, EncodingContext ctxt,
-                           JsonObjectBuilder rspBuilder)
-                throws IllegalAccessException,
-                    InvocationTargetException {
-                if (!((boolean) test.invoke(raw))) return false;
-                Object inner = access.invoke(raw);
-
+            void encode(Object inner, EncodingContext ctxt,
+                        JsonObjectBuilder rspBuilder) {
                 for (OutParam p : params)
                     p.encode(inner, ctxt, rspBuilder);
-                return true;
+            }
+
+            /**
+             * Write a recognized response to a stream, as the fields
+             * of the current JSON object.
+             * 
+             * @param inner the specific response object
+             * 
+             * @param ctxt a context for encoding the response object
+             * into JSON
+             * 
+             * @param out the destination for encoded fields
+             */
+            void write(Object inner, EncodingContext ctxt,
+                       JsonGenerator out) {
+                for (OutParam p : params)
+                    p.write(inner, ctxt, out);
+            }
+        }
+
+        /**
+         * Holds a recognized result of invoking a receiver, pending
+         * encoding.
+         */
+        class Result {
+            final Response type;
+
+            final Object inner;
+
+            Result(Response type, Object inner) {
+                this.type = type;
+                this.inner = inner;
+            }
+
+            /**
+             * Add <samp>rsp-type</samp> and <samp>rsp</samp> fields to
+             * a response message.
+             * 
+             * @param ctxt a context for encoding the response
+             * 
+             * @param rspBuilder the response message
+             */
+            void encode(EncodingContext ctxt, JsonObjectBuilder rspBuilder) {
+                JsonObjectBuilder outs = Json.createObjectBuilder();
+                type.encode(inner, ctxt, outs);
+                rspBuilder.add("rsp", outs);
+                rspBuilder.add("rsp-type", type.text);
+            }
+
+            /**
+             * Write <samp>rsp-type</samp> and <samp>rsp</samp> fields
+             * of a response message to a stream.
+             * 
+             * @param ctxt a context for encoding the response
+             * 
+             * @param out the destination of the fields
+             */
+            void write(EncodingContext ctxt, JsonGenerator out) {
+                out.write("rsp-type", type.text);
+                out.writeStartObject("rsp");
+                type.write(inner, ctxt, out);
+                out.writeEnd();
             }
         }
 
+        /**
+         * Identifies the interface type declaring the call.
+         */
+        private final ExternalName typeName;
+
+        private final ExternalName name;
+
         private final Method meth;
 
         private final List<InParam> params;
 
+        /**
+         * Maps each parameter name to its position in the argument
+         * list.
+         */
+        private final Map<String, Integer> paramIndex;
+
         private final Collection<Response> responseTypes;
 
         /**
+         * Yields the discriminator of a generic response object; or
+         * {@code null} if response types must be tested in turn
+         */
+        private final MethodHandle discriminator;
+
+        /**
+         * Holds the handler for each response type, indexed by the
+         * ordinal of its discriminator
+         */
+        private final Response[] byDiscriminator;
+
+        /**
+         * 
+         * @param typeName the name of the interface type declaring the
+         * call
+         * 
+         * @param name the name of the call
          * 
          * @param meth the method on the interface type to be invoked
          * 
@@ -425,7 +870,10 @@ public class ServerTranslator {
          * 
          * @param spec
          */
-        Call(Method meth, Class<?> type, CallSpecification spec) {
+        Call(ExternalName typeName, ExternalName name, Method meth,
+             Class<?> type, CallSpecification spec) {
+            this.typeName = typeName;
+            this.name = name;
             this.meth = meth;
 
             /* Create translators for each call parameter. */
@@ -434,9 +882,13 @@ public class ServerTranslator {
                 var der = item.getAnnotation(Argument.class);
                 ExternalName pn = ExternalName.parse(der.value());
                 Member memb = spec.parameters.members.get(pn);
-                Decoder codec = memb.type.getDecoder(null, linkCtxt);
+                Decoder codec = linkCtxt.getDecoder(memb.type, null);
                 this.params.add(new InParam(pn, codec));
             }
+            Map<String, Integer> paramIndex = new HashMap<>();
+            for (int i = 0; i < this.params.size(); i++)
+                paramIndex.put(this.params.get(i).name.toString(), i);
+            this.paramIndex = Map.copyOf(paramIndex);
 
             /* Create an index of type-testing and accessor methods. */
             Map<ExternalName, Method> testers = new HashMap<>();
@@ -479,46 +931,190 @@ public class ServerTranslator {
                 responseTypes.add(rsp);
             }
             this.responseTypes = List.copyOf(responseTypes);
+
+            /* Index the response handlers by the generated
+             * discriminator, so that a result can be recognized in one
+             * step. */
+            Method discMeth = null;
+            Response[] byDisc = null;
+            if (type != null && Union.class.isAssignableFrom(type)) {
+                try {
+                    discMeth = type.getMethod(Union.METHOD_NAME);
+                    Object[] discs =
+                        discMeth.getReturnType().getEnumConstants();
+                    byDisc = new Response[discs.length];
+                    for (Response rsp : this.responseTypes) {
+                        String cn = rsp.name.asJavaConstantName();
+                        for (Object disc : discs)
+                            if (((Enum<?>) disc).name().equals(cn))
+                                byDisc[((Enum<?>) disc).ordinal()] = rsp;
+                    }
+                    if (Arrays.asList(byDisc).contains(null))
+                        discMeth = null;
+                } catch (NoSuchMethodException ex) {
+                    discMeth = null;
+                }
+            }
+            this.discriminator = discMeth == null ? null : handleOf(discMeth);
+            this.byDiscriminator = discMeth == null ? null : byDisc;
         }
 
         /**
-         * Decode a request into a parameter list, invoke a method on an
-         * object with them, and encode the response into JSON.
-         * 
-         * @param receiver the object to invoke
+         * Identify the response type of a receiver's result, and
+         * extract the specific response.
          * 
-         * @param encCtxt a context for encoding the response
+         * @param result the value returned by the receiver
          * 
-         * @param decCtxt a context for decoding the request
+         * @return the recognized result, ready for encoding
+         */
+        private Result recognize(Object result)
+            throws IllegalAccessException,
+                InvocationTargetException {
+            if (discriminator != null) {
+                final Enum<?> disc;
+                try {
+                    disc = (Enum<?>) (Object) discriminator.invokeExact(result);
+                } catch (Throwable t) {
+                    throw new InvocationTargetException(t);
+                }
+                return byDiscriminator[disc.ordinal()].extract(result);
+            }
+
+            for (Response rt : responseTypes) {
+                Result r = rt.recognize(result);
+                if (r != null) return r;
+            }
+
+            /* This should not be reached. */
+            throw new AssertionError("unreachable");
+        }
+
+        /**
+         * Decode a request body into an argument list.
          * 
          * @param req the request body (the value of the
          * <samp>req</samp> field)
          * 
-         * @param rspBuilder a builder to which <samp>rsp-type</samp>
-         * and <samp>rsp</samp> fields should be added
+         * @param decCtxt a context for decoding the request
          * 
-         * @return {@code true} if a response was added; {@code false}
-         * if the method generates no response
+         * @return the argument list
          */
-        boolean invoke(Object receiver, DecodingContext decCtxt,
-                       EncodingContext encCtxt, JsonObject req,
-                       JsonObjectBuilder rspBuilder)
-            throws IllegalAccessException,
-                InvocationTargetException {
-            logger.fine(() -> String.format("Incoming request: %s%n", req));
-            /* Build up the argument list. */
+        Object[] decode(JsonObject req, DecodingContext decCtxt) {
             Object[] params = new Object[this.params.size()];
             for (int i = 0; i < params.length; i++) {
                 InParam spec = this.params.get(i);
                 params[i] = spec.decode(req, decCtxt);
             }
+            return params;
+        }
+
+        /**
+         * Read a request body from a stream into an argument list.
+         * Unrecognized fields are skipped.
+         * 
+         * @param event the event at which the parser is positioned,
+         * which must be the start of the request body
+         * 
+         * @param in the source of the request body, which is left at
+         * the body's end
+         * 
+         * @param decCtxt a context for decoding the request
+         * 
+         * @return the argument list
+         */
+        Object[] read(JsonParser.Event event, JsonParser in,
+                      DecodingContext decCtxt) {
+            Codecs.expect(Direction.DECODING, JsonParser.Event.START_OBJECT,
+                          event);
+            Object[] params = new Object[this.params.size()];
+            boolean[] found = new boolean[params.length];
+            for (var ev = in.next(); ev != JsonParser.Event.END_OBJECT;
+                 ev = in.next()) {
+                Integer i = paramIndex.get(in.getString());
+                ev = in.next();
+                if (i == null) {
+                    Codecs.skipValue(ev, in);
+                    continue;
+                }
+                params[i] = this.params.get(i).read(ev, in, decCtxt);
+                found[i] = true;
+            }
+
+            /* Treat absent fields as the in-memory decoder would. */
+            for (int i = 0; i < params.length; i++)
+                if (!found[i])
+                    params[i] = this.params.get(i).codec.decodeJson(null,
+                                                                     decCtxt);
+            return params;
+        }
 
+        /**
+         * Record the identity of this call, and the time taken to
+         * decode its arguments.
+         * 
+         * @param probe the record of the call's measurements
+         * 
+         * @param decodeNanos the time taken to decode the arguments
+         */
+        void identify(CallProbe probe, long decodeNanos) {
+            probe.interfaceName = typeName;
+            probe.callName = name;
+            probe.decodeNanos = decodeNanos;
+        }
+
+        /**
+         * Invoke a method on an object with an argument list, and
+         * identify the response type, while taking measurements.
+         * 
+         * @param receiver the object to invoke
+         * 
+         * @param params the argument list
+         * 
+         * @param probe a record of the call's measurements, to which
+         * the execution time and response type are added; or
+         * {@code null} if no measurements are being taken
+         * 
+         * @return the recognized result, ready for encoding; or
+         * {@code null} if the method generates no response
+         */
+        Result execute(Object receiver, Object[] params, CallProbe probe)
+            throws IllegalAccessException,
+                InvocationTargetException {
+            if (probe == null) return execute(receiver, params);
+            final long start = System.nanoTime();
+            try {
+                Result result = execute(receiver, params);
+                if (result != null) probe.responseType = result.type.name;
+                return result;
+            } finally {
+                probe.executionNanos = System.nanoTime() - start;
+            }
+        }
+
+        /**
+         * Invoke a method on an object with an argument list, and
+         * identify the response type.
+         * 
+         * @param receiver the object to invoke
+         * 
+         * @param params the argument list
+         * 
+         * @return the recognized result, ready for encoding; or
+         * {@code null} if the method generates no response
+         * 
+         * @throws ServiceUnavailableException if the method generates
+         * no response, and the queue for such calls is full
+         */
+        Result execute(Object receiver, Object[] params)
+            throws IllegalAccessException,
+                InvocationTargetException {
             if (responseTypes.isEmpty()) {
-                /* Invoke the native object on an executor. */
-                executor.execute(() -> {
+                /* Invoke the native object on an executor, if there's
+                 * room. */
+                queue.submit(typeName, name, overloadPolicy, () -> {
                     try {
                         try {
-                            meth.invoke(receiver, params);
+                            invoke(receiver, params);
                         } catch (InvocationTargetException ex) {
                             throw ex.getCause();
                         }
@@ -527,23 +1123,36 @@ public class ServerTranslator {
                                    "error on asynchronous invocation", t);
                     }
                 });
-                return false;
+                return null;
             }
 
             /* Invoke the native object. */
-            Object result = meth.invoke(receiver, params);
+            Object result = invoke(receiver, params);
 
             /* Match one of the response types to encode it. */
-            JsonObjectBuilder outs = Json.createObjectBuilder();
-            for (Response rt : responseTypes)
-                if (rt.encode(result, encCtxt, outs)) {
-                    rspBuilder.add("rsp", outs);
-                    rspBuilder.add("rsp-type", rt.name.toString());
-                    return true;
-                }
+            return recognize(result);
+        }
 
-            /* This should not be reached. */
-            throw new AssertionError("unreachable");
+        /**
+         * Invoke the method on an object, waiting first for a permit if
+         * the number of concurrent calls on the type is limited.
+         * 
+         * @param receiver the object to invoke
+         * 
+         * @param params the argument list
+         * 
+         * @return the method's return value
+         */
+        private Object invoke(Object receiver, Object[] params)
+            throws IllegalAccessException,
+                InvocationTargetException {
+            if (permits == null) return meth.invoke(receiver, params);
+            permits.acquireUninterruptibly();
+            try {
+                return meth.invoke(receiver, params);
+            } finally {
+                permits.release();
+            }
         }
     }
 
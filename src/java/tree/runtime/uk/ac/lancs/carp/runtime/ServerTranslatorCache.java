@@ -40,11 +40,13 @@ package uk.ac.lancs.carp.runtime;
 
 import java.lang.ref.Reference;
 import java.net.InetSocketAddress;
-import java.util.IdentityHashMap;
+import java.util.Collections;
 import java.util.Map;
 import java.util.WeakHashMap;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import uk.ac.lancs.carp.CallMetrics;
 import uk.ac.lancs.carp.Fingerprint;
 import uk.ac.lancs.carp.codec.DecodingContext;
 import uk.ac.lancs.carp.codec.EncodingContext;
@@ -52,20 +54,25 @@ import uk.ac.lancs.carp.model.LinkContext;
 
 /**
  * Creates and weakly caches server translators. Translators are indexed
- * by receiver and service type. Receivers are held weakly. Translators
- * are held weakly if no receivers use them.
+ * by service type, and are held weakly, so callers that serve a type
+ * repeatedly should retain its translator, e.g., with
+ * {@link uk.ac.lancs.carp.component.PathMatch#attachment(Class, java.util.function.Function)}.
+ * Translators that have been found are returned without locking.
  * 
  * @author simpsons
  */
 public final class ServerTranslatorCache {
-    private synchronized void purge(Class<?> type,
-                                    Reference<ServerTranslator> ref) {
+    private void purge(Class<?> type, Reference<ServerTranslator> ref) {
         translators.remove(type, ref);
     }
 
     private final LinkContext linkCtxt;
 
-    private final Executor executor;
+    private final OneWayQueue queue;
+
+    private final ToIntFunction<? super Class<?>> callLimits;
+
+    private final CallMetrics metrics;
 
     private final Function<? super Map<? super InetSocketAddress,
                                        ? super Fingerprint>,
@@ -78,8 +85,9 @@ public final class ServerTranslatorCache {
     /**
      * Create a cache of server translators. The arguments provided here
      * are those to be passed to each call to
-     * {@link ServerTranslator#ServerTranslator(Class, LinkContext, Executor, Function, Function)}.
-     * (Its first argument is not known at this stage.)
+     * {@link ServerTranslator#ServerTranslator(Class, LinkContext, OneWayQueue, int, CallMetrics, Function, Function)}.
+     * (Its first argument is not known at this stage, and its call
+     * limit is obtained per type.)
      * 
      * @param linkCtxt a source for IDL type definitions and their
      * native classes
@@ -94,9 +102,18 @@ public final class ServerTranslatorCache {
      * table mapping peer addresses to their fingerprints, to be
      * consulted when endpoints are decoded into proxies
      * 
-     * @param executor a means to execute asynchronous calls
+     * @param queue a means to execute asynchronous calls
+     * 
+     * @param callLimits yields the maximum number of calls to invoke
+     * concurrently on receivers of each service type, non-positive if
+     * unlimited; or {@code null} if no type is limited
+     * 
+     * @param metrics a recipient of per-call measurements; or
+     * {@code null} if none are to be taken
      */
-    public ServerTranslatorCache(LinkContext linkCtxt, Executor executor,
+    public ServerTranslatorCache(LinkContext linkCtxt, OneWayQueue queue,
+                                 ToIntFunction<? super Class<?>> callLimits,
+                                 CallMetrics metrics,
                                  Function<? super Map<? super InetSocketAddress,
                                                       ? super Fingerprint>,
                                           ? extends EncodingContext> encodingContextProvider,
@@ -104,31 +121,50 @@ public final class ServerTranslatorCache {
                                                       ? extends Fingerprint>,
                                           ? extends DecodingContext> decodingContextProvider) {
         this.linkCtxt = linkCtxt;
-        this.executor = executor;
+        this.queue = queue;
+        this.callLimits = callLimits;
+        this.metrics = metrics;
         this.encodingContextProvider = encodingContextProvider;
         this.decodingContextProvider = decodingContextProvider;
     }
 
     private final Map<Class<?>, Reference<ServerTranslator>> translators =
-        new IdentityHashMap<>();
+        new ConcurrentHashMap<>();
 
-    private final Map<Object, Map<Class<?>, ServerTranslator>> perReceiver =
-        new WeakHashMap<>();
-
-    private ServerTranslator get(Class<?> type) {
-        assert Thread.holdsLock(this);
+    /**
+     * Get the translator for a service type. The same translator will
+     * be returned given the same service type, provided it has not been
+     * garbage-collected. Otherwise, a new translator is created.
+     * 
+     * @param type the service type
+     * 
+     * @return the translator for the type
+     */
+    public ServerTranslator get(Class<?> type) {
         Reference<ServerTranslator> ref = translators.get(type);
-        ServerTranslator result;
-        if (ref == null || (result = ref.get()) == null) {
-            result = new ServerTranslator(type, linkCtxt, executor,
-                                          encodingContextProvider,
-                                          decodingContextProvider);
-            ref = Internals.watch(result, r -> purge(type, r));
-            translators.put(type, ref);
-        }
-        return result;
+        ServerTranslator found;
+        if (ref != null && (found = ref.get()) != null) return found;
+
+        /* Create the translator under the entry's lock, unless another
+         * thread has beaten us to it. Keep a strong reference to it,
+         * or it might be collected before we return it. */
+        ServerTranslator[] result = new ServerTranslator[1];
+        translators.compute(type, (k, old) -> {
+            if (old != null && (result[0] = old.get()) != null) return old;
+            int callLimit =
+                callLimits == null ? 0 : callLimits.applyAsInt(type);
+            result[0] = new ServerTranslator(type, linkCtxt, queue,
+                                             callLimit, metrics,
+                                             encodingContextProvider,
+                                             decodingContextProvider);
+            return Internals.watch(result[0], r -> purge(type, r));
+        });
+        return result[0];
     }
 
+    private final Map<Object, Map<Class<?>, ServerTranslator>> perReceiver =
+        Collections.synchronizedMap(new WeakHashMap<>());
+
     /**
      * Get the translator for a receiver and service type. The same
      * translator will be returned given the same service type, provided
@@ -141,10 +177,16 @@ public final class ServerTranslatorCache {
      * @param receiver the receiver
      * 
      * @return the translator for the type
+     * 
+     * @deprecated Receivers are held under a global lock. Use
+     * {@link #get(Class)}, and retain the translator for as long as
+     * the type is served.
      */
-    public synchronized ServerTranslator get(Class<?> type, Object receiver) {
-        return perReceiver
-            .computeIfAbsent(receiver, k -> new IdentityHashMap<>())
-            .computeIfAbsent(type, k -> get(k));
+    @Deprecated
+    public ServerTranslator get(Class<?> type, Object receiver) {
+        ServerTranslator result = get(type);
+        perReceiver.computeIfAbsent(receiver, k -> new ConcurrentHashMap<>())
+            .putIfAbsent(type, result);
+        return result;
     }
 }
@@ -40,6 +40,12 @@ package uk.ac.lancs.carp.runtime;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.InvalidPropertiesFormatException;
@@ -47,17 +53,18 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 import uk.ac.lancs.carp.map.ExternalName;
 import uk.ac.lancs.carp.model.CompiledTypeFactory;
 import uk.ac.lancs.carp.model.LoadContext;
 import uk.ac.lancs.carp.model.MissingTypeException;
 import uk.ac.lancs.carp.model.ModuleDefinition;
+import uk.ac.lancs.carp.model.ModuleImage;
 import uk.ac.lancs.carp.model.Type;
 
 /**
  * Locates and caches definitions available through the class loader
- * hierarchy.
+ * hierarchy. A module's binary image is preferred to its properties,
+ * so that only the types sought are loaded.
  *
  * @author simpsons
  */
@@ -161,26 +168,46 @@ public final class TypeContext {
     }
 
     private final class Application {
+        /**
+         * Holds the whole module, if loaded from properties.
+         */
         final ModuleDefinition defs;
 
+        /**
+         * Holds the module's image, from which types are loaded as
+         * they are sought, if it was found.
+         */
+        final ModuleImage image;
+
+        final LoadContext loadCtxt;
+
         final ClassLoader source;
 
         final String pkgName;
 
-        final Map<ExternalName,
-                  Map<ExternalName, MissingTypeException>> unresolved =
-                      new HashMap<>();
+        final Map<ExternalName, Type> loaded = new HashMap<>();
 
         Application(ModuleDefinition defs, ClassLoader source, String pkgName) {
             this.defs = defs;
+            this.image = null;
+            this.loadCtxt = null;
             this.source = source;
             this.pkgName = pkgName;
-            unresolved.putAll(defs.types.keySet().stream()
-                .collect(Collectors.toMap(n -> n, n -> new HashMap<>())));
+        }
+
+        Application(ModuleImage image, LoadContext loadCtxt,
+                    ClassLoader source) {
+            this.defs = null;
+            this.image = image;
+            this.loadCtxt = loadCtxt;
+            this.source = source;
+            this.pkgName = image.javaPackage();
         }
 
         synchronized Type getDefinition(ExternalName typeName) {
-            Type typeDef = defs.types.get(typeName);
+            Type typeDef = defs != null ? defs.types.get(typeName) :
+                loaded.computeIfAbsent(typeName,
+                                       k -> image.load(k, loadCtxt));
             if (typeDef == null)
                 throw new MissingTypeException(typeName.toString());
             return typeDef;
@@ -217,6 +244,31 @@ public final class TypeContext {
     private Application getApplicationInternal(ExternalName moduleName,
                                                ClassLoader source) {
         Function<ExternalName, Application> loader = k -> {
+            LoadContext loadCtxt = new LoadContext() {
+                @Override
+                public ClassLoader implementations() {
+                    return CompiledTypeFactory.class.getClassLoader();
+                }
+
+                @Override
+                public ClassLoader source() {
+                    return source;
+                }
+            };
+
+            /* Prefer the module's image, from which only the types
+             * sought need be loaded. */
+            URL imageUrl =
+                source.getResource(moduleName.asJavaModuleImagePath());
+            if (imageUrl != null) {
+                try {
+                    return new Application(ModuleImage
+                        .wrap(readImage(imageUrl)), loadCtxt, source);
+                } catch (IOException | IllegalArgumentException ex) {
+                    /* Fall back to the properties. */
+                }
+            }
+
             /* See if we have the module definition. If not, delegate to
              * the ancestor. */
             String resPath = moduleName.asJavaTypeResourcePath();
@@ -237,17 +289,6 @@ public final class TypeContext {
                 throw new ClassLoaderContext.ResourceException(moduleName
                     .toString(), ex);
             }
-            LoadContext loadCtxt = new LoadContext() {
-                @Override
-                public ClassLoader implementations() {
-                    return CompiledTypeFactory.class.getClassLoader();
-                }
-
-                @Override
-                public ClassLoader source() {
-                    return source;
-                }
-            };
             ModuleDefinition moduleDef = ModuleDefinition
                 .load("module.", props,
                       CompiledTypeFactory.class.getClassLoader(), loadCtxt);
@@ -257,6 +298,32 @@ public final class TypeContext {
         return apps.computeIfAbsent(moduleName, loader);
     }
 
+    /**
+     * Read a module image. A file is mapped into memory, and anything
+     * else is read in full.
+     * 
+     * @param url the location of the image
+     * 
+     * @return a buffer containing the image
+     * 
+     * @throws IOException if an I/O error occurs
+     */
+    private static ByteBuffer readImage(URL url) throws IOException {
+        if ("file".equals(url.getProtocol())) {
+            try (FileChannel chan =
+                FileChannel.open(Path.of(url.toURI()),
+                                 StandardOpenOption.READ)) {
+                return chan.map(FileChannel.MapMode.READ_ONLY, 0,
+                                chan.size());
+            } catch (URISyntaxException ex) {
+                throw new IOException(ex);
+            }
+        }
+        try (InputStream in = url.openStream()) {
+            return ByteBuffer.wrap(in.readAllBytes());
+        }
+    }
+
     /**
      * Ensure that a given module has been loaded with the correct class
      * loader.
@@ -0,0 +1,196 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+package uk.ac.lancs.carp.runtime;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Locale;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
+import org.apache.http.entity.ContentType;
+
+/**
+ * Identifies an encoding of messages on the wire. Every format carries
+ * the JSON data model, so codecs write to and read from it through
+ * {@link JsonGenerator} and {@link JsonParser}. JSON is always
+ * supported, and is used when no other format has been negotiated.
+ * 
+ * <p>
+ * A client offering a binary format lists it in the
+ * <samp>Accept</samp> header of its requests. A server supporting it
+ * then uses it for its response, and a client that has seen such a
+ * response may send subsequent requests to that peer in the same
+ * format, identified by <samp>Content-Type</samp>.
+ * 
+ * @author simpsons
+ */
+enum WireFormat {
+    /**
+     * Encodes messages as JSON text in UTF-8.
+     */
+    JSON(ContentType.APPLICATION_JSON) {
+        @Override
+        JsonGenerator createGenerator(OutputStream out) {
+            return Factories.generators.createGenerator(out,
+                                                        StandardCharsets.UTF_8);
+        }
+
+        @Override
+        JsonParser createParser(InputStream in) {
+            return Factories.parsers.createParser(in, StandardCharsets.UTF_8);
+        }
+    },
+
+    /**
+     * Encodes messages as CBOR. Numbers are encoded in binary, and
+     * containers are streamed with indefinite length.
+     */
+    CBOR(ContentType.create("application/cbor")) {
+        @Override
+        JsonGenerator createGenerator(OutputStream out) {
+            return new CborGenerator(out);
+        }
+
+        @Override
+        JsonParser createParser(InputStream in) {
+            return new CborParser(in);
+        }
+    };
+
+    /**
+     * The content type identifying messages in this format
+     */
+    final ContentType contentType;
+
+    WireFormat(ContentType contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * Create a generator to write a message in this format.
+     * 
+     * @param out the destination of the message
+     * 
+     * @return the new generator
+     */
+    abstract JsonGenerator createGenerator(OutputStream out);
+
+    /**
+     * Create a parser to read a message in this format.
+     * 
+     * @param in the source of the message
+     * 
+     * @return the new parser
+     */
+    abstract JsonParser createParser(InputStream in);
+
+    /**
+     * The value of the <samp>Accept</samp> header sent by a client that
+     * offers binary messages
+     */
+    static final String BINARY_ACCEPT = CBOR.contentType.getMimeType() + ", "
+        + JSON.contentType.getMimeType() + ";q=0.5";
+
+    /**
+     * Identify a format by MIME type.
+     * 
+     * @param mimeType the MIME type, without parameters; or
+     * {@code null} if not specified
+     * 
+     * @return the matching format; or {@code null} if none matches
+     */
+    static WireFormat forMimeType(String mimeType) {
+        if (mimeType == null) return null;
+        for (WireFormat cand : values())
+            if (cand.contentType.getMimeType().equalsIgnoreCase(mimeType))
+                return cand;
+        return null;
+    }
+
+    /**
+     * Choose the response format preferred by a client.
+     * 
+     * @param accept the value of the client's <samp>Accept</samp>
+     * header; or {@code null} if absent
+     * 
+     * @return the supported format with the highest quality value, with
+     * ties going to the earlier; or {@link #JSON} if none is acceptable
+     */
+    static WireFormat negotiate(String accept) {
+        if (accept == null) return JSON;
+        WireFormat best = JSON;
+        double bestQuality = 0.0;
+        for (String range : accept.split(",")) {
+            String[] parts = range.split(";");
+            WireFormat cand =
+                forMimeType(parts[0].trim().toLowerCase(Locale.ROOT));
+            if (cand == null) continue;
+            double quality = 1.0;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (!param.startsWith("q=")) continue;
+                try {
+                    quality = Double.parseDouble(param.substring(2));
+                } catch (NumberFormatException ex) {
+                    quality = 0.0;
+                }
+            }
+            if (quality > bestQuality) {
+                best = cand;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Holds factories for JSON text, created on first use.
+     */
+    private static final class Factories {
+        static final JsonGeneratorFactory generators =
+            Json.createGeneratorFactory(Collections.emptyMap());
+
+        static final JsonParserFactory parsers =
+            Json.createParserFactory(Collections.emptyMap());
+    }
+}
@@ -0,0 +1,158 @@
+// -*- c-basic-offset: 4; indent-tabs-mode: nil -*-
+
+/*
+ * Copyright 2022, Lancaster University
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the
+ *    distribution.
+ * 
+ *  * Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * Author: Steven Simpson <https://github.com/simpsonst>
+ */
+
+package uk.ac.lancs.carp.model;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import uk.ac.lancs.carp.map.ExternalName;
+import uk.ac.lancs.carp.model.std.IntegerType;
+import uk.ac.lancs.carp.model.std.MapType;
+import uk.ac.lancs.carp.model.std.SequenceType;
+import uk.ac.lancs.carp.model.std.SetType;
+
+/**
+ * Writes a module image, reads it back, and checks that the types are
+ * reconstituted. Truncated copies of the image are then opened, and
+ * must be rejected with {@link IllegalArgumentException}. Copies with
+ * corrupted integers must not fail with buffer errors, though they
+ * might yield properties that the type factories reject in their own
+ * way.
+ * 
+ * @author simpsons
+ */
+public class TestModuleImage {
+    private TestModuleImage() {}
+
+    private static final ClassLoader impls =
+        Thread.currentThread().getContextClassLoader();
+
+    private static final LoadContext loadCtxt = new LoadContext() {
+        @Override
+        public ClassLoader implementations() {
+            return impls;
+        }
+    };
+
+    /**
+     * @param args
+     */
+    public static void main(String[] args) throws Exception {
+        Map<ExternalName, Type> types = new LinkedHashMap<>();
+        types.put(ExternalName.parse("a.b.c.count"), new IntegerType(0, 100));
+        types.put(ExternalName.parse("a.b.c.counts"),
+                  new SequenceType(new IntegerType(-5, 5)));
+        types.put(ExternalName.parse("a.b.c.labels"),
+                  new MapType(new IntegerType(0, 9),
+                              new SetType(new IntegerType(1, 3))));
+        ModuleDefinition module = ModuleDefinition.define(Map.of(), types);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModuleImage.write(module, "org.example", out);
+        final byte[] bytes = out.toByteArray();
+        System.out.printf("image: %d bytes%n", bytes.length);
+
+        /* Read the image back, and compare the types by their
+         * descriptions. */
+        ModuleImage image = ModuleImage.wrap(ByteBuffer.wrap(bytes));
+        check(image.javaPackage().equals("org.example"), "package");
+        check(image.names().equals(types.keySet()), "names");
+        for (var entry : types.entrySet()) {
+            Type loaded = image.load(entry.getKey(), loadCtxt);
+            check(loaded != null, "loaded " + entry.getKey());
+            check(describe(loaded).equals(describe(entry.getValue())),
+                  "description of " + entry.getKey());
+        }
+        check(image.load(ExternalName.parse("a.b.c.missing"),
+                         loadCtxt) == null,
+              "missing type");
+
+        /* Every truncation must be rejected cleanly. */
+        for (int len = 0; len < bytes.length; len++) {
+            try {
+                survive(Arrays.copyOf(bytes, len));
+                throw new AssertionError("accepted truncation to " + len);
+            } catch (IllegalArgumentException ex) {
+                /* Rejected as expected. */
+            }
+        }
+
+        /* Every corrupted integer must load or be rejected without
+         * reading outside the buffer. Corrupting the bytes of strings
+         * might yield properties that the factories don't accept, so
+         * failures other than buffer errors are tolerated. */
+        for (int pos = 8; pos + 4 <= bytes.length; pos += 4) {
+            for (int val : new int[] { -1, Integer.MIN_VALUE,
+                                       Integer.MAX_VALUE, bytes.length }) {
+                ByteBuffer copy = ByteBuffer.wrap(bytes.clone());
+                copy.putInt(pos, val);
+                try {
+                    survive(copy.array());
+                } catch (IndexOutOfBoundsException
+                    | BufferUnderflowException
+                    | NegativeArraySizeException ex) {
+                    throw new AssertionError(val + " at " + pos, ex);
+                } catch (RuntimeException ex) {
+                    /* Rejected by the image or a factory. */
+                }
+            }
+        }
+        System.out.println("ok");
+    }
+
+    private static void survive(byte[] bytes) {
+        ModuleImage image = ModuleImage.wrap(ByteBuffer.wrap(bytes));
+        for (ExternalName name : image.names())
+            image.load(name, loadCtxt);
+    }
+
+    private static Properties describe(Type type) {
+        Properties props = new Properties();
+        type.describe("", props);
+        return props;
+    }
+
+    private static void check(boolean cond, String desc) {
+        if (!cond) throw new AssertionError(desc);
+    }
+}